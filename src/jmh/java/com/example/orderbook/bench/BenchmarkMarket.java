@@ -0,0 +1,72 @@
+package com.example.orderbook.bench;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.market.PriceHistory;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+
+/**
+ * Fixtures shared by the benchmarks: instruments with a book of a given depth, and sessions that
+ * accept every message and drop it.
+ */
+final class BenchmarkMarket {
+
+    static final String SYMBOL = "LSE:RR";
+    static final long TICK = Prices.toTicks(0.05);
+    static final long MID = Prices.toTicks(632.50);
+    static final int ORDERS_PER_LEVEL = 4;
+
+    private static final int[] VENUES = {
+            Venues.intern("AOX"), Venues.intern("BATS"), Venues.intern("LSE"), Venues.intern("CHIX") };
+
+    private BenchmarkMarket() {
+    }
+
+    /**
+     * An instrument with {@code depth} levels a side of {@value #ORDERS_PER_LEVEL} orders each and a
+     * few trades on the tape. Benchmarks then call it from their own thread: its shard runs nothing else.
+     */
+    static Instrument instrument(int depth) {
+        MarketShard shard = new MarketShard(0);
+        Instrument instrument = shard.addInstrument(0, SYMBOL, PriceHistory.empty());
+        for (int level = 1; level <= depth; level++) {
+            for (int order = 0; order < ORDERS_PER_LEVEL; order++) {
+                int venue = VENUES[(level + order) % VENUES.length];
+                instrument.submit(OrderBook.BID, MatchingEngine.LIMIT, MID - level * TICK, 100 + order * 50, venue);
+                instrument.submit(OrderBook.ASK, MatchingEngine.LIMIT, MID + level * TICK, 100 + order * 50, venue);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            instrument.submit(i % 2 == 0 ? OrderBook.BID : OrderBook.ASK, MatchingEngine.MARKET, 0, 10, VENUES[0]);
+        }
+        instrument.publishOrderbookDelta();
+        instrument.publishTrades();
+        instrument.publishMarketStats();
+        instrument.prepareSnapshot();
+        return instrument;
+    }
+
+    /** A session that is always open and sends into the void. */
+    static WebSocketSession session(String id) {
+        return (WebSocketSession) Proxy.newProxyInstance(BenchmarkMarket.class.getClassLoader(),
+                new Class<?>[] { WebSocketSession.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "isOpen" -> true;
+                    case "getUri" -> URI.create("ws://localhost/websocket");
+                    case "getAttributes" -> new HashMap<String, Object>();
+                    case "getTextMessageSizeLimit", "getBinaryMessageSizeLimit" -> Integer.MAX_VALUE;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkSession[" + id + "]";
+                    default -> null;
+                });
+    }
+}
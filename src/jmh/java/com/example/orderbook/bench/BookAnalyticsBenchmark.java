@@ -0,0 +1,111 @@
+package com.example.orderbook.bench;
+
+import com.example.orderbook.book.BookAnalytics;
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.engine.TradeTape;
+import com.example.orderbook.feed.MarketStats;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.series.CandleAggregator;
+import com.example.orderbook.series.CandleSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+
+/**
+ * The payloads and analytics computed per published book: the snapshot sent on subscribe, the touch
+ * analytics (yellow bar and header) sent with every delta, the OHLC panel with the candles behind it,
+ * and the microstructure signals of the {@code analytics} topic.
+ */
+@State(Scope.Thread)
+public class BookAnalyticsBenchmark {
+
+    private static final int[] CANDLE_INTERVALS = { 1, 60, 300, 3600, CandleSeries.SESSION };
+
+    @Param({ "10", "100", "1000" })
+    public int depth;
+
+    private Instrument instrument;
+    private BookAnalytics bookAnalytics;
+    private final MarketStats marketStats = new MarketStats();
+    private final CandleAggregator candles = new CandleAggregator(CANDLE_INTERVALS, 512);
+    private long touchOrder;
+    private long analyticsOrder;
+    private int time;
+
+    @Setup
+    public void setUp() {
+        instrument = BenchmarkMarket.instrument(depth);
+        bookAnalytics = new BookAnalytics(instrument.getOrderBook());
+        instrument.getOrderBook().addListener(bookAnalytics);
+    }
+
+    /** The snapshot payload; sides are serialized later, straight from the book. */
+    @Benchmark
+    public Map<String, Object> orderbookSnapshot() {
+        return instrument.getOrderbookData();
+    }
+
+    /**
+     * Yellow bar and per-side header figures after the touch moved, which invalidates their cache. The
+     * touch is moved by adding, then cancelling, a one-share order at the best bid.
+     */
+    @Benchmark
+    public Map<String, Object> touchAnalytics() {
+        touchOrder = toggleTouchOrder(touchOrder);
+        return instrument.getOrderbookDelta();
+    }
+
+    /** Folding one trade into every candle interval, which is how the OHLC figures are kept. */
+    @Benchmark
+    public CandleAggregator candleAggregation() {
+        time = (time + 1) % 86_400;
+        candles.onTrade(BenchmarkMarket.MID + (time % 7) * BenchmarkMarket.TICK, 100, OrderBook.BID,
+                TradeTape.TYPE_AUTOMATIC, time);
+        return candles;
+    }
+
+    /** The OHLC panel values, from the touch and the session candle. */
+    @Benchmark
+    public MarketStats marketStats() {
+        marketStats.update(instrument.getOrderBook().top(), candles.series(CandleSeries.SESSION), 60_000);
+        return marketStats;
+    }
+
+    /** The OHLC panel payload, as formatted for the JSON wire. */
+    @Benchmark
+    public Map<String, Object> ohlcPayload() {
+        return instrument.getOhlcData();
+    }
+
+    /**
+     * Imbalance, microprice, depth curves, order size histogram and queue estimates recomputed at full
+     * depth after the touch moved.
+     */
+    @Benchmark
+    public BookAnalytics microstructure() {
+        analyticsOrder = toggleTouchOrder(analyticsOrder);
+        bookAnalytics.update();
+        return bookAnalytics;
+    }
+
+    /** The analytics payload, as formatted for the JSON wire; the signals are up to date already. */
+    @Benchmark
+    public Map<String, Object> analyticsPayload() {
+        return instrument.getAnalyticsData();
+    }
+
+    private long toggleTouchOrder(long order) {
+        if (order == 0) {
+            return instrument.submit(OrderBook.BID, MatchingEngine.LIMIT, BenchmarkMarket.MID - BenchmarkMarket.TICK, 1,
+                    Venues.LSE).getOrderId();
+        }
+        instrument.cancel(order);
+        return 0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.orderbook.bench;
+
+import com.example.orderbook.fanout.ServletFeedSession;
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.metrics.FeedMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handing one encoded message to every subscribed session: the publishing shard's share of the
+ * broadcast. Sessions are mock ones that drop what they are sent, drained by the fan-out's own I/O
+ * threads as in production, so the queues stay short.
+ */
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int depth;
+
+    @Param({ "1", "100", "1000" })
+    public int sessions;
+
+    private SessionFanOut fanOut;
+    private final List<String> registered = new ArrayList<>();
+    private TextMessage snapshot;
+    private TextMessage trades;
+
+    @Setup
+    public void setUp() throws Exception {
+        Instrument instrument = BenchmarkMarket.instrument(depth);
+        ObjectMapper objectMapper = new ObjectMapper();
+        snapshot = new TextMessage(objectMapper.writeValueAsString(
+                Map.of("type", "orderbook", "symbol", BenchmarkMarket.SYMBOL, "content", instrument.getOrderbookData())));
+        trades = new TextMessage(objectMapper.writeValueAsString(
+                Map.of("type", "trades", "symbol", BenchmarkMarket.SYMBOL, "content", instrument.getTradesData())));
+
+        fanOut = new SessionFanOut(new FeedMetrics(new SimpleMeterRegistry()), 4, 64, "conflate", 5000);
+        for (int i = 0; i < sessions; i++) {
+            WebSocketSession session = BenchmarkMarket.session("bench-" + i);
+            fanOut.register(new ServletFeedSession(session), false, symbol -> List.of(snapshot));
+            fanOut.subscribe(session.getId(), BenchmarkMarket.SYMBOL);
+            registered.add(session.getId());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        registered.forEach(fanOut::unregister);
+    }
+
+    /** A sequenced message, queued for every session in order. */
+    @Benchmark
+    public void publishDelta() {
+        fanOut.publish(BenchmarkMarket.SYMBOL, "orderbook-delta", snapshot, null, false);
+    }
+
+    /** A snapshot topic, replacing any copy still queued for a session. */
+    @Benchmark
+    public void publishConflated() {
+        fanOut.publish(BenchmarkMarket.SYMBOL, "trades", trades, null, true);
+    }
+}
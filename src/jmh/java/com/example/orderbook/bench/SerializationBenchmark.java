@@ -0,0 +1,70 @@
+package com.example.orderbook.bench;
+
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.wire.BinaryEncoder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoding the published topics once for all their subscribers, as the WebSocket handler does: JSON
+ * messages of the {type, symbol, content} shape, and the binary frames.
+ */
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int depth;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BinaryEncoder binaryEncoder = new BinaryEncoder(List.of(BenchmarkMarket.SYMBOL));
+    private Instrument instrument;
+
+    @Setup
+    public void setUp() {
+        instrument = BenchmarkMarket.instrument(depth);
+    }
+
+    @Benchmark
+    public String orderbookJson() throws JsonProcessingException {
+        return encode("orderbook", instrument.getOrderbookData());
+    }
+
+    @Benchmark
+    public String tradesJson() throws JsonProcessingException {
+        return encode("trades", instrument.getTradesData());
+    }
+
+    @Benchmark
+    public String ohlcJson() throws JsonProcessingException {
+        return encode("ohlc", instrument.getOhlcData());
+    }
+
+    @Benchmark
+    public BinaryMessage orderbookBinary() {
+        return binaryEncoder.snapshot(instrument.getId(), instrument.getOrderbookSequence(), instrument.getBookTimestamp(),
+                instrument.getOrderBook(), instrument.getHeaderStats());
+    }
+
+    @Benchmark
+    public BinaryMessage tradesBinary() {
+        return binaryEncoder.trades(instrument.getId(), instrument.getTradeTape());
+    }
+
+    private String encode(String type, Object content) throws JsonProcessingException {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", type);
+        message.put("symbol", BenchmarkMarket.SYMBOL);
+        message.put("content", content);
+        return objectMapper.writeValueAsString(message);
+    }
+}
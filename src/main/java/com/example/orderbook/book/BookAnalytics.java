@@ -0,0 +1,263 @@
+package com.example.orderbook.book;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Microstructure signals of an {@link OrderBook}, at full depth: depth imbalance over the first
+ * {@link #IMBALANCE_LEVELS} levels, the microprice, cumulative depth curves, the distribution of
+ * resting order sizes per side, and how long an order joining each of the first
+ * {@link #QUEUE_LEVELS} levels would queue, from the volume traded against the side over the last
+ * {@link #RATE_WINDOW} seconds of the session.
+ * <p>
+ * {@link #update} recomputes everything from the book's own primitive columns, its ladders and its
+ * order pool, into arrays that are reused, so it never allocates once they have grown to the book's
+ * depth. The kernels are plain counted loops over those arrays, which the JIT unrolls and vectorizes
+ * where it can. Nothing is recomputed while neither the book nor the trades moved: the version, like
+ * {@link VenueBooks}', moves on every change.
+ * <p>
+ * Not thread-safe: it belongs to the book's writer.
+ */
+public final class BookAnalytics implements BookListener {
+
+    /** Level counts the imbalance is taken over; 0 is the whole book. */
+    public static final int[] IMBALANCE_LEVELS = { 1, 5, 10, 0 };
+    /** Levels per side with a queue estimate. */
+    public static final int QUEUE_LEVELS = 5;
+    /** Order size buckets: bucket {@code b} counts orders of 2<sup>b</sup> to 2<sup>b+1</sup> - 1 shares. */
+    public static final int SIZE_BUCKETS = 32;
+    /** Seconds of traded volume the queue estimates are based on. */
+    public static final int RATE_WINDOW = 60;
+
+    private final OrderBook book;
+    private long version;
+    private long computedVersion = -1;
+
+    // Volume traded against each resting side, per second of the session, in a ring of RATE_WINDOW seconds
+    private final int[] rateTimes = new int[RATE_WINDOW];
+    private final long[][] rateVolumes = new long[2][RATE_WINDOW];
+    private int lastTradeTime = TimeOfDay.UNKNOWN;
+
+    // Computed by update(), by side where relevant; curves run best level first
+    private final long[][] curvePrices = { new long[64], new long[64] };
+    private final long[][] curveQuantities = { new long[64], new long[64] };
+    private final int[] curveDepths = new int[2];
+    private final int[] orderCounts = new int[2];
+    private final double[] imbalances = new double[IMBALANCE_LEVELS.length];
+    private double microprice = Double.NaN;
+    private final long[] sizeBuckets = new long[2 * SIZE_BUCKETS];
+    private final long[] largestOrders = new long[2];
+    private final double[] tradedRates = new double[2];
+
+    public BookAnalytics(OrderBook book) {
+        this.book = book;
+        Arrays.fill(rateTimes, TimeOfDay.UNKNOWN);
+    }
+
+    @Override
+    public void onOrderAdded(int side, long price, long quantity, int venue, boolean levelCreated) {
+        version++;
+    }
+
+    @Override
+    public void onOrderReduced(int side, long price, long quantity, int venue) {
+        version++;
+    }
+
+    @Override
+    public void onOrderRemoved(int side, long price, long quantity, int venue, boolean levelRemoved) {
+        version++;
+    }
+
+    /** Counts a print against the side it traded with: a buy takes offered shares. */
+    public void recordTrade(long quantity, int aggressorSide, int time) {
+        int slot = Math.floorMod(time, RATE_WINDOW);
+        if (rateTimes[slot] != time) {
+            rateTimes[slot] = time;
+            rateVolumes[OrderBook.BID][slot] = 0;
+            rateVolumes[OrderBook.ASK][slot] = 0;
+        }
+        rateVolumes[aggressorSide == OrderBook.BID ? OrderBook.ASK : OrderBook.BID][slot] += quantity;
+        lastTradeTime = time;
+        version++;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        return 4 + 4 + RATE_WINDOW * (4 + 8 + 8);
+    }
+
+    /** Writes the traded volume of the rate window, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putInt(lastTradeTime).putInt(RATE_WINDOW);
+        for (int slot = 0; slot < RATE_WINDOW; slot++) {
+            out.putInt(rateTimes[slot]).putLong(rateVolumes[OrderBook.BID][slot]).putLong(rateVolumes[OrderBook.ASK][slot]);
+        }
+    }
+
+    /** Replaces the rate window with one written by {@link #writeState}, whatever its length was. */
+    public void readState(ByteBuffer in) {
+        lastTradeTime = in.getInt();
+        Arrays.fill(rateTimes, TimeOfDay.UNKNOWN);
+        int slots = in.getInt();
+        for (int i = 0; i < slots; i++) {
+            int time = in.getInt();
+            long bids = in.getLong();
+            long asks = in.getLong();
+            int slot = Math.floorMod(time, RATE_WINDOW);
+            if (time != TimeOfDay.UNKNOWN && (rateTimes[slot] == TimeOfDay.UNKNOWN || rateTimes[slot] < time)) {
+                rateTimes[slot] = time;
+                rateVolumes[OrderBook.BID][slot] = bids;
+                rateVolumes[OrderBook.ASK][slot] = asks;
+            }
+        }
+        version++;
+    }
+
+    /** Recomputes the signals; returns false, leaving them as they were, when nothing moved since the previous call. */
+    public boolean update() {
+        if (version == computedVersion) {
+            return false;
+        }
+        computedVersion = version;
+        for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+            BookSide ladder = book.side(side);
+            int depth = ladder.depth;
+            if (curvePrices[side].length < depth) {
+                int capacity = Math.max(depth, curvePrices[side].length * 2);
+                curvePrices[side] = new long[capacity];
+                curveQuantities[side] = new long[capacity];
+            }
+            curveDepths[side] = depth;
+            cumulate(ladder.prices, ladder.quantities, depth, curvePrices[side], curveQuantities[side]);
+            orderCounts[side] = sum(ladder.orderCounts, depth);
+            tradedRates[side] = (double) windowSum(rateTimes, rateVolumes[side], lastTradeTime - RATE_WINDOW, lastTradeTime)
+                    / RATE_WINDOW;
+        }
+        for (int i = 0; i < IMBALANCE_LEVELS.length; i++) {
+            long bids = depthThrough(OrderBook.BID, IMBALANCE_LEVELS[i]);
+            long asks = depthThrough(OrderBook.ASK, IMBALANCE_LEVELS[i]);
+            imbalances[i] = bids + asks == 0 ? Double.NaN : (double) (bids - asks) / (bids + asks);
+        }
+        microprice = computeMicroprice();
+        Arrays.fill(sizeBuckets, 0);
+        largestOrders[OrderBook.BID] = 0;
+        largestOrders[OrderBook.ASK] = 0;
+        sizeHistogram(book.orderSides(), book.orderQuantities(), book.poolSize(), sizeBuckets, largestOrders);
+        return true;
+    }
+
+    /** Imbalance over the {@code i}th of {@link #IMBALANCE_LEVELS}, from -1 (all asks) to 1 (all bids); NaN for an empty book. */
+    public double imbalance(int i) {
+        return imbalances[i];
+    }
+
+    /** Touch prices weighted by the size on the opposite side, in ticks; NaN unless both sides are quoted. */
+    public double microprice() {
+        return microprice;
+    }
+
+    /** Levels on the side's depth curve. */
+    public int curveDepth(int side) {
+        return curveDepths[side];
+    }
+
+    public long curvePrice(int side, int level) {
+        return curvePrices[side][level];
+    }
+
+    /** Shares resting at the level and every better one. */
+    public long cumulativeQuantity(int side, int level) {
+        return curveQuantities[side][level];
+    }
+
+    public int orderCount(int side) {
+        return orderCounts[side];
+    }
+
+    public long sizeBucket(int side, int bucket) {
+        return sizeBuckets[side * SIZE_BUCKETS + bucket];
+    }
+
+    public long largestOrder(int side) {
+        return largestOrders[side];
+    }
+
+    /** Shares per second traded against the side over the last {@link #RATE_WINDOW} seconds of trading. */
+    public double tradedRate(int side) {
+        return tradedRates[side];
+    }
+
+    /**
+     * Seconds until an order joining the back of a level would fill, were the side to keep trading at
+     * its recent rate; NaN when nothing traded against it.
+     */
+    public double queueSeconds(int side, int level) {
+        return tradedRates[side] > 0 ? curveQuantities[side][level] / tradedRates[side] : Double.NaN;
+    }
+
+    private double computeMicroprice() {
+        if (curveDepths[OrderBook.BID] == 0 || curveDepths[OrderBook.ASK] == 0) {
+            return Double.NaN;
+        }
+        long bidSize = curveQuantities[OrderBook.BID][0];
+        long askSize = curveQuantities[OrderBook.ASK][0];
+        return ((double) curvePrices[OrderBook.BID][0] * askSize + (double) curvePrices[OrderBook.ASK][0] * bidSize)
+                / (bidSize + askSize);
+    }
+
+    private long depthThrough(int side, int levels) {
+        int depth = curveDepths[side];
+        if (depth == 0) {
+            return 0;
+        }
+        return curveQuantities[side][levels == 0 ? depth - 1 : Math.min(levels, depth) - 1];
+    }
+
+    // Kernels: counted loops over primitive columns, free of calls and allocation
+
+    // Ladders run worst to best; curves best first
+    static void cumulate(long[] prices, long[] quantities, int depth, long[] curvePrices, long[] curveQuantities) {
+        long total = 0;
+        for (int level = 0; level < depth; level++) {
+            int index = depth - 1 - level;
+            total += quantities[index];
+            curvePrices[level] = prices[index];
+            curveQuantities[level] = total;
+        }
+    }
+
+    static int sum(int[] values, int length) {
+        int total = 0;
+        for (int i = 0; i < length; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    // Volume of the slots holding a second in (from, to]
+    static long windowSum(int[] times, long[] volumes, int from, int to) {
+        long total = 0;
+        for (int i = 0; i < times.length; i++) {
+            total += times[i] > from && times[i] <= to ? volumes[i] : 0;
+        }
+        return total;
+    }
+
+    // Free handles have no side and are skipped
+    static void sizeHistogram(byte[] sides, long[] quantities, int length, long[] buckets, long[] largest) {
+        for (int handle = 0; handle < length; handle++) {
+            int side = sides[handle];
+            if (side >= 0) {
+                long quantity = quantities[handle];
+                int bucket = Math.min(63 - Long.numberOfLeadingZeros(Math.max(quantity, 1)), SIZE_BUCKETS - 1);
+                buckets[side * SIZE_BUCKETS + bucket]++;
+                largest[side] = Math.max(largest[side], quantity);
+            }
+        }
+    }
+}
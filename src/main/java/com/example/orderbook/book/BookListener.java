@@ -0,0 +1,27 @@
+package com.example.orderbook.book;
+
+/**
+ * Notified synchronously by an {@link OrderBook} on every order-level mutation, with primitive
+ * arguments only. Implementations must be cheap: they run inside the matching loop.
+ */
+public interface BookListener {
+
+    /**
+     * An order was added at the back of a level; {@code levelCreated} when the level did not exist.
+     */
+    default void onOrderAdded(int side, long price, long quantity, int venue, boolean levelCreated) {
+    }
+
+    /**
+     * A resting order lost {@code quantity} shares but stays on the book with its queue position.
+     */
+    default void onOrderReduced(int side, long price, long quantity, int venue) {
+    }
+
+    /**
+     * An order left the book with {@code quantity} shares still resting; {@code levelRemoved} when it
+     * was the last order at its price.
+     */
+    default void onOrderRemoved(int side, long price, long quantity, int venue, boolean levelRemoved) {
+    }
+}
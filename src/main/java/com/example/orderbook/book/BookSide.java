@@ -0,0 +1,116 @@
+package com.example.orderbook.book;
+
+import java.util.Arrays;
+
+/**
+ * One side of the book as a sorted ladder of price levels held in parallel primitive arrays.
+ * <p>
+ * Levels are kept worst-to-best so that the best level sits at the end of the arrays: inserting or
+ * removing a level near the touch, which is where nearly all activity happens, only shifts a few
+ * entries. Public level numbers used by {@link OrderBook} count from the best level (0 = touch).
+ */
+final class BookSide {
+
+    private static final int INITIAL_LEVELS = 64;
+
+    private final boolean bid;
+
+    long[] prices = new long[INITIAL_LEVELS];
+    long[] quantities = new long[INITIAL_LEVELS];
+    int[] orderCounts = new int[INITIAL_LEVELS];
+    int[] heads = new int[INITIAL_LEVELS];
+    int[] tails = new int[INITIAL_LEVELS];
+    int depth;
+
+    BookSide(boolean bid) {
+        this.bid = bid;
+    }
+
+    boolean isBid() {
+        return bid;
+    }
+
+    /** Array index of the given public level number (0 = best). */
+    int index(int level) {
+        return depth - 1 - level;
+    }
+
+    /** Public level number of the given array index. */
+    int level(int index) {
+        return depth - 1 - index;
+    }
+
+    /**
+     * Binary search for a price. Returns the array index of the level, or {@code -(insertion point) - 1}
+     * when the level does not exist.
+     */
+    int search(long price) {
+        long key = bid ? price : -price;
+        int low = 0;
+        int high = depth - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = bid ? prices[mid] : -prices[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /** Returns the array index of the level for the price, creating an empty level if needed. */
+    int findOrInsert(long price) {
+        int index = search(price);
+        if (index >= 0) {
+            return index;
+        }
+        index = -index - 1;
+        if (depth == prices.length) {
+            grow();
+        }
+        int moved = depth - index;
+        if (moved > 0) {
+            System.arraycopy(prices, index, prices, index + 1, moved);
+            System.arraycopy(quantities, index, quantities, index + 1, moved);
+            System.arraycopy(orderCounts, index, orderCounts, index + 1, moved);
+            System.arraycopy(heads, index, heads, index + 1, moved);
+            System.arraycopy(tails, index, tails, index + 1, moved);
+        }
+        prices[index] = price;
+        quantities[index] = 0;
+        orderCounts[index] = 0;
+        heads[index] = OrderBook.NO_ORDER;
+        tails[index] = OrderBook.NO_ORDER;
+        depth++;
+        return index;
+    }
+
+    void removeAt(int index) {
+        int moved = depth - index - 1;
+        if (moved > 0) {
+            System.arraycopy(prices, index + 1, prices, index, moved);
+            System.arraycopy(quantities, index + 1, quantities, index, moved);
+            System.arraycopy(orderCounts, index + 1, orderCounts, index, moved);
+            System.arraycopy(heads, index + 1, heads, index, moved);
+            System.arraycopy(tails, index + 1, tails, index, moved);
+        }
+        depth--;
+    }
+
+    void clear() {
+        depth = 0;
+    }
+
+    private void grow() {
+        int capacity = prices.length * 2;
+        prices = Arrays.copyOf(prices, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        orderCounts = Arrays.copyOf(orderCounts, capacity);
+        heads = Arrays.copyOf(heads, capacity);
+        tails = Arrays.copyOf(tails, capacity);
+    }
+}
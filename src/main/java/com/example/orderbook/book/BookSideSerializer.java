@@ -0,0 +1,74 @@
+package com.example.orderbook.book;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a book side best level first, without materialising any intermediate maps: as
+ * {@code [{price, size, exchange, time}, ...]} in time priority within a level, or aggregated as
+ * {@code [{price, size, orders}, ...]}. With a venue filter, levels are counted only where that venue
+ * has orders, and aggregated sizes only add up its orders.
+ */
+public class BookSideSerializer extends StdSerializer<BookSideView> {
+
+    public BookSideSerializer() {
+        super(BookSideView.class);
+    }
+
+    @Override
+    public void serialize(BookSideView view, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        OrderBook book = view.getBook();
+        int side = view.getSide();
+        int venue = view.getVenue();
+        int limit = view.getDepth() == 0 ? Integer.MAX_VALUE : view.getDepth();
+        gen.writeStartArray();
+        int depth = book.depth(side);
+        int written = 0;
+        for (int level = 0; level < depth && written < limit; level++) {
+            if (view.isAggregated()) {
+                long size = book.levelQuantity(side, level);
+                int orders = book.levelOrderCount(side, level);
+                if (venue != Venues.ANY) {
+                    size = 0;
+                    orders = 0;
+                    for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                        if (book.orderVenue(order) == venue) {
+                            size += book.orderQuantity(order);
+                            orders++;
+                        }
+                    }
+                    if (orders == 0) {
+                        continue;
+                    }
+                }
+                gen.writeStartObject();
+                gen.writeNumberField("price", Prices.toDouble(book.levelPrice(side, level)));
+                gen.writeNumberField("size", size);
+                gen.writeNumberField("orders", orders);
+                gen.writeEndObject();
+                written++;
+                continue;
+            }
+            boolean shown = false;
+            for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                if (venue != Venues.ANY && book.orderVenue(order) != venue) {
+                    continue;
+                }
+                gen.writeStartObject();
+                gen.writeNumberField("price", Prices.toDouble(book.orderPrice(order)));
+                gen.writeNumberField("size", book.orderQuantity(order));
+                gen.writeStringField("exchange", Venues.name(book.orderVenue(order)));
+                gen.writeStringField("time", TimeOfDay.format(book.orderTime(order)));
+                gen.writeEndObject();
+                shown = true;
+            }
+            if (shown) {
+                written++;
+            }
+        }
+        gen.writeEndArray();
+    }
+}
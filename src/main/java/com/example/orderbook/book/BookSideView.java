@@ -0,0 +1,51 @@
+package com.example.orderbook.book;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Handle on one side of an {@link OrderBook} that Jackson writes straight from the primitive arrays:
+ * as the per-order list the front end expects, or as aggregated levels, limited to the first
+ * {@code depth} levels (0 for all) and to one venue's orders when {@code venue} is not
+ * {@link Venues#ANY}.
+ */
+@JsonSerialize(using = BookSideSerializer.class)
+public final class BookSideView {
+
+    private final OrderBook book;
+    private final int side;
+    private final int depth;
+    private final boolean aggregated;
+    private final int venue;
+
+    BookSideView(OrderBook book, int side) {
+        this(book, side, 0, false, Venues.ANY);
+    }
+
+    BookSideView(OrderBook book, int side, int depth, boolean aggregated, int venue) {
+        this.book = book;
+        this.side = side;
+        this.depth = depth;
+        this.aggregated = aggregated;
+        this.venue = venue;
+    }
+
+    public OrderBook getBook() {
+        return book;
+    }
+
+    public int getSide() {
+        return side;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isAggregated() {
+        return aggregated;
+    }
+
+    public int getVenue() {
+        return venue;
+    }
+}
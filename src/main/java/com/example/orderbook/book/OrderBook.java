@@ -0,0 +1,319 @@
+package com.example.orderbook.book;
+
+import java.util.Arrays;
+
+/**
+ * Price-time ordered limit order book backed by primitive arrays.
+ * <p>
+ * Orders live in a struct-of-arrays pool and are addressed by an int handle that stays valid until
+ * the order is removed. Each side is a sorted ladder of levels (see {@link BookSide}) and orders
+ * within a level form a FIFO linked list, which gives price-time priority for free. Touch and
+ * ladder-end statistics are maintained incrementally in a {@link TopOfBook}, and every mutation is
+ * reported to the registered {@link BookListener}s.
+ * <p>
+ * The book is not thread-safe: it is meant to be owned by a single writer.
+ */
+public class OrderBook {
+
+    public static final int BID = 0;
+    public static final int ASK = 1;
+    public static final int NO_ORDER = -1;
+
+    private static final int INITIAL_ORDERS = 256;
+    // Side of a free handle, so the pool can be scanned as columns
+    static final byte FREE = -1;
+
+    private final BookSide[] sides = { new BookSide(true), new BookSide(false) };
+    private final BookSideView[] views = { new BookSideView(this, BID), new BookSideView(this, ASK) };
+    private final TopOfBook top = new TopOfBook();
+    private BookListener[] listeners = new BookListener[0];
+
+    // Order pool, indexed by handle
+    private long[] orderIds = new long[INITIAL_ORDERS];
+    private long[] orderPrices = new long[INITIAL_ORDERS];
+    private long[] orderQuantities = new long[INITIAL_ORDERS];
+    private int[] orderVenues = new int[INITIAL_ORDERS];
+    private int[] orderTimes = new int[INITIAL_ORDERS];
+    private byte[] orderSides = new byte[INITIAL_ORDERS];
+    private int[] nextOrders = new int[INITIAL_ORDERS];
+    private int[] previousOrders = new int[INITIAL_ORDERS];
+
+    private int freeHead = NO_ORDER;
+    private int highWaterMark;
+    private int orderCount;
+
+    /**
+     * Appends an order at the back of the queue for its price level and returns its handle.
+     */
+    public int add(int side, long orderId, long price, long quantity, int venue, int time) {
+        int handle = allocate();
+        orderIds[handle] = orderId;
+        orderPrices[handle] = price;
+        orderQuantities[handle] = quantity;
+        orderVenues[handle] = venue;
+        orderTimes[handle] = time;
+        orderSides[handle] = (byte) side;
+
+        BookSide bookSide = sides[side];
+        int depthBefore = bookSide.depth;
+        int index = bookSide.findOrInsert(price);
+        int tail = bookSide.tails[index];
+        previousOrders[handle] = tail;
+        nextOrders[handle] = NO_ORDER;
+        if (tail == NO_ORDER) {
+            bookSide.heads[index] = handle;
+        } else {
+            nextOrders[tail] = handle;
+        }
+        bookSide.tails[index] = handle;
+        bookSide.quantities[index] += quantity;
+        bookSide.orderCounts[index]++;
+        orderCount++;
+        refreshTop(side, bookSide, index);
+        for (BookListener listener : listeners) {
+            listener.onOrderAdded(side, price, quantity, venue, bookSide.depth > depthBefore);
+        }
+        return handle;
+    }
+
+    /**
+     * Removes an order from the book, deleting its price level when it was the last order there.
+     */
+    public void remove(int handle) {
+        BookSide bookSide = sides[orderSides[handle]];
+        int index = bookSide.search(orderPrices[handle]);
+        int previous = previousOrders[handle];
+        int next = nextOrders[handle];
+        if (previous == NO_ORDER) {
+            bookSide.heads[index] = next;
+        } else {
+            nextOrders[previous] = next;
+        }
+        if (next == NO_ORDER) {
+            bookSide.tails[index] = previous;
+        } else {
+            previousOrders[next] = previous;
+        }
+        bookSide.quantities[index] -= orderQuantities[handle];
+        boolean levelRemoved = --bookSide.orderCounts[index] == 0;
+        if (levelRemoved) {
+            bookSide.removeAt(index);
+            // Removing the top level makes the next one the touch, so refresh unconditionally
+            index = bookSide.depth - 1;
+        }
+        orderCount--;
+        refreshTop(orderSides[handle], bookSide, index);
+        for (BookListener listener : listeners) {
+            listener.onOrderRemoved(orderSides[handle], orderPrices[handle], orderQuantities[handle], orderVenues[handle], levelRemoved);
+        }
+        release(handle);
+    }
+
+    /**
+     * Reduces the resting quantity of an order in place, keeping its queue position. Reducing to
+     * zero or below removes the order.
+     */
+    public void reduce(int handle, long quantity) {
+        if (quantity >= orderQuantities[handle]) {
+            remove(handle);
+            return;
+        }
+        BookSide bookSide = sides[orderSides[handle]];
+        int index = bookSide.search(orderPrices[handle]);
+        bookSide.quantities[index] -= quantity;
+        orderQuantities[handle] -= quantity;
+        refreshTop(orderSides[handle], bookSide, index);
+        for (BookListener listener : listeners) {
+            listener.onOrderReduced(orderSides[handle], orderPrices[handle], quantity, orderVenues[handle]);
+        }
+    }
+
+    /**
+     * Removes every order. Listeners see one removal per resting order, best level first.
+     */
+    public void clear() {
+        if (listeners.length > 0) {
+            for (int side = BID; side <= ASK; side++) {
+                BookSide bookSide = sides[side];
+                for (int index = bookSide.depth - 1; index >= 0; index--) {
+                    for (int order = bookSide.heads[index]; order != NO_ORDER; order = nextOrders[order]) {
+                        for (BookListener listener : listeners) {
+                            listener.onOrderRemoved(side, orderPrices[order], orderQuantities[order], orderVenues[order],
+                                    nextOrders[order] == NO_ORDER);
+                        }
+                    }
+                }
+            }
+        }
+        sides[BID].clear();
+        sides[ASK].clear();
+        freeHead = NO_ORDER;
+        highWaterMark = 0;
+        orderCount = 0;
+        refreshTop(BID, sides[BID], 0);
+        refreshTop(ASK, sides[ASK], 0);
+    }
+
+    public int orderCount() {
+        return orderCount;
+    }
+
+    // Level accessors: level 0 is the best price on the side
+
+    public int depth(int side) {
+        return sides[side].depth;
+    }
+
+    public long levelPrice(int side, int level) {
+        BookSide bookSide = sides[side];
+        return bookSide.prices[bookSide.index(level)];
+    }
+
+    public long levelQuantity(int side, int level) {
+        BookSide bookSide = sides[side];
+        return bookSide.quantities[bookSide.index(level)];
+    }
+
+    public int levelOrderCount(int side, int level) {
+        BookSide bookSide = sides[side];
+        return bookSide.orderCounts[bookSide.index(level)];
+    }
+
+    public int firstOrder(int side, int level) {
+        BookSide bookSide = sides[side];
+        return bookSide.heads[bookSide.index(level)];
+    }
+
+    /** Best price on the side, or {@link Prices#NONE} when the side is empty. */
+    public long bestPrice(int side) {
+        BookSide bookSide = sides[side];
+        return bookSide.depth == 0 ? Prices.NONE : bookSide.prices[bookSide.depth - 1];
+    }
+
+    /** Deepest price on the side, or {@link Prices#NONE} when the side is empty. */
+    public long worstPrice(int side) {
+        BookSide bookSide = sides[side];
+        return bookSide.depth == 0 ? Prices.NONE : bookSide.prices[0];
+    }
+
+    /** Public level number for a price, or -1 when there is no level at that price. */
+    public int levelOf(int side, long price) {
+        BookSide bookSide = sides[side];
+        int index = bookSide.search(price);
+        return index < 0 ? -1 : bookSide.level(index);
+    }
+
+    // Order accessors
+
+    public int nextOrder(int handle) {
+        return nextOrders[handle];
+    }
+
+    public long orderId(int handle) {
+        return orderIds[handle];
+    }
+
+    public long orderPrice(int handle) {
+        return orderPrices[handle];
+    }
+
+    public long orderQuantity(int handle) {
+        return orderQuantities[handle];
+    }
+
+    public int orderVenue(int handle) {
+        return orderVenues[handle];
+    }
+
+    public int orderTime(int handle) {
+        return orderTimes[handle];
+    }
+
+    public int orderSide(int handle) {
+        return orderSides[handle];
+    }
+
+    // Raw columns for the book's own analytics: ladders, and the order pool up to its high-water mark
+
+    BookSide side(int side) {
+        return sides[side];
+    }
+
+    int poolSize() {
+        return highWaterMark;
+    }
+
+    long[] orderQuantities() {
+        return orderQuantities;
+    }
+
+    byte[] orderSides() {
+        return orderSides;
+    }
+
+    public void addListener(BookListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    public TopOfBook top() {
+        return top;
+    }
+
+    /** Serializable per-order view of one side, best level first. */
+    public BookSideView view(int side) {
+        return views[side];
+    }
+
+    /**
+     * Serializable view of the first {@code depth} levels of one side (0 for all), per order or
+     * aggregated, showing one venue only unless {@code venue} is {@link Venues#ANY}.
+     */
+    public BookSideView view(int side, int depth, boolean aggregated, int venue) {
+        return new BookSideView(this, side, depth, aggregated, venue);
+    }
+
+    /**
+     * Refreshes the top-of-book statistics after a change at the given array index. Only the ends of
+     * the ladder matter; a change deep in the book costs a comparison.
+     */
+    private void refreshTop(int side, BookSide bookSide, int index) {
+        int depth = bookSide.depth;
+        if (depth == 0) {
+            top.update(side, Prices.NONE, 0, 0, Prices.NONE);
+        } else if (index >= depth - 1 || index <= 0) {
+            top.update(side, bookSide.prices[depth - 1], bookSide.quantities[depth - 1],
+                    bookSide.orderCounts[depth - 1], bookSide.prices[0]);
+        }
+    }
+
+    private int allocate() {
+        if (freeHead != NO_ORDER) {
+            int handle = freeHead;
+            freeHead = nextOrders[handle];
+            return handle;
+        }
+        if (highWaterMark == orderIds.length) {
+            grow();
+        }
+        return highWaterMark++;
+    }
+
+    private void release(int handle) {
+        orderSides[handle] = FREE;
+        nextOrders[handle] = freeHead;
+        freeHead = handle;
+    }
+
+    private void grow() {
+        int capacity = orderIds.length * 2;
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        orderPrices = Arrays.copyOf(orderPrices, capacity);
+        orderQuantities = Arrays.copyOf(orderQuantities, capacity);
+        orderVenues = Arrays.copyOf(orderVenues, capacity);
+        orderTimes = Arrays.copyOf(orderTimes, capacity);
+        orderSides = Arrays.copyOf(orderSides, capacity);
+        nextOrders = Arrays.copyOf(nextOrders, capacity);
+        previousOrders = Arrays.copyOf(previousOrders, capacity);
+    }
+}
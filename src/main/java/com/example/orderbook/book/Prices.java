@@ -0,0 +1,24 @@
+package com.example.orderbook.book;
+
+/**
+ * Fixed-point price helpers. Prices are carried as {@code long} ticks of 1/10,000 so that
+ * comparisons and level lookups are exact and never box.
+ */
+public final class Prices {
+
+    public static final long SCALE = 10_000L;
+
+    // Sentinel for "no price", e.g. the best bid of an empty side
+    public static final long NONE = Long.MIN_VALUE;
+
+    private Prices() {
+    }
+
+    public static long toTicks(double price) {
+        return Math.round(price * SCALE);
+    }
+
+    public static double toDouble(long ticks) {
+        return ticks / (double) SCALE;
+    }
+}
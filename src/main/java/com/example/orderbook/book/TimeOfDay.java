@@ -0,0 +1,57 @@
+package com.example.orderbook.book;
+
+import java.time.LocalTime;
+
+/**
+ * Wall-clock times are stored as an int second-of-day. Formatted "HH:mm:ss" strings are cached
+ * per second so rendering an order's time never allocates after warm-up.
+ */
+public final class TimeOfDay {
+
+    public static final int UNKNOWN = -1;
+    public static final int SECONDS_PER_DAY = 86_400;
+
+    private static final String[] FORMATTED = new String[SECONDS_PER_DAY];
+
+    private TimeOfDay() {
+    }
+
+    public static int parse(CharSequence text) {
+        if (text == null || text.length() < 8) {
+            return UNKNOWN;
+        }
+        int hours = digits(text, 0);
+        int minutes = digits(text, 3);
+        int seconds = digits(text, 6);
+        if (hours < 0 || minutes < 0 || seconds < 0 || hours > 23 || minutes > 59 || seconds > 59) {
+            return UNKNOWN;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    public static String format(int secondOfDay) {
+        if (secondOfDay < 0 || secondOfDay >= SECONDS_PER_DAY) {
+            return "";
+        }
+        String formatted = FORMATTED[secondOfDay];
+        if (formatted == null) {
+            // Benign race: concurrent writers store equal strings
+            formatted = String.format("%02d:%02d:%02d", secondOfDay / 3600, (secondOfDay / 60) % 60, secondOfDay % 60);
+            FORMATTED[secondOfDay] = formatted;
+        }
+        return formatted;
+    }
+
+    public static int now() {
+        return LocalTime.now().toSecondOfDay();
+    }
+
+    private static int digits(CharSequence text, int offset) {
+        char tens = text.charAt(offset);
+        char units = text.charAt(offset + 1);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.orderbook.book;
+
+/**
+ * Touch and ladder-end statistics of an {@link OrderBook}, kept current by the book on every
+ * mutation that affects them. Reading any figure is a field load; the version only moves when one of
+ * them actually changed, so consumers can cheaply skip recomputing derived views.
+ */
+public final class TopOfBook {
+
+    private final long[] bestPrices = { Prices.NONE, Prices.NONE };
+    private final long[] touchQuantities = new long[2];
+    private final int[] touchOrderCounts = new int[2];
+    private final long[] worstPrices = { Prices.NONE, Prices.NONE };
+    private long version;
+
+    /** Best price of the side, or {@link Prices#NONE} when it is empty. */
+    public long bestPrice(int side) {
+        return bestPrices[side];
+    }
+
+    /** Shares resting at the best price. */
+    public long touchQuantity(int side) {
+        return touchQuantities[side];
+    }
+
+    /** Orders resting at the best price. */
+    public int touchOrderCount(int side) {
+        return touchOrderCounts[side];
+    }
+
+    /** Price times shares at the best price. */
+    public double touchNotional(int side) {
+        return bestPrices[side] == Prices.NONE ? 0.0 : Prices.toDouble(bestPrices[side]) * touchQuantities[side];
+    }
+
+    /** Deepest price of the side, or {@link Prices#NONE} when it is empty. */
+    public long worstPrice(int side) {
+        return worstPrices[side];
+    }
+
+    public boolean isTwoSided() {
+        return bestPrices[OrderBook.BID] != Prices.NONE && bestPrices[OrderBook.ASK] != Prices.NONE;
+    }
+
+    /** Best ask minus best bid in ticks, or {@link Prices#NONE} unless both sides are populated. */
+    public long spread() {
+        return isTwoSided() ? bestPrices[OrderBook.ASK] - bestPrices[OrderBook.BID] : Prices.NONE;
+    }
+
+    /** Worst ask minus worst bid in ticks: the price range covered by the book. */
+    public long depthRange() {
+        return isTwoSided() ? worstPrices[OrderBook.ASK] - worstPrices[OrderBook.BID] : Prices.NONE;
+    }
+
+    /** Incremented whenever any statistic changes. */
+    public long version() {
+        return version;
+    }
+
+    void update(int side, long bestPrice, long touchQuantity, int touchOrderCount, long worstPrice) {
+        if (bestPrices[side] != bestPrice || touchQuantities[side] != touchQuantity
+                || touchOrderCounts[side] != touchOrderCount || worstPrices[side] != worstPrice) {
+            bestPrices[side] = bestPrice;
+            touchQuantities[side] = touchQuantity;
+            touchOrderCounts[side] = touchOrderCount;
+            worstPrices[side] = worstPrice;
+            version++;
+        }
+    }
+}
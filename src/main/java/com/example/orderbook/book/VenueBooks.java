@@ -0,0 +1,118 @@
+package com.example.orderbook.book;
+
+import java.util.Arrays;
+
+/**
+ * Per-venue aggregated books kept alongside a consolidated {@link OrderBook}: for every venue that has
+ * shown up, a ladder of its price levels with their size and order count on each side.
+ * <p>
+ * Maintained from the book's {@link BookListener} callbacks, so each mutation only touches one level
+ * of one venue's ladder, found by binary search, and nothing is ever rebuilt by scanning the book. The
+ * version moves on every change so publishers can skip an unchanged breakdown.
+ * <p>
+ * Not thread-safe: it belongs to the book's writer.
+ */
+public final class VenueBooks implements BookListener {
+
+    // By venue id, then side; null for venues never seen on this book
+    private BookSide[][] ladders = new BookSide[0][];
+    private long version;
+
+    @Override
+    public void onOrderAdded(int side, long price, long quantity, int venue, boolean levelCreated) {
+        BookSide ladder = ladder(venue, side);
+        int index = ladder.findOrInsert(price);
+        ladder.quantities[index] += quantity;
+        ladder.orderCounts[index]++;
+        version++;
+    }
+
+    @Override
+    public void onOrderReduced(int side, long price, long quantity, int venue) {
+        BookSide ladder = ladder(venue, side);
+        ladder.quantities[ladder.search(price)] -= quantity;
+        version++;
+    }
+
+    @Override
+    public void onOrderRemoved(int side, long price, long quantity, int venue, boolean levelRemoved) {
+        BookSide ladder = ladder(venue, side);
+        int index = ladder.search(price);
+        ladder.quantities[index] -= quantity;
+        if (--ladder.orderCounts[index] == 0) {
+            ladder.removeAt(index);
+        }
+        version++;
+    }
+
+    /** Venue ids run from 0 to this, exclusive; see {@link #hasVenue}. */
+    public int venueCount() {
+        return ladders.length;
+    }
+
+    /** Whether the venue has ever had an order on this book. */
+    public boolean hasVenue(int venue) {
+        return venue < ladders.length && ladders[venue] != null;
+    }
+
+    /** Incremented on every change to any venue. */
+    public long version() {
+        return version;
+    }
+
+    public int depth(int venue, int side) {
+        return hasVenue(venue) ? ladders[venue][side].depth : 0;
+    }
+
+    /** The venue's best price on the side, or {@link Prices#NONE} when it has no order there. */
+    public long bestPrice(int venue, int side) {
+        return depth(venue, side) == 0 ? Prices.NONE : levelPrice(venue, side, 0);
+    }
+
+    // Level accessors: level 0 is the venue's best price on the side
+
+    public long levelPrice(int venue, int side, int level) {
+        BookSide ladder = ladders[venue][side];
+        return ladder.prices[ladder.index(level)];
+    }
+
+    public long levelQuantity(int venue, int side, int level) {
+        BookSide ladder = ladders[venue][side];
+        return ladder.quantities[ladder.index(level)];
+    }
+
+    public int levelOrderCount(int venue, int side, int level) {
+        BookSide ladder = ladders[venue][side];
+        return ladder.orderCounts[ladder.index(level)];
+    }
+
+    /** Shares the venue has resting at a price, 0 when none. */
+    public long quantityAt(int venue, int side, long price) {
+        if (!hasVenue(venue)) {
+            return 0;
+        }
+        BookSide ladder = ladders[venue][side];
+        int index = ladder.search(price);
+        return index < 0 ? 0 : ladder.quantities[index];
+    }
+
+    /** Orders the venue has resting at a price. */
+    public int orderCountAt(int venue, int side, long price) {
+        if (!hasVenue(venue)) {
+            return 0;
+        }
+        BookSide ladder = ladders[venue][side];
+        int index = ladder.search(price);
+        return index < 0 ? 0 : ladder.orderCounts[index];
+    }
+
+    private BookSide ladder(int venue, int side) {
+        if (venue >= ladders.length) {
+            ladders = Arrays.copyOf(ladders, Math.max(venue + 1, Venues.count()));
+        }
+        if (ladders[venue] == null) {
+            ladders[venue] = new BookSide[] { new BookSide(true), new BookSide(false) };
+        }
+        return ladders[venue][side];
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.orderbook.book;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns venue codes (AOX, BATS, ...) into small int ids so that orders only carry an int.
+ */
+public final class Venues {
+
+    /** Stands for every venue where a venue id is optional. */
+    public static final int ANY = -1;
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    public static final int AOX = intern("AOX");
+    public static final int BATS = intern("BATS");
+    public static final int LSE = intern("LSE");
+    public static final int CHIX = intern("CHIX");
+
+    private Venues() {
+    }
+
+    public static int intern(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (IDS) {
+            id = IDS.get(name);
+            if (id == null) {
+                String[] grown = Arrays.copyOf(names, names.length + 1);
+                id = names.length;
+                grown[id] = name;
+                names = grown;
+                IDS.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /** Id of a venue already seen, or {@link #ANY} when there is none by that name. */
+    public static int find(String name) {
+        Integer id = IDS.get(name);
+        return id == null ? ANY : id;
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+
+    public static int count() {
+        return names.length;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.orderbook.config;
+
+import com.example.orderbook.handler.ReactiveOrderbookHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+/**
+ * The reactive transport, used when the application runs with
+ * {@code spring.main.web-application-type=reactive}: Netty serves the feed, the REST API and the page.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSocketConfig {
+
+    // Tomcat is on the classpath for the servlet transport, and would otherwise be preferred
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public HandlerMapping webSocketMapping(ReactiveOrderbookHandler webSocketHandler) {
+        // Ahead of the annotated controllers
+        return new SimpleUrlHandlerMapping(Map.of("/websocket", webSocketHandler), -1);
+    }
+}
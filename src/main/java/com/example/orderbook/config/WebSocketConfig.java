@@ -1,18 +1,21 @@
 package com.example.orderbook.config;
 
-import com.example.orderbook.handler.OrderbookWebSocketHandler;
+import com.example.orderbook.handler.FeedWebSocketHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+// The servlet transport; ReactiveWebSocketConfig serves the same feed over Netty
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
-    private final OrderbookWebSocketHandler webSocketHandler;
+    private final FeedWebSocketHandler webSocketHandler;
 
-    public WebSocketConfig(OrderbookWebSocketHandler webSocketHandler) {
+    public WebSocketConfig(FeedWebSocketHandler webSocketHandler) {
         this.webSocketHandler = webSocketHandler;
     }
 
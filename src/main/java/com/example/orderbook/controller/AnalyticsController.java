@@ -0,0 +1,35 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.service.DataService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * The microstructure signals of one instrument's book ({@code symbol}, defaulting to the default
+ * instrument), as of the request: the payload of the {@code analytics} topic.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+
+    private final DataService dataService;
+
+    public AnalyticsController(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> analytics(@RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "unknown symbol " + symbol));
+        }
+        return ResponseEntity.ok(dataService.getAnalytics(symbol));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.service.DataService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OHLCV candles with VWAP for 1 s, 1 min, 5 min and 1 h intervals, or the session candle
+ * ({@code interval=0}), for one instrument ({@code symbol}, defaulting to the default instrument).
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/candles")
+public class CandleController {
+
+    private final DataService dataService;
+
+    public CandleController(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Object> candles(@RequestParam(defaultValue = "60") int interval,
+            @RequestParam(defaultValue = "100") int limit, @RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "unknown symbol " + symbol));
+        }
+        List<Map<String, Object>> candles = dataService.getCandles(symbol, interval, Math.max(1, limit));
+        if (candles == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unsupported interval " + interval));
+        }
+        return ResponseEntity.ok(Map.of("interval", interval, "candles", candles));
+    }
+}
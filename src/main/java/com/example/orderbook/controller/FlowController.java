@@ -0,0 +1,29 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.flow.OrderFlowGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Counters of the synthetic order flow, to check the achieved rate during a soak test.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/flow")
+public class FlowController {
+
+    private final OrderFlowGenerator generator;
+
+    public FlowController(OrderFlowGenerator generator) {
+        this.generator = generator;
+    }
+
+    @GetMapping
+    public Map<String, Object> stats() {
+        return generator.getStats();
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.journal.Journal;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Where each shard's journal has got to, and what the last recovery restored.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/journal")
+public class JournalController {
+
+    private final Journal journal;
+
+    public JournalController(Journal journal) {
+        this.journal = journal;
+    }
+
+    @GetMapping
+    public Map<String, Object> status() {
+        return journal.getStatus();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.service.DataService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Order entry next to the /websocket feed. Resulting trades and book changes show up on the
+ * regular orderbook and trades topics of the instrument. Order ids are per instrument, so amending,
+ * cancelling and stats take a {@code symbol} parameter, defaulting to the default instrument.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/orders")
+public class OrderController {
+
+    private final DataService dataService;
+
+    public OrderController(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(@RequestBody OrderRequest request) {
+        if (dataService.getInstrument(request.symbol()) == null) {
+            return unknownSymbol(request.symbol());
+        }
+        int side = parseSide(request.side());
+        int type = "market".equalsIgnoreCase(request.type()) ? MatchingEngine.MARKET : MatchingEngine.LIMIT;
+        // Converted before checking: a positive price below half a tick rounds to nothing
+        long price = request.price() != null ? Prices.toTicks(request.price()) : 0;
+        if (side < 0 || request.quantity() == null || request.quantity() <= 0 || (type == MatchingEngine.LIMIT && price <= 0)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "side, quantity and (for limit orders) a price of at least one tick are required"));
+        }
+        // Only known venues: ids go on the wire and into the journal, so clients cannot mint new ones
+        int venue = request.venue() != null ? Venues.find(request.venue()) : Venues.LSE;
+        if (venue == Venues.ANY) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unknown venue " + request.venue()));
+        }
+        return ResponseEntity.ok(dataService.submitOrder(request.symbol(), side, type, price, request.quantity(), venue));
+    }
+
+    @PutMapping("/{orderId}")
+    public ResponseEntity<Map<String, Object>> replace(@PathVariable long orderId, @RequestBody OrderRequest request,
+            @RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return unknownSymbol(symbol);
+        }
+        long price = request.price() != null ? Prices.toTicks(request.price()) : 0;
+        if (price <= 0 || request.quantity() == null || request.quantity() < 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "a price of at least one tick and a quantity are required"));
+        }
+        return toResponse(dataService.replaceOrder(symbol, orderId, price, request.quantity()));
+    }
+
+    @DeleteMapping("/{orderId}")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable long orderId, @RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return unknownSymbol(symbol);
+        }
+        return toResponse(dataService.cancelOrder(symbol, orderId));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats(@RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return unknownSymbol(symbol);
+        }
+        return ResponseEntity.ok(dataService.getEngineStats(symbol));
+    }
+
+    private ResponseEntity<Map<String, Object>> unknownSymbol(String symbol) {
+        return ResponseEntity.status(404).body(Map.of("error", "unknown symbol " + symbol));
+    }
+
+    private ResponseEntity<Map<String, Object>> toResponse(Map<String, Object> result) {
+        // Amending or cancelling an order that is no longer resting is reported as not found
+        if ("rejected".equals(result.get("status"))) {
+            return ResponseEntity.status(404).body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private int parseSide(String side) {
+        if ("buy".equalsIgnoreCase(side) || "bid".equalsIgnoreCase(side)) {
+            return OrderBook.BID;
+        }
+        if ("sell".equalsIgnoreCase(side) || "ask".equalsIgnoreCase(side)) {
+            return OrderBook.ASK;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.orderbook.controller;
+
+/**
+ * Body of an order entry or amendment request. {@code side} is "buy" or "sell", {@code type} is
+ * "limit" (default) or "market", {@code venue} defaults to LSE and {@code symbol} to the default
+ * instrument.
+ */
+public record OrderRequest(String symbol, String side, String type, Double price, Long quantity, String venue) {
+}
@@ -0,0 +1,72 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.replay.ReplayEngine;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Controls the market replay: status, pause and resume, speed ({@code value} is a multiple of real
+ * time, {@code realtime} or {@code max}) and seek ({@code time} is {@code HH:mm:ss}). Every call
+ * returns the replay status.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/replay")
+public class ReplayController {
+
+    private final ReplayEngine replayEngine;
+
+    public ReplayController(ReplayEngine replayEngine) {
+        this.replayEngine = replayEngine;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(replayEngine.getStatus());
+    }
+
+    @PostMapping("/pause")
+    public ResponseEntity<Map<String, Object>> pause() {
+        replayEngine.pause();
+        return status();
+    }
+
+    @PostMapping("/resume")
+    public ResponseEntity<Map<String, Object>> resume() {
+        replayEngine.resume();
+        return status();
+    }
+
+    @PostMapping("/speed")
+    public ResponseEntity<Map<String, Object>> speed(@RequestParam String value) {
+        try {
+            replayEngine.setSpeed(ReplayEngine.parseSpeed(value));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            return ResponseEntity.badRequest().body(Map.of("error", "speed must be a positive multiple of real time, realtime or max"));
+        }
+        return status();
+    }
+
+    @PostMapping("/seek")
+    public ResponseEntity<Map<String, Object>> seek(@RequestParam String time) {
+        int secondOfDay = TimeOfDay.parse(time);
+        if (secondOfDay == TimeOfDay.UNKNOWN) {
+            return ResponseEntity.badRequest().body(Map.of("error", "time must be HH:mm:ss"));
+        }
+        try {
+            replayEngine.seek(secondOfDay);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return status();
+    }
+}
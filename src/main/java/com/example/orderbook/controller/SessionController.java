@@ -0,0 +1,32 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.fanout.SessionFanOut;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Outbound queue state of the connected /websocket sessions.
+ */
+@RestController
+@RequestMapping("/api/sessions")
+public class SessionController {
+
+    private final SessionFanOut fanOut;
+
+    public SessionController(SessionFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    @GetMapping
+    public Map<String, Object> sessions() {
+        return Map.of(
+            "policy", fanOut.getPolicy().name().toLowerCase(),
+            "queueCapacity", fanOut.getQueueCapacity(),
+            "sessionCount", fanOut.sessionCount(),
+            "sessions", fanOut.sessionStats()
+        );
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.service.DataService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Intraday price series at any kept resolution: min/max buckets of 5, 60 or 300 seconds, or the raw
+ * trade prices thinned to a point budget ({@code resolution=0}), for one instrument ({@code symbol},
+ * defaulting to the default instrument).
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/timeseries")
+public class TimeseriesController {
+
+    private static final int MAX_POINTS = 5000;
+
+    private final DataService dataService;
+
+    public TimeseriesController(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> timeseries(@RequestParam(defaultValue = "60") int resolution,
+            @RequestParam(defaultValue = "500") int points, @RequestParam(required = false) String symbol) {
+        if (dataService.getInstrument(symbol) == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "unknown symbol " + symbol));
+        }
+        Map<String, Object> series = dataService.getTimeseries(symbol, resolution, Math.min(points, MAX_POINTS));
+        if (series == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unsupported resolution " + resolution));
+        }
+        return ResponseEntity.ok(series);
+    }
+}
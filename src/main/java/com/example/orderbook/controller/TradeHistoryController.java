@@ -0,0 +1,80 @@
+package com.example.orderbook.controller;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.service.DataService;
+import com.example.orderbook.store.TradeHistory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Historical queries over every print of the session for one instrument ({@code symbol}, defaulting
+ * to the default instrument), between {@code from} and {@code to} ({@code HH:mm:ss}, both inclusive,
+ * defaulting to the whole day): the prints themselves, volume, VWAP and count per {@code bucket}
+ * seconds, and the {@code n} largest prints. Queries read the trade store directly, without going
+ * through the instrument's shard, so they never hold up the live feed.
+ */
+@RestController
+@Profile("!relay")
+@RequestMapping("/api/trades")
+public class TradeHistoryController {
+
+    private static final int MAX_TRADES = 10_000;
+    private static final int MAX_LARGEST = 1000;
+
+    private final DataService dataService;
+
+    public TradeHistoryController(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> trades(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(required = false) String symbol) {
+        return query(symbol, from, to, (history, start, end) -> history.range(start, end, Math.max(0, Math.min(limit, MAX_TRADES))));
+    }
+
+    @GetMapping("/aggregate")
+    public ResponseEntity<Map<String, Object>> aggregate(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, @RequestParam(defaultValue = "60") int bucket,
+            @RequestParam(required = false) String symbol) {
+        if (bucket <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "bucket must be a positive number of seconds"));
+        }
+        return query(symbol, from, to, (history, start, end) -> Map.of("bucket", bucket, "buckets", history.aggregate(start, end, bucket)));
+    }
+
+    @GetMapping("/largest")
+    public ResponseEntity<Map<String, Object>> largest(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to, @RequestParam(defaultValue = "10") int n,
+            @RequestParam(required = false) String symbol) {
+        return query(symbol, from, to, (history, start, end) -> Map.of("trades", history.largest(start, end, Math.max(0, Math.min(n, MAX_LARGEST)))));
+    }
+
+    private ResponseEntity<Map<String, Object>> query(String symbol, String from, String to, Query query) {
+        if (dataService.getInstrument(symbol) == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "unknown symbol " + symbol));
+        }
+        int start = from == null ? 0 : TimeOfDay.parse(from);
+        int end = to == null ? TimeOfDay.SECONDS_PER_DAY - 1 : TimeOfDay.parse(to);
+        if (start == TimeOfDay.UNKNOWN || end == TimeOfDay.UNKNOWN) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from and to must be HH:mm:ss"));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("from", TimeOfDay.format(start));
+        response.put("to", TimeOfDay.format(end));
+        response.putAll(query.run(dataService.getTradeHistory(symbol), start, end));
+        return ResponseEntity.ok(response);
+    }
+
+    private interface Query {
+        Map<String, Object> run(TradeHistory history, int from, int to);
+    }
+}
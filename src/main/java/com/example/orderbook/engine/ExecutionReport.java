@@ -0,0 +1,50 @@
+package com.example.orderbook.engine;
+
+/**
+ * Outcome of the last command processed by a {@link MatchingEngine}. The engine reuses a single
+ * instance so that the command path does not allocate; copy what you need before the next call.
+ */
+public final class ExecutionReport {
+
+    public static final int NEW = 0;
+    public static final int PARTIALLY_FILLED = 1;
+    public static final int FILLED = 2;
+    public static final int CANCELLED = 3;
+    public static final int REPLACED = 4;
+    public static final int REJECTED = 5;
+
+    private static final String[] STATUS_NAMES = { "new", "partially_filled", "filled", "cancelled", "replaced", "rejected" };
+
+    long orderId;
+    int status;
+    long filledQuantity;
+    long remainingQuantity;
+
+    void reset(long orderId) {
+        this.orderId = orderId;
+        this.status = NEW;
+        this.filledQuantity = 0;
+        this.remainingQuantity = 0;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStatusName() {
+        return STATUS_NAMES[status];
+    }
+
+    public long getFilledQuantity() {
+        return filledQuantity;
+    }
+
+    /** Quantity left resting on the book after the command. */
+    public long getRemainingQuantity() {
+        return remainingQuantity;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.orderbook.engine;
+
+import com.example.orderbook.book.LongIntHashMap;
+import com.example.orderbook.book.OrderBook;
+
+/**
+ * Price-time priority matching engine over an {@link OrderBook}.
+ * <p>
+ * Accepts new, cancel and replace commands. Incoming orders sweep the opposite side from the best
+ * level down, and within a level in arrival order; any limit remainder rests at the back of its
+ * level's queue. The command path is allocation-free: trades are reported through primitive
+ * {@link TradeListener} callbacks and results through a reused {@link ExecutionReport}.
+ * <p>
+ * Every command's service time is recorded in a {@link LatencyHistogram} in nanoseconds.
+ * Like the book, the engine is meant to be driven by a single thread.
+ */
+public class MatchingEngine {
+
+    public static final int LIMIT = 0;
+    public static final int MARKET = 1;
+
+    private final OrderBook book;
+    private final TradeListener tradeListener;
+    private final LongIntHashMap orderIndex = new LongIntHashMap(4096);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ExecutionReport report = new ExecutionReport();
+
+    private long nextOrderId = 1;
+    private long commandCount;
+    private long tradeCount;
+
+    public MatchingEngine(OrderBook book, TradeListener tradeListener) {
+        this.book = book;
+        this.tradeListener = tradeListener;
+    }
+
+    /**
+     * Enters a new order. Market orders never rest: whatever cannot be matched is cancelled.
+     */
+    public ExecutionReport submit(int side, int type, long price, long quantity, int venue, int time) {
+        long start = System.nanoTime();
+        long orderId = nextOrderId++;
+        report.reset(orderId);
+        if (quantity <= 0 || (type == LIMIT && price <= 0)) {
+            report.status = ExecutionReport.REJECTED;
+        } else {
+            execute(orderId, side, type, price, quantity, venue, time);
+        }
+        complete(start);
+        return report;
+    }
+
+    public ExecutionReport cancel(long orderId) {
+        long start = System.nanoTime();
+        report.reset(orderId);
+        int handle = orderIndex.remove(orderId);
+        if (handle < 0) {
+            report.status = ExecutionReport.REJECTED;
+        } else {
+            book.remove(handle);
+            report.status = ExecutionReport.CANCELLED;
+        }
+        complete(start);
+        return report;
+    }
+
+    /**
+     * Amends a resting order. Reducing the quantity at an unchanged price keeps queue priority;
+     * any other amendment re-enters the order at the back of its new level and may trade.
+     */
+    public ExecutionReport replace(long orderId, long price, long quantity, int time) {
+        long start = System.nanoTime();
+        report.reset(orderId);
+        int handle = orderIndex.get(orderId);
+        if (handle < 0 || quantity < 0 || price <= 0) {
+            report.status = ExecutionReport.REJECTED;
+        } else if (quantity == 0) {
+            orderIndex.remove(orderId);
+            book.remove(handle);
+            report.status = ExecutionReport.CANCELLED;
+        } else if (price == book.orderPrice(handle) && quantity <= book.orderQuantity(handle)) {
+            // An unchanged order leaves the book, and whatever is derived from it, untouched
+            if (quantity < book.orderQuantity(handle)) {
+                book.reduce(handle, book.orderQuantity(handle) - quantity);
+            }
+            report.remainingQuantity = quantity;
+            report.status = ExecutionReport.REPLACED;
+        } else {
+            int side = book.orderSide(handle);
+            int venue = book.orderVenue(handle);
+            orderIndex.remove(orderId);
+            book.remove(handle);
+            execute(orderId, side, LIMIT, price, quantity, venue, time);
+            if (report.status == ExecutionReport.NEW) {
+                report.status = ExecutionReport.REPLACED;
+            }
+        }
+        complete(start);
+        return report;
+    }
+
+    /**
+     * Puts a resting order back on the book under its own id, at the back of its level, without
+     * matching; used to restore a book from a snapshot, in queue order.
+     */
+    public void restore(int side, long orderId, long price, long quantity, int venue, int time) {
+        orderIndex.put(orderId, book.add(side, orderId, price, quantity, venue, time));
+        nextOrderId = Math.max(nextOrderId, orderId + 1);
+    }
+
+    /** The id the next order gets. */
+    public long getNextOrderId() {
+        return nextOrderId;
+    }
+
+    /** Carries on numbering orders from a restored id; never goes back. */
+    public void setNextOrderId(long nextOrderId) {
+        this.nextOrderId = Math.max(this.nextOrderId, nextOrderId);
+    }
+
+    /** True when the order is still resting on the book. */
+    public boolean isResting(long orderId) {
+        return orderIndex.get(orderId) >= 0;
+    }
+
+    public OrderBook getBook() {
+        return book;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    public int getRestingOrderCount() {
+        return orderIndex.size();
+    }
+
+    private void execute(long orderId, int side, int type, long price, long quantity, int venue, int time) {
+        int opposite = side == OrderBook.BID ? OrderBook.ASK : OrderBook.BID;
+        long remaining = quantity;
+        while (remaining > 0 && book.depth(opposite) > 0) {
+            long bestPrice = book.bestPrice(opposite);
+            if (type == LIMIT && (side == OrderBook.BID ? bestPrice > price : bestPrice < price)) {
+                break;
+            }
+            int maker = book.firstOrder(opposite, 0);
+            long available = book.orderQuantity(maker);
+            long fill = Math.min(available, remaining);
+            remaining -= fill;
+            if (fill == available) {
+                orderIndex.remove(book.orderId(maker));
+                book.remove(maker);
+            } else {
+                book.reduce(maker, fill);
+            }
+            tradeCount++;
+            tradeListener.onTrade(bestPrice, fill, side, TradeTape.TYPE_AUTOMATIC, time);
+        }
+
+        report.filledQuantity = quantity - remaining;
+        if (remaining == 0) {
+            report.status = ExecutionReport.FILLED;
+        } else if (type == LIMIT) {
+            orderIndex.put(orderId, book.add(side, orderId, price, remaining, venue, time));
+            report.remainingQuantity = remaining;
+            report.status = remaining < quantity ? ExecutionReport.PARTIALLY_FILLED : ExecutionReport.NEW;
+        } else {
+            report.status = remaining < quantity ? ExecutionReport.PARTIALLY_FILLED : ExecutionReport.CANCELLED;
+        }
+    }
+
+    private void complete(long start) {
+        commandCount++;
+        latency.record(System.nanoTime() - start);
+    }
+}
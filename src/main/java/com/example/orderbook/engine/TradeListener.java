@@ -0,0 +1,17 @@
+package com.example.orderbook.engine;
+
+/**
+ * Receives every print, whether matched by the engine or replayed from a recording. Arguments are
+ * primitives so that the matching loop never allocates to report a trade.
+ */
+public interface TradeListener {
+
+    /**
+     * @param price         execution price in ticks
+     * @param quantity      executed shares
+     * @param aggressorSide side of the incoming order ({@code OrderBook.BID} for a buy)
+     * @param type          one of the {@code TradeTape.TYPE_*} codes
+     * @param time          second of day
+     */
+    void onTrade(long price, long quantity, int aggressorSide, int type, int time);
+}
@@ -0,0 +1,126 @@
+package com.example.orderbook.engine;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring of the most recent prints in primitive columns. Feeds the trades topic; index 0
+ * is always the newest trade.
+ */
+@JsonSerialize(using = TradeTapeSerializer.class)
+public class TradeTape implements TradeListener {
+
+    public static final int TYPE_AUTOMATIC = 0;
+    public static final int TYPE_OFF_BOOK = 1;
+
+    private static final String[] TYPE_CODES = { "AT", "O" };
+
+    private final long[] prices;
+    private final long[] quantities;
+    private final byte[] sides;
+    private final byte[] types;
+    private final int[] times;
+    private final int mask;
+    private final int displaySize;
+    private long appended;
+
+    /**
+     * @param capacity    number of trades retained, rounded up to a power of two
+     * @param displaySize number of trades written to the trades topic
+     */
+    public TradeTape(int capacity, int displaySize) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.prices = new long[size];
+        this.quantities = new long[size];
+        this.sides = new byte[size];
+        this.types = new byte[size];
+        this.times = new int[size];
+        this.mask = size - 1;
+        this.displaySize = displaySize;
+    }
+
+    @Override
+    public void onTrade(long price, long quantity, int aggressorSide, int type, int time) {
+        int slot = (int) (appended & mask);
+        prices[slot] = price;
+        quantities[slot] = quantity;
+        sides[slot] = (byte) aggressorSide;
+        types[slot] = (byte) type;
+        times[slot] = time;
+        appended++;
+    }
+
+    public int size() {
+        return (int) Math.min(appended, mask + 1L);
+    }
+
+    public int displaySize() {
+        return Math.min(size(), displaySize);
+    }
+
+    /** Total number of trades ever appended. */
+    public long appended() {
+        return appended;
+    }
+
+    public long price(int age) {
+        return prices[slot(age)];
+    }
+
+    public long quantity(int age) {
+        return quantities[slot(age)];
+    }
+
+    public int aggressorSide(int age) {
+        return sides[slot(age)];
+    }
+
+    public int type(int age) {
+        return types[slot(age)];
+    }
+
+    public int time(int age) {
+        return times[slot(age)];
+    }
+
+    public static String typeCode(int type) {
+        return TYPE_CODES[type];
+    }
+
+    public static int typeOf(String code) {
+        return "O".equals(code) ? TYPE_OFF_BOOK : TYPE_AUTOMATIC;
+    }
+
+    public void clear() {
+        appended = 0;
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        return 8 + 4 + size() * (8 + 8 + 1 + 1 + 4);
+    }
+
+    /** Writes the retained trades, oldest first, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putLong(appended).putInt(size());
+        for (int age = size() - 1; age >= 0; age--) {
+            out.putLong(price(age)).putLong(quantity(age)).put((byte) aggressorSide(age)).put((byte) type(age))
+                    .putInt(time(age));
+        }
+    }
+
+    /** Replaces the tape with one written by {@link #writeState}, whatever capacity it had. */
+    public void readState(ByteBuffer in) {
+        long total = in.getLong();
+        int size = in.getInt();
+        appended = total - size;
+        for (int i = 0; i < size; i++) {
+            onTrade(in.getLong(), in.getLong(), in.get(), in.get(), in.getInt());
+        }
+    }
+
+    private int slot(int age) {
+        return (int) ((appended - 1 - age) & mask);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.orderbook.engine;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes the newest trades of a {@link TradeTape} as {@code [{price, shares, type, time, color}, ...]}.
+ * Buyer-initiated prints are blue and seller-initiated ones red, as in the recorded data.
+ */
+public class TradeTapeSerializer extends StdSerializer<TradeTape> {
+
+    public TradeTapeSerializer() {
+        super(TradeTape.class);
+    }
+
+    @Override
+    public void serialize(TradeTape tape, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartArray();
+        int count = tape.displaySize();
+        for (int age = 0; age < count; age++) {
+            gen.writeStartObject();
+            gen.writeNumberField("price", Prices.toDouble(tape.price(age)));
+            gen.writeNumberField("shares", tape.quantity(age));
+            gen.writeStringField("type", TradeTape.typeCode(tape.type(age)));
+            gen.writeStringField("time", TimeOfDay.format(tape.time(age)));
+            gen.writeStringField("color", tape.aggressorSide(age) == OrderBook.BID ? "blue" : "red");
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.orderbook.fanout;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * A client connection as the fan-out sees it, whatever the transport underneath: a servlet
+ * WebSocket session, whose sends block, or a reactive one, which takes messages as fast as its
+ * client reads them and says how many more it can take.
+ * <p>
+ * Messages are pre-encoded and shared between sessions; a session never modifies one it is given.
+ */
+public interface FeedSession {
+
+    String getId();
+
+    /** The URI the client connected to, with its query parameters, or null when unknown. */
+    URI getUri();
+
+    /** The subprotocol agreed on in the handshake, or null. */
+    String getAcceptedProtocol();
+
+    boolean isOpen();
+
+    /**
+     * Messages the session can take now without buffering them; a session with blocking sends always
+     * has demand. When this drops to zero, the outbox stops draining until {@link SessionFanOut#resume}.
+     */
+    long demand();
+
+    void send(WebSocketMessage<?> message) throws IOException;
+
+    void close(CloseStatus status);
+}
@@ -0,0 +1,17 @@
+package com.example.orderbook.fanout;
+
+import com.example.orderbook.feed.BookView;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Sees every message published through a {@link SessionFanOut}, in publication order, on its
+ * dispatcher thread: what a node's sessions are sent, for passing on to other nodes. Calls must not
+ * block, or they hold up every session.
+ */
+@FunctionalInterface
+public interface PublishListener {
+
+    /** Same arguments as {@link SessionFanOut#publish(String, String, BookView, WebSocketMessage, WebSocketMessage, boolean)}. */
+    void onPublish(String symbol, String topic, BookView view, WebSocketMessage<?> json, WebSocketMessage<?> binary,
+            boolean conflatable);
+}
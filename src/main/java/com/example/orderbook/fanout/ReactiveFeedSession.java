@@ -0,0 +1,98 @@
+package com.example.orderbook.fanout;
+
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * A reactive (Netty) WebSocket session. Sends never block: messages go into the session's outbound
+ * {@link Flux}, whose subscriber, the connection, requests more as frames reach the socket. The
+ * outstanding request is the session's demand, so a slow client holds messages back in its outbox,
+ * where they are conflated or dropped like any other backlog, rather than in the connection.
+ * <p>
+ * Frames wrap the shared encoded bytes without copying them.
+ */
+public final class ReactiveFeedSession implements FeedSession {
+
+    private final WebSocketSession session;
+    private final DataBufferFactory buffers;
+    // Set once the connection subscribes to the outbound messages
+    private volatile FluxSink<org.springframework.web.reactive.socket.WebSocketMessage> sink;
+
+    public ReactiveFeedSession(WebSocketSession session) {
+        this.session = session;
+        this.buffers = session.bufferFactory();
+    }
+
+    /**
+     * The messages to send, for the connection to subscribe to once; {@code onDemand} is called each
+     * time it requests more.
+     */
+    public Flux<org.springframework.web.reactive.socket.WebSocketMessage> outbound(Runnable onDemand) {
+        return Flux.create(sink -> {
+            this.sink = sink;
+            sink.onRequest(requested -> onDemand.run());
+        });
+    }
+
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    @Override
+    public URI getUri() {
+        return session.getHandshakeInfo().getUri();
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return session.getHandshakeInfo().getSubProtocol();
+    }
+
+    @Override
+    public boolean isOpen() {
+        FluxSink<?> current = sink;
+        return session.isOpen() && (current == null || !current.isCancelled());
+    }
+
+    @Override
+    public long demand() {
+        FluxSink<?> current = sink;
+        return current == null ? 0 : current.requestedFromDownstream();
+    }
+
+    @Override
+    public void send(WebSocketMessage<?> message) throws IOException {
+        FluxSink<org.springframework.web.reactive.socket.WebSocketMessage> current = sink;
+        if (current == null || current.isCancelled()) {
+            throw new IOException("WebSocket session is closed: " + getId());
+        }
+        if (message instanceof TextMessage text) {
+            current.next(new org.springframework.web.reactive.socket.WebSocketMessage(
+                    org.springframework.web.reactive.socket.WebSocketMessage.Type.TEXT, buffers.wrap(text.asBytes())));
+        } else if (message instanceof BinaryMessage binary) {
+            // Wrapping a duplicate leaves the shared buffer's position alone
+            current.next(new org.springframework.web.reactive.socket.WebSocketMessage(
+                    org.springframework.web.reactive.socket.WebSocketMessage.Type.BINARY, buffers.wrap(binary.getPayload().duplicate())));
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        FluxSink<?> current = sink;
+        if (current != null) {
+            current.complete();
+        }
+        session.close(new org.springframework.web.reactive.socket.CloseStatus(status.getCode(), status.getReason()))
+                .subscribe(null, error -> { /* Already gone */ });
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.orderbook.fanout;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * A servlet container WebSocket session: sends block the calling I/O thread until the frame is
+ * written, so it always has demand.
+ */
+public final class ServletFeedSession implements FeedSession {
+
+    private final WebSocketSession session;
+
+    public ServletFeedSession(WebSocketSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    @Override
+    public URI getUri() {
+        return session.getUri();
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return session.getAcceptedProtocol();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    @Override
+    public long demand() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void send(WebSocketMessage<?> message) throws IOException {
+        session.sendMessage(message instanceof BinaryMessage shared
+                // Sending consumes the payload buffer, and binary messages are shared between sessions
+                ? new BinaryMessage(shared.getPayload().duplicate())
+                : message);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (Exception e) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.example.orderbook.fanout;
+
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.metrics.FeedMetrics;
+import com.example.orderbook.pipeline.RingBuffer;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fans published messages out to the {@link FeedSession}s subscribed to them without letting one
+ * session hold up the others. Publishing only hands an already encoded message to a dispatch thread
+ * through a {@link RingBuffer}, so shard writers never walk the sessions; the dispatcher queues it on
+ * the {@link SessionOutbox} of each session subscribed to its symbol, and of the view it was encoded
+ * for, which it finds filed by symbol, encoding and view, and a small pool of I/O threads does the
+ * actual sends. Sessions whose
+ * send has been stuck for longer than the send timeout are closed, which also frees the thread
+ * blocked on them.
+ * <p>
+ * Messages are published per symbol, from any thread; subscriber counts per symbol and encoding let
+ * publishers skip encoding what nobody reads. Book messages are also published per {@link BookView}:
+ * publishers encode each view that JSON sessions subscribed with once, and every session sharing it
+ * is sent the same message.
+ * <p>
+ * Subscribers outside this node, such as relays, declare their interest so that publishers encode
+ * what they read too, and follow every publication through a {@link PublishListener}.
+ * <p>
+ * Sends, drops, conflation and disconnections are counted in {@link FeedMetrics}, along with gauges
+ * of the connected sessions and of the messages waiting in their queues.
+ */
+@Component
+public class SessionFanOut {
+
+    private static final CloseStatus TOO_SLOW = CloseStatus.SESSION_NOT_RELIABLE.withReason("Slow consumer");
+    private static final int DISPATCH_CAPACITY = 1 << 14;
+    private static final int DISPATCH_BATCH = 256;
+
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> jsonSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> binarySubscribers = new ConcurrentHashMap<>();
+    // JSON sessions per symbol and book view
+    private final Map<String, Map<BookView, AtomicInteger>> viewSubscribers = new ConcurrentHashMap<>();
+    // The sessions themselves, so that the dispatcher only walks those a message is for
+    private final Map<String, SymbolSessions> symbolSessions = new ConcurrentHashMap<>();
+    private final ExecutorService ioThreads;
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(daemon("fanout-close"));
+    private final int queueCapacity;
+    private final SlowConsumerPolicy policy;
+    private final long sendTimeoutNanos;
+    private final FeedMetrics metrics;
+    private final RingBuffer<Dispatch> dispatches = new RingBuffer<>(DISPATCH_CAPACITY, Dispatch::new);
+    private final Consumer<Dispatch> dispatch = this::dispatch;
+    private final List<PublishListener> listeners = new CopyOnWriteArrayList<>();
+
+    public SessionFanOut(FeedMetrics metrics,
+            @Value("${orderbook.fanout.io-threads:4}") int ioThreads,
+            @Value("${orderbook.fanout.queue-capacity:64}") int queueCapacity,
+            @Value("${orderbook.fanout.slow-consumer-policy:conflate}") String policy,
+            @Value("${orderbook.fanout.send-timeout-ms:5000}") long sendTimeoutMillis) {
+        this.ioThreads = Executors.newFixedThreadPool(ioThreads, daemon("fanout-io"));
+        this.queueCapacity = queueCapacity;
+        this.policy = SlowConsumerPolicy.valueOf(policy.toUpperCase(Locale.ROOT));
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.metrics = metrics;
+        Gauge.builder("orderbook.sessions", this, SessionFanOut::sessionCount)
+                .description("Connected WebSocket sessions").register(metrics.registry());
+        Gauge.builder("orderbook.fanout.queued", this, SessionFanOut::queuedMessages)
+                .description("Messages and snapshots waiting to be sent").register(metrics.registry());
+        Gauge.builder("orderbook.fanout.dispatch.backlog", dispatches, RingBuffer::backlog)
+                .description("Published messages not yet queued on the sessions").register(metrics.registry());
+
+        Thread dispatcher = new Thread(this::runDispatcher, "fanout-dispatch");
+        dispatcher.setDaemon(true);
+        dispatches.setConsumer(dispatcher);
+        dispatcher.start();
+    }
+
+    /**
+     * Starts fanning out to a session in the given encoding; it receives nothing per symbol until it
+     * subscribes. The snapshot function is called on an I/O thread whenever the session needs a full
+     * snapshot of a symbol: on subscribe, on resync, and after conflating its backlog. It returns the
+     * messages making up the snapshot, in sending order.
+     * <p>
+     * Once registered, the session is addressed by its id, whatever its transport.
+     */
+    public void register(FeedSession session, boolean binary, Function<String, List<WebSocketMessage<?>>> snapshot) {
+        outboxes.put(session.getId(), new SessionOutbox(session, binary, snapshot, queueCapacity, policy, ioThreads, metrics));
+    }
+
+    public void unregister(String sessionId) {
+        forget(sessionId);
+    }
+
+    /** The session can take messages again after running out of demand. */
+    public void resume(String sessionId) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox != null) {
+            outbox.resume();
+        }
+    }
+
+    public void subscribe(String sessionId, String symbol) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox == null) {
+            return;
+        }
+        // Locked like the outbox's own changes, so a session retired meanwhile is not filed again
+        synchronized (outbox) {
+            if (outbox.subscribe(symbol)) {
+                subscribers(outbox, symbol).incrementAndGet();
+                if (!outbox.isBinary()) {
+                    viewSubscribers(symbol, outbox.bookView()).incrementAndGet();
+                }
+                symbolSessions(symbol).add(outbox);
+            }
+        }
+    }
+
+    public void unsubscribe(String sessionId, String symbol) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox == null) {
+            return;
+        }
+        synchronized (outbox) {
+            if (outbox.unsubscribe(symbol)) {
+                subscribers(outbox, symbol).decrementAndGet();
+                if (!outbox.isBinary()) {
+                    viewSubscribers(symbol, outbox.bookView()).decrementAndGet();
+                }
+                symbolSessions(symbol).remove(outbox, outbox.bookView());
+            }
+        }
+    }
+
+    /**
+     * Switches a JSON session to another view of the book; it gets fresh snapshots of its symbols in
+     * that view. Binary sessions always see the full book.
+     */
+    public void setBookView(String sessionId, BookView view) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox == null) {
+            return;
+        }
+        synchronized (outbox) {
+            BookView previous = outbox.bookView();
+            if (outbox.isBinary() || view.equals(previous)) {
+                return;
+            }
+            Set<String> symbols = outbox.subscriptions();
+            // Filed under the new view before switching, so no message of either view is missed meanwhile
+            for (String symbol : symbols) {
+                symbolSessions(symbol).view(view).add(outbox);
+            }
+            outbox.setBookView(view);
+            for (String symbol : symbols) {
+                viewSubscribers(symbol, previous).decrementAndGet();
+                viewSubscribers(symbol, view).incrementAndGet();
+                symbolSessions(symbol).view(previous).remove(outbox);
+            }
+        }
+    }
+
+    /** The session's view of the book, or the default one for an unknown session. */
+    public BookView bookView(String sessionId) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        return outbox == null ? BookView.DEFAULT : outbox.bookView();
+    }
+
+    /**
+     * Counts a subscriber that is not a session of this node, in one encoding and, for JSON, one view
+     * of the book, so that publishers encode what it reads. Its messages come from a {@link PublishListener}.
+     */
+    public void addInterest(String symbol, boolean binary, BookView view) {
+        subscribers(binary, symbol).incrementAndGet();
+        if (!binary) {
+            viewSubscribers(symbol, view).incrementAndGet();
+        }
+    }
+
+    public void removeInterest(String symbol, boolean binary, BookView view) {
+        subscribers(binary, symbol).decrementAndGet();
+        if (!binary) {
+            viewSubscribers(symbol, view).decrementAndGet();
+        }
+    }
+
+    /** Calls the listener with every message published from now on. */
+    public void addListener(PublishListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PublishListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs an action on the dispatcher thread once everything published before this call has been
+     * dispatched, so that it is ordered after those messages for sessions and listeners alike.
+     */
+    public void afterDispatched(Runnable action) {
+        long sequence = dispatches.claim();
+        dispatches.get(sequence).barrier = action;
+        dispatches.publish(sequence);
+    }
+
+    /** Queues fresh snapshots of every symbol every session subscribed to. */
+    public void requestSnapshots() {
+        outboxes.values().forEach(SessionOutbox::requestSnapshots);
+    }
+
+    /** Queues fresh snapshots of every symbol the session subscribed to. */
+    public void requestSnapshot(String sessionId) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox != null) {
+            outbox.requestSnapshots();
+        }
+    }
+
+    public void requestSnapshot(String sessionId, String symbol) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox != null) {
+            outbox.requestSnapshot(symbol);
+        }
+    }
+
+    /** Queues a message for one session only, as {@link #publish} would. */
+    public void send(String sessionId, String topic, WebSocketMessage<?> message, boolean conflatable) {
+        SessionOutbox outbox = outboxes.get(sessionId);
+        if (outbox != null && !outbox.offer(null, topic, message, conflatable)) {
+            disconnect(outbox);
+        }
+    }
+
+    /**
+     * Queues a message for every session. Conflatable topics carry full state, so only the latest
+     * queued one per session is kept; other topics (deltas) are queued in order.
+     */
+    public void publish(String topic, WebSocketMessage<?> message, boolean conflatable) {
+        publish(null, topic, message, message, conflatable);
+    }
+
+    /** Queues a message for every session, in the flavour matching its encoding. */
+    public void publish(String topic, WebSocketMessage<?> json, WebSocketMessage<?> binary, boolean conflatable) {
+        publish(null, topic, json, binary, conflatable);
+    }
+
+    /**
+     * Queues the JSON flavour of a message for the JSON sessions subscribed to the symbol and the
+     * binary one for the binary sessions. A null flavour is skipped by the sessions using that encoding;
+     * a null symbol reaches every session.
+     */
+    public void publish(String symbol, String topic, WebSocketMessage<?> json, WebSocketMessage<?> binary, boolean conflatable) {
+        publish(symbol, topic, null, json, binary, conflatable);
+    }
+
+    /**
+     * Queues a book message for the sessions subscribed to the symbol with the given view only, or for
+     * all of them when the view is null. Binary sessions see the full book, so they only take the
+     * binary flavour of {@link BookView#FULL} messages.
+     */
+    public void publish(String symbol, String topic, BookView view, WebSocketMessage<?> json, WebSocketMessage<?> binary,
+            boolean conflatable) {
+        long sequence = dispatches.claim();
+        Dispatch slot = dispatches.get(sequence);
+        slot.symbol = symbol;
+        slot.view = view;
+        slot.topic = topic;
+        slot.json = json;
+        slot.binary = binary;
+        slot.conflatable = conflatable;
+        dispatches.publish(sequence);
+    }
+
+    public int sessionCount() {
+        return outboxes.size();
+    }
+
+    /** Messages queued across every session; walks the sessions, so meant for monitoring only. */
+    public int queuedMessages() {
+        int queued = 0;
+        for (SessionOutbox outbox : outboxes.values()) {
+            queued += outbox.queueDepth();
+        }
+        return queued;
+    }
+
+    /** Number of JSON sessions subscribed to a symbol, so publishers can skip encodings nobody reads. */
+    public int jsonSubscriberCount(String symbol) {
+        AtomicInteger count = jsonSubscribers.get(symbol);
+        return count == null ? 0 : count.get();
+    }
+
+    public int binarySubscriberCount(String symbol) {
+        AtomicInteger count = binarySubscribers.get(symbol);
+        return count == null ? 0 : count.get();
+    }
+
+    /** The distinct book views JSON sessions subscribed to the symbol with, each to be encoded once. */
+    public List<BookView> bookViews(String symbol) {
+        Map<BookView, AtomicInteger> counts = viewSubscribers.get(symbol);
+        if (counts == null) {
+            return List.of();
+        }
+        List<BookView> views = new ArrayList<>(counts.size());
+        counts.forEach((view, count) -> {
+            if (count.get() > 0) {
+                views.add(view);
+            }
+        });
+        return views;
+    }
+
+    /** Per-session subscriptions, queue depth and counters, for monitoring. */
+    public List<Map<String, Object>> sessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(outboxes.size());
+        for (Map.Entry<String, SessionOutbox> entry : outboxes.entrySet()) {
+            SessionOutbox outbox = entry.getValue();
+            stats.add(Map.of(
+                "sessionId", entry.getKey(),
+                "encoding", outbox.isBinary() ? "binary" : "json",
+                "symbols", outbox.subscriptions(),
+                "bookView", outbox.bookView().describe(),
+                "queueDepth", outbox.queueDepth(),
+                "sent", outbox.sent(),
+                "dropped", outbox.dropped(),
+                "conflated", outbox.conflated()
+            ));
+        }
+        return stats;
+    }
+
+    public SlowConsumerPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private void runDispatcher() {
+        while (true) {
+            if (dispatches.drain(dispatch, DISPATCH_BATCH) == 0) {
+                dispatches.await(Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private void dispatch(Dispatch slot) {
+        if (slot.barrier != null) {
+            Runnable action = slot.barrier;
+            slot.barrier = null;
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            if (slot.symbol == null) {
+                deliver(outboxes.values(), slot, now);
+            } else {
+                SymbolSessions sessions = symbolSessions.get(slot.symbol);
+                if (sessions != null && slot.view == null) {
+                    deliver(sessions.all, slot, now);
+                } else if (sessions != null) {
+                    Set<SessionOutbox> viewers = sessions.views.get(slot.view);
+                    if (viewers != null) {
+                        deliver(viewers, slot, now);
+                    }
+                    if (slot.view.equals(BookView.FULL)) {
+                        deliver(sessions.binary, slot, now);
+                    }
+                }
+            }
+            for (PublishListener listener : listeners) {
+                listener.onPublish(slot.symbol, slot.topic, slot.view, slot.json, slot.binary, slot.conflatable);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // The slot is reused; it must not keep the messages reachable
+            slot.json = null;
+            slot.binary = null;
+        }
+    }
+
+    private void deliver(Iterable<SessionOutbox> outboxes, Dispatch slot, long now) {
+        for (SessionOutbox outbox : outboxes) {
+            // Checked again: a session is briefly filed under both views while it switches, or under a
+            // symbol it just unsubscribed from
+            if (!outbox.wants(slot.symbol) || (slot.view != null && !slot.view.equals(outbox.bookView()))) {
+                continue;
+            }
+            WebSocketMessage<?> message = outbox.isBinary() ? slot.binary : slot.json;
+            if (outbox.isStalled(now, sendTimeoutNanos)
+                    || (message != null && !outbox.offer(slot.symbol, slot.topic, message, slot.conflatable))) {
+                disconnect(outbox);
+            }
+        }
+    }
+
+    private SymbolSessions symbolSessions(String symbol) {
+        return symbolSessions.computeIfAbsent(symbol, key -> new SymbolSessions());
+    }
+
+    private AtomicInteger subscribers(SessionOutbox outbox, String symbol) {
+        return subscribers(outbox.isBinary(), symbol);
+    }
+
+    private AtomicInteger subscribers(boolean binary, String symbol) {
+        return (binary ? binarySubscribers : jsonSubscribers).computeIfAbsent(symbol, key -> new AtomicInteger());
+    }
+
+    private AtomicInteger viewSubscribers(String symbol, BookView view) {
+        return viewSubscribers.computeIfAbsent(symbol, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(view, key -> new AtomicInteger());
+    }
+
+    /** Drops a session; returns false when it had already been dropped. */
+    private boolean forget(String sessionId) {
+        SessionOutbox outbox = outboxes.remove(sessionId);
+        if (outbox == null) {
+            return false;
+        }
+        synchronized (outbox) {
+            for (String symbol : outbox.retire()) {
+                subscribers(outbox, symbol).decrementAndGet();
+                if (!outbox.isBinary()) {
+                    viewSubscribers(symbol, outbox.bookView()).decrementAndGet();
+                }
+                symbolSessions(symbol).remove(outbox, outbox.bookView());
+            }
+        }
+        return true;
+    }
+
+    private void disconnect(SessionOutbox outbox) {
+        if (!forget(outbox.session().getId())) {
+            // Another publisher got there first
+            return;
+        }
+        metrics.sessionDisconnected();
+        System.out.println("Disconnecting slow WebSocket consumer: " + outbox.session().getId());
+        // Closing may block on the same stalled connection; the I/O threads may all be stuck too
+        closer.execute(() -> outbox.close(TOO_SLOW));
+    }
+
+    // A published message waiting for the dispatcher
+    private static final class Dispatch {
+        String symbol;
+        String topic;
+        BookView view;
+        WebSocketMessage<?> json;
+        WebSocketMessage<?> binary;
+        boolean conflatable;
+        // Set instead of a message by afterDispatched
+        Runnable barrier;
+    }
+
+    // The sessions subscribed to a symbol: all of them, the binary ones, and the JSON ones per view
+    private static final class SymbolSessions {
+        final Set<SessionOutbox> all = ConcurrentHashMap.newKeySet();
+        final Set<SessionOutbox> binary = ConcurrentHashMap.newKeySet();
+        final Map<BookView, Set<SessionOutbox>> views = new ConcurrentHashMap<>();
+
+        Set<SessionOutbox> view(BookView view) {
+            return views.computeIfAbsent(view, key -> ConcurrentHashMap.newKeySet());
+        }
+
+        void add(SessionOutbox outbox) {
+            all.add(outbox);
+            (outbox.isBinary() ? binary : view(outbox.bookView())).add(outbox);
+        }
+
+        void remove(SessionOutbox outbox, BookView view) {
+            all.remove(outbox);
+            (outbox.isBinary() ? binary : view(view)).remove(outbox);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
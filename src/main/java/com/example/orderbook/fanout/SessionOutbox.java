@@ -0,0 +1,357 @@
+package com.example.orderbook.fanout;
+
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.metrics.FeedMetrics;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Bounded outbound queue for one session, drained by at most one I/O thread at a time.
+ * <p>
+ * The session only receives messages for the symbols it subscribed to, plus the ones published for
+ * every session (a null symbol). Snapshot topics are conflated in place per symbol: a newer message
+ * replaces the queued one, so a slow reader never sees stale state. Delta topics are queued in
+ * order, since every delta is needed, and only they count against the capacity; when it is reached
+ * the {@link SlowConsumerPolicy} decides what gives. Pending snapshot requests are always served
+ * first, and are encoded when they are sent rather than when they are requested; what is queued for
+ * the symbol's snapshot topics then is dropped, as the snapshot supersedes it.
+ * <p>
+ * Draining stops while the {@link FeedSession} has no demand, as a reactive session does when its
+ * client reads slowly; messages then wait here, under the same capacity and policy, until
+ * {@link #resume()} is called.
+ * <p>
+ * Each outbox has a fixed encoding: published messages come in a JSON and a binary flavour and the
+ * session only ever sees its own. JSON sessions also choose a {@link BookView}, and only receive the
+ * book messages published for it; binary sessions always get the full book.
+ */
+final class SessionOutbox {
+
+    // Metrics topic of the messages making up a snapshot
+    private static final String SNAPSHOT_TOPIC = "snapshot";
+
+    private final FeedSession session;
+    private final boolean binary;
+    private final Function<String, List<WebSocketMessage<?>>> snapshot;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final Executor executor;
+    private final FeedMetrics metrics;
+
+    // Written under this, read lock-free by publishers
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile BookView bookView;
+    private boolean retired;
+
+    // Guarded by this
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final LinkedHashSet<String> pendingSnapshots = new LinkedHashSet<>();
+    private int queuedDeltas;
+    private boolean draining;
+
+    // Written by the draining thread, read by the publisher to spot stalled sends
+    private volatile long sendStartedNanos;
+
+    private volatile long sent;
+    private volatile long dropped;
+    private volatile long conflated;
+
+    SessionOutbox(FeedSession session, boolean binary, Function<String, List<WebSocketMessage<?>>> snapshot,
+            int capacity, SlowConsumerPolicy policy, Executor executor, FeedMetrics metrics) {
+        this.session = session;
+        this.binary = binary;
+        this.snapshot = snapshot;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.bookView = binary ? BookView.FULL : BookView.DEFAULT;
+    }
+
+    FeedSession session() {
+        return session;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    /** True when messages for the symbol are meant for this session; a null symbol is for everyone. */
+    boolean wants(String symbol) {
+        return symbol == null || subscriptions.contains(symbol);
+    }
+
+    BookView bookView() {
+        return bookView;
+    }
+
+    /**
+     * Switches the session to another view of the book. What is queued for its symbols is forgotten,
+     * as it may be in the previous view, and fresh snapshots follow. Returns the symbols subscribed
+     * at the switch, or null when the view is unchanged or the outbox is retired.
+     */
+    synchronized Set<String> setBookView(BookView view) {
+        if (retired || binary || view.equals(bookView)) {
+            return null;
+        }
+        bookView = view;
+        Iterator<Entry> entries = queue.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.symbol != null) {
+                entries.remove();
+                if (!entry.conflatable) {
+                    queuedDeltas--;
+                }
+            }
+        }
+        requestSnapshots();
+        return Set.copyOf(subscriptions);
+    }
+
+    Set<String> subscriptions() {
+        return Set.copyOf(subscriptions);
+    }
+
+    /**
+     * Starts delivering a symbol, beginning with its snapshot. Returns false when the symbol was
+     * already subscribed, in which case a fresh snapshot is still sent, or the outbox is retired.
+     */
+    synchronized boolean subscribe(String symbol) {
+        if (retired) {
+            return false;
+        }
+        boolean added = subscriptions.add(symbol);
+        requestSnapshot(symbol);
+        return added;
+    }
+
+    /** Stops delivering a symbol and forgets what is queued for it. Returns false when it was not subscribed. */
+    synchronized boolean unsubscribe(String symbol) {
+        if (!subscriptions.remove(symbol)) {
+            return false;
+        }
+        pendingSnapshots.remove(symbol);
+        Iterator<Entry> entries = queue.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (symbol.equals(entry.symbol)) {
+                entries.remove();
+                if (!entry.conflatable) {
+                    queuedDeltas--;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Stops all deliveries for good and returns the symbols that were subscribed. */
+    synchronized Set<String> retire() {
+        retired = true;
+        Set<String> symbols = Set.copyOf(subscriptions);
+        subscriptions.clear();
+        return symbols;
+    }
+
+    /**
+     * Queues a message for the session. Returns false when the session has to be disconnected.
+     */
+    boolean offer(String symbol, String topic, WebSocketMessage<?> message, boolean conflatable) {
+        synchronized (this) {
+            if (conflatable) {
+                for (Entry entry : queue) {
+                    if (entry.conflatable && entry.topic.equals(topic) && Objects.equals(entry.symbol, symbol)) {
+                        entry.message = message;
+                        conflated++;
+                        metrics.messagesConflated(1);
+                        return true;
+                    }
+                }
+            } else if (queuedDeltas >= capacity) {
+                switch (policy) {
+                    case DROP -> {
+                        dropped++;
+                        metrics.messagesDropped(1);
+                        return true;
+                    }
+                    case CONFLATE -> {
+                        discardDeltas();
+                        // The pending snapshot covers this delta as well
+                        if (symbol != null) {
+                            pendingSnapshots.add(symbol);
+                        }
+                        dropped++;
+                        metrics.messagesDropped(1);
+                        scheduleDrain();
+                        return true;
+                    }
+                    case DISCONNECT -> {
+                        return false;
+                    }
+                }
+            }
+            queue.addLast(new Entry(symbol, topic, message, conflatable));
+            if (!conflatable) {
+                queuedDeltas++;
+            }
+            scheduleDrain();
+            return true;
+        }
+    }
+
+    /** Asks for a fresh snapshot of a subscribed symbol to go out before anything still queued. */
+    synchronized void requestSnapshot(String symbol) {
+        if (subscriptions.contains(symbol)) {
+            pendingSnapshots.add(symbol);
+            scheduleDrain();
+        }
+    }
+
+    /** Asks for fresh snapshots of every subscribed symbol. */
+    synchronized void requestSnapshots() {
+        pendingSnapshots.addAll(subscriptions);
+        scheduleDrain();
+    }
+
+    /** True when a send has been in progress for longer than the limit. */
+    boolean isStalled(long nowNanos, long limitNanos) {
+        long started = sendStartedNanos;
+        return started != 0 && nowNanos - started > limitNanos;
+    }
+
+    void close(CloseStatus status) {
+        session.close(status);
+    }
+
+    /** The session can take messages again: drains whatever waited for it. */
+    synchronized void resume() {
+        if (!queue.isEmpty() || !pendingSnapshots.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    synchronized int queueDepth() {
+        return queue.size() + pendingSnapshots.size();
+    }
+
+    long sent() {
+        return sent;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    long conflated() {
+        return conflated;
+    }
+
+    // Every symbol that loses a delta gets a snapshot instead
+    private void discardDeltas() {
+        long before = conflated;
+        Iterator<Entry> entries = queue.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (!entry.conflatable) {
+                entries.remove();
+                if (entry.symbol != null) {
+                    pendingSnapshots.add(entry.symbol);
+                }
+                conflated++;
+            }
+        }
+        queuedDeltas = 0;
+        metrics.messagesConflated((int) (conflated - before));
+    }
+
+    // The snapshot about to be sent is newer than any trades or ohlc still queued for its symbol
+    private void discardConflatable(String symbol) {
+        Iterator<Entry> entries = queue.iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.conflatable && symbol.equals(entry.symbol)) {
+                entries.remove();
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!draining) {
+            draining = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            String snapshotSymbol = null;
+            String topic = SNAPSHOT_TOPIC;
+            WebSocketMessage<?> message = null;
+            List<WebSocketMessage<?>> messages;
+            synchronized (this) {
+                if (session.demand() <= 0 && session.isOpen()) {
+                    // Resumed when the session asks for more
+                    draining = false;
+                    return;
+                }
+                Iterator<String> pending = pendingSnapshots.iterator();
+                if (pending.hasNext()) {
+                    snapshotSymbol = pending.next();
+                    pending.remove();
+                    discardConflatable(snapshotSymbol);
+                } else {
+                    Entry entry = queue.pollFirst();
+                    if (entry == null || !session.isOpen()) {
+                        queue.clear();
+                        queuedDeltas = 0;
+                        draining = false;
+                        return;
+                    }
+                    if (!entry.conflatable) {
+                        queuedDeltas--;
+                    }
+                    message = entry.message;
+                    topic = entry.topic;
+                }
+            }
+            try {
+                // Deltas queued behind a snapshot that it already covers are ignored by the client
+                messages = snapshotSymbol != null ? snapshot.apply(snapshotSymbol) : List.of(message);
+                for (WebSocketMessage<?> next : messages) {
+                    long started = System.nanoTime();
+                    sendStartedNanos = started;
+                    session.send(next);
+                    sent++;
+                    metrics.messageSent(topic, next, System.nanoTime() - started);
+                }
+            } catch (Exception e) {
+                close(CloseStatus.SERVER_ERROR);
+            } finally {
+                sendStartedNanos = 0;
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String symbol;
+        final String topic;
+        final boolean conflatable;
+        WebSocketMessage<?> message;
+
+        Entry(String symbol, String topic, WebSocketMessage<?> message, boolean conflatable) {
+            this.symbol = symbol;
+            this.topic = topic;
+            this.message = message;
+            this.conflatable = conflatable;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.orderbook.fanout;
+
+/**
+ * What to do when a session's outbound queue is full.
+ */
+public enum SlowConsumerPolicy {
+
+    /** Discard the new message. A dropped delta shows up as a sequence gap and the client resyncs. */
+    DROP,
+
+    /** Discard the queued deltas and send one fresh snapshot instead, ahead of anything newer. */
+    CONFLATE,
+
+    /** Close the session; the client reconnects and starts again from a snapshot. */
+    DISCONNECT
+}
@@ -0,0 +1,77 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.BookListener;
+import com.example.orderbook.book.LongIntHashMap;
+import com.example.orderbook.book.OrderBook;
+
+import java.util.Arrays;
+
+/**
+ * Collects the price levels touched since the last publication, each once, remembering whether the
+ * level existed before its first change. {@link #drainTo} then turns them into add, modify or delete
+ * deltas by looking at the book as it is now, so a level that came and went in between publishes
+ * nothing.
+ */
+public class BookDeltaTracker implements BookListener {
+
+    private final LongIntHashMap slots = new LongIntHashMap(256);
+    private long[] prices = new long[256];
+    private int[] sides = new int[256];
+    private boolean[] existedBefore = new boolean[256];
+    private int count;
+
+    @Override
+    public void onOrderAdded(int side, long price, long quantity, int venue, boolean levelCreated) {
+        touch(side, price, !levelCreated);
+    }
+
+    @Override
+    public void onOrderReduced(int side, long price, long quantity, int venue) {
+        touch(side, price, true);
+    }
+
+    @Override
+    public void onOrderRemoved(int side, long price, long quantity, int venue, boolean levelRemoved) {
+        touch(side, price, true);
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Writes the pending deltas into {@code deltas}, replacing its content, and starts a new interval.
+     */
+    public void drainTo(LevelDeltas deltas, OrderBook book) {
+        deltas.clear();
+        for (int i = 0; i < count; i++) {
+            boolean exists = book.levelOf(sides[i], prices[i]) >= 0;
+            if (exists) {
+                deltas.add(sides[i], prices[i], existedBefore[i] ? LevelDeltas.MODIFY : LevelDeltas.ADD);
+            } else if (existedBefore[i]) {
+                deltas.add(sides[i], prices[i], LevelDeltas.DELETE);
+            }
+        }
+        if (count > 0) {
+            slots.clear();
+            count = 0;
+        }
+    }
+
+    private void touch(int side, long price, boolean existed) {
+        // Book prices are strictly positive, so the key is never the map's empty marker
+        long key = (price << 1) | side;
+        if (slots.get(key) >= 0) {
+            return;
+        }
+        if (count == prices.length) {
+            prices = Arrays.copyOf(prices, count * 2);
+            sides = Arrays.copyOf(sides, count * 2);
+            existedBefore = Arrays.copyOf(existedBefore, count * 2);
+        }
+        prices[count] = price;
+        sides[count] = side;
+        existedBefore[count] = existed;
+        slots.put(key, count++);
+    }
+}
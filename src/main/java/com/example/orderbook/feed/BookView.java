@@ -0,0 +1,80 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.Venues;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How much of the book a session wants to see: the first {@code depth} price levels of each side, as
+ * aggregated levels or as the individual orders resting on them, optionally from one venue only.
+ * Sessions asking for the same view share the messages encoded for it.
+ *
+ * @param depth      price levels per side, {@link #ALL_LEVELS} for the whole book
+ * @param aggregated one entry per level, with its size and order count, rather than one per order
+ * @param venue      the only venue shown, or {@link Venues#ANY}; levels without its orders are skipped
+ */
+public record BookView(int depth, boolean aggregated, int venue) {
+
+    public static final int ALL_LEVELS = 0;
+
+    /** Every order of the book: the sequenced snapshot and delta feed. */
+    public static final BookView FULL = new BookView(ALL_LEVELS, false, Venues.ANY);
+
+    /** What most viewers look at, and what a session gets unless it asks otherwise. */
+    public static final BookView DEFAULT = new BookView(10, true, Venues.ANY);
+
+    public BookView {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth must be a number of levels, or 0 for the whole book");
+        }
+        if (venue < Venues.ANY) {
+            throw new IllegalArgumentException("Unknown venue id " + venue);
+        }
+    }
+
+    /**
+     * Builds a view from request parameters, each of which may be null to keep its {@link #DEFAULT}:
+     * {@code depth} (levels, 0 for all), {@code aggregate} ({@code true} or {@code false}) and
+     * {@code venue} (a venue code, or {@code all}).
+     */
+    public static BookView parse(String depth, String aggregate, String venue) {
+        int levels = DEFAULT.depth;
+        if (depth != null) {
+            try {
+                levels = Integer.parseInt(depth.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("depth must be a number of levels, or 0 for the whole book");
+            }
+        }
+        boolean aggregated = DEFAULT.aggregated;
+        if (aggregate != null) {
+            if (!aggregate.equalsIgnoreCase("true") && !aggregate.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("aggregate must be true or false");
+            }
+            aggregated = Boolean.parseBoolean(aggregate);
+        }
+        int venueId = DEFAULT.venue;
+        if (venue != null && !venue.isBlank() && !venue.equalsIgnoreCase("all")) {
+            venueId = Venues.find(venue.trim());
+            if (venueId == Venues.ANY) {
+                throw new IllegalArgumentException("Unknown venue " + venue);
+            }
+        }
+        return new BookView(levels, aggregated, venueId);
+    }
+
+    /** Whether this is the full per-order book, which is fed as sequenced deltas. */
+    public boolean isFull() {
+        return equals(FULL);
+    }
+
+    /** The view as sent to the client along with the book. */
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new HashMap<>();
+        description.put("depth", depth);
+        description.put("aggregate", aggregated);
+        description.put("venue", venue == Venues.ANY ? null : Venues.name(venue));
+        return description;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TopOfBook;
+
+/**
+ * Per-side change of the touch price since the previous publication, as shown in the orderbook
+ * header. Changes are {@code NaN} until the touch has moved from a known price.
+ */
+public class HeaderStats {
+
+    private final long[] previousTopPrices = { Prices.NONE, Prices.NONE };
+    private final double[] priceChanges = { Double.NaN, Double.NaN };
+    private final double[] priceChangePercents = { Double.NaN, Double.NaN };
+
+    /** Compares the touch with the one seen on the previous update, then makes it the new baseline. */
+    public void update(TopOfBook top) {
+        for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+            long topPrice = top.bestPrice(side);
+            long previousTopPrice = previousTopPrices[side];
+            if (topPrice != Prices.NONE && previousTopPrice != Prices.NONE && previousTopPrice != topPrice) {
+                priceChanges[side] = Prices.toDouble(topPrice - previousTopPrice);
+                priceChangePercents[side] = (priceChanges[side] / Prices.toDouble(previousTopPrice)) * 100.0;
+            } else {
+                priceChanges[side] = Double.NaN;
+                priceChangePercents[side] = Double.NaN;
+            }
+            if (topPrice != Prices.NONE) {
+                previousTopPrices[side] = topPrice;
+            }
+        }
+    }
+
+    public double priceChange(int side) {
+        return priceChanges[side];
+    }
+
+    public double priceChangePercent(int side) {
+        return priceChangePercents[side];
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Arrays;
+
+/**
+ * The price levels that changed in one published interval. Added and modified levels are written
+ * with their full order queue, read from the live book at serialization time, so applying a delta
+ * is idempotent on the client.
+ */
+@JsonSerialize(using = LevelDeltasSerializer.class)
+public class LevelDeltas {
+
+    public static final int ADD = 0;
+    public static final int MODIFY = 1;
+    public static final int DELETE = 2;
+
+    private static final String[] ACTION_NAMES = { "add", "modify", "delete" };
+
+    private final OrderBook book;
+    private long[] prices = new long[64];
+    private int[] sides = new int[64];
+    private int[] actions = new int[64];
+    private int count;
+
+    public LevelDeltas(OrderBook book) {
+        this.book = book;
+    }
+
+    void add(int side, long price, int action) {
+        if (count == prices.length) {
+            prices = Arrays.copyOf(prices, count * 2);
+            sides = Arrays.copyOf(sides, count * 2);
+            actions = Arrays.copyOf(actions, count * 2);
+        }
+        prices[count] = price;
+        sides[count] = side;
+        actions[count] = action;
+        count++;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    public OrderBook getBook() {
+        return book;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long price(int i) {
+        return prices[i];
+    }
+
+    public int side(int i) {
+        return sides[i];
+    }
+
+    public int action(int i) {
+        return actions[i];
+    }
+
+    public static String actionName(int action) {
+        return ACTION_NAMES[action];
+    }
+}
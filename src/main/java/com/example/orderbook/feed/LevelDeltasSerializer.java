@@ -0,0 +1,50 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes level deltas as {@code [{side, price, action, orders: [{size, exchange, time}, ...]}, ...]};
+ * deleted levels carry no orders.
+ */
+public class LevelDeltasSerializer extends StdSerializer<LevelDeltas> {
+
+    public LevelDeltasSerializer() {
+        super(LevelDeltas.class);
+    }
+
+    @Override
+    public void serialize(LevelDeltas deltas, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        OrderBook book = deltas.getBook();
+        gen.writeStartArray();
+        for (int i = 0; i < deltas.size(); i++) {
+            int side = deltas.side(i);
+            long price = deltas.price(i);
+            gen.writeStartObject();
+            gen.writeStringField("side", side == OrderBook.BID ? "bid" : "ask");
+            gen.writeNumberField("price", Prices.toDouble(price));
+            gen.writeStringField("action", LevelDeltas.actionName(deltas.action(i)));
+            if (deltas.action(i) != LevelDeltas.DELETE) {
+                gen.writeArrayFieldStart("orders");
+                int level = book.levelOf(side, price);
+                for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                    gen.writeStartObject();
+                    gen.writeNumberField("size", book.orderQuantity(order));
+                    gen.writeStringField("exchange", Venues.name(book.orderVenue(order)));
+                    gen.writeStringField("time", TimeOfDay.format(book.orderTime(order)));
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TopOfBook;
+import com.example.orderbook.series.CandleSeries;
+
+/**
+ * Raw values behind the OHLC panel, kept as ticks and counts. Open, high, low, close, volume, trade
+ * count and VWAP are those of the session candle; formatting is left to the client, so one update
+ * serves both the JSON and the binary encodings.
+ */
+public class MarketStats {
+
+    private boolean available;
+    private int time;
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private double vwap;
+    private long volume;
+    private int tradeCount;
+    private double lastChange = Double.NaN;
+    private long spread;
+    private double spreadPercent;
+
+    // Middle price kept as (best bid + best ask) in ticks so it stays integral
+    private long previousMiddlePrice = Prices.NONE;
+
+    public void update(TopOfBook top, CandleSeries session, int time) {
+        this.time = time;
+        available = top.isTwoSided();
+        if (!available) {
+            return;
+        }
+
+        long candle = session.count() - 1;
+        if (candle >= 0) {
+            open = session.open(candle);
+            high = session.high(candle);
+            low = session.low(candle);
+            close = session.close(candle);
+            vwap = session.vwap(candle);
+            volume = session.volume(candle);
+            tradeCount = session.tradeCount(candle);
+        }
+
+        // Last change of the middle price
+        long middlePrice = top.bestPrice(OrderBook.BID) + top.bestPrice(OrderBook.ASK);
+        lastChange = previousMiddlePrice != Prices.NONE && previousMiddlePrice != middlePrice
+                ? Prices.toDouble(middlePrice - previousMiddlePrice) / 2.0
+                : Double.NaN;
+        previousMiddlePrice = middlePrice;
+
+        // Spread, and spread as a share of the whole book's price range
+        spread = top.spread();
+        long depthRange = top.depthRange();
+        spreadPercent = depthRange > 0 ? ((double) spread / depthRange) * 100.0 : 0.0;
+    }
+
+    /** False while the book is one-sided; the other values are then meaningless. */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public int time() {
+        return time;
+    }
+
+    public long open() {
+        return open;
+    }
+
+    public long high() {
+        return high;
+    }
+
+    public long low() {
+        return low;
+    }
+
+    public long close() {
+        return close;
+    }
+
+    /** Session VWAP in ticks, fractional. */
+    public double vwap() {
+        return vwap;
+    }
+
+    public long volume() {
+        return volume;
+    }
+
+    public int tradeCount() {
+        return tradeCount;
+    }
+
+    /** Change of the middle price since the previous update, or {@code NaN} if unchanged. */
+    public double lastChange() {
+        return lastChange;
+    }
+
+    public long spread() {
+        return spread;
+    }
+
+    public double spreadPercent() {
+        return spreadPercent;
+    }
+}
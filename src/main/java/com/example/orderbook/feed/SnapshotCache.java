@@ -0,0 +1,67 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.metrics.FeedMetrics;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The latest encoded snapshot frames of each instrument, tagged with the snapshot version of the
+ * topic they were encoded from (see {@code Instrument.getSnapshotVersion}). A session joining, or
+ * resyncing, is sent the cached frame while its version is current, so a burst of sessions asking
+ * for the same symbol encodes it once; publications store the full-state frames they encode anyway.
+ * <p>
+ * Frames are keyed per instrument by any value with equality: a message type, or the
+ * {@link BookView} a book frame shows. Encoded messages are immutable and shared between sessions.
+ * An instrument's frames are only touched from its shard's thread, so nothing here is locked.
+ */
+public final class SnapshotCache {
+
+    // Views are chosen by clients; past this many frames an instrument's are dropped and encoded again
+    private static final int MAX_FRAMES = 64;
+
+    private final Map<Object, Frame>[] frames;
+    private final FeedMetrics metrics;
+
+    /** Encodes a frame from the current state. */
+    @FunctionalInterface
+    public interface Encoder {
+        WebSocketMessage<?> encode() throws IOException;
+    }
+
+    @SuppressWarnings("unchecked")
+    public SnapshotCache(int instrumentCount, FeedMetrics metrics) {
+        this.frames = new Map[instrumentCount];
+        for (int id = 0; id < instrumentCount; id++) {
+            frames[id] = new HashMap<>();
+        }
+        this.metrics = metrics;
+    }
+
+    /** The frame cached under {@code key} if it was encoded at {@code version}; otherwise encodes and caches it. */
+    public WebSocketMessage<?> get(int instrument, Object key, long version, Encoder encoder) throws IOException {
+        Frame frame = frames[instrument].get(key);
+        if (frame != null && frame.version == version) {
+            metrics.snapshotFrame(true);
+            return frame.message;
+        }
+        WebSocketMessage<?> message = encoder.encode();
+        put(instrument, key, version, message);
+        metrics.snapshotFrame(false);
+        return message;
+    }
+
+    /** Caches a frame just encoded from the state at {@code version}. */
+    public void put(int instrument, Object key, long version, WebSocketMessage<?> message) {
+        Map<Object, Frame> cached = frames[instrument];
+        if (cached.size() >= MAX_FRAMES && !cached.containsKey(key)) {
+            cached.clear();
+        }
+        cached.put(key, new Frame(version, message));
+    }
+
+    private record Frame(long version, WebSocketMessage<?> message) {
+    }
+}
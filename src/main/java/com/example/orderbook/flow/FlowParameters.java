@@ -0,0 +1,34 @@
+package com.example.orderbook.flow;
+
+/**
+ * Shape of the generated order flow, per instrument. Prices and sizes are in ticks and shares.
+ *
+ * @param rate           events per second in the calm regime
+ * @param burstMultiplier rate multiplier while bursting
+ * @param calmSeconds    mean length of a calm regime
+ * @param burstSeconds   mean length of a burst
+ * @param marketableRatio share of new orders that cross the spread
+ * @param cancelRatio    share of events that are cancels once the book is far deeper than {@code targetDepth}
+ * @param targetDepth    generated resting orders at which half of {@code cancelRatio} applies
+ * @param tickSize       price increment
+ * @param depthTicks     mean distance, in ticks, of passive orders behind the touch
+ * @param meanQuantity   mean order size
+ * @param referencePrice price quoted around while the book is empty and nothing has traded
+ * @param venues         venue ids orders are spread over
+ */
+public record FlowParameters(double rate, double burstMultiplier, double calmSeconds, double burstSeconds,
+        double marketableRatio, double cancelRatio, int targetDepth, long tickSize, double depthTicks,
+        double meanQuantity, long referencePrice, int[] venues) {
+
+    public FlowParameters {
+        if (rate < 0 || burstMultiplier < 1 || calmSeconds <= 0 || burstSeconds <= 0) {
+            throw new IllegalArgumentException("Order flow rates and regime lengths must be positive");
+        }
+        if (marketableRatio < 0 || marketableRatio > 1 || cancelRatio < 0 || cancelRatio >= 1) {
+            throw new IllegalArgumentException("Order flow ratios must be within [0, 1)");
+        }
+        if (targetDepth <= 0 || tickSize <= 0 || depthTicks < 0 || meanQuantity < 1 || referencePrice <= 0 || venues.length == 0) {
+            throw new IllegalArgumentException("Order flow depth, prices, sizes and venues must be positive");
+        }
+    }
+}
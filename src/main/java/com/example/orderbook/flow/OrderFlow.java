@@ -0,0 +1,141 @@
+package com.example.orderbook.flow;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TopOfBook;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.engine.TradeTape;
+import com.example.orderbook.market.Instrument;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generated order flow into one instrument: Poisson arrivals, at a rate switching between a calm and
+ * a bursting regime, each being a cancel, a marketable order or a passive order.
+ * <p>
+ * The share of cancels grows with the number of generated orders resting, so the generated depth
+ * settles around {@link FlowParameters#targetDepth()} whatever the rate. Passive orders join or sit
+ * behind their side's touch at an exponentially distributed distance, so depth thins away from it;
+ * marketable orders are market orders. The generated orders resting are tracked by the instrument,
+ * which gets them back from the journal on recovery, so they are still cancelled after a restart.
+ * Only used from the instrument's shard thread.
+ */
+final class OrderFlow {
+
+    // Above this many expected arrivals per tick, the Poisson count is drawn from its normal approximation
+    private static final double NORMAL_APPROXIMATION = 64;
+
+    private final Instrument instrument;
+    private final FlowParameters parameters;
+    private final SplittableRandom random;
+
+    private boolean bursting;
+    private double regimeLeft;
+
+    private long events;
+    private long cancels;
+    private long marketable;
+
+    OrderFlow(Instrument instrument, FlowParameters parameters, SplittableRandom random) {
+        this.instrument = instrument;
+        this.parameters = parameters;
+        this.random = random;
+        this.regimeLeft = random.nextExponential() * parameters.calmSeconds();
+    }
+
+    /** Runs the events arriving over {@code seconds}; returns how many there were. */
+    int advance(double seconds) {
+        regimeLeft -= seconds;
+        while (regimeLeft <= 0) {
+            bursting = !bursting;
+            regimeLeft += random.nextExponential() * (bursting ? parameters.burstSeconds() : parameters.calmSeconds());
+        }
+        double rate = parameters.rate() * (bursting ? parameters.burstMultiplier() : 1);
+        int arrivals = poisson(rate * seconds);
+        for (int i = 0; i < arrivals; i++) {
+            next();
+        }
+        return arrivals;
+    }
+
+    /** Runs one event. */
+    void next() {
+        events++;
+        int liveCount = instrument.getFlowOrderCount();
+        double cancelShare = parameters.cancelRatio() * liveCount / (liveCount + (double) parameters.targetDepth());
+        if (liveCount > 0 && random.nextDouble() < cancelShare) {
+            instrument.cancelFlowOrder(random.nextInt(liveCount));
+            cancels++;
+            return;
+        }
+
+        int side = random.nextBoolean() ? OrderBook.BID : OrderBook.ASK;
+        long quantity = Math.max(1, Math.round(random.nextExponential() * parameters.meanQuantity()));
+        int venue = parameters.venues()[random.nextInt(parameters.venues().length)];
+        if (random.nextDouble() < parameters.marketableRatio()) {
+            instrument.submitFlow(side, MatchingEngine.MARKET, 0, quantity, venue);
+            marketable++;
+            return;
+        }
+
+        long tick = parameters.tickSize();
+        long touch = touch(side);
+        long distance = (long) (random.nextExponential() * parameters.depthTicks());
+        long price = side == OrderBook.BID ? touch - distance * tick : touch + distance * tick;
+        if (price <= 0) {
+            price = tick;
+        }
+        instrument.submitFlow(side, MatchingEngine.LIMIT, price, quantity, venue);
+    }
+
+    long events() {
+        return events;
+    }
+
+    long cancels() {
+        return cancels;
+    }
+
+    long marketable() {
+        return marketable;
+    }
+
+    int liveCount() {
+        return instrument.getFlowOrderCount();
+    }
+
+    boolean isBursting() {
+        return bursting;
+    }
+
+    // Best price of a side, or one tick off the last trade (or the reference price) when the side is empty
+    private long touch(int side) {
+        TopOfBook top = instrument.getOrderBook().top();
+        long best = top.bestPrice(side);
+        if (best != Prices.NONE) {
+            return best;
+        }
+        long opposite = top.bestPrice(1 - side);
+        TradeTape tape = instrument.getTradeTape();
+        long reference = opposite != Prices.NONE ? opposite : tape.size() > 0 ? tape.price(0) : parameters.referencePrice();
+        return side == OrderBook.BID ? reference - parameters.tickSize() : reference + parameters.tickSize();
+    }
+
+    private int poisson(double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        if (mean > NORMAL_APPROXIMATION) {
+            return (int) Math.max(0, Math.round(mean + Math.sqrt(mean) * random.nextGaussian()));
+        }
+        // Knuth: count uniform draws until their product falls below e^-mean
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            count++;
+            product *= random.nextDouble();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.orderbook.flow;
+
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.replay.ReplayEngine;
+import com.example.orderbook.service.DataService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic order flow for load and soak tests, entered into every instrument alongside the replay.
+ * Off unless {@code orderbook.flow.enabled}; its shape is set by the other {@code orderbook.flow.*}
+ * properties (see {@link FlowParameters}), with {@code rate} in events per second per instrument.
+ * <p>
+ * Each shard generates the flow of its own instruments on its writer thread, straight into the
+ * matching engine: every tick it runs the events that arrived since the previous one, so rates scale
+ * from one a second to millions a second across shards. A shard that falls behind catches up on at
+ * most {@value #MAX_CATCH_UP_MILLIS} ms of events per tick and the rest is lost, which shows as an
+ * achieved rate below the configured one.
+ * <p>
+ * The flow starts once the market has been recovered from the journal, which the replay engine does
+ * as it is created, and takes over the generated orders that recovery left resting.
+ */
+@Component
+@Profile("!relay")
+public class OrderFlowGenerator {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_CATCH_UP_MILLIS = 50;
+
+    private final boolean enabled;
+    private final FlowParameters parameters;
+    private final List<MarketShard> shards;
+    // By shard index; each list is only touched on its shard's thread
+    private final List<List<OrderFlow>> flows = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+
+    // The replay engine is only taken so that the journal has been recovered before the first tick
+    public OrderFlowGenerator(DataService dataService, ReplayEngine replayEngine,
+            @Value("${orderbook.flow.enabled:false}") boolean enabled,
+            @Value("${orderbook.flow.rate:1000}") double rate,
+            @Value("${orderbook.flow.burst-multiplier:10}") double burstMultiplier,
+            @Value("${orderbook.flow.calm-seconds:30}") double calmSeconds,
+            @Value("${orderbook.flow.burst-seconds:3}") double burstSeconds,
+            @Value("${orderbook.flow.marketable-ratio:0.1}") double marketableRatio,
+            @Value("${orderbook.flow.cancel-ratio:0.9}") double cancelRatio,
+            @Value("${orderbook.flow.target-depth:500}") int targetDepth,
+            @Value("${orderbook.flow.tick-size:0.05}") double tickSize,
+            @Value("${orderbook.flow.depth-ticks:4}") double depthTicks,
+            @Value("${orderbook.flow.mean-quantity:500}") double meanQuantity,
+            @Value("${orderbook.flow.reference-price:632.50}") double referencePrice,
+            @Value("${orderbook.flow.venues:AOX,BATS,LSE,CHIX}") List<String> venues,
+            @Value("${orderbook.flow.seed:0}") long seed) {
+        this.enabled = enabled;
+        int[] venueIds = venues.stream().map(String::trim).filter(venue -> !venue.isEmpty()).mapToInt(Venues::intern).toArray();
+        this.parameters = new FlowParameters(rate, burstMultiplier, calmSeconds, burstSeconds, marketableRatio,
+                cancelRatio, targetDepth, Prices.toTicks(tickSize), depthTicks, meanQuantity,
+                Prices.toTicks(referencePrice), venueIds);
+        this.shards = dataService.getShards();
+        if (!enabled) {
+            return;
+        }
+
+        // A fixed seed makes every run generate the same flow, shard by shard
+        SplittableRandom seeds = seed != 0 ? new SplittableRandom(seed) : new SplittableRandom();
+        for (MarketShard shard : shards) {
+            List<OrderFlow> shardFlows = new ArrayList<>();
+            for (Instrument instrument : shard.instruments()) {
+                shardFlows.add(new OrderFlow(instrument, parameters, seeds.split()));
+            }
+            flows.add(shardFlows);
+            shard.schedule(new Tick(shardFlows, shard), TICK_NANOS);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rate", parameters.rate());
+        if (!enabled) {
+            return stats;
+        }
+        long events = 0;
+        long cancels = 0;
+        long marketable = 0;
+        long resting = 0;
+        int bursting = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            List<OrderFlow> shardFlows = flows.get(i);
+            long[] totals = shards.get(i).call(() -> {
+                long[] sums = new long[5];
+                for (OrderFlow flow : shardFlows) {
+                    sums[0] += flow.events();
+                    sums[1] += flow.cancels();
+                    sums[2] += flow.marketable();
+                    sums[3] += flow.liveCount();
+                    sums[4] += flow.isBursting() ? 1 : 0;
+                }
+                return sums;
+            });
+            events += totals[0];
+            cancels += totals[1];
+            marketable += totals[2];
+            resting += totals[3];
+            bursting += (int) totals[4];
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        stats.put("events", events);
+        stats.put("cancels", cancels);
+        stats.put("marketable", marketable);
+        stats.put("restingGenerated", resting);
+        stats.put("burstingInstruments", bursting);
+        stats.put("achievedRate", seconds > 0 ? events / seconds : 0.0);
+        return stats;
+    }
+
+    // Reschedules itself on the shard, so it never overlaps with itself or with the shard's other tasks
+    private static final class Tick implements Runnable {
+
+        private final List<OrderFlow> flows;
+        private final MarketShard shard;
+        private long lastNanos = System.nanoTime();
+
+        Tick(List<OrderFlow> flows, MarketShard shard) {
+            this.flows = flows;
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            double seconds = Math.min(now - lastNanos, TimeUnit.MILLISECONDS.toNanos(MAX_CATCH_UP_MILLIS)) / 1e9;
+            lastNanos = now;
+            try {
+                for (OrderFlow flow : flows) {
+                    flow.advance(seconds);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            shard.schedule(this, Math.max(0, TICK_NANOS - (System.nanoTime() - now)));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.orderbook.handler;
+
+import com.example.orderbook.fanout.FeedSession;
+import com.example.orderbook.fanout.ServletFeedSession;
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.wire.WireFormat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The session side of the {@code /websocket} feed, whatever produces it: sessions start subscribed
+ * to the symbols in the {@code symbols} query parameter (comma-separated), or to the default symbol,
+ * and send {@code subscribe}, {@code unsubscribe}, {@code view} and {@code resync} requests. Sessions
+ * are fed through the {@link SessionFanOut}; subclasses supply the symbols and the snapshots.
+ * <p>
+ * The protocol is the same whichever transport a session came through: the servlet container calls
+ * this handler directly, and the reactive transport ({@link ReactiveOrderbookHandler}) goes through
+ * {@link #open}, {@link #onRequest} and {@link #close}.
+ */
+public abstract class FeedWebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable {
+
+    private static final int MAX_LOGGED_CHARS = 32;
+
+    protected final SessionFanOut fanOut;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    protected FeedWebSocketHandler(SessionFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /** True when the symbol can be subscribed to. */
+    protected abstract boolean hasSymbol(String symbol);
+
+    /** What a session subscribes to when it names no symbol. */
+    protected abstract String defaultSymbol();
+
+    /** The messages bringing a JSON session up to date with a symbol, in the given view of the book. */
+    protected abstract List<WebSocketMessage<?>> snapshot(String symbol, BookView view);
+
+    /** The messages bringing a binary session up to date with a symbol. */
+    protected abstract List<WebSocketMessage<?>> binarySnapshot(String symbol);
+
+    /** The current news, sent to joining sessions, or null when there is none yet. */
+    protected abstract WebSocketMessage<?> latestNews();
+
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(WireFormat.BINARY_PROTOCOL, WireFormat.JSON_PROTOCOL);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        open(new ServletFeedSession(session));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        onRequest(new ServletFeedSession(session), message.getPayload());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        close(new ServletFeedSession(session));
+    }
+
+    /** Starts feeding a newly connected session, whichever transport it came through. */
+    public void open(FeedSession session) {
+        if (WireFormat.BINARY_PROTOCOL.equals(session.getAcceptedProtocol())) {
+            fanOut.register(session, true, this::binarySnapshot);
+        } else {
+            fanOut.register(session, false, symbol -> snapshot(symbol, fanOut.bookView(session.getId())));
+        }
+        MultiValueMap<String, String> query = session.getUri() == null ? null
+                : UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        if (query != null && (query.containsKey("depth") || query.containsKey("aggregate") || query.containsKey("venue"))) {
+            setBookView(session, query.getFirst("depth"), query.getFirst("aggregate"), query.getFirst("venue"));
+        }
+        List<String> requested = query == null ? null : query.get("symbols");
+        List<String> symbols = new ArrayList<>();
+        if (requested != null) {
+            for (String value : requested) {
+                symbols.addAll(List.of(URLDecoder.decode(value, StandardCharsets.UTF_8).split(",")));
+            }
+        }
+        subscribe(session, symbols.isEmpty() ? List.of(defaultSymbol()) : symbols);
+        WebSocketMessage<?> news = latestNews();
+        if (news != null) {
+            fanOut.send(session.getId(), "news", news, true);
+        }
+        System.out.println("WebSocket connection established: " + session.getId());
+    }
+
+    /** Handles a text request from a session. */
+    public void onRequest(FeedSession session, String payload) throws IOException {
+        JsonNode request = objectMapper.readTree(payload);
+        String action = request.path("action").asText();
+        switch (action) {
+            case "subscribe" -> subscribe(session, symbols(request));
+            case "unsubscribe" -> symbols(request).forEach(symbol -> fanOut.unsubscribe(session.getId(), symbol));
+            case "view" -> setBookView(session, text(request, "depth"), text(request, "aggregate"), text(request, "venue"));
+            case "resync" -> {
+                if (request.hasNonNull("symbol")) {
+                    fanOut.requestSnapshot(session.getId(), request.get("symbol").asText());
+                } else {
+                    fanOut.requestSnapshot(session.getId());
+                }
+            }
+            default -> System.out.println("Ignoring WebSocket request " + shorten(action) + ": " + session.getId());
+        }
+    }
+
+    public void close(FeedSession session) {
+        fanOut.unregister(session.getId());
+        System.out.println("WebSocket connection closed: " + session.getId());
+    }
+
+    private void subscribe(FeedSession session, List<String> symbols) {
+        for (String symbol : symbols) {
+            if (hasSymbol(symbol.trim())) {
+                fanOut.subscribe(session.getId(), symbol.trim());
+            } else {
+                System.out.println("Ignoring subscription to unknown symbol " + shorten(symbol) + ": " + session.getId());
+            }
+        }
+    }
+
+    private void setBookView(FeedSession session, String depth, String aggregate, String venue) {
+        if (WireFormat.BINARY_PROTOCOL.equals(session.getAcceptedProtocol())) {
+            System.out.println("Ignoring book view request from binary session: " + session.getId());
+            return;
+        }
+        try {
+            fanOut.setBookView(session.getId(), BookView.parse(depth, aggregate, venue));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring book view request (" + e.getMessage() + "): " + session.getId());
+        }
+    }
+
+    private static String text(JsonNode request, String field) {
+        return request.hasNonNull(field) ? request.get(field).asText() : null;
+    }
+
+    // "symbols": [...] or a single "symbol"
+    private static List<String> symbols(JsonNode request) {
+        List<String> symbols = new ArrayList<>();
+        request.path("symbols").forEach(symbol -> symbols.add(symbol.asText()));
+        if (request.hasNonNull("symbol")) {
+            symbols.add(request.get("symbol").asText());
+        }
+        return symbols;
+    }
+
+    // Client strings are logged cut short, so a client cannot flood the log
+    private static String shorten(String text) {
+        return text.length() <= MAX_LOGGED_CHARS ? text : text.substring(0, MAX_LOGGED_CHARS) + "...";
+    }
+}
@@ -1,76 +1,360 @@
 package com.example.orderbook.handler;
 
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.feed.SnapshotCache;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.market.PublishScheduler;
+import com.example.orderbook.market.Topics;
+import com.example.orderbook.metrics.FeedMetrics;
+import com.example.orderbook.metrics.StageTimer;
 import com.example.orderbook.service.DataService;
+import com.example.orderbook.wire.BinaryEncoder;
+import com.example.orderbook.wire.WireFormat;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Streams each instrument as a sequenced feed to the sessions subscribed to it: a full
+ * {@code orderbook} snapshot on subscribe, then {@code orderbook-delta} messages carrying only the
+ * levels that changed. A client that sees a gap in the sequence sends
+ * {@code {"action": "resync", "symbol": ...}} and receives a fresh snapshot. The {@code timeseries}
+ * topic works the same way: the full chart comes with the snapshot, then only the buckets that changed.
+ * The {@code venues} topic breaks the book down by venue: each venue's best bid and offer, the
+ * consolidated best prices with the venues quoting them, and each venue's size at the top levels.
+ * The {@code analytics} topic carries the book's microstructure signals at full depth (see
+ * {@link Instrument#getAnalyticsData()}).
+ * <p>
+ * Sessions start subscribed to the symbols in the {@code symbols} query parameter (comma-separated),
+ * or to the default symbol, and change that with {@code {"action": "subscribe" | "unsubscribe",
+ * "symbols": [...]}} (see {@link FeedWebSocketHandler}). Every instrument message carries its
+ * {@code symbol}; news goes to everyone.
+ * <p>
+ * JSON sessions choose how much of the book they see, with the {@code depth}, {@code aggregate} and
+ * {@code venue} query parameters or a {@code {"action": "view", ...}} request with the same fields
+ * (see {@link BookView}); the default is the top ten aggregated levels. The full per-order book
+ * ({@code depth=0&aggregate=false}) is fed as sequenced deltas; any other view is sent whole, as an
+ * {@code orderbook} message, each time the book is published, encoded once for every session sharing it.
+ * <p>
+ * Sessions negotiating the {@value WireFormat#BINARY_PROTOCOL} subprotocol get the book, trades and
+ * OHLC topics as binary frames (see {@link WireFormat}), always for the full book; everyone else
+ * gets JSON.
+ * <p>
+ * Topics are published when they change, each at most once per its {@code orderbook.publish.*}
+ * interval (milliseconds), by a {@link PublishScheduler} running on each {@link MarketShard}'s writer
+ * thread; a topic that has not changed sends nothing. Each message is encoded once in the encodings
+ * that have subscribers and handed to the {@link SessionFanOut}, which delivers it to each session
+ * from its own bounded queue. News rotates on its own interval and is only sent when it changes.
+ * <p>
+ * Joining sessions get the current state of every topic straight away, the latest news included.
+ * Snapshot frames are kept in a {@link SnapshotCache} until their topic changes, along with the
+ * full-state frames publications encode, so a reconnect storm encodes each symbol once.
+ * <p>
+ * Publishing is instrumented through {@link FeedMetrics}: the time spent in each stage, and how late
+ * publications run behind their schedule.
+ */
 @Component
-public class OrderbookWebSocketHandler extends TextWebSocketHandler {
+@Profile("!relay")
+public class OrderbookWebSocketHandler extends FeedWebSocketHandler {
+
+    // Publications without an interval are only counted as overruns past this
+    private static final long MIN_OVERRUN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Snapshot cache keys of binary frames; JSON ones are keyed by message type, book views by view
+    private static final String BINARY_ORDERBOOK = "orderbook.binary";
+    private static final String BINARY_TRADES = "trades.binary";
+    private static final String BINARY_OHLC = "ohlc.binary";
 
-    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final DataService dataService;
+    private final FeedMetrics metrics;
+    private final long[] publishIntervals = new long[Topics.COUNT];
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BinaryEncoder binaryEncoder;
+    private final SnapshotCache snapshots;
+    private int schemaVenueCount = Venues.count();
+    private Object publishedNews;
+    // Sent to joining sessions, which would otherwise wait for the news to change
+    private volatile TextMessage newsMessage;
 
-    public OrderbookWebSocketHandler(DataService dataService) {
+    public OrderbookWebSocketHandler(DataService dataService, SessionFanOut fanOut, FeedMetrics metrics,
+            @Value("${orderbook.publish.orderbook-ms:5}") long orderbookMillis,
+            @Value("${orderbook.publish.trades-ms:100}") long tradesMillis,
+            @Value("${orderbook.publish.ohlc-ms:250}") long ohlcMillis,
+            @Value("${orderbook.publish.timeseries-ms:1000}") long timeseriesMillis,
+            @Value("${orderbook.publish.venues-ms:100}") long venuesMillis,
+            @Value("${orderbook.publish.analytics-ms:250}") long analyticsMillis,
+            @Value("${orderbook.publish.news-ms:2000}") long newsMillis) {
+        super(fanOut);
         this.dataService = dataService;
-        startDataBroadcast();
+        this.metrics = metrics;
+        this.binaryEncoder = new BinaryEncoder(dataService.getSymbols());
+        this.snapshots = new SnapshotCache(dataService.getSymbols().size(), metrics);
+
+        publishIntervals[Topics.ORDERBOOK] = TimeUnit.MILLISECONDS.toNanos(orderbookMillis);
+        publishIntervals[Topics.TRADES] = TimeUnit.MILLISECONDS.toNanos(tradesMillis);
+        publishIntervals[Topics.OHLC] = TimeUnit.MILLISECONDS.toNanos(ohlcMillis);
+        publishIntervals[Topics.TIMESERIES] = TimeUnit.MILLISECONDS.toNanos(timeseriesMillis);
+        publishIntervals[Topics.VENUES] = TimeUnit.MILLISECONDS.toNanos(venuesMillis);
+        publishIntervals[Topics.ANALYTICS] = TimeUnit.MILLISECONDS.toNanos(analyticsMillis);
+        PublishScheduler publishScheduler = new PublishScheduler(dataService.getSymbols().size(), publishIntervals, this::publish);
+        for (MarketShard shard : dataService.getShards()) {
+            shard.execute(() -> shard.instruments().forEach(instrument -> instrument.setListener(publishScheduler)));
+        }
+        startNewsBroadcast(newsMillis);
+    }
+
+    @Override
+    protected boolean hasSymbol(String symbol) {
+        return dataService.getInstrument(symbol) != null;
     }
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        System.out.println("WebSocket connection established: " + session.getId());
+    protected String defaultSymbol() {
+        return dataService.getDefaultSymbol();
     }
 
     @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
-        System.out.println("WebSocket connection closed: " + session.getId());
+    protected WebSocketMessage<?> latestNews() {
+        return newsMessage;
     }
 
-    private void startDataBroadcast() {
+    private void startNewsBroadcast(long intervalMillis) {
         scheduler.scheduleAtFixedRate(() -> {
             try {
-                broadcastData("orderbook", dataService.getOrderbookData());
-                broadcastData("trades", dataService.getTradesData());
-                broadcastData("ohlc", dataService.getOhlcData());
-                broadcastData("timeseries", dataService.getTimeseriesData());
-                broadcastData("news", dataService.getNewsData());
-                
-                // Advance to next data set for next broadcast
+                // The recorded news rotates; an unchanged item is not sent again
+                Map<String, Object> news = dataService.getNewsData();
+                if (!news.equals(publishedNews)) {
+                    publishedNews = news;
+                    // No binary layout: binary sessions get the JSON text frame too
+                    newsMessage = encode(null, "news", news);
+                    fanOut.publish("news", newsMessage, true);
+                }
                 dataService.advanceDataIndex();
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }, 0, 2, TimeUnit.SECONDS);
+        }, 0, Math.max(1, intervalMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the due topics of an instrument that changed; runs on its shard, so its book and tape
+     * can be read directly. Each stage is timed for {@link FeedMetrics}.
+     */
+    private void publish(Instrument instrument, int topics, long lagNanos) {
+        metrics.recordPublishLag(lagNanos, lagNanos > overrunNanos(topics));
+        StageTimer stages = new StageTimer();
+        try {
+            String symbol = instrument.getSymbol();
+            boolean json = fanOut.jsonSubscriberCount(symbol) > 0;
+            boolean binary = fanOut.binarySubscriberCount(symbol) > 0;
+
+            // The published state moves on whether or not anyone is listening; late subscribers get a snapshot
+            boolean bookChanged = Topics.contains(topics, Topics.ORDERBOOK) && instrument.publishOrderbookDelta();
+            boolean tradesChanged = Topics.contains(topics, Topics.TRADES) && instrument.publishTrades();
+            boolean statsChanged = Topics.contains(topics, Topics.OHLC) && instrument.publishMarketStats();
+            Map<String, Object> chart = Topics.contains(topics, Topics.TIMESERIES) ? instrument.publishTimeseries() : null;
+            boolean venuesChanged = Topics.contains(topics, Topics.VENUES) && instrument.publishVenues();
+            boolean analyticsChanged = Topics.contains(topics, Topics.ANALYTICS) && instrument.publishAnalytics();
+            stages.lap(StageTimer.ANALYTICS);
+            if (!json && !binary) {
+                return;
+            }
+
+            // The book views JSON sessions use; the full one is fed as deltas, the others whole
+            List<BookView> views = bookChanged && json ? fanOut.bookViews(symbol) : List.of();
+            boolean fullJson = views.contains(BookView.FULL);
+            Map<String, Object> bookDelta = bookChanged && fullJson ? instrument.getOrderbookDelta() : null;
+            List<Map<String, Object>> viewData = new ArrayList<>(views.size());
+            for (BookView view : views) {
+                viewData.add(view.isFull() ? null : instrument.getOrderbookData(view));
+            }
+            Map<String, Object> tradesData = tradesChanged && json ? instrument.getTradesData() : null;
+            Map<String, Object> ohlcData = statsChanged && json ? instrument.getOhlcData() : null;
+            Map<String, Object> venuesData = venuesChanged ? instrument.getVenuesData() : null;
+            Map<String, Object> analyticsData = analyticsChanged ? instrument.getAnalyticsData() : null;
+            stages.lap(StageTimer.FETCH);
+
+            // Binary frames are written straight from the book and tape
+            WebSocketMessage<?> bookJson = bookDelta != null ? encode(symbol, "orderbook-delta", bookDelta) : null;
+            WebSocketMessage<?> bookBinary = bookChanged && binary ? binaryEncoder.delta(instrument.getId(),
+                    instrument.getOrderbookSequence(), instrument.getBookTimestamp(), instrument.getLevelDeltas(),
+                    instrument.getHeaderStats()) : null;
+            // Each view is encoded once, whatever the number of sessions sharing it
+            List<TextMessage> viewMessages = new ArrayList<>(views.size());
+            for (Map<String, Object> data : viewData) {
+                viewMessages.add(data != null ? encode(symbol, "orderbook", data) : null);
+            }
+            WebSocketMessage<?> tradesJson = tradesData != null ? encode(symbol, "trades", tradesData) : null;
+            WebSocketMessage<?> tradesBinary = tradesChanged && binary ? binaryEncoder.trades(instrument.getId(), instrument.getTradeTape()) : null;
+            WebSocketMessage<?> ohlcJson = ohlcData != null ? encode(symbol, "ohlc", ohlcData) : null;
+            WebSocketMessage<?> ohlcBinary = statsChanged && binary ? binaryEncoder.ohlc(instrument.getId(), instrument.getMarketStats()) : null;
+            TextMessage timeseries = chart != null ? encode(symbol, "timeseries", chart) : null;
+            TextMessage venues = venuesData != null ? encode(symbol, "venues", venuesData) : null;
+            TextMessage analytics = analyticsData != null ? encode(symbol, "analytics", analyticsData) : null;
+            stages.lap(StageTimer.SERIALIZATION);
+
+            // Full-state frames are what a joining session would be sent until the topic changes again
+            int id = instrument.getId();
+            for (int i = 0; i < views.size(); i++) {
+                if (viewMessages.get(i) != null) {
+                    snapshots.put(id, views.get(i), instrument.getSnapshotVersion(Topics.ORDERBOOK), viewMessages.get(i));
+                }
+            }
+            cache(id, "trades", instrument.getSnapshotVersion(Topics.TRADES), tradesJson);
+            cache(id, BINARY_TRADES, instrument.getSnapshotVersion(Topics.TRADES), tradesBinary);
+            cache(id, "ohlc", instrument.getSnapshotVersion(Topics.OHLC), ohlcJson);
+            cache(id, BINARY_OHLC, instrument.getSnapshotVersion(Topics.OHLC), ohlcBinary);
+            cache(id, "venues", instrument.getSnapshotVersion(Topics.VENUES), venues);
+            cache(id, "analytics", instrument.getSnapshotVersion(Topics.ANALYTICS), analytics);
+
+            if (binary) {
+                publishSchemaIfVenuesChanged();
+            }
+            // An unchanged book publishes nothing and consumes no sequence number
+            if (bookChanged && (fullJson || binary)) {
+                fanOut.publish(symbol, "orderbook-delta", BookView.FULL, bookJson, bookBinary, false);
+            }
+            for (int i = 0; i < views.size(); i++) {
+                if (viewMessages.get(i) != null) {
+                    // A whole view replaces the previous one, so a slow session only needs the latest
+                    fanOut.publish(symbol, "orderbook", views.get(i), viewMessages.get(i), null, true);
+                }
+            }
+            if (tradesChanged) {
+                fanOut.publish(symbol, "trades", tradesJson, tradesBinary, true);
+            }
+            if (statsChanged) {
+                fanOut.publish(symbol, "ohlc", ohlcJson, ohlcBinary, true);
+            }
+            if (timeseries != null) {
+                // Incremental like the book deltas: a session that misses one resyncs
+                fanOut.publish(symbol, "timeseries", timeseries, timeseries, false);
+            }
+            if (venues != null) {
+                // No binary layout: binary sessions get the JSON text frame too
+                fanOut.publish(symbol, "venues", venues, venues, true);
+            }
+            if (analytics != null) {
+                fanOut.publish(symbol, "analytics", analytics, analytics, true);
+            }
+            stages.lap(StageTimer.FANOUT);
+        } catch (Exception e) {
+            metrics.publishFailed();
+            e.printStackTrace();
+        } finally {
+            metrics.recordStages(stages);
+        }
     }
 
-    private void broadcastData(String type, Object data) throws Exception {
-        Map<String, Object> message = Map.of(
-            "type", type,
-            "content", data
-        );
-        
-        String json = objectMapper.writeValueAsString(message);
-        TextMessage textMessage = new TextMessage(json);
-        
-        sessions.removeIf(session -> !session.isOpen());
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                session.sendMessage(textMessage);
+    // A publication later than the shortest interval of its topics has missed a whole slot
+    private long overrunNanos(int topics) {
+        long overrun = Long.MAX_VALUE;
+        for (int topic = 0; topic < Topics.COUNT; topic++) {
+            if (Topics.contains(topics, topic)) {
+                overrun = Math.min(overrun, Math.max(publishIntervals[topic], MIN_OVERRUN_NANOS));
             }
         }
+        return overrun;
+    }
+
+    /**
+     * A venue appeared: binary readers need its name before it shows up in a frame. Shards call this
+     * before encoding, so whichever sees the new venue first queues the schema ahead of its frames.
+     */
+    private synchronized void publishSchemaIfVenuesChanged() {
+        if (Venues.count() != schemaVenueCount) {
+            schemaVenueCount = Venues.count();
+            fanOut.publish("schema", null, binaryEncoder.schema(), true);
+        }
+    }
+
+    private void cache(int instrument, String key, long version, WebSocketMessage<?> message) {
+        if (message != null) {
+            snapshots.put(instrument, key, version, message);
+        }
+    }
+
+    /**
+     * A JSON session's snapshot of a symbol. Frames are taken from the {@link SnapshotCache} while
+     * their topic has not changed, so sessions joining together share one encoding.
+     */
+    @Override
+    public List<WebSocketMessage<?>> snapshot(String symbol, BookView view) {
+        Instrument instrument = dataService.getInstrument(symbol);
+        int id = instrument.getId();
+        // Trades and OHLC only go out when they change, so a new subscriber gets their current state too
+        return instrument.getShard().call(() -> List.of(
+                snapshots.get(id, view, instrument.getSnapshotVersion(Topics.ORDERBOOK),
+                        () -> encode(symbol, "orderbook", instrument.getOrderbookData(view))),
+                timeseriesSnapshot(instrument),
+                snapshots.get(id, "trades", instrument.getSnapshotVersion(Topics.TRADES),
+                        () -> encode(symbol, "trades", instrument.getTradesData())),
+                snapshots.get(id, "ohlc", instrument.getSnapshotVersion(Topics.OHLC),
+                        () -> encode(symbol, "ohlc", instrument.getOhlcData())),
+                venuesSnapshot(instrument),
+                analyticsSnapshot(instrument)));
+    }
+
+    @Override
+    public List<WebSocketMessage<?>> binarySnapshot(String symbol) {
+        Instrument instrument = dataService.getInstrument(symbol);
+        int id = instrument.getId();
+        return instrument.getShard().call(() -> {
+            instrument.prepareSnapshot();
+            return List.of(binaryEncoder.schema(),
+                    snapshots.get(id, BINARY_ORDERBOOK, instrument.getSnapshotVersion(Topics.ORDERBOOK),
+                            () -> binaryEncoder.snapshot(id, instrument.getOrderbookSequence(), instrument.getBookTimestamp(),
+                                    instrument.getOrderBook(), instrument.getHeaderStats())),
+                    timeseriesSnapshot(instrument),
+                    snapshots.get(id, BINARY_TRADES, instrument.getSnapshotVersion(Topics.TRADES),
+                            () -> binaryEncoder.trades(id, instrument.getTradeTape())),
+                    snapshots.get(id, BINARY_OHLC, instrument.getSnapshotVersion(Topics.OHLC),
+                            () -> binaryEncoder.ohlc(id, instrument.getMarketStats())),
+                    venuesSnapshot(instrument),
+                    analyticsSnapshot(instrument));
+        });
+    }
+
+    // Both encodings share these text frames
+    private WebSocketMessage<?> timeseriesSnapshot(Instrument instrument) throws IOException {
+        return snapshots.get(instrument.getId(), "timeseries", instrument.getSnapshotVersion(Topics.TIMESERIES),
+                () -> encode(instrument.getSymbol(), "timeseries", instrument.getTimeseriesData()));
+    }
+
+    private WebSocketMessage<?> venuesSnapshot(Instrument instrument) throws IOException {
+        return snapshots.get(instrument.getId(), "venues", instrument.getSnapshotVersion(Topics.VENUES),
+                () -> encode(instrument.getSymbol(), "venues", instrument.getVenuesData()));
+    }
+
+    private WebSocketMessage<?> analyticsSnapshot(Instrument instrument) throws IOException {
+        return snapshots.get(instrument.getId(), "analytics", instrument.getSnapshotVersion(Topics.ANALYTICS),
+                () -> encode(instrument.getSymbol(), "analytics", instrument.getAnalyticsData()));
+    }
+
+    private TextMessage encode(String symbol, String type, Object data) throws IOException {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", type);
+        if (symbol != null) {
+            message.put("symbol", symbol);
+        }
+        message.put("content", data);
+
+        // Kept as UTF-8 bytes too, which the reactive transport sends without encoding them again
+        return new TextMessage(objectMapper.writeValueAsBytes(message));
     }
-}
\ No newline at end of file
+}
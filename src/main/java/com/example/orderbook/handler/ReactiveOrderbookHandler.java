@@ -0,0 +1,58 @@
+package com.example.orderbook.handler;
+
+import com.example.orderbook.fanout.ReactiveFeedSession;
+import com.example.orderbook.fanout.SessionFanOut;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * The feed over the reactive (Netty) transport: the same protocol as the servlet one, delegated to
+ * this node's {@link FeedWebSocketHandler}, with each session's outbound messages flowing as its client reads them. The
+ * {@link SessionFanOut} only sends while the connection has demand, so a slow client never makes the
+ * transport buffer for it.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveOrderbookHandler implements WebSocketHandler {
+
+    private final FeedWebSocketHandler protocol;
+    private final SessionFanOut fanOut;
+
+    public ReactiveOrderbookHandler(FeedWebSocketHandler protocol, SessionFanOut fanOut) {
+        this.protocol = protocol;
+        this.fanOut = fanOut;
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return protocol.getSubProtocols();
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        ReactiveFeedSession feed = new ReactiveFeedSession(session);
+        Mono<Void> output = session.send(feed.outbound(() -> fanOut.resume(session.getId())));
+        Mono<Void> input = session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(payload -> {
+                    try {
+                        protocol.onRequest(feed, payload);
+                    } catch (IOException e) {
+                        // Closes the session, as the servlet transport does
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .then();
+        // Nothing goes out before the connection asks for it
+        protocol.open(feed);
+        return Mono.zip(input, output).then().doFinally(signal -> protocol.close(feed));
+    }
+}
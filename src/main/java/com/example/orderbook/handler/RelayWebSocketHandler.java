@@ -0,0 +1,51 @@
+package com.example.orderbook.handler;
+
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.relay.RelayClient;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.List;
+
+/**
+ * The {@code /websocket} feed of a relay node: sessions are served exactly as on the primary, from
+ * what the {@link RelayClient} receives from it.
+ */
+@Component
+@Profile("relay")
+public class RelayWebSocketHandler extends FeedWebSocketHandler {
+
+    private final RelayClient relay;
+
+    public RelayWebSocketHandler(SessionFanOut fanOut, RelayClient relay) {
+        super(fanOut);
+        this.relay = relay;
+    }
+
+    @Override
+    protected boolean hasSymbol(String symbol) {
+        return relay.hasSymbol(symbol);
+    }
+
+    @Override
+    protected String defaultSymbol() {
+        return relay.defaultSymbol();
+    }
+
+    @Override
+    protected List<WebSocketMessage<?>> snapshot(String symbol, BookView view) {
+        return relay.snapshot(symbol, view);
+    }
+
+    @Override
+    protected List<WebSocketMessage<?>> binarySnapshot(String symbol) {
+        return relay.binarySnapshot(symbol);
+    }
+
+    @Override
+    protected WebSocketMessage<?> latestNews() {
+        return relay.latestNews();
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.service.DataService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the market survive a restart. Every print and every command that changes a book is appended
+ * to its shard's memory-mapped journal as it happens (see {@link JournalWriter}); a background thread
+ * flushes the journals to disk in batches, and another periodically has each shard snapshot its books
+ * and writes the snapshots out, so that a large one never holds up the flushes.
+ * <p>
+ * On startup the journal is recovered before the replay resumes: each shard restores its latest
+ * snapshot, which holds the books along with the tape, charts and candles, and refers to the trade
+ * store segments written beside it, then runs the journaled commands and prints that came after it. The replay then carries on from the last
+ * journaled second rather than from the start of the recording. Shards recover in parallel, reading
+ * their journals in place. Segments wholly before the oldest snapshot kept are deleted, so the
+ * journal on disk, and the time recovery takes, stay bounded by the snapshot interval.
+ * <p>
+ * A journal belongs to one market layout: when the configured symbols or shard count change, the old
+ * journal is moved aside and a new one started. Settings are {@code orderbook.journal.enabled},
+ * {@code directory}, {@code segment-mb}, {@code flush-ms} and {@code snapshot-seconds}.
+ */
+@Component
+@Profile("!relay")
+public class Journal {
+
+    private static final String LAYOUT_FILE = "layout.properties";
+
+    private final List<MarketShard> shards;
+    private final List<String> symbols;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long flushMillis;
+    private final long snapshotSeconds;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // By shard index, once recovered
+    private volatile JournalWriter[] writers;
+    private boolean recovered;
+    private volatile Map<String, Object> recovery = Map.of();
+
+    public Journal(DataService dataService,
+            @Value("${orderbook.journal.enabled:true}") boolean enabled,
+            @Value("${orderbook.journal.directory:journal}") String directory,
+            @Value("${orderbook.journal.segment-mb:64}") int segmentMegabytes,
+            @Value("${orderbook.journal.flush-ms:50}") long flushMillis,
+            @Value("${orderbook.journal.snapshot-seconds:60}") long snapshotSeconds) {
+        this.shards = dataService.getShards();
+        this.symbols = dataService.getSymbols();
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentMegabytes << 20;
+        this.flushMillis = flushMillis;
+        this.snapshotSeconds = snapshotSeconds;
+    }
+
+    /**
+     * Restores the market from the journal, then starts journaling. Called once, by the replay engine,
+     * after the charts are seeded and before anything is replayed or generated; fails when an
+     * instrument already has orders. Returns the time of the last
+     * journaled replay event, or {@link TimeOfDay#UNKNOWN} when there is nothing to resume from.
+     */
+    public synchronized int recover() {
+        if (!enabled || recovered) {
+            return TimeOfDay.UNKNOWN;
+        }
+        recovered = true;
+        long started = System.nanoTime();
+        try {
+            prepareDirectory();
+        } catch (IOException e) {
+            // The market runs without a journal rather than not at all
+            e.printStackTrace();
+            return TimeOfDay.UNKNOWN;
+        }
+
+        JournalWriter[] opened = new JournalWriter[shards.size()];
+        List<CompletableFuture<JournalReader>> steps = new ArrayList<>(shards.size());
+        for (MarketShard shard : shards) {
+            steps.add(CompletableFuture.supplyAsync(() -> recover(shard, opened), shard::execute));
+        }
+        int resumeTime = TimeOfDay.UNKNOWN;
+        long records = 0;
+        long commands = 0;
+        for (CompletableFuture<JournalReader> step : steps) {
+            JournalReader reader = step.join();
+            resumeTime = Math.max(resumeTime, reader.lastReplayTime());
+            records += reader.recordCount();
+            commands += reader.commandCount();
+        }
+        writers = opened;
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("records", records);
+        summary.put("commands", commands);
+        summary.put("millis", millis);
+        summary.put("resumeTime", TimeOfDay.format(resumeTime));
+        recovery = summary;
+        System.out.println("Recovered " + records + " journal records (" + commands + " book commands) in " + millis + " ms");
+
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, Math.max(1, flushMillis), TimeUnit.MILLISECONDS);
+        if (snapshotSeconds > 0) {
+            snapshotter.scheduleWithFixedDelay(this::snapshot, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+        }
+        return resumeTime;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("directory", directory.toAbsolutePath().toString());
+        status.put("recovery", recovery);
+        JournalWriter[] active = writers;
+        if (active != null) {
+            List<Map<String, Object>> journals = new ArrayList<>();
+            for (int shard = 0; shard < active.length; shard++) {
+                JournalWriter writer = active[shard];
+                long position = writer.position();
+                journals.add(Map.of("shard", shard, "segment", JournalFormat.segment(position),
+                        "offset", JournalFormat.offset(position), "records", writer.recordCount()));
+            }
+            status.put("shards", journals);
+        }
+        return status;
+    }
+
+    /** Gets whatever has been journaled to disk before the process goes. */
+    @PreDestroy
+    public void close() {
+        snapshotter.shutdown();
+        flusher.shutdown();
+        try {
+            // Snapshots already taken are still written
+            snapshotter.awaitTermination(5, TimeUnit.SECONDS);
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writers != null) {
+            flush();
+        }
+    }
+
+    // Runs on the shard's thread, before its instruments see anything else
+    private JournalReader recover(MarketShard shard, JournalWriter[] opened) {
+        JournalTarget[] targets = new JournalTarget[symbols.size()];
+        for (Instrument instrument : shard.instruments()) {
+            // Anything entered before recovery would be journaled over, or would clash with recovered ids
+            if (instrument.getOrderBook().orderCount() > 0) {
+                throw new IllegalStateException("Instrument " + symbols.get(instrument.getId())
+                        + " has orders before its journal was recovered");
+            }
+            targets[instrument.getId()] = instrument;
+        }
+        JournalReader reader = new JournalReader(directory, shard.index());
+        try {
+            reader.replay(targets, JournalSnapshots.restoreLatest(directory, shard.index(), targets));
+            JournalWriter writer = new JournalWriter(directory, shard.index(), segmentBytes, reader.endPosition(),
+                    reader.lastReplayTime());
+            opened[shard.index()] = writer;
+            shard.instruments().forEach(instrument -> instrument.setJournal(writer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return reader;
+    }
+
+    private void flush() {
+        for (JournalWriter writer : writers) {
+            try {
+                writer.flush();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Each shard captures its instruments between two events; the files are written here, off the shards and the flusher
+    private void snapshot() {
+        for (MarketShard shard : shards) {
+            JournalWriter writer = writers[shard.index()];
+            shard.execute(() -> {
+                long position = writer.position();
+                JournalSnapshots.Capture capture = JournalSnapshots.capture(shard.index(), position, writer.replayTime(),
+                        shard.instruments());
+                snapshotter.execute(() -> {
+                    try {
+                        // A snapshot must never be ahead of the journal on disk
+                        writer.flush();
+                        JournalSnapshots.store(directory, shard.index(), position, capture);
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                });
+            });
+        }
+    }
+
+    // A journal written for another set of symbols or shards cannot be run into this one
+    private void prepareDirectory() throws IOException {
+        Properties layout = new Properties();
+        layout.setProperty("symbols", String.join(",", symbols));
+        layout.setProperty("shards", Integer.toString(shards.size()));
+        Path layoutFile = directory.resolve(LAYOUT_FILE);
+        if (Files.exists(layoutFile)) {
+            Properties existing = new Properties();
+            try (InputStream in = Files.newInputStream(layoutFile)) {
+                existing.load(in);
+            }
+            if (existing.equals(layout)) {
+                return;
+            }
+            Path aside = directory.resolveSibling(directory.getFileName() + "-" + System.currentTimeMillis());
+            System.out.println("Market layout changed, moving the journal aside to " + aside);
+            Files.move(directory, aside);
+        }
+        Files.createDirectories(directory);
+        try (OutputStream out = Files.newOutputStream(layoutFile)) {
+            layout.store(out, "Market layout of this journal");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.store.TradeStore;
+
+/**
+ * Layout of the event journal and of its snapshots (see {@link JournalWriter} and {@link Journal}).
+ * <p>
+ * Each shard appends to its own sequence of fixed-size, memory-mapped segment files,
+ * {@code shard-<shard>-<segment>.journal}. Everything is little-endian; prices are {@code i64} ticks,
+ * times {@code i32} seconds of the day, and venues {@code u16} ids declared by {@code VENUE} records
+ * (ids are interned per process, so every writer declares the ones it uses before using them).
+ * <pre>
+ * segment  "OBJL", u16 version, u16 shard, i32 segment, records..., zero padding
+ * record   u32 length (whole record, 0 = end of the journal), u8 type, i32 instrument, payload
+ * VENUE    u16 venue, u8 length, ASCII name
+ * PRINT    u8 aggressor side, i64 price, i64 quantity, u8 trade type, i32 time
+ * SESSION  i32 time of a replayed batch of prints
+ * BOOK     i32 time, u32 count, count x (u8 side, i64 price, i64 quantity, u16 venue, i32 time)
+ * SUBMIT   u8 side, u8 order type, i64 price, i64 quantity, u16 venue, i32 time
+ * CANCEL   i64 order id
+ * REPLACE  i64 order id, i64 price, i64 quantity, i32 time
+ * FLOW_SUBMIT, FLOW_CANCEL  as SUBMIT and CANCEL, for the generated order flow
+ * </pre>
+ * Every print is journaled, whatever produced it, and rebuilds the tape and the charts on recovery;
+ * the other records are the commands that changed the books. Generated orders have records of their
+ * own so that recovery can hand the flow back the ones still resting. Only the records after the latest
+ * snapshot are run again.
+ * <p>
+ * A snapshot, {@code shard-<shard>-<position>.snapshot}, holds a shard's books, and what the prints
+ * built up, as of a journal position, a {@code u64} of segment (high half) and offset (low half):
+ * <pre>
+ * header      "OBJS", u16 version, u16 shard, i64 position, i32 replay time, u16 venueCount,
+ *             venueCount x str, u32 storeCount, storeCount x store,
+ *             u32 instrumentCount, instrumentCount x instrument, u32 CRC-32 of all that comes before
+ * store       i32 id, i64 first segment, u32 sealedCount, u32 openCount, openCount x print
+ * instrument  i32 id, i64 next order id, i32 book time, u32 feedCount, feedCount x i64 order id,
+ *             u32 flowCount, flowCount x i64 order id,
+ *             u32 orderCount, orderCount x (u8 side, i64 id, i64 price, i64 quantity, u16 venue, i32 time),
+ *             u32 stateLength, print state (tape, price series, candles, traded rates)
+ * print       i64 price, i64 quantity, u8 aggressor side, u8 trade type, i32 time
+ *             where str = u8 length, ASCII bytes; orders in queue order, best level first
+ * </pre>
+ * A snapshot lists every venue of the process that took it, under the ids its journal records use.
+ * <p>
+ * Of an instrument's trade store, a snapshot only holds the prints of the open segment. The full
+ * segments before it, numbered from the first segment on, are written once each to a file of their
+ * own, {@code trades-<instrument>-<segment>.store}, before any snapshot refers to them:
+ * <pre>
+ * segment     "OBJT", u16 version, i32 instrument, i64 segment, 4096 x print, u32 CRC-32
+ * </pre>
+ */
+public final class JournalFormat {
+
+    public static final String SEGMENT_EXTENSION = ".journal";
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+    public static final String STORE_EXTENSION = ".store";
+
+    static final int SEGMENT_MAGIC = 'O' | 'B' << 8 | 'J' << 16 | 'L' << 24;
+    static final int SNAPSHOT_MAGIC = 'O' | 'B' << 8 | 'J' << 16 | 'S' << 24;
+    static final int STORE_MAGIC = 'O' | 'B' << 8 | 'J' << 16 | 'T' << 24;
+    static final int VERSION = 5;
+
+    static final int SEGMENT_HEADER_BYTES = 4 + 2 + 2 + 4;
+    static final int RECORD_HEADER_BYTES = 4 + 1 + 4;
+
+    static final int VENUE = 1;
+    static final int PRINT = 2;
+    static final int SESSION = 3;
+    static final int BOOK = 4;
+    static final int SUBMIT = 5;
+    static final int CANCEL = 6;
+    static final int REPLACE = 7;
+    static final int FLOW_SUBMIT = 8;
+    static final int FLOW_CANCEL = 9;
+
+    static final int PRINT_BYTES = 1 + 8 + 8 + 1 + 4;
+    static final int SESSION_BYTES = 4;
+    static final int BOOK_BYTES = 4 + 4;
+    static final int BOOK_ENTRY_BYTES = 1 + 8 + 8 + 2 + 4;
+    static final int SUBMIT_BYTES = 1 + 1 + 8 + 8 + 2 + 4;
+    static final int CANCEL_BYTES = 8;
+    static final int REPLACE_BYTES = 8 + 8 + 8 + 4;
+
+    static final int SNAPSHOT_ORDER_BYTES = 1 + 8 + 8 + 8 + 2 + 4;
+    static final int STORED_PRINT_BYTES = 8 + 8 + 1 + 1 + 4;
+    static final int STORE_HEADER_BYTES = 4 + 2 + 4 + 8;
+    static final int STORE_BYTES = STORE_HEADER_BYTES + TradeStore.SEGMENT_SIZE * STORED_PRINT_BYTES + 4;
+
+    private JournalFormat() {
+    }
+
+    static long position(int segment, int offset) {
+        return (long) segment << 32 | offset & 0xFFFFFFFFL;
+    }
+
+    static int segment(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offset(long position) {
+        return (int) position;
+    }
+
+    static String segmentName(int shard, int segment) {
+        return String.format("shard-%d-%06d%s", shard, segment, SEGMENT_EXTENSION);
+    }
+
+    static String snapshotName(int shard, long position) {
+        return String.format("shard-%d-%016x%s", shard, position, SNAPSHOT_EXTENSION);
+    }
+
+    static String storeName(int instrument, long segment) {
+        return String.format("trades-%d-%08d%s", instrument, segment, STORE_EXTENSION);
+    }
+
+    static int storeInstrument(String storeName) {
+        return Integer.parseInt(storeName.substring(storeName.indexOf('-') + 1, storeName.lastIndexOf('-')));
+    }
+
+    static long storeSegment(String storeName) {
+        return Long.parseLong(storeName.substring(storeName.lastIndexOf('-') + 1, storeName.length() - STORE_EXTENSION.length()));
+    }
+
+    static long snapshotPosition(String snapshotName) {
+        int end = snapshotName.length() - SNAPSHOT_EXTENSION.length();
+        return Long.parseUnsignedLong(snapshotName.substring(snapshotName.lastIndexOf('-', end) + 1, end), 16);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.replay.ReplayRecord;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.example.orderbook.journal.JournalFormat.*;
+
+/**
+ * Runs one shard's journal back into its instruments on recovery, from the position of the snapshot
+ * they were restored from: the prints, so the tape and the charts carry on from the snapshot's, and
+ * the book commands. Segments are memory-mapped and read in place, and those before the snapshot's
+ * are not read at all.
+ * <p>
+ * The journal ends at the first empty or unreadable record; segments after that are stale and are
+ * deleted, so appending can carry on from {@link #endPosition()}.
+ */
+final class JournalReader {
+
+    private final Path directory;
+    private final int shard;
+    private final ReplayRecord book = new ReplayRecord();
+    // Journal venue id to this process's
+    private int[] venues = new int[16];
+
+    private long endPosition = JournalFormat.position(0, 0);
+    private int lastReplayTime = TimeOfDay.UNKNOWN;
+    private long recordCount;
+    private long commandCount;
+
+    JournalReader(Path directory, int shard) {
+        this.directory = directory;
+        this.shard = shard;
+    }
+
+    /** {@code targets} is indexed by instrument id; ids without a target are skipped. */
+    void replay(JournalTarget[] targets, JournalSnapshots.Restored snapshot) throws IOException {
+        venues = Arrays.copyOf(snapshot.venues(), Math.max(venues.length, snapshot.venues().length));
+        lastReplayTime = snapshot.replayTime();
+        int segment = segment(snapshot.position());
+        int start = Math.max(offset(snapshot.position()), SEGMENT_HEADER_BYTES);
+        endPosition = JournalFormat.position(segment, 0);
+        if (!Files.exists(directory.resolve(segmentName(shard, segment))) && hasSegments()) {
+            // The segments before this one went with the snapshots taken on them
+            throw new IOException("Journal of shard " + shard + " cannot be recovered without its snapshots");
+        }
+        while (true) {
+            Path file = directory.resolve(segmentName(shard, segment));
+            if (!Files.exists(file)) {
+                break;
+            }
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < SEGMENT_HEADER_BYTES || buffer.getInt(0) != SEGMENT_MAGIC
+                    || buffer.getShort(6) != shard || buffer.getInt(8) != segment) {
+                break;
+            }
+            int offset = start;
+            boolean complete = false;
+            while (offset + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    // Either the writer moved on to the next segment here, or the journal ends
+                    complete = true;
+                    break;
+                }
+                if (length < RECORD_HEADER_BYTES || offset + length > buffer.capacity()) {
+                    break;
+                }
+                apply(buffer, offset, targets);
+                offset += length;
+            }
+            if (offset + RECORD_HEADER_BYTES > buffer.capacity()) {
+                complete = true;
+            }
+            endPosition = JournalFormat.position(segment, offset);
+            if (!complete) {
+                break;
+            }
+            segment++;
+            start = SEGMENT_HEADER_BYTES;
+        }
+        deleteFrom(segment + 1);
+    }
+
+    /** Where appending carries on. */
+    long endPosition() {
+        return endPosition;
+    }
+
+    /** Time of the last replayed event in the journal, or {@link TimeOfDay#UNKNOWN}. */
+    int lastReplayTime() {
+        return lastReplayTime;
+    }
+
+    long recordCount() {
+        return recordCount;
+    }
+
+    /** Book commands run again. */
+    long commandCount() {
+        return commandCount;
+    }
+
+    private void apply(MappedByteBuffer buffer, int offset, JournalTarget[] targets) {
+        int type = buffer.get(offset + 4);
+        int instrument = buffer.getInt(offset + 5);
+        int at = offset + RECORD_HEADER_BYTES;
+        recordCount++;
+        if (type == VENUE) {
+            int id = buffer.getShort(at) & 0xFFFF;
+            char[] name = new char[buffer.get(at + 2) & 0xFF];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = (char) (buffer.get(at + 3 + i) & 0xFF);
+            }
+            if (id >= venues.length) {
+                venues = Arrays.copyOf(venues, Math.max(id + 1, venues.length * 2));
+            }
+            venues[id] = Venues.intern(new String(name));
+            return;
+        }
+        if (type == SESSION || type == BOOK) {
+            lastReplayTime = buffer.getInt(at);
+        }
+        JournalTarget target = instrument >= 0 && instrument < targets.length ? targets[instrument] : null;
+        if (target == null) {
+            return;
+        }
+        switch (type) {
+            case PRINT -> target.recoverPrint(buffer.getLong(at + 1), buffer.getLong(at + 9), buffer.get(at),
+                    buffer.get(at + 17), buffer.getInt(at + 18));
+            case SESSION -> target.recoverSession(buffer.getInt(at));
+            default -> command(buffer, type, at, target);
+        }
+    }
+
+    private void command(MappedByteBuffer buffer, int type, int at, JournalTarget target) {
+        commandCount++;
+        switch (type) {
+            case BOOK -> {
+                book.reset(ReplayRecord.BOOK, buffer.getInt(at));
+                int count = buffer.getInt(at + 4);
+                at += BOOK_BYTES;
+                for (int i = 0; i < count; i++, at += BOOK_ENTRY_BYTES) {
+                    book.add(buffer.get(at), buffer.getLong(at + 1), buffer.getLong(at + 9),
+                            venue(buffer.getShort(at + 17)), buffer.getInt(at + 19));
+                }
+                target.recoverBook(book);
+            }
+            case SUBMIT -> target.recoverSubmit(buffer.get(at), buffer.get(at + 1), buffer.getLong(at + 2),
+                    buffer.getLong(at + 10), venue(buffer.getShort(at + 18)), buffer.getInt(at + 20));
+            case CANCEL -> target.recoverCancel(buffer.getLong(at));
+            case FLOW_SUBMIT -> target.recoverFlowSubmit(buffer.get(at), buffer.get(at + 1), buffer.getLong(at + 2),
+                    buffer.getLong(at + 10), venue(buffer.getShort(at + 18)), buffer.getInt(at + 20));
+            case FLOW_CANCEL -> target.recoverFlowCancel(buffer.getLong(at));
+            case REPLACE -> target.recoverReplace(buffer.getLong(at), buffer.getLong(at + 8), buffer.getLong(at + 16),
+                    buffer.getInt(at + 24));
+            default -> commandCount--;
+        }
+    }
+
+    private int venue(short id) {
+        return venues[id & 0xFFFF];
+    }
+
+    private boolean hasSegments() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-" + shard + "-*" + SEGMENT_EXTENSION)) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    private void deleteFrom(int segment) throws IOException {
+        while (Files.deleteIfExists(directory.resolve(segmentName(shard, segment)))) {
+            segment++;
+        }
+    }
+}
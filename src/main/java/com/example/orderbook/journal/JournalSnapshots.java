@@ -0,0 +1,551 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.store.TradeHistory;
+import com.example.orderbook.store.TradeStore;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.example.orderbook.journal.JournalFormat.*;
+
+/**
+ * Compact snapshots of a shard's instruments, each tied to the journal position it was taken at:
+ * their books, and everything the prints before it built up, so that recovery only runs the journal
+ * from there on. A snapshot is captured on the shard's thread, between two events, and streamed to
+ * disk elsewhere; it only appears under its final name once complete.
+ * <p>
+ * The trade store, much the largest part, stays out of the snapshot: it is only referenced at the
+ * capture, through its immutable history, and the snapshot holds the prints of its open segment
+ * alone. Its full segments never change again, so each is written to a file of its own by the first
+ * snapshot that refers to it, and a snapshot stays the size of the books however long the day.
+ * <p>
+ * A snapshot ends with a checksum, and is decoded and checked whole, along with the store segments it
+ * refers to, before anything is restored from it: one that cannot be read leaves the instruments
+ * untouched, and the one before it is tried. Journal segments and store segments that only older
+ * snapshots than the oldest kept refer to are deleted as snapshots are stored.
+ */
+final class JournalSnapshots {
+
+    // Older ones are kept in case the latest cannot be read
+    private static final int KEPT = 2;
+
+    private JournalSnapshots() {
+    }
+
+    /** Captures a shard's instruments as of a journal position; runs on the shard's thread. */
+    static Capture capture(int shard, long position, int replayTime, List<? extends JournalTarget> targets) {
+        int venueCount = Venues.count();
+        int headBytes = 4 + 2 + 2 + 8 + 4 + 2;
+        for (int venue = 0; venue < venueCount; venue++) {
+            headBytes += 1 + Venues.name(venue).length();
+        }
+        ByteBuffer head = ByteBuffer.allocate(headBytes).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(SNAPSHOT_MAGIC).putShort((short) VERSION).putShort((short) shard).putLong(position).putInt(replayTime);
+        head.putShort((short) venueCount);
+        for (int venue = 0; venue < venueCount; venue++) {
+            String name = Venues.name(venue);
+            head.put((byte) name.length());
+            for (int i = 0; i < name.length(); i++) {
+                head.put((byte) name.charAt(i));
+            }
+        }
+
+        int bytes = 4;
+        for (JournalTarget target : targets) {
+            bytes += 4 + 8 + 4 + 4 + target.getFeedOrderIds().length * 8 + 4 + target.getFlowOrderIds().length * 8 + 4
+                    + target.getOrderBook().orderCount() * SNAPSHOT_ORDER_BYTES + 4 + target.printStateBytes();
+        }
+        ByteBuffer out = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        Capture capture = new Capture(head.array(), out.array(), targets.size());
+        out.putInt(targets.size());
+        for (int n = 0; n < targets.size(); n++) {
+            JournalTarget target = targets.get(n);
+            out.putInt(target.getId()).putLong(target.getNextOrderId()).putInt(target.getBookTimestamp());
+            long[] feedOrders = target.getFeedOrderIds();
+            out.putInt(feedOrders.length);
+            for (long orderId : feedOrders) {
+                out.putLong(orderId);
+            }
+            long[] flowOrders = target.getFlowOrderIds();
+            out.putInt(flowOrders.length);
+            for (long orderId : flowOrders) {
+                out.putLong(orderId);
+            }
+            OrderBook book = target.getOrderBook();
+            out.putInt(book.orderCount());
+            for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+                for (int level = 0; level < book.depth(side); level++) {
+                    for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                        out.put((byte) side).putLong(book.orderId(order)).putLong(book.orderPrice(order))
+                                .putLong(book.orderQuantity(order)).putShort((short) book.orderVenue(order))
+                                .putInt(book.orderTime(order));
+                    }
+                }
+            }
+            out.putInt(target.printStateBytes());
+            target.writePrintState(out);
+
+            TradeStore store = target.getTradeStore();
+            TradeHistory trades = store.history();
+            capture.ids[n] = target.getId();
+            capture.trades[n] = trades;
+            capture.firstSegments[n] = store.firstSequence();
+            capture.sealedSegments[n] = Math.max(0, trades.segmentCount() - 1);
+            // Later appends must not show
+            capture.openCounts[n] = (int) (trades.size() - (long) capture.sealedSegments[n] * TradeStore.SEGMENT_SIZE);
+        }
+        return capture;
+    }
+
+    /**
+     * Writes a captured snapshot under its final name, after the store segments it is the first to
+     * refer to; runs off the shard's thread. Then drops the older snapshots beyond those kept, and the
+     * journal and store segments that only they referred to.
+     */
+    static void store(Path directory, int shard, long position, Capture capture) throws IOException {
+        // Holds a store segment, or an open one with its entry
+        ByteBuffer buffer = ByteBuffer.allocate(STORE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int n = 0; n < capture.ids.length; n++) {
+            storeSegments(directory, capture, n, buffer);
+        }
+
+        Path file = directory.resolve(snapshotName(shard, position));
+        Path partial = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            write(channel, ByteBuffer.wrap(capture.head), crc);
+            buffer.putInt(capture.ids.length);
+            drain(channel, buffer, crc);
+            for (int n = 0; n < capture.ids.length; n++) {
+                int open = capture.openCounts[n];
+                buffer.putInt(capture.ids[n]).putLong(capture.firstSegments[n]).putInt(capture.sealedSegments[n]).putInt(open);
+                putPrints(buffer, capture.trades[n], (long) capture.sealedSegments[n] * TradeStore.SEGMENT_SIZE, open);
+                drain(channel, buffer, crc);
+            }
+            write(channel, ByteBuffer.wrap(capture.books), crc);
+            buffer.putInt((int) crc.getValue());
+            drain(channel, buffer, null);
+            // Journal segments are deleted on the strength of it
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> snapshots = list(directory, shard);
+        for (int i = KEPT; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        if (snapshots.size() >= KEPT) {
+            Path oldest = snapshots.get(KEPT - 1);
+            // Segments before this were deleted along with earlier snapshots
+            int segment = segment(snapshotPosition(oldest.getFileName().toString())) - 1;
+            while (segment >= 0 && Files.deleteIfExists(directory.resolve(segmentName(shard, segment)))) {
+                segment--;
+            }
+            deleteStoreSegments(directory, shard, oldest);
+        }
+    }
+
+    /**
+     * Restores the latest readable snapshot of a shard into its instruments, indexed by id, and
+     * returns where the journal is to be run from; {@link Restored#NONE} when there is none, so the
+     * whole journal is run again.
+     */
+    static Restored restoreLatest(Path directory, int shard, JournalTarget[] targets) throws IOException {
+        for (Path file : list(directory, shard)) {
+            // Small: the trade store is read from its own segments
+            Snapshot snapshot = decode(Files.readAllBytes(file), shard, targets);
+            if (snapshot != null && !Files.exists(directory.resolve(segmentName(shard, segment(snapshot.position))))) {
+                // Taken on a journal that is gone
+                continue;
+            }
+            if (snapshot == null || !snapshot.storeReadable(directory)) {
+                System.out.println("Skipping unreadable journal snapshot " + file.getFileName());
+                continue;
+            }
+            return new Restored(snapshot.position, snapshot.replayTime, snapshot.restore(directory, targets));
+        }
+        return Restored.NONE;
+    }
+
+    // Writes the full store segments of an instrument not yet on disk. They are written in order, and
+    // only deleted from the oldest on, so every one before the last on disk is there as well
+    private static void storeSegments(Path directory, Capture capture, int n, ByteBuffer buffer) throws IOException {
+        int id = capture.ids[n];
+        long first = capture.firstSegments[n];
+        int stored = capture.sealedSegments[n];
+        while (stored > 0 && !Files.exists(directory.resolve(storeName(id, first + stored - 1)))) {
+            stored--;
+        }
+        for (int segment = stored; segment < capture.sealedSegments[n]; segment++) {
+            Path file = directory.resolve(storeName(id, first + segment));
+            Path partial = directory.resolve(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer.putInt(STORE_MAGIC).putShort((short) VERSION).putInt(id).putLong(first + segment);
+                putPrints(buffer, capture.trades[n], (long) segment * TradeStore.SEGMENT_SIZE, TradeStore.SEGMENT_SIZE);
+                buffer.putInt(checksum(buffer.array(), buffer.position()));
+                drain(channel, buffer, null);
+                channel.force(true);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Deletes, for each instrument of the oldest snapshot kept, the store segments before its first;
+    // nothing when that snapshot cannot be read
+    private static void deleteStoreSegments(Path directory, int shard, Path oldest) throws IOException {
+        Map<Integer, Long> firstSegments = new HashMap<>();
+        ByteBuffer in = open(Files.readAllBytes(oldest), shard);
+        if (in == null) {
+            return;
+        }
+        try {
+            in.getLong();
+            in.getInt();
+            venues(in);
+            int stores = count(in, 4 + 8 + 4 + 4);
+            for (int n = 0; n < stores; n++) {
+                int id = in.getInt();
+                firstSegments.put(id, in.getLong());
+                in.getInt();
+                section(in, count(in, STORED_PRINT_BYTES) * STORED_PRINT_BYTES);
+            }
+        } catch (BufferUnderflowException e) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "trades-*" + STORE_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Long first = firstSegments.get(storeInstrument(name));
+                if (first != null && storeSegment(name) < first) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // Decodes and checks a whole snapshot; null when it is corrupt, truncated or not for these instruments
+    private static Snapshot decode(byte[] bytes, int shard, JournalTarget[] targets) {
+        ByteBuffer in = open(bytes, shard);
+        if (in == null) {
+            return null;
+        }
+        try {
+            long position = in.getLong();
+            int replayTime = in.getInt();
+            String[] venues = venues(in);
+            // Both by instrument id
+            Stored[] stores = new Stored[targets.length];
+            Books[] books = new Books[targets.length];
+            int storeCount = count(in, 4 + 8 + 4 + 4);
+            for (int n = 0; n < storeCount; n++) {
+                int id = in.getInt();
+                if (id < 0 || id >= targets.length || targets[id] == null || stores[id] != null) {
+                    return null;
+                }
+                Stored store = new Stored(in.getLong(), in.getInt(), count(in, STORED_PRINT_BYTES));
+                if (store.sealedSegments < 0 || store.openCount > TradeStore.SEGMENT_SIZE) {
+                    return null;
+                }
+                store.open = section(in, store.openCount * STORED_PRINT_BYTES);
+                stores[id] = store;
+            }
+            int instruments = count(in, 4 + 8 + 4 + 4 + 4 + 4 + 4);
+            for (int n = 0; n < instruments; n++) {
+                int id = in.getInt();
+                if (id < 0 || id >= targets.length || stores[id] == null || books[id] != null) {
+                    return null;
+                }
+                Books instrument = new Books(in.getLong(), in.getInt(), new long[count(in, 8)]);
+                for (int i = 0; i < instrument.feedOrders.length; i++) {
+                    instrument.feedOrders[i] = in.getLong();
+                }
+                instrument.flowOrders = new long[count(in, 8)];
+                for (int i = 0; i < instrument.flowOrders.length; i++) {
+                    instrument.flowOrders[i] = in.getLong();
+                }
+                instrument.orders(count(in, SNAPSHOT_ORDER_BYTES));
+                for (int i = 0; i < instrument.sides.length; i++) {
+                    instrument.sides[i] = in.get();
+                    instrument.ids[i] = in.getLong();
+                    instrument.prices[i] = in.getLong();
+                    instrument.quantities[i] = in.getLong();
+                    instrument.venues[i] = in.getShort() & 0xFFFF;
+                    instrument.times[i] = in.getInt();
+                    if ((instrument.sides[i] != OrderBook.BID && instrument.sides[i] != OrderBook.ASK)
+                            || instrument.venues[i] >= venues.length) {
+                        return null;
+                    }
+                }
+                instrument.printState = section(in, count(in, 1));
+                books[id] = instrument;
+            }
+            return in.hasRemaining() || instruments != storeCount ? null : new Snapshot(position, replayTime, venues, stores, books);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    // A snapshot checked and positioned after its shard, the checksum left out; null when it is not one of this shard's
+    private static ByteBuffer open(byte[] bytes, int shard) {
+        if (bytes.length < 4) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt(bytes.length - 4) != checksum(bytes, bytes.length - 4)) {
+            return null;
+        }
+        in.limit(bytes.length - 4);
+        try {
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getShort() != VERSION || in.getShort() != shard) {
+                return null;
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return in;
+    }
+
+    private static String[] venues(ByteBuffer in) {
+        String[] venues = new String[in.getShort() & 0xFFFF];
+        for (int venue = 0; venue < venues.length; venue++) {
+            char[] name = new char[in.get() & 0xFF];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = (char) (in.get() & 0xFF);
+            }
+            venues[venue] = new String(name);
+        }
+        return venues;
+    }
+
+    // Reads a store segment into the buffer, positioned at its first print; false when it is missing,
+    // corrupt or not the one expected
+    private static boolean readStoreSegment(Path directory, int id, long segment, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(directory.resolve(storeName(id, segment)), StandardOpenOption.READ)) {
+            if (channel.size() != STORE_BYTES) {
+                return false;
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Until the buffer, exactly a segment, is full
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (buffer.hasRemaining() || buffer.getInt(STORE_BYTES - 4) != checksum(buffer.array(), STORE_BYTES - 4)) {
+            return false;
+        }
+        buffer.flip();
+        return buffer.getInt() == STORE_MAGIC && buffer.getShort() == VERSION && buffer.getInt() == id
+                && buffer.getLong() == segment;
+    }
+
+    private static void putPrints(ByteBuffer out, TradeHistory trades, long from, int count) {
+        for (long position = from; position < from + count; position++) {
+            out.putLong(trades.price(position)).putLong(trades.quantity(position))
+                    .put((byte) trades.aggressorSide(position)).put((byte) trades.type(position))
+                    .putInt(trades.time(position));
+        }
+    }
+
+    private static void restoreTrades(JournalTarget target, ByteBuffer in, int count) {
+        for (int i = 0; i < count; i++) {
+            target.restoreTrade(in.getLong(), in.getLong(), in.get(), in.get(), in.getInt());
+        }
+    }
+
+    // Writes what has been put in the buffer, adding it to the checksum, and empties it for more
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        write(channel, buffer, crc);
+        buffer.clear();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        if (crc != null) {
+            crc.update(buffer.array(), buffer.position(), buffer.remaining());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // A count of items of the given size, checked against the bytes left so that a corrupt one cannot allocate wildly
+    private static int count(ByteBuffer in, int itemBytes) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * itemBytes > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    // The next bytes of a snapshot as a buffer of their own, read when restoring
+    private static ByteBuffer section(ByteBuffer in, int bytes) {
+        ByteBuffer section = in.slice(in.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(in.position() + bytes);
+        return section;
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    // A shard's snapshots, latest first
+    private static List<Path> list(Path directory, int shard) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-" + shard + "-*" + SNAPSHOT_EXTENSION)) {
+            files.forEach(snapshots::add);
+        }
+        snapshots.sort(Comparator.comparing((Path file) -> file.getFileName().toString()).reversed());
+        return snapshots;
+    }
+
+    /**
+     * A snapshot as captured on its shard's thread: the header and the books encoded, the trade
+     * stores by reference, with the segments and prints of each that the snapshot covers.
+     */
+    static final class Capture {
+        private final byte[] head;
+        private final byte[] books;
+        private final int[] ids;
+        private final TradeHistory[] trades;
+        private final long[] firstSegments;
+        private final int[] sealedSegments;
+        private final int[] openCounts;
+
+        private Capture(byte[] head, byte[] books, int instruments) {
+            this.head = head;
+            this.books = books;
+            this.ids = new int[instruments];
+            this.trades = new TradeHistory[instruments];
+            this.firstSegments = new long[instruments];
+            this.sealedSegments = new int[instruments];
+            this.openCounts = new int[instruments];
+        }
+    }
+
+    /**
+     * Where a restored snapshot leaves the journal: the position to run it from, the replay time
+     * reached, and the ids this process gives the journal's venues.
+     */
+    record Restored(long position, int replayTime, int[] venues) {
+
+        static final Restored NONE = new Restored(0, TimeOfDay.UNKNOWN, new int[0]);
+    }
+
+    // A decoded snapshot, restored only once all of it, store segments included, has been checked
+    private record Snapshot(long position, int replayTime, String[] venues, Stored[] stores, Books[] books) {
+
+        boolean storeReadable(Path directory) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(STORE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int id = 0; id < stores.length; id++) {
+                Stored store = stores[id];
+                for (int segment = 0; store != null && segment < store.sealedSegments; segment++) {
+                    if (!readStoreSegment(directory, id, store.firstSegment + segment, buffer)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Returns the ids given to the snapshot's venues
+        int[] restore(Path directory, JournalTarget[] targets) throws IOException {
+            int[] ids = new int[venues.length];
+            for (int venue = 0; venue < venues.length; venue++) {
+                ids[venue] = Venues.intern(venues[venue]);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(STORE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int id = 0; id < books.length; id++) {
+                Books instrument = books[id];
+                if (instrument == null) {
+                    continue;
+                }
+                JournalTarget target = targets[id];
+                target.restore(instrument.nextOrderId, instrument.bookTimestamp, instrument.feedOrders, instrument.flowOrders);
+                for (int i = 0; i < instrument.sides.length; i++) {
+                    target.restoreOrder(instrument.sides[i], instrument.ids[i], instrument.prices[i],
+                            instrument.quantities[i], ids[instrument.venues[i]], instrument.times[i]);
+                }
+                target.restorePrintState(instrument.printState);
+                Stored store = stores[id];
+                // Numbered as before, so the segments already on disk are not written again
+                target.getTradeStore().resume(store.firstSegment);
+                for (int segment = 0; segment < store.sealedSegments; segment++) {
+                    if (!readStoreSegment(directory, id, store.firstSegment + segment, buffer)) {
+                        throw new IOException("Trade store segment " + storeName(id, store.firstSegment + segment)
+                                + " changed while it was being restored");
+                    }
+                    restoreTrades(target, buffer, TradeStore.SEGMENT_SIZE);
+                }
+                restoreTrades(target, store.open, store.openCount);
+            }
+            return ids;
+        }
+    }
+
+    // One instrument's trade store in a snapshot: its full segments on disk, and the open one's prints
+    private static final class Stored {
+        final long firstSegment;
+        final int sealedSegments;
+        final int openCount;
+        ByteBuffer open;
+
+        Stored(long firstSegment, int sealedSegments, int openCount) {
+            this.firstSegment = firstSegment;
+            this.sealedSegments = sealedSegments;
+            this.openCount = openCount;
+        }
+    }
+
+    // One instrument's part of a snapshot, its orders in columns
+    private static final class Books {
+        final long nextOrderId;
+        final int bookTimestamp;
+        final long[] feedOrders;
+        long[] flowOrders;
+        byte[] sides;
+        long[] ids;
+        long[] prices;
+        long[] quantities;
+        int[] venues;
+        int[] times;
+        ByteBuffer printState;
+
+        Books(long nextOrderId, int bookTimestamp, long[] feedOrders) {
+            this.nextOrderId = nextOrderId;
+            this.bookTimestamp = bookTimestamp;
+            this.feedOrders = feedOrders;
+        }
+
+        void orders(int count) {
+            sides = new byte[count];
+            ids = new long[count];
+            prices = new long[count];
+            quantities = new long[count];
+            venues = new int[count];
+            times = new int[count];
+        }
+    }
+}
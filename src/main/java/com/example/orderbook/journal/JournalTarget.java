@@ -0,0 +1,77 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.replay.ReplayRecord;
+import com.example.orderbook.store.TradeStore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What the journal records and recovers for an instrument: the books, and what the prints built up,
+ * that it snapshots and restores, and the journaled events it runs again. Called on the instrument's shard thread only, and the
+ * {@code recover*} calls only before anything else has changed it.
+ */
+public interface JournalTarget {
+
+    int getId();
+
+    OrderBook getOrderBook();
+
+    /** The id the matching engine gives the next order. */
+    long getNextOrderId();
+
+    int getBookTimestamp();
+
+    /** Resting orders that came from the replayed book, to be replaced by the next one. */
+    long[] getFeedOrderIds();
+
+    /** Resting orders that came from the generated order flow, in the order it picks its cancels from. */
+    long[] getFlowOrderIds();
+
+    /** Restores the state that goes with the orders of a snapshot; the book is restored with {@link #restoreOrder}. */
+    void restore(long nextOrderId, int bookTimestamp, long[] feedOrderIds, long[] flowOrderIds);
+
+    /** Puts a snapshot order back at the end of its level's queue, under its own id. */
+    void restoreOrder(int side, long orderId, long price, long quantity, int venue, int time);
+
+    /** Bytes {@link #writePrintState} takes. */
+    int printStateBytes();
+
+    /** Writes what the prints built up besides the trade store: the tape, the charts, the candles and the traded rates. */
+    void writePrintState(ByteBuffer out);
+
+    /** Restores what {@link #writePrintState} wrote. */
+    void restorePrintState(ByteBuffer in);
+
+    /**
+     * Every print of the session; snapshots read its history off the shard's thread, and number a
+     * restored one as it was before the prints are put back.
+     */
+    TradeStore getTradeStore();
+
+    /** Puts a snapshot or store segment print back at the end of the trade store. */
+    void restoreTrade(long price, long quantity, int aggressorSide, int type, int time);
+
+    // Records after the snapshot
+
+    /** A journaled print: only the tape and the charts move, the books are restored separately. */
+    void recoverPrint(long price, long quantity, int aggressorSide, int type, int time);
+
+    /** A journaled batch of replayed prints started at this time. */
+    void recoverSession(int time);
+
+    // Commands: the books move, but their prints were journaled on their own
+
+    void recoverBook(ReplayRecord book);
+
+    void recoverSubmit(int side, int type, long price, long quantity, int venue, int time);
+
+    void recoverCancel(long orderId);
+
+    /** A generated order: as a submit, and the flow takes it back if it rests. */
+    void recoverFlowSubmit(int side, int type, long price, long quantity, int venue, int time);
+
+    void recoverFlowCancel(long orderId);
+
+    void recoverReplace(long orderId, long price, long quantity, int time);
+}
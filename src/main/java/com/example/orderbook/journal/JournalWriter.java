@@ -0,0 +1,265 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.replay.ReplayRecord;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static com.example.orderbook.journal.JournalFormat.*;
+
+/**
+ * Appends one shard's events to its journal. Records are written straight into a memory-mapped
+ * segment, so appending is a few stores into the page cache: no allocation and no system call, except
+ * when a segment fills up and the next one is mapped. Getting the pages to disk is left to
+ * {@link #flush}, which the journal's flusher calls in batches from its own thread; a crash of the
+ * process loses nothing, a crash of the machine at most what came after the last flush.
+ * <p>
+ * Appends are made on the shard's writer thread only.
+ */
+public final class JournalWriter {
+
+    private final Path directory;
+    private final int shard;
+    private final int segmentBytes;
+
+    // Written by the shard thread, read by the flusher
+    private volatile Segment current;
+    // Venue ids declared in this journal since it was opened
+    private int declaredVenues;
+
+    // Flusher state
+    private Segment flushing;
+    private int flushed;
+
+    private long recordCount;
+    // Time of the last replayed event journaled, carried by snapshots
+    private int replayTime;
+
+    /**
+     * Opens the journal to append at {@code position}, where recovery found its end, after the replay
+     * time recovery reached.
+     */
+    JournalWriter(Path directory, int shard, int segmentBytes, long position, int replayTime) throws IOException {
+        this.directory = directory;
+        this.shard = shard;
+        this.segmentBytes = segmentBytes;
+        this.replayTime = replayTime;
+        this.current = open(segment(position), offset(position), offset(position) <= SEGMENT_HEADER_BYTES);
+        this.flushing = current;
+        this.flushed = current.written;
+    }
+
+    public void print(int instrument, long price, long quantity, int aggressorSide, int type, int time) {
+        int at = begin(instrument, PRINT, PRINT_BYTES);
+        MappedByteBuffer buffer = current.buffer;
+        buffer.put(at, (byte) aggressorSide);
+        buffer.putLong(at + 1, price);
+        buffer.putLong(at + 9, quantity);
+        buffer.put(at + 17, (byte) type);
+        buffer.putInt(at + 18, time);
+        commit(PRINT_BYTES);
+    }
+
+    public void session(int instrument, int time) {
+        int at = begin(instrument, SESSION, SESSION_BYTES);
+        current.buffer.putInt(at, time);
+        commit(SESSION_BYTES);
+        replayTime = time;
+    }
+
+    public void book(int instrument, ReplayRecord book) {
+        for (int i = 0; i < book.size(); i++) {
+            declare(book.venue(i));
+        }
+        int bytes = BOOK_BYTES + book.size() * BOOK_ENTRY_BYTES;
+        int at = begin(instrument, BOOK, bytes);
+        MappedByteBuffer buffer = current.buffer;
+        buffer.putInt(at, book.time());
+        buffer.putInt(at + 4, book.size());
+        at += BOOK_BYTES;
+        for (int i = 0; i < book.size(); i++, at += BOOK_ENTRY_BYTES) {
+            buffer.put(at, (byte) book.side(i));
+            buffer.putLong(at + 1, book.price(i));
+            buffer.putLong(at + 9, book.quantity(i));
+            buffer.putShort(at + 17, (short) book.venue(i));
+            buffer.putInt(at + 19, book.entryTime(i));
+        }
+        commit(bytes);
+        replayTime = book.time();
+    }
+
+    public void submit(int instrument, int side, int type, long price, long quantity, int venue, int time) {
+        submit(SUBMIT, instrument, side, type, price, quantity, venue, time);
+    }
+
+    public void cancel(int instrument, long orderId) {
+        cancel(CANCEL, instrument, orderId);
+    }
+
+    /** A submit of the generated order flow. */
+    public void flowSubmit(int instrument, int side, int type, long price, long quantity, int venue, int time) {
+        submit(FLOW_SUBMIT, instrument, side, type, price, quantity, venue, time);
+    }
+
+    /** A cancel of the generated order flow. */
+    public void flowCancel(int instrument, long orderId) {
+        cancel(FLOW_CANCEL, instrument, orderId);
+    }
+
+    private void submit(int record, int instrument, int side, int type, long price, long quantity, int venue, int time) {
+        declare(venue);
+        int at = begin(instrument, record, SUBMIT_BYTES);
+        MappedByteBuffer buffer = current.buffer;
+        buffer.put(at, (byte) side);
+        buffer.put(at + 1, (byte) type);
+        buffer.putLong(at + 2, price);
+        buffer.putLong(at + 10, quantity);
+        buffer.putShort(at + 18, (short) venue);
+        buffer.putInt(at + 20, time);
+        commit(SUBMIT_BYTES);
+    }
+
+    private void cancel(int record, int instrument, long orderId) {
+        int at = begin(instrument, record, CANCEL_BYTES);
+        current.buffer.putLong(at, orderId);
+        commit(CANCEL_BYTES);
+    }
+
+    public void replace(int instrument, long orderId, long price, long quantity, int time) {
+        int at = begin(instrument, REPLACE, REPLACE_BYTES);
+        MappedByteBuffer buffer = current.buffer;
+        buffer.putLong(at, orderId);
+        buffer.putLong(at + 8, price);
+        buffer.putLong(at + 16, quantity);
+        buffer.putInt(at + 24, time);
+        commit(REPLACE_BYTES);
+    }
+
+    /** Where the next record goes; everything before it has been appended. */
+    public long position() {
+        Segment segment = current;
+        return JournalFormat.position(segment.index, segment.written);
+    }
+
+    public long recordCount() {
+        return recordCount;
+    }
+
+    /** Time of the last replayed event journaled, or {@link TimeOfDay#UNKNOWN}; read on the shard's thread. */
+    int replayTime() {
+        return replayTime;
+    }
+
+    /**
+     * Writes the pages appended since the previous flush to disk. Called by the flusher, and by the
+     * snapshot writer before it stores a snapshot, never from the shard's thread.
+     */
+    synchronized void flush() {
+        Segment segment = current;
+        if (flushing != segment) {
+            // The shard has moved on to a new segment: finish the previous one first
+            flushing.buffer.force();
+            flushing = segment;
+            flushed = 0;
+        }
+        int written = segment.written;
+        if (written > flushed) {
+            segment.buffer.force(flushed, written - flushed);
+            flushed = written;
+        }
+    }
+
+    // Declares a venue id before the first record using it
+    private void declare(int venue) {
+        while (declaredVenues <= venue) {
+            String name = Venues.name(declaredVenues);
+            int bytes = 2 + 1 + name.length();
+            int at = begin(-1, VENUE, bytes);
+            MappedByteBuffer buffer = current.buffer;
+            buffer.putShort(at, (short) declaredVenues);
+            buffer.put(at + 2, (byte) name.length());
+            for (int i = 0; i < name.length(); i++) {
+                buffer.put(at + 3 + i, (byte) name.charAt(i));
+            }
+            commit(bytes);
+            declaredVenues++;
+        }
+    }
+
+    // Reserves room for a record and writes its header but the length; returns where its payload goes
+    private int begin(int instrument, int type, int payloadBytes) {
+        int length = RECORD_HEADER_BYTES + payloadBytes;
+        if (current.written + length > current.buffer.capacity()) {
+            roll(length);
+        }
+        int at = current.written;
+        current.buffer.put(at + 4, (byte) type);
+        current.buffer.putInt(at + 5, instrument);
+        return at + RECORD_HEADER_BYTES;
+    }
+
+    // The length goes in last: until then, a reader sees the end of the journal there
+    private void commit(int payloadBytes) {
+        Segment segment = current;
+        int length = RECORD_HEADER_BYTES + payloadBytes;
+        segment.buffer.putInt(segment.written, length);
+        segment.written += length;
+        recordCount++;
+    }
+
+    private void roll(int length) {
+        if (SEGMENT_HEADER_BYTES + length > segmentBytes) {
+            throw new IllegalStateException("Journal record of " + length + " bytes does not fit a segment");
+        }
+        try {
+            current = open(current.index + 1, SEGMENT_HEADER_BYTES, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A fresh segment starts empty, even if a file of that name was left behind
+    private Segment open(int index, int offset, boolean fresh) throws IOException {
+        Path file = directory.resolve(segmentName(shard, index));
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (fresh) {
+                raf.setLength(0);
+            }
+            if (raf.length() < segmentBytes) {
+                // Extended with zeros, which read as the end of the journal
+                raf.setLength(segmentBytes);
+            }
+            // A segment written with another size setting keeps its own; the mapping outlives the channel
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (fresh) {
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putShort(4, (short) VERSION);
+            buffer.putShort(6, (short) shard);
+            buffer.putInt(8, index);
+            offset = SEGMENT_HEADER_BYTES;
+        }
+        return new Segment(index, buffer, offset);
+    }
+
+    private static final class Segment {
+        final int index;
+        final MappedByteBuffer buffer;
+        volatile int written;
+
+        Segment(int index, MappedByteBuffer buffer, int written) {
+            this.index = index;
+            this.buffer = buffer;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,998 @@
+package com.example.orderbook.market;
+
+import com.example.orderbook.book.BookAnalytics;
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.TopOfBook;
+import com.example.orderbook.book.VenueBooks;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.ExecutionReport;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.engine.TradeListener;
+import com.example.orderbook.engine.TradeTape;
+import com.example.orderbook.feed.BookDeltaTracker;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.feed.HeaderStats;
+import com.example.orderbook.feed.LevelDeltas;
+import com.example.orderbook.feed.MarketStats;
+import com.example.orderbook.journal.JournalTarget;
+import com.example.orderbook.journal.JournalWriter;
+import com.example.orderbook.replay.ReplayRecord;
+import com.example.orderbook.replay.ReplayTarget;
+import com.example.orderbook.series.BucketRange;
+import com.example.orderbook.series.CandleAggregator;
+import com.example.orderbook.series.CandleSeries;
+import com.example.orderbook.series.MinMaxBuckets;
+import com.example.orderbook.series.PriceSeries;
+import com.example.orderbook.store.TradeStore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One symbol's live book, matching engine and trade tape, and the topic payloads derived from them.
+ * <p>
+ * The recorded session is replayed through the matching engine as "feed" liquidity, so orders entered
+ * through the API rest and trade alongside them; the replay engine delivers its events as the replay
+ * clock reaches them.
+ * <p>
+ * The orderbook feed is sequenced: {@link #getOrderbookData()} is a full snapshot tagged with the
+ * last published sequence number and {@link #publishOrderbookDelta()} publishes the next one. The
+ * {@code publish*} methods advance a topic's published state, and report whether it moved, whenever
+ * the topic is published; the {@code get*Data} payloads and the state accessors used by the binary
+ * encoder then only read it. Changes are reported to an {@link InstrumentListener} as they happen.
+ * <p>
+ * Every print and every command that changes the book is appended to the shard's {@link JournalWriter}
+ * when there is one, and can be run again from it on recovery (see {@link JournalTarget}).
+ * <p>
+ * Not thread-safe: an instrument is only ever touched from its {@link MarketShard}'s writer thread,
+ * and payloads holding live book or tape views must be serialized there too.
+ */
+public final class Instrument implements ReplayTarget, JournalTarget {
+
+    private static final int TRADE_TAPE_CAPACITY = 1024;
+    private static final int TRADES_SHOWN = 10;
+    private static final int[] CANDLE_INTERVALS = { 1, 60, 300, 3600, CandleSeries.SESSION };
+    private static final int CANDLE_HISTORY = 512;
+    // Prints kept for historical queries: a busy full day
+    private static final int TRADE_STORE_CAPACITY = 8 << 20;
+    // Sized for hundreds of instruments per JVM; the tiers keep the rest of the day
+    private static final int SERIES_CAPACITY = 16_384;
+    private static final int[] SERIES_RESOLUTIONS = { 5, 60, 300 };
+    private static final int SERIES_BUCKETS = 1024;
+    private static final int CHART_RESOLUTION = 60;
+    // Consolidated levels broken down by venue in the venues topic
+    private static final int VENUE_LEVELS = 10;
+
+    private final int id;
+    private final String symbol;
+    private final MarketShard shard;
+    private final PriceHistory history;
+
+    // Live book and matching engine; every print, matched or replayed, lands on the trade tape
+    private final OrderBook orderBook = new OrderBook();
+    private final TradeTape tradeTape = new TradeTape(TRADE_TAPE_CAPACITY, TRADES_SHOWN);
+    private final PriceSeries priceSeries = new PriceSeries(SERIES_CAPACITY, SERIES_RESOLUTIONS, SERIES_BUCKETS);
+    private final CandleAggregator candles = new CandleAggregator(CANDLE_INTERVALS, CANDLE_HISTORY);
+    private final TradeStore tradeStore = new TradeStore(TRADE_STORE_CAPACITY);
+    private final BookAnalytics bookAnalytics = new BookAnalytics(orderBook);
+    private JournalWriter journal;
+    // Running journaled commands again: their prints are not journaled or recorded twice
+    private boolean recovering;
+    private final TradeListener analytics = (price, quantity, aggressorSide, type, time) -> {
+        tradeTape.onTrade(price, quantity, aggressorSide, type, time);
+        priceSeries.onTrade(price, quantity, aggressorSide, type, time);
+        candles.onTrade(price, quantity, aggressorSide, type, time);
+        tradeStore.onTrade(price, quantity, aggressorSide, type, time);
+        bookAnalytics.recordTrade(quantity, aggressorSide, time);
+    };
+    private final TradeListener prints = (price, quantity, aggressorSide, type, time) -> {
+        if (recovering) {
+            // Recovered from their own journal records
+            return;
+        }
+        if (journal != null) {
+            journal.print(getId(), price, quantity, aggressorSide, type, time);
+        }
+        analytics.onTrade(price, quantity, aggressorSide, type, time);
+    };
+    private final MatchingEngine matchingEngine = new MatchingEngine(orderBook, prints);
+
+    // Touch statistics are maintained by the book itself; derived views are rebuilt only when they move
+    private final TopOfBook top = orderBook.top();
+    private Map<String, Object> cachedYellowBar;
+    private long yellowBarVersion = -1;
+
+    // Sequenced delta feed: levels touched since the last delta, and the header sent with it
+    private final BookDeltaTracker deltaTracker = new BookDeltaTracker();
+    private final LevelDeltas levelDeltas = new LevelDeltas(orderBook);
+    private long orderbookSequence;
+    private final HeaderStats headerStats = new HeaderStats();
+    private boolean headerStatsReady;
+
+    // Per-venue ladders, kept up to date by the book, and their version as last published
+    private final VenueBooks venueBooks = new VenueBooks();
+    private long publishedVenuesVersion = -1;
+
+    // Microstructure signals, as of their last publication
+    private long publishedAnalyticsVersion = -1;
+
+    // Intraday chart: one tier of the price series, pushed incrementally
+    private final MinMaxBuckets chartTier = priceSeries.tier(CHART_RESOLUTION);
+    private final BucketRange timeseriesDelta = new BucketRange();
+    private final BucketRange timeseriesSnapshot = new BucketRange();
+    private long publishedSeriesVersion = -1;
+    private long publishedChartBuckets;
+
+    // Tape and OHLC panel state as of their last publication
+    private long publishedTrades;
+    private final MarketStats marketStats = new MarketStats();
+    private long publishedStatsTopVersion = -1;
+    private long publishedStatsTrades = -1;
+
+    // By topic: moves whenever the topic's snapshot would come out different, so encoded snapshots can be reused
+    private final long[] snapshotVersions = new long[Topics.COUNT];
+
+    private InstrumentListener listener;
+
+    // Replay state: resting ids of the current snapshot's orders, replaced by the next snapshot
+    private int bookTimestamp = TimeOfDay.UNKNOWN;
+    private int lastTradesTime = TimeOfDay.UNKNOWN;
+    private long[] feedOrderIds = new long[128];
+    private int feedOrderCount;
+    // Generated orders possibly still resting; filled ones are dropped when their cancel is rejected.
+    // Kept here rather than by the flow so that journal recovery hands them back to it
+    private long[] flowOrderIds = new long[256];
+    private int flowOrderCount;
+
+    Instrument(int id, String symbol, MarketShard shard, PriceHistory history) {
+        this.id = id;
+        this.symbol = symbol;
+        this.shard = shard;
+        this.history = history;
+        orderBook.addListener(deltaTracker);
+        orderBook.addListener(venueBooks);
+        orderBook.addListener(bookAnalytics);
+    }
+
+    /** Dense id, used as the instrument index on the binary wire. */
+    public int getId() {
+        return id;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public MarketShard getShard() {
+        return shard;
+    }
+
+    /** Set on the shard thread, before or while the instrument changes. */
+    public void setListener(InstrumentListener listener) {
+        this.listener = listener;
+    }
+
+    /** Set on the shard thread, once recovery is over; every change from then on is journaled. */
+    public void setJournal(JournalWriter journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Seeds the chart with the recorded intraday history up to {@code replayStart}, where the replayed
+     * trades take over; from then on it only moves with trades. Called once, before the replay starts.
+     */
+    public void startReplay(int replayStart) {
+        for (int i = 0; i < history.size() && history.time(i) < replayStart; i++) {
+            priceSeries.append(history.time(i), history.price(i));
+        }
+    }
+
+    /** Replaces the feed liquidity with a recorded snapshot, entered through the engine. */
+    @Override
+    public void onBook(ReplayRecord book) {
+        if (journal != null) {
+            journal.book(id, book);
+        }
+        for (int i = 0; i < feedOrderCount; i++) {
+            // Rejected harmlessly when the order has been filled in the meantime
+            matchingEngine.cancel(feedOrderIds[i]);
+        }
+        feedOrderCount = 0;
+        for (int i = 0; i < book.size(); i++) {
+            ExecutionReport report = matchingEngine.submit(book.side(i), MatchingEngine.LIMIT, book.price(i),
+                    book.quantity(i), book.venue(i), book.entryTime(i));
+            if (report.getRemainingQuantity() > 0) {
+                trackFeedOrder(report.getOrderId());
+            }
+        }
+        bookTimestamp = book.time();
+        // Feed orders may trade against resting API orders
+        changed(Topics.ALL);
+    }
+
+    /** Appends recorded prints to the tape, the chart and the candles. */
+    @Override
+    public void onTrades(ReplayRecord trades) {
+        if (journal != null) {
+            journal.session(id, trades.time());
+        }
+        startTrades(trades.time());
+        for (int i = 0; i < trades.size(); i++) {
+            prints.onTrade(trades.price(i), trades.quantity(i), trades.side(i), trades.tradeType(i), trades.entryTime(i));
+        }
+        changed(Topics.bit(Topics.TRADES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.TIMESERIES) | Topics.bit(Topics.ANALYTICS));
+    }
+
+    /**
+     * Full book snapshot, sent on subscribe and on resync. Its {@code seq} is the last published delta;
+     * changes not yet published are already included and will be re-sent, harmlessly, in the next delta.
+     */
+    public Map<String, Object> getOrderbookData() {
+        prepareSnapshot();
+        if (orderBook.orderCount() == 0) {
+            return Map.of("seq", orderbookSequence, "bids", List.of(), "asks", List.of(), "yellowBar", getEmptyYellowBar(), "headerInfo", getEmptyHeaderInfo());
+        }
+
+        // Sides are serialized straight from the book; yellow bar and header info are added alongside (OHLC data now sent separately)
+        Map<String, Object> response = new HashMap<>();
+        response.put("seq", orderbookSequence);
+        response.put("timestamp", TimeOfDay.format(bookTimestamp));
+        response.put("bids", orderBook.view(OrderBook.BID));
+        response.put("asks", orderBook.view(OrderBook.ASK));
+        response.put("yellowBar", calculateYellowBarData());
+        response.put("headerInfo", calculateHeaderInfo());
+        return response;
+    }
+
+    /**
+     * The book as seen through a {@link BookView}: the {@link BookView#FULL} view is the sequenced
+     * {@link #getOrderbookData() snapshot}, any other one a complete picture of its levels, sent whole
+     * on every book publication and tagged with the sequence number of the delta published alongside.
+     */
+    public Map<String, Object> getOrderbookData(BookView view) {
+        if (view.isFull()) {
+            return getOrderbookData();
+        }
+        prepareSnapshot();
+        Map<String, Object> response = new HashMap<>();
+        response.put("seq", orderbookSequence);
+        response.put("timestamp", TimeOfDay.format(bookTimestamp));
+        response.put("view", view.describe());
+        response.put("bids", orderBook.view(OrderBook.BID, view.depth(), view.aggregated(), view.venue()));
+        response.put("asks", orderBook.view(OrderBook.ASK, view.depth(), view.aggregated(), view.venue()));
+        response.put("yellowBar", calculateYellowBarData());
+        response.put("headerInfo", orderBook.orderCount() == 0 ? getEmptyHeaderInfo() : calculateHeaderInfo());
+        return response;
+    }
+
+    /**
+     * Publishes the levels changed since the previous delta under the next sequence number. Returns
+     * false, consuming no sequence number, when the book has not changed.
+     */
+    public boolean publishOrderbookDelta() {
+        if (deltaTracker.isEmpty()) {
+            return false;
+        }
+        deltaTracker.drainTo(levelDeltas, orderBook);
+        orderbookSequence++;
+        // Snapshots carry the sequence number
+        snapshotVersions[Topics.ORDERBOOK]++;
+        headerStats.update(top);
+        headerStatsReady = true;
+        return true;
+    }
+
+    /** JSON payload of the last published delta. */
+    public Map<String, Object> getOrderbookDelta() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("seq", orderbookSequence);
+        response.put("timestamp", TimeOfDay.format(bookTimestamp));
+        response.put("levels", levelDeltas);
+        response.put("yellowBar", calculateYellowBarData());
+        response.put("headerInfo", orderBook.orderCount() == 0 ? getEmptyHeaderInfo() : calculateHeaderInfo());
+        return response;
+    }
+
+    /** Marks the tape as published; returns false when nothing printed since the previous call. */
+    public boolean publishTrades() {
+        if (tradeTape.appended() == publishedTrades) {
+            return false;
+        }
+        publishedTrades = tradeTape.appended();
+        return true;
+    }
+
+    public Map<String, Object> getTradesData() {
+        return Map.of("trades", tradeTape);
+    }
+
+    /**
+     * Recomputes the OHLC panel values from the live book and the session candle. Returns false, leaving
+     * them as they were, when neither the touch nor the trades moved since the previous call.
+     */
+    public boolean publishMarketStats() {
+        if (top.version() == publishedStatsTopVersion && tradeTape.appended() == publishedStatsTrades) {
+            return false;
+        }
+        publishedStatsTopVersion = top.version();
+        publishedStatsTrades = tradeTape.appended();
+        marketStats.update(top, candles.series(CandleSeries.SESSION),
+                bookTimestamp != TimeOfDay.UNKNOWN ? bookTimestamp : TimeOfDay.now());
+        // Snapshots carry the published values
+        snapshotVersions[Topics.OHLC]++;
+        return true;
+    }
+
+    /**
+     * The most recent candles of an interval (seconds, 0 for the session), oldest first, open candle
+     * last. Returns null for an interval that is not aggregated.
+     */
+    public List<Map<String, Object>> getCandles(int interval, int limit) {
+        CandleSeries series = candles.series(interval);
+        if (series == null) {
+            return null;
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (long candle = Math.max(series.first(), series.count() - limit); candle < series.count(); candle++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("time", TimeOfDay.format(series.startTime(candle)));
+            entry.put("open", Prices.toDouble(series.open(candle)));
+            entry.put("high", Prices.toDouble(series.high(candle)));
+            entry.put("low", Prices.toDouble(series.low(candle)));
+            entry.put("close", Prices.toDouble(series.close(candle)));
+            entry.put("volume", series.volume(candle));
+            entry.put("trades", series.tradeCount(candle));
+            entry.put("vwap", series.vwapPrice(candle));
+            entry.put("closed", candle < series.count() - 1);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /** JSON payload of the last published OHLC values; formatting for display is done by the client. */
+    public Map<String, Object> getOhlcData() {
+        MarketStats stats = marketStats;
+        Map<String, Object> result = new HashMap<>();
+        result.put("time", stats.isAvailable() ? TimeOfDay.format(stats.time()) : "00:00:00");
+        result.put("lastChange", Double.isNaN(stats.lastChange()) ? null : stats.lastChange());
+        result.put("open", Prices.toDouble(stats.open()));
+        // Nothing older than the session is kept, so there is no yearly figure to show
+        result.put("year", null);
+        result.put("high", Prices.toDouble(stats.high()));
+        result.put("vwap", stats.vwap() / Prices.SCALE);
+        result.put("low", Prices.toDouble(stats.low()));
+        result.put("trades", stats.tradeCount());
+        result.put("volume", stats.volume());
+        result.put("spread", Prices.toDouble(stats.spread()));
+        result.put("spreadPercentage", stats.spreadPercent());
+        return result;
+    }
+
+    // Published state for the binary encoder
+
+    /** Marks the venue breakdown as published; returns false when no venue's book moved since the previous call. */
+    public boolean publishVenues() {
+        if (venueBooks.version() == publishedVenuesVersion) {
+            return false;
+        }
+        publishedVenuesVersion = venueBooks.version();
+        return true;
+    }
+
+    /**
+     * The book broken down by venue: each venue's best bid and offer, the consolidated best prices
+     * with the venues quoting them, and the size each venue shows at the top consolidated levels.
+     */
+    public Map<String, Object> getVenuesData() {
+        List<Map<String, Object>> venues = new ArrayList<>();
+        for (int venue = 0; venue < venueBooks.venueCount(); venue++) {
+            if (venueBooks.hasVenue(venue)) {
+                Map<String, Object> quote = new HashMap<>();
+                quote.put("venue", Venues.name(venue));
+                quote.put("bid", venueLevel(venue, OrderBook.BID));
+                quote.put("ask", venueLevel(venue, OrderBook.ASK));
+                venues.add(quote);
+            }
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", TimeOfDay.format(bookTimestamp));
+        response.put("venues", venues);
+        response.put("bestBid", consolidatedBest(OrderBook.BID));
+        response.put("bestAsk", consolidatedBest(OrderBook.ASK));
+        response.put("bids", venueDepth(OrderBook.BID));
+        response.put("asks", venueDepth(OrderBook.ASK));
+        return response;
+    }
+
+    /** Marks the analytics as published, recomputing them; returns false when neither the book nor the trades moved. */
+    public boolean publishAnalytics() {
+        if (bookAnalytics.version() == publishedAnalyticsVersion) {
+            return false;
+        }
+        publishedAnalyticsVersion = bookAnalytics.version();
+        bookAnalytics.update();
+        return true;
+    }
+
+    /**
+     * Microstructure signals at full depth: depth imbalance over the first 1, 5 and 10 levels and the
+     * whole book, the microprice, each side's cumulative depth curve, its resting order sizes in
+     * power-of-two buckets, and queue estimates for its first levels. Up to date with the book, as they
+     * are recomputed on demand when it moved.
+     */
+    public Map<String, Object> getAnalyticsData() {
+        bookAnalytics.update();
+        List<Map<String, Object>> imbalance = new ArrayList<>(BookAnalytics.IMBALANCE_LEVELS.length);
+        for (int i = 0; i < BookAnalytics.IMBALANCE_LEVELS.length; i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("levels", BookAnalytics.IMBALANCE_LEVELS[i] == 0 ? "all" : BookAnalytics.IMBALANCE_LEVELS[i]);
+            entry.put("imbalance", finite(bookAnalytics.imbalance(i)));
+            imbalance.add(entry);
+        }
+        double microprice = bookAnalytics.microprice();
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", TimeOfDay.format(bookTimestamp));
+        response.put("microprice", Double.isNaN(microprice) ? null : microprice / Prices.SCALE);
+        response.put("imbalance", imbalance);
+        response.put("bids", analyticsSide(OrderBook.BID));
+        response.put("asks", analyticsSide(OrderBook.ASK));
+        return response;
+    }
+
+    public VenueBooks getVenueBooks() {
+        return venueBooks;
+    }
+
+    public OrderBook getOrderBook() {
+        return orderBook;
+    }
+
+    /** Every print of the session, for historical queries; unlike the rest, safe to read from any thread. */
+    public TradeStore getTradeStore() {
+        return tradeStore;
+    }
+
+    public TradeTape getTradeTape() {
+        return tradeTape;
+    }
+
+    public LevelDeltas getLevelDeltas() {
+        return levelDeltas;
+    }
+
+    public HeaderStats getHeaderStats() {
+        return headerStats;
+    }
+
+    public MarketStats getMarketStats() {
+        return marketStats;
+    }
+
+    public long getOrderbookSequence() {
+        return orderbookSequence;
+    }
+
+    /**
+     * Version of a topic's snapshot: equal versions mean a snapshot taken now would be the same as
+     * one taken then, so its encoding can be sent again.
+     */
+    public long getSnapshotVersion(int topic) {
+        return snapshotVersions[topic];
+    }
+
+    public int getBookTimestamp() {
+        return bookTimestamp;
+    }
+
+    /** Gives the header a baseline before the first delta, so a snapshot can be encoded. */
+    public void prepareSnapshot() {
+        if (!headerStatsReady) {
+            headerStats.update(top);
+            headerStatsReady = true;
+        }
+    }
+
+    /**
+     * Chart buckets changed since the previous call: the previously open bucket, which may have
+     * moved, and any newer ones. Returns null when no price was added.
+     */
+    public Map<String, Object> publishTimeseries() {
+        if (priceSeries.appended() == publishedSeriesVersion) {
+            return null;
+        }
+        publishedSeriesVersion = priceSeries.appended();
+        long from = Math.max(chartTier.first(), publishedChartBuckets - 1);
+        publishedChartBuckets = chartTier.count();
+        return timeseriesPayload(timeseriesDelta.set(chartTier, from, chartTier.count()), false);
+    }
+
+    /** Every retained chart bucket, sent on subscribe and on resync. */
+    public Map<String, Object> getTimeseriesData() {
+        return timeseriesPayload(timeseriesSnapshot.set(chartTier, chartTier.first(), chartTier.count()), true);
+    }
+
+    /**
+     * Copy of the series at a kept bucket resolution (seconds), or of the raw trade prices thinned
+     * to {@code maxPoints} when the resolution is 0. Returns null for a resolution that is not kept.
+     */
+    public Map<String, Object> getTimeseries(int resolution, int maxPoints) {
+        List<Map<String, Object>> points = new ArrayList<>();
+        if (resolution == 0) {
+            int[] selected = new int[Math.max(3, maxPoints)];
+            int count = priceSeries.downsample(selected.length, selected);
+            for (int i = 0; i < count; i++) {
+                points.add(Map.of("time", TimeOfDay.format(priceSeries.time(selected[i])),
+                        "price", Prices.toDouble(priceSeries.price(selected[i]))));
+            }
+        } else {
+            MinMaxBuckets tier = priceSeries.tier(resolution);
+            if (tier == null) {
+                return null;
+            }
+            for (long bucket = tier.first(); bucket < tier.count(); bucket++) {
+                points.add(Map.of("time", TimeOfDay.format(tier.startTime(bucket)),
+                        "first", Prices.toDouble(tier.firstExtreme(bucket)),
+                        "second", Prices.toDouble(tier.secondExtreme(bucket))));
+            }
+        }
+        return Map.of("symbol", symbol, "resolution", resolution, "points", points);
+    }
+
+    private Map<String, Object> timeseriesPayload(BucketRange buckets, boolean full) {
+        return Map.of(
+                "symbol", symbol,
+                "resolution", chartTier.width(),
+                "full", full,
+                "from", buckets.getFrom(),
+                "buckets", buckets
+        );
+    }
+
+    // Order entry: each call runs one allocation-free command through the matching engine
+
+    public Map<String, Object> submitOrder(int side, int type, long price, long quantity, int venue) {
+        return toResponse(submit(side, type, price, quantity, venue));
+    }
+
+    public Map<String, Object> cancelOrder(long orderId) {
+        return toResponse(cancel(orderId));
+    }
+
+    public Map<String, Object> replaceOrder(long orderId, long price, long quantity) {
+        int time = TimeOfDay.now();
+        if (journal != null) {
+            journal.replace(id, orderId, price, quantity, time);
+        }
+        ExecutionReport report = matchingEngine.replace(orderId, price, quantity, time);
+        changed(Topics.ALL);
+        return toResponse(report);
+    }
+
+    // The same commands without a response payload; the report is reused
+
+    public ExecutionReport submit(int side, int type, long price, long quantity, int venue) {
+        int time = TimeOfDay.now();
+        if (journal != null) {
+            journal.submit(id, side, type, price, quantity, venue, time);
+        }
+        ExecutionReport report = matchingEngine.submit(side, type, price, quantity, venue, time);
+        changed(Topics.ALL);
+        return report;
+    }
+
+    public ExecutionReport cancel(long orderId) {
+        if (journal != null) {
+            journal.cancel(id, orderId);
+        }
+        ExecutionReport report = matchingEngine.cancel(orderId);
+        changed(Topics.bit(Topics.ORDERBOOK) | Topics.bit(Topics.VENUES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.ANALYTICS));
+        return report;
+    }
+
+    // Generated order flow: journaled as such, and the orders it leaves resting are tracked
+
+    public ExecutionReport submitFlow(int side, int type, long price, long quantity, int venue) {
+        int time = TimeOfDay.now();
+        if (journal != null) {
+            journal.flowSubmit(id, side, type, price, quantity, venue, time);
+        }
+        ExecutionReport report = matchingEngine.submit(side, type, price, quantity, venue, time);
+        if (report.getRemainingQuantity() > 0) {
+            trackFlowOrder(report.getOrderId());
+        }
+        changed(Topics.ALL);
+        return report;
+    }
+
+    /** Generated orders possibly still resting. */
+    public int getFlowOrderCount() {
+        return flowOrderCount;
+    }
+
+    /** Cancels the generated order at {@code index}, which the last one then takes. */
+    public ExecutionReport cancelFlowOrder(int index) {
+        long orderId = flowOrderIds[index];
+        if (journal != null) {
+            journal.flowCancel(id, orderId);
+        }
+        flowOrderIds[index] = flowOrderIds[--flowOrderCount];
+        ExecutionReport report = matchingEngine.cancel(orderId);
+        changed(Topics.bit(Topics.ORDERBOOK) | Topics.bit(Topics.VENUES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.ANALYTICS));
+        return report;
+    }
+
+    // Journal snapshots and recovery
+
+    @Override
+    public long getNextOrderId() {
+        return matchingEngine.getNextOrderId();
+    }
+
+    @Override
+    public long[] getFeedOrderIds() {
+        return Arrays.copyOf(feedOrderIds, feedOrderCount);
+    }
+
+    @Override
+    public long[] getFlowOrderIds() {
+        return Arrays.copyOf(flowOrderIds, flowOrderCount);
+    }
+
+    @Override
+    public void restore(long nextOrderId, int bookTimestamp, long[] feedOrderIds, long[] flowOrderIds) {
+        matchingEngine.setNextOrderId(nextOrderId);
+        this.bookTimestamp = bookTimestamp;
+        feedOrderCount = 0;
+        for (long orderId : feedOrderIds) {
+            trackFeedOrder(orderId);
+        }
+        flowOrderCount = 0;
+        for (long orderId : flowOrderIds) {
+            trackFlowOrder(orderId);
+        }
+        changed(Topics.ALL);
+    }
+
+    @Override
+    public void restoreOrder(int side, long orderId, long price, long quantity, int venue, int time) {
+        matchingEngine.restore(side, orderId, price, quantity, venue, time);
+    }
+
+    @Override
+    public int printStateBytes() {
+        return 4 + tradeTape.stateBytes() + priceSeries.stateBytes() + candles.stateBytes() + bookAnalytics.stateBytes();
+    }
+
+    @Override
+    public void writePrintState(ByteBuffer out) {
+        out.putInt(lastTradesTime);
+        tradeTape.writeState(out);
+        priceSeries.writeState(out);
+        candles.writeState(out);
+        bookAnalytics.writeState(out);
+    }
+
+    @Override
+    public void restorePrintState(ByteBuffer in) {
+        lastTradesTime = in.getInt();
+        tradeTape.readState(in);
+        priceSeries.readState(in);
+        candles.readState(in);
+        bookAnalytics.readState(in);
+        changed(Topics.bit(Topics.TRADES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.TIMESERIES) | Topics.bit(Topics.ANALYTICS));
+    }
+
+    @Override
+    public void restoreTrade(long price, long quantity, int aggressorSide, int type, int time) {
+        tradeStore.onTrade(price, quantity, aggressorSide, type, time);
+    }
+
+    @Override
+    public void recoverPrint(long price, long quantity, int aggressorSide, int type, int time) {
+        analytics.onTrade(price, quantity, aggressorSide, type, time);
+        changed(Topics.bit(Topics.TRADES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.TIMESERIES) | Topics.bit(Topics.ANALYTICS));
+    }
+
+    @Override
+    public void recoverSession(int time) {
+        startTrades(time);
+    }
+
+    @Override
+    public void recoverBook(ReplayRecord book) {
+        recovering = true;
+        try {
+            onBook(book);
+        } finally {
+            recovering = false;
+        }
+    }
+
+    @Override
+    public void recoverSubmit(int side, int type, long price, long quantity, int venue, int time) {
+        recovering = true;
+        try {
+            matchingEngine.submit(side, type, price, quantity, venue, time);
+        } finally {
+            recovering = false;
+        }
+        changed(Topics.ALL);
+    }
+
+    @Override
+    public void recoverCancel(long orderId) {
+        matchingEngine.cancel(orderId);
+        changed(Topics.bit(Topics.ORDERBOOK) | Topics.bit(Topics.VENUES) | Topics.bit(Topics.OHLC) | Topics.bit(Topics.ANALYTICS));
+    }
+
+    @Override
+    public void recoverFlowSubmit(int side, int type, long price, long quantity, int venue, int time) {
+        recovering = true;
+        try {
+            ExecutionReport report = matchingEngine.submit(side, type, price, quantity, venue, time);
+            if (report.getRemainingQuantity() > 0) {
+                trackFlowOrder(report.getOrderId());
+            }
+        } finally {
+            recovering = false;
+        }
+        changed(Topics.ALL);
+    }
+
+    @Override
+    public void recoverFlowCancel(long orderId) {
+        for (int i = 0; i < flowOrderCount; i++) {
+            if (flowOrderIds[i] == orderId) {
+                flowOrderIds[i] = flowOrderIds[--flowOrderCount];
+                break;
+            }
+        }
+        recoverCancel(orderId);
+    }
+
+    @Override
+    public void recoverReplace(long orderId, long price, long quantity, int time) {
+        recovering = true;
+        try {
+            matchingEngine.replace(orderId, price, quantity, time);
+        } finally {
+            recovering = false;
+        }
+        changed(Topics.ALL);
+    }
+
+    public Map<String, Object> getEngineStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("symbol", symbol);
+        stats.put("commands", matchingEngine.getCommandCount());
+        stats.put("trades", matchingEngine.getTradeCount());
+        stats.put("restingOrders", matchingEngine.getRestingOrderCount());
+        stats.put("latencyNanos", matchingEngine.getLatency().summary());
+        return stats;
+    }
+
+    private Map<String, Object> toResponse(ExecutionReport report) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("symbol", symbol);
+        response.put("orderId", report.getOrderId());
+        response.put("status", report.getStatusName());
+        response.put("filledQuantity", report.getFilledQuantity());
+        response.put("remainingQuantity", report.getRemainingQuantity());
+        return response;
+    }
+
+    private void changed(int topics) {
+        for (int topic = 0; topic < Topics.COUNT; topic++) {
+            if (Topics.contains(topics, topic)) {
+                snapshotVersions[topic]++;
+            }
+        }
+        if (listener != null) {
+            listener.onChanged(this, topics);
+        }
+    }
+
+    private void startTrades(int time) {
+        if (time <= lastTradesTime) {
+            // Replay looped or was sought back: the prints that follow start a new session
+            candles.series(CandleSeries.SESSION).reset();
+        }
+        lastTradesTime = time;
+    }
+
+    private void trackFeedOrder(long orderId) {
+        if (feedOrderCount == feedOrderIds.length) {
+            feedOrderIds = Arrays.copyOf(feedOrderIds, feedOrderCount * 2);
+        }
+        feedOrderIds[feedOrderCount++] = orderId;
+    }
+
+    private void trackFlowOrder(long orderId) {
+        if (flowOrderCount == flowOrderIds.length) {
+            flowOrderIds = Arrays.copyOf(flowOrderIds, flowOrderCount * 2);
+        }
+        flowOrderIds[flowOrderCount++] = orderId;
+    }
+
+    // A venue's best level on a side, or null when it has no order there
+    private Map<String, Object> venueLevel(int venue, int side) {
+        if (venueBooks.depth(venue, side) == 0) {
+            return null;
+        }
+        Map<String, Object> level = new HashMap<>();
+        level.put("price", Prices.toDouble(venueBooks.levelPrice(venue, side, 0)));
+        level.put("size", venueBooks.levelQuantity(venue, side, 0));
+        level.put("orders", venueBooks.levelOrderCount(venue, side, 0));
+        return level;
+    }
+
+    // Consolidated touch with the venues quoting it, or null when the side is empty
+    private Map<String, Object> consolidatedBest(int side) {
+        long best = top.bestPrice(side);
+        if (best == Prices.NONE) {
+            return null;
+        }
+        Map<String, Object> quote = new HashMap<>();
+        quote.put("price", Prices.toDouble(best));
+        quote.put("size", top.touchQuantity(side));
+        quote.put("venues", venueSizes(side, best));
+        return quote;
+    }
+
+    // The top consolidated levels, each with the size every venue shows at its price
+    private List<Map<String, Object>> venueDepth(int side) {
+        int depth = Math.min(orderBook.depth(side), VENUE_LEVELS);
+        List<Map<String, Object>> levels = new ArrayList<>(depth);
+        for (int level = 0; level < depth; level++) {
+            long price = orderBook.levelPrice(side, level);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("price", Prices.toDouble(price));
+            entry.put("size", orderBook.levelQuantity(side, level));
+            entry.put("venues", venueSizes(side, price));
+            levels.add(entry);
+        }
+        return levels;
+    }
+
+    private Map<String, Object> venueSizes(int side, long price) {
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        for (int venue = 0; venue < venueBooks.venueCount(); venue++) {
+            long quantity = venueBooks.quantityAt(venue, side, price);
+            if (quantity > 0) {
+                sizes.put(Venues.name(venue), quantity);
+            }
+        }
+        return sizes;
+    }
+
+    // One side's depth curve, order sizes and queue estimates; arrays are copied, payloads being serialized later
+    private Map<String, Object> analyticsSide(int side) {
+        int depth = bookAnalytics.curveDepth(side);
+        double[] prices = new double[depth];
+        long[] cumulative = new long[depth];
+        for (int level = 0; level < depth; level++) {
+            prices[level] = Prices.toDouble(bookAnalytics.curvePrice(side, level));
+            cumulative[level] = bookAnalytics.cumulativeQuantity(side, level);
+        }
+        int buckets = BookAnalytics.SIZE_BUCKETS;
+        while (buckets > 0 && bookAnalytics.sizeBucket(side, buckets - 1) == 0) {
+            buckets--;
+        }
+        long[] sizes = new long[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            sizes[bucket] = bookAnalytics.sizeBucket(side, bucket);
+        }
+        int orders = bookAnalytics.orderCount(side);
+        Map<String, Object> orderSizes = new LinkedHashMap<>();
+        orderSizes.put("orders", orders);
+        orderSizes.put("mean", orders == 0 ? null : (double) (depth == 0 ? 0 : cumulative[depth - 1]) / orders);
+        orderSizes.put("largest", bookAnalytics.largestOrder(side));
+        orderSizes.put("buckets", sizes);
+
+        List<Map<String, Object>> queues = new ArrayList<>(BookAnalytics.QUEUE_LEVELS);
+        for (int level = 0; level < Math.min(depth, BookAnalytics.QUEUE_LEVELS); level++) {
+            Map<String, Object> queue = new LinkedHashMap<>();
+            queue.put("price", prices[level]);
+            queue.put("ahead", cumulative[level]);
+            queue.put("orders", orderBook.levelOrderCount(side, level));
+            queue.put("seconds", finite(bookAnalytics.queueSeconds(side, level)));
+            queues.add(queue);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("depth", Map.of("prices", prices, "cumulative", cumulative));
+        result.put("orderSizes", orderSizes);
+        result.put("tradedRate", bookAnalytics.tradedRate(side));
+        result.put("queues", queues);
+        return result;
+    }
+
+    private static Double finite(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private Map<String, Object> calculateYellowBarData() {
+        if (!top.isTwoSided()) {
+            return getEmptyYellowBar();
+        }
+        if (yellowBarVersion == top.version()) {
+            return cachedYellowBar;
+        }
+
+        // Best bid (highest) and best ask (lowest) with their order and share counts at the touch
+        cachedYellowBar = Map.of(
+                "bidOrderCount", top.touchOrderCount(OrderBook.BID),
+                "bidShareCount", top.touchQuantity(OrderBook.BID),
+                "bidPrice", Prices.toDouble(top.bestPrice(OrderBook.BID)),
+                "askPrice", Prices.toDouble(top.bestPrice(OrderBook.ASK)),
+                "askShareCount", top.touchQuantity(OrderBook.ASK),
+                "askOrderCount", top.touchOrderCount(OrderBook.ASK)
+        );
+        yellowBarVersion = top.version();
+        return cachedYellowBar;
+    }
+
+    private Map<String, Object> getEmptyYellowBar() {
+        return Map.of(
+                "bidOrderCount", 0,
+                "bidShareCount", 0,
+                "bidPrice", 0.0,
+                "askPrice", 0.0,
+                "askShareCount", 0,
+                "askOrderCount", 0
+        );
+    }
+
+    private Map<String, Object> calculateHeaderInfo() {
+        // Buy side: best bid price is highest; sell side: best ask price is lowest
+        return Map.of(
+                "buyData", calculateSideData(OrderBook.BID),
+                "sellData", calculateSideData(OrderBook.ASK)
+        );
+    }
+
+    private Map<String, Object> calculateSideData(int side) {
+        long topPrice = top.bestPrice(side);
+        if (topPrice == Prices.NONE) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("topPrice", null);
+            result.put("priceChange", null);
+            result.put("priceChangePercent", null);
+            result.put("totalVolume", 0.0);
+            return result;
+        }
+
+        // Total volume for this side: sum of (price * size) for orders at top price only
+        double totalVolume = top.touchNotional(side);
+
+        // Price change since the previous published delta, if the touch moved
+        double priceChange = headerStats.priceChange(side);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("topPrice", Prices.toDouble(topPrice));
+        result.put("priceChange", Double.isNaN(priceChange) ? null : priceChange);
+        result.put("priceChangePercent", Double.isNaN(priceChange) ? null : headerStats.priceChangePercent(side));
+        result.put("totalVolume", Math.round(totalVolume));
+        return result;
+    }
+
+    private Map<String, Object> getEmptyHeaderInfo() {
+        Map<String, Object> emptySideData = new HashMap<>();
+        emptySideData.put("topPrice", null);
+        emptySideData.put("priceChange", null);
+        emptySideData.put("priceChangePercent", null);
+        emptySideData.put("totalVolume", 0.0);
+
+        return Map.of(
+                "buyData", emptySideData,
+                "sellData", emptySideData
+        );
+    }
+}
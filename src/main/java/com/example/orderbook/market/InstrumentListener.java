@@ -0,0 +1,12 @@
+package com.example.orderbook.market;
+
+/**
+ * Notified on an instrument's shard thread whenever the state behind some of its topics may have
+ * changed, typically several times per shard task. Implementations must be cheap and must not publish
+ * from the callback: the instrument is in the middle of an update.
+ */
+public interface InstrumentListener {
+
+    /** {@code topics} is a mask of {@link Topics} bits. */
+    void onChanged(Instrument instrument, int topics);
+}
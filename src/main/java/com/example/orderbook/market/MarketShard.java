@@ -0,0 +1,180 @@
+package com.example.orderbook.market;
+
+import com.example.orderbook.pipeline.RingBuffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * A group of instruments owned by one writer thread. Everything that reads or changes an
+ * instrument, from order entry to publishing, runs as a task on its shard, so books need no locks
+ * and shards run in parallel with each other.
+ * <p>
+ * Tasks reach the writer through a {@link RingBuffer}, which it drains in batches: the replay driver,
+ * the flow generator and API threads hand events over without a lock or an allocated queue node, and
+ * a full ring holds them back until the shard catches up. Delayed tasks wait in a timer queue of
+ * the writer's own.
+ */
+public final class MarketShard {
+
+    private static final int RING_CAPACITY = 1 << 16;
+    // Tasks run from the ring before due timers get their turn
+    private static final int BATCH = 1024;
+    private static final long IDLE_NANOS = Long.MAX_VALUE;
+
+    private final int index;
+    private final List<Instrument> instruments = new ArrayList<>();
+    private final RingBuffer<Slot> tasks = new RingBuffer<>(RING_CAPACITY, Slot::new);
+    private final Consumer<Slot> runSlot = this::runSlot;
+    private final Thread writerThread;
+
+    // Writer thread only: tasks it queued for itself, which must not wait on its own ring, and timers
+    private final ArrayDeque<Runnable> deferred = new ArrayDeque<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private long timerSequence;
+
+    public MarketShard(int index) {
+        this.index = index;
+        this.writerThread = new Thread(this::run, "market-shard-" + index);
+        writerThread.setDaemon(true);
+        tasks.setConsumer(writerThread);
+        writerThread.start();
+    }
+
+    /**
+     * Creates an instrument owned by this shard, its chart starting from {@code history}. Only called
+     * while the market is being set up, before any task runs.
+     */
+    public Instrument addInstrument(int id, String symbol, PriceHistory history) {
+        Instrument instrument = new Instrument(id, symbol, this, history);
+        instruments.add(instrument);
+        return instrument;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public List<Instrument> instruments() {
+        return Collections.unmodifiableList(instruments);
+    }
+
+    /** Tasks handed to the writer and not yet run. */
+    public long backlog() {
+        return tasks.backlog();
+    }
+
+    /** Runs a task on the writer thread, without waiting for it. */
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == writerThread) {
+            deferred.add(task);
+            return;
+        }
+        long sequence = tasks.claim();
+        tasks.get(sequence).task = task;
+        tasks.publish(sequence);
+    }
+
+    /**
+     * Runs a task on the writer thread once {@code delayNanos} have passed; with no delay, after the
+     * tasks already queued.
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        long due = System.nanoTime() + Math.max(delayNanos, 0);
+        if (Thread.currentThread() == writerThread) {
+            timers.add(new Timer(due, timerSequence++, task));
+        } else {
+            execute(() -> timers.add(new Timer(due, timerSequence++, task)));
+        }
+    }
+
+    /**
+     * Runs a task on the writer thread and waits for its result; called from the writer thread itself,
+     * it simply runs the task. Exceptions thrown by the task are rethrown unchecked.
+     */
+    public <T> T call(Callable<T> task) {
+        try {
+            if (Thread.currentThread() == writerThread) {
+                return task.call();
+            }
+            CompletableFuture<T> result = new CompletableFuture<>();
+            execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            tasks.drain(runSlot, BATCH);
+            // Only those queued so far, so a task that requeues itself cannot starve the ring
+            for (int pending = deferred.size(); pending > 0; pending--) {
+                runTask(deferred.poll());
+            }
+            long now = System.nanoTime();
+            while (!timers.isEmpty() && timers.peek().due - now <= 0) {
+                runTask(timers.poll().task);
+            }
+            if (deferred.isEmpty() && tasks.isEmpty()) {
+                long wait = timers.isEmpty() ? IDLE_NANOS : timers.peek().due - System.nanoTime();
+                if (wait > 0) {
+                    tasks.await(wait);
+                }
+            }
+        }
+    }
+
+    private void runSlot(Slot slot) {
+        Runnable task = slot.task;
+        // The slot is reused; it must not keep the task reachable
+        slot.task = null;
+        runTask(task);
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            // One failed task must not stop the shard
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Slot {
+        Runnable task;
+    }
+
+    private record Timer(long due, long sequence, Runnable task) implements Comparable<Timer> {
+
+        @Override
+        public int compareTo(Timer other) {
+            int byDue = Long.compare(due - other.due, 0);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.orderbook.market;
+
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The recorded intraday price history the chart starts from, in time order. Converted once at load
+ * time and shared, read-only, by every instrument.
+ */
+public final class PriceHistory {
+
+    private final int[] times;
+    private final long[] prices;
+
+    private PriceHistory(int[] times, long[] prices) {
+        this.times = times;
+        this.prices = prices;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static PriceHistory fromJson(Map<String, Object> history) {
+        List<Map<String, Object>> points = (List<Map<String, Object>>) history.getOrDefault("prices", List.of());
+        int[] times = new int[points.size()];
+        long[] prices = new long[points.size()];
+        int count = 0;
+        for (Map<String, Object> point : points) {
+            Object price = point.get("price");
+            // Recorded times are "HH:mm"
+            int time = TimeOfDay.parse(point.get("time") + ":00");
+            if (price != null && time != TimeOfDay.UNKNOWN) {
+                times[count] = time;
+                prices[count++] = Prices.toTicks(((Number) price).doubleValue());
+            }
+        }
+        return new PriceHistory(Arrays.copyOf(times, count), Arrays.copyOf(prices, count));
+    }
+
+    public static PriceHistory empty() {
+        return new PriceHistory(new int[0], new long[0]);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public int time(int i) {
+        return times[i];
+    }
+
+    public long price(int i) {
+        return prices[i];
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.orderbook.market;
+
+/**
+ * Publishes instruments' topics when they change rather than on a fixed tick, each topic at most once
+ * per its own minimum interval. Changes arriving faster than that are conflated: the topic goes out
+ * once the interval has passed, with whatever the state is by then.
+ * <p>
+ * Changes are only noted when they happen; publishing runs as a separate task on the instrument's
+ * shard, after the task that made the change, so a batch of replayed events publishes once. Per
+ * instrument state is only touched from its shard's thread, so nothing here is locked.
+ */
+public final class PublishScheduler implements InstrumentListener {
+
+    private final long[] intervalNanos;
+    private final TopicPublisher publisher;
+
+    // By instrument id: topics changed since they were last published, when each was, and when each
+    // first changed after that
+    private final int[] pending;
+    private final boolean[] flushScheduled;
+    private final long[][] publishedNanos;
+    private final long[][] changedNanos;
+
+    /** {@code intervalNanos} holds the minimum interval of each of the {@link Topics}, 0 for none. */
+    public PublishScheduler(int instrumentCount, long[] intervalNanos, TopicPublisher publisher) {
+        if (intervalNanos.length != Topics.COUNT) {
+            throw new IllegalArgumentException("One interval per topic is required");
+        }
+        this.intervalNanos = intervalNanos.clone();
+        this.publisher = publisher;
+        this.pending = new int[instrumentCount];
+        this.flushScheduled = new boolean[instrumentCount];
+        this.publishedNanos = new long[instrumentCount][Topics.COUNT];
+        this.changedNanos = new long[instrumentCount][Topics.COUNT];
+        long now = System.nanoTime();
+        for (long[] published : publishedNanos) {
+            for (int topic = 0; topic < Topics.COUNT; topic++) {
+                // Due straight away
+                published[topic] = now - intervalNanos[topic];
+            }
+        }
+    }
+
+    @Override
+    public void onChanged(Instrument instrument, int topics) {
+        int id = instrument.getId();
+        long now = System.nanoTime();
+        int fresh = topics & ~pending[id];
+        for (int topic = 0; topic < Topics.COUNT; topic++) {
+            if (Topics.contains(fresh, topic)) {
+                changedNanos[id][topic] = now;
+            }
+        }
+        pending[id] |= topics;
+        if (!flushScheduled[id]) {
+            schedule(instrument, now);
+        }
+    }
+
+    // Wakes up when the first pending topic is due
+    private void schedule(Instrument instrument, long now) {
+        int id = instrument.getId();
+        long delay = Long.MAX_VALUE;
+        for (int topic = 0; topic < Topics.COUNT; topic++) {
+            if (Topics.contains(pending[id], topic)) {
+                delay = Math.min(delay, publishedNanos[id][topic] + intervalNanos[topic] - now);
+            }
+        }
+        flushScheduled[id] = true;
+        instrument.getShard().schedule(() -> flush(instrument), Math.max(0, delay));
+    }
+
+    private void flush(Instrument instrument) {
+        int id = instrument.getId();
+        long now = System.nanoTime();
+        int due = 0;
+        // How long ago the earliest due topic became due
+        long lag = 0;
+        for (int topic = 0; topic < Topics.COUNT; topic++) {
+            if (Topics.contains(pending[id], topic) && now - publishedNanos[id][topic] >= intervalNanos[topic]) {
+                due |= Topics.bit(topic);
+                long dueNanos = Math.max(changedNanos[id][topic], publishedNanos[id][topic] + intervalNanos[topic]);
+                lag = Math.max(lag, now - dueNanos);
+                publishedNanos[id][topic] = now;
+            }
+        }
+        pending[id] &= ~due;
+        flushScheduled[id] = false;
+        if (due != 0) {
+            try {
+                publisher.publish(instrument, due, lag);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (pending[id] != 0) {
+            schedule(instrument, now);
+        }
+    }
+}
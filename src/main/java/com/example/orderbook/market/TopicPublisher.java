@@ -0,0 +1,14 @@
+package com.example.orderbook.market;
+
+/**
+ * Publishes some of an instrument's topics, on its shard thread. Topics whose state turns out not to
+ * have changed publish nothing.
+ */
+public interface TopicPublisher {
+
+    /**
+     * {@code topics} is a mask of {@link Topics} bits; {@code lagNanos} is how late the publication
+     * runs after the earliest of them fell due.
+     */
+    void publish(Instrument instrument, int topics, long lagNanos);
+}
@@ -0,0 +1,34 @@
+package com.example.orderbook.market;
+
+/**
+ * The topics each instrument publishes, as indices; sets of them are passed around as bit masks.
+ */
+public final class Topics {
+
+    public static final int ORDERBOOK = 0;
+    public static final int TRADES = 1;
+    public static final int OHLC = 2;
+    public static final int TIMESERIES = 3;
+    public static final int VENUES = 4;
+    public static final int ANALYTICS = 5;
+    public static final int COUNT = 6;
+
+    public static final int ALL = (1 << COUNT) - 1;
+
+    private static final String[] NAMES = { "orderbook", "trades", "ohlc", "timeseries", "venues", "analytics" };
+
+    private Topics() {
+    }
+
+    public static int bit(int topic) {
+        return 1 << topic;
+    }
+
+    public static boolean contains(int topics, int topic) {
+        return (topics & bit(topic)) != 0;
+    }
+
+    public static String name(int topic) {
+        return NAMES[topic];
+    }
+}
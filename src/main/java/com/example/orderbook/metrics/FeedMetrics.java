@@ -0,0 +1,144 @@
+package com.example.orderbook.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the publishing pipeline, scraped at {@code /actuator/prometheus}. Every meter is
+ * registered up front (per topic ones on first use) and then only recorded into, so the hot path
+ * costs a clock read and an atomic add per measurement.
+ * <ul>
+ *   <li>{@code orderbook.publish.stage{stage}}: time spent per publication reading state (fetch),
+ *   advancing the published state (analytics), encoding (serialization) and queueing (fanout)</li>
+ *   <li>{@code orderbook.publish.lag} and {@code orderbook.publish.overruns}: how late publications
+ *   run behind the moment they were due, and how many were a full topic interval late</li>
+ *   <li>{@code orderbook.fanout.messages{topic,encoding}} and {@code orderbook.fanout.bytes}: what
+ *   was sent to sessions; text frames count characters, which JSON keeps close to bytes</li>
+ *   <li>{@code orderbook.fanout.send{encoding}}: time to hand one message to a session's socket</li>
+ *   <li>{@code orderbook.fanout.dropped}, {@code orderbook.fanout.conflated} and
+ *   {@code orderbook.fanout.disconnects}: what slow sessions lost</li>
+ *   <li>{@code orderbook.snapshot.frames{result}}: snapshot frames sent from the cache, or encoded
+ *   because the topic had changed since</li>
+ * </ul>
+ * Latency timers publish percentile histograms, so quantiles can be aggregated across instances.
+ */
+@Component
+public class FeedMetrics {
+
+    private static final Duration MIN_LATENCY = Duration.ofNanos(1_000);
+    private static final Duration MAX_LATENCY = Duration.ofSeconds(10);
+
+    private final MeterRegistry registry;
+    private final Timer[] stages = new Timer[StageTimer.COUNT];
+    private final Timer publishLag;
+    private final Counter publishOverruns;
+    private final Counter publishErrors;
+    private final Timer jsonSend;
+    private final Timer binarySend;
+    private final Counter dropped;
+    private final Counter conflated;
+    private final Counter disconnects;
+    private final Counter cachedFrames;
+    private final Counter encodedFrames;
+    // Messages then bytes, JSON then binary, per topic
+    private final Map<String, Counter[]> topics = new ConcurrentHashMap<>();
+
+    public FeedMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (int stage = 0; stage < StageTimer.COUNT; stage++) {
+            stages[stage] = latency("orderbook.publish.stage", "Time per publication spent in a pipeline stage")
+                    .tag("stage", StageTimer.name(stage)).register(registry);
+        }
+        publishLag = latency("orderbook.publish.lag", "Delay between a publication falling due and running").register(registry);
+        publishOverruns = Counter.builder("orderbook.publish.overruns")
+                .description("Publications running more than a topic interval late").register(registry);
+        publishErrors = Counter.builder("orderbook.publish.errors")
+                .description("Publications that failed").register(registry);
+        jsonSend = latency("orderbook.fanout.send", "Time to send one message to a session").tag("encoding", "json").register(registry);
+        binarySend = latency("orderbook.fanout.send", "Time to send one message to a session").tag("encoding", "binary").register(registry);
+        dropped = Counter.builder("orderbook.fanout.dropped")
+                .description("Messages not delivered to a slow session").register(registry);
+        conflated = Counter.builder("orderbook.fanout.conflated")
+                .description("Queued messages replaced by a newer one or a snapshot").register(registry);
+        disconnects = Counter.builder("orderbook.fanout.disconnects")
+                .description("Sessions closed for being too slow").register(registry);
+        cachedFrames = Counter.builder("orderbook.snapshot.frames").tag("result", "cached")
+                .description("Snapshot frames sent to joining sessions").register(registry);
+        encodedFrames = Counter.builder("orderbook.snapshot.frames").tag("result", "encoded")
+                .description("Snapshot frames sent to joining sessions").register(registry);
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public void recordStages(StageTimer timer) {
+        for (int stage = 0; stage < StageTimer.COUNT; stage++) {
+            stages[stage].record(timer.nanos(stage), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordPublishLag(long lagNanos, boolean overrun) {
+        publishLag.record(lagNanos, TimeUnit.NANOSECONDS);
+        if (overrun) {
+            publishOverruns.increment();
+        }
+    }
+
+    public void publishFailed() {
+        publishErrors.increment();
+    }
+
+    public void messageSent(String topic, WebSocketMessage<?> message, long sendNanos) {
+        boolean binary = message instanceof BinaryMessage;
+        (binary ? binarySend : jsonSend).record(sendNanos, TimeUnit.NANOSECONDS);
+        Counter[] counters = topics.computeIfAbsent(topic, this::topicCounters);
+        int encoding = binary ? 1 : 0;
+        counters[encoding].increment();
+        counters[2 + encoding].increment(binary ? ((BinaryMessage) message).getPayloadLength()
+                : message instanceof TextMessage text ? text.getPayload().length() : message.getPayloadLength());
+    }
+
+    public void messagesDropped(int count) {
+        dropped.increment(count);
+    }
+
+    public void messagesConflated(int count) {
+        conflated.increment(count);
+    }
+
+    public void sessionDisconnected() {
+        disconnects.increment();
+    }
+
+    public void snapshotFrame(boolean cached) {
+        (cached ? cachedFrames : encodedFrames).increment();
+    }
+
+    private Counter[] topicCounters(String topic) {
+        return new Counter[] {
+                Counter.builder("orderbook.fanout.messages").tag("topic", topic).tag("encoding", "json").register(registry),
+                Counter.builder("orderbook.fanout.messages").tag("topic", topic).tag("encoding", "binary").register(registry),
+                Counter.builder("orderbook.fanout.bytes").baseUnit("bytes").tag("topic", topic).tag("encoding", "json").register(registry),
+                Counter.builder("orderbook.fanout.bytes").baseUnit("bytes").tag("topic", topic).tag("encoding", "binary").register(registry)
+        };
+    }
+
+    private static Timer.Builder latency(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_LATENCY)
+                .maximumExpectedValue(MAX_LATENCY);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.orderbook.metrics;
+
+/**
+ * Splits the time of one publication between the pipeline stages, lap by lap: each {@link #lap}
+ * charges the time since the previous one to a stage. Used by one thread at a time.
+ */
+public final class StageTimer {
+
+    public static final int FETCH = 0;
+    public static final int ANALYTICS = 1;
+    public static final int SERIALIZATION = 2;
+    public static final int FANOUT = 3;
+    public static final int COUNT = 4;
+
+    private static final String[] NAMES = { "fetch", "analytics", "serialization", "fanout" };
+
+    private final long[] nanos = new long[COUNT];
+    private long mark = System.nanoTime();
+
+    public void lap(int stage) {
+        long now = System.nanoTime();
+        nanos[stage] += now - mark;
+        mark = now;
+    }
+
+    public long nanos(int stage) {
+        return nanos[stage];
+    }
+
+    public static String name(int stage) {
+        return NAMES[stage];
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.orderbook.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded ring of pre-allocated event slots connecting pipeline stages, in the manner of the LMAX
+ * Disruptor: any number of producers, one consumer thread. Producers claim a sequence number, fill
+ * the slot it maps to and publish it; the consumer handles every published event in sequence order, in
+ * batches. Nothing is allocated or locked per event: claiming is an atomic increment and publishing
+ * a store to the slot's sequence.
+ * <p>
+ * A full ring makes producers wait for the consumer, which is how a slow stage pushes back on the ones
+ * feeding it. An idle consumer parks, and is woken by the next publication.
+ */
+public final class RingBuffer<E> {
+
+    // Spins before a waiting producer starts yielding
+    private static final int SPINS = 100;
+
+    private final Object[] slots;
+    private final int mask;
+    // Sequence last published in each slot
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+
+    private volatile Thread consumer;
+    private volatile boolean parked;
+
+    /** {@code capacity} is rounded up to a power of two; {@code factory} creates the reusable slots. */
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+            published.set(i, i - size);
+        }
+    }
+
+    /** Claims the next slot, waiting while the ring is full. The slot must then be filled and published. */
+    public long claim() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        for (int spins = 0; wrapPoint > consumed; spins++) {
+            wakeConsumer();
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    /** Hands a filled slot over to the consumer. */
+    public void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        if (parked) {
+            wakeConsumer();
+        }
+    }
+
+    /**
+     * Handles the events published since the previous call, in order, up to {@code limit} of them, and
+     * releases their slots. Events claimed once the call has started wait for the next one, so whatever
+     * the consumer does between calls comes before them. Only called from the consumer thread; returns
+     * the number handled.
+     */
+    public int drain(Consumer<E> handler, int limit) {
+        long next = consumed + 1;
+        long last = Math.min(claimed.get(), consumed + limit);
+        int count = 0;
+        try {
+            while (next <= last && published.get((int) next & mask) == next) {
+                handler.accept(get(next));
+                next++;
+                count++;
+            }
+        } finally {
+            // An event that threw is still consumed
+            consumed = next - 1;
+        }
+        return count;
+    }
+
+    /** True when an event is waiting for the consumer. */
+    public boolean isEmpty() {
+        long next = consumed + 1;
+        return published.get((int) next & mask) != next;
+    }
+
+    /** Events published or claimed and not yet consumed. */
+    public long backlog() {
+        return claimed.get() - consumed;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /** Registers the consumer thread, which {@link #await} parks and publications wake. */
+    public void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parks the consumer until an event is published or {@code timeoutNanos} have passed; returns at
+     * once when one is already waiting.
+     */
+    public void await(long timeoutNanos) {
+        parked = true;
+        // Published after the flag was raised are woken; published before are seen here
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, Math.min(timeoutNanos, TimeUnit.SECONDS.toNanos(1)));
+        }
+        parked = false;
+    }
+
+    private void wakeConsumer() {
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
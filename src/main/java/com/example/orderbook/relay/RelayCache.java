@@ -0,0 +1,154 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.feed.BookView;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * What a relay's sessions are sent when they join: for each flavour of a symbol it follows, the
+ * latest snapshot from the primary, and what has been published for that flavour since, in order.
+ * Full-state messages replace the previous one of their topic; deltas pile up until there are
+ * {@code maxDeltas} of them, when a fresh snapshot is asked for, which starts the list again.
+ * <p>
+ * A flavour is pending until its first snapshot arrives; joining sessions wait for it.
+ */
+final class RelayCache {
+
+    private final Map<RelayKey, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxDeltas;
+    private final Consumer<RelayKey> refresh;
+
+    /** {@code refresh} asks the primary for a new snapshot of a flavour; it is not called under a lock. */
+    RelayCache(int maxDeltas, Consumer<RelayKey> refresh) {
+        this.maxDeltas = maxDeltas;
+        this.refresh = refresh;
+    }
+
+    /** Starts following a flavour; returns false when it already was. */
+    boolean add(RelayKey key) {
+        return entries.putIfAbsent(key, new Entry()) == null;
+    }
+
+    void remove(RelayKey key) {
+        entries.remove(key);
+    }
+
+    Set<RelayKey> keys() {
+        return entries.keySet();
+    }
+
+    /** True while a snapshot of the flavour is expected: before the first one, and when one was asked for. */
+    boolean needsSnapshot(RelayKey key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.needsSnapshot();
+    }
+
+    /** Forgets every snapshot: what was published since they were taken is no longer all there. */
+    void invalidate() {
+        entries.values().forEach(Entry::invalidate);
+    }
+
+    /** Adds a publication to the flavours it reaches; a null symbol reaches every symbol. */
+    void apply(String symbol, String topic, BookView view, WebSocketMessage<?> json, WebSocketMessage<?> binary,
+            boolean conflatable) {
+        for (Map.Entry<RelayKey, Entry> flavour : entries.entrySet()) {
+            RelayKey key = flavour.getKey();
+            if ((symbol != null && !symbol.equals(key.symbol())) || !key.takes(view)) {
+                continue;
+            }
+            WebSocketMessage<?> message = key.binary() ? binary : json;
+            if (message != null && flavour.getValue().apply(topic, message, conflatable)) {
+                refresh.accept(key);
+            }
+        }
+    }
+
+    void setSnapshot(RelayKey key, List<WebSocketMessage<?>> messages) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.setSnapshot(messages);
+        }
+    }
+
+    /** The snapshot followed by what was published since; null if none arrived within the timeout. */
+    List<WebSocketMessage<?>> snapshot(RelayKey key, long timeoutNanos) throws InterruptedException {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.snapshot(timeoutNanos);
+    }
+
+    private final class Entry {
+
+        private List<WebSocketMessage<?>> snapshot;
+        private final List<String> topics = new ArrayList<>();
+        private final List<WebSocketMessage<?>> since = new ArrayList<>();
+        private int deltas;
+        private boolean refreshing;
+
+        synchronized boolean needsSnapshot() {
+            return snapshot == null || refreshing;
+        }
+
+        synchronized void invalidate() {
+            snapshot = null;
+            topics.clear();
+            since.clear();
+            deltas = 0;
+            refreshing = false;
+        }
+
+        // Returns true when a fresh snapshot should be asked for
+        synchronized boolean apply(String topic, WebSocketMessage<?> message, boolean conflatable) {
+            if (snapshot == null) {
+                // Older than the snapshot on its way
+                return false;
+            }
+            if (conflatable) {
+                int previous = topics.indexOf(topic);
+                if (previous >= 0) {
+                    since.set(previous, message);
+                    return false;
+                }
+            } else {
+                deltas++;
+            }
+            topics.add(conflatable ? topic : null);
+            since.add(message);
+            if (deltas >= maxDeltas && !refreshing) {
+                refreshing = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void setSnapshot(List<WebSocketMessage<?>> messages) {
+            snapshot = messages;
+            topics.clear();
+            since.clear();
+            deltas = 0;
+            refreshing = false;
+            notifyAll();
+        }
+
+        synchronized List<WebSocketMessage<?>> snapshot(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (snapshot == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            List<WebSocketMessage<?>> messages = new ArrayList<>(snapshot.size() + since.size());
+            messages.addAll(snapshot);
+            messages.addAll(since);
+            return messages;
+        }
+    }
+}
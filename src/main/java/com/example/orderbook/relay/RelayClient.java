@@ -0,0 +1,321 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.metrics.FeedMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A relay node's connection to its primary, {@code orderbook.relay.upstream} ({@code host:port}).
+ * Everything the primary publishes is passed on to this node's {@link SessionFanOut}, and kept in a
+ * {@link RelayCache} from which joining sessions get their snapshots without a round trip to the
+ * primary. The binary feed, and the full and default JSON views of every symbol, are always followed;
+ * other views while a session here uses them.
+ * <p>
+ * Frames are numbered: a gap, a silent primary or a dropped connection all lead to reconnecting,
+ * with the number of the last frame received. The primary then sends what was missed, or, when it no
+ * longer can, fresh snapshots, and every session here is resynchronized from them.
+ */
+@Component
+@Profile("relay")
+public class RelayClient {
+
+    private static final long RECONNECT_MILLIS = 1000;
+    // The primary sends a heartbeat every second
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long CLEANUP_MILLIS = 10_000;
+
+    private final SessionFanOut fanOut;
+    private final String host;
+    private final int port;
+    private final long snapshotTimeoutNanos;
+    private final long id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final RelayCache cache;
+    private final Counter reconnects;
+    private final CountDownLatch welcomed = new CountDownLatch(1);
+    // Flavours followed whatever the sessions here use, and those the primary was told about
+    private final Set<RelayKey> pinned = ConcurrentHashMap.newKeySet();
+    private final Set<RelayKey> declared = ConcurrentHashMap.newKeySet();
+
+    private volatile List<String> symbols = List.of();
+    private volatile String defaultSymbol;
+    private volatile WebSocketMessage<?> news;
+    // Guarded by this; null while disconnected
+    private OutputStream out;
+    // Connection thread only, apart from monitoring
+    private volatile long stream;
+    private volatile long lastSeq;
+
+    public RelayClient(SessionFanOut fanOut, FeedMetrics metrics,
+            @Value("${orderbook.relay.upstream:localhost:7070}") String upstream,
+            @Value("${orderbook.relay.snapshot-timeout-ms:5000}") long snapshotTimeoutMillis,
+            @Value("${orderbook.relay.max-deltas:1024}") int maxDeltas) {
+        this.fanOut = fanOut;
+        int colon = upstream.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("orderbook.relay.upstream must be host:port, not " + upstream);
+        }
+        this.host = upstream.substring(0, colon);
+        this.port = Integer.parseInt(upstream.substring(colon + 1));
+        this.snapshotTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(snapshotTimeoutMillis);
+        this.cache = new RelayCache(maxDeltas, this::requestSnapshot);
+        this.reconnects = Counter.builder("orderbook.relay.reconnects")
+                .description("Connections to the primary lost and made again").register(metrics.registry());
+        Gauge.builder("orderbook.relay.connected", this, client -> client.isConnected() ? 1 : 0)
+                .description("Whether this relay is connected to its primary").register(metrics.registry());
+        Gauge.builder("orderbook.relay.sequence", this, client -> client.lastSeq)
+                .description("Last frame received from the primary").register(metrics.registry());
+
+        Thread connection = new Thread(this::run, "relay-upstream");
+        connection.setDaemon(true);
+        connection.start();
+        Thread cleanup = new Thread(this::cleanUp, "relay-cleanup");
+        cleanup.setDaemon(true);
+        cleanup.start();
+    }
+
+    public boolean hasSymbol(String symbol) {
+        awaitWelcome();
+        return symbols.contains(symbol);
+    }
+
+    public String defaultSymbol() {
+        awaitWelcome();
+        return defaultSymbol;
+    }
+
+    public WebSocketMessage<?> latestNews() {
+        return news;
+    }
+
+    /** A JSON session's snapshot of a symbol in a view of the book; empty if the primary did not answer in time. */
+    public List<WebSocketMessage<?>> snapshot(String symbol, BookView view) {
+        return snapshot(RelayKey.json(symbol, view));
+    }
+
+    public List<WebSocketMessage<?>> binarySnapshot(String symbol) {
+        return snapshot(RelayKey.binary(symbol));
+    }
+
+    public synchronized boolean isConnected() {
+        return out != null;
+    }
+
+    private List<WebSocketMessage<?>> snapshot(RelayKey key) {
+        if (cache.add(key)) {
+            follow(key);
+        }
+        try {
+            List<WebSocketMessage<?>> messages = cache.snapshot(key, snapshotTimeoutNanos);
+            if (messages != null) {
+                return messages;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("No snapshot from the primary for " + key);
+        return List.of();
+    }
+
+    // Tells the primary about a new flavour and asks for its snapshot; done on connecting if disconnected
+    private synchronized void follow(RelayKey key) {
+        if (out != null && declared.add(key)) {
+            send(RelayProtocol::interest, key, true);
+            requestSnapshot(key);
+        }
+    }
+
+    private synchronized void requestSnapshot(RelayKey key) {
+        if (out != null) {
+            send((flavour, unused) -> RelayProtocol.snapshotRequest(flavour), key, true);
+        }
+    }
+
+    private synchronized void unfollow(RelayKey key) {
+        if (out != null && declared.remove(key)) {
+            send(RelayProtocol::interest, key, false);
+        }
+    }
+
+    // Held by this
+    private void send(FrameWriter writer, RelayKey key, boolean add) {
+        try {
+            out.write(writer.frame(key, add));
+            out.flush();
+        } catch (IOException e) {
+            // The connection thread notices too, and reconnects
+            System.out.println("Relay request to the primary failed: " + e.getMessage());
+            declared.remove(key);
+        }
+    }
+
+    private void run() {
+        boolean connected = false;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                if (connected) {
+                    reconnects.increment();
+                }
+                connected = true;
+                serve(socket);
+            } catch (IOException e) {
+                System.out.println("Relay connection to " + host + ":" + port + " lost: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    out = null;
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+        output.write(RelayProtocol.hello(id, stream, lastSeq));
+        output.flush();
+
+        DataInputStream welcome = frame(in);
+        if (welcome.readUnsignedByte() != RelayProtocol.WELCOME) {
+            throw new IOException("Expected WELCOME from the primary");
+        }
+        long primaryStream = welcome.readLong();
+        boolean caughtUp = welcome.readBoolean();
+        long primarySeq = welcome.readLong();
+        List<String> primarySymbols = new ArrayList<>();
+        for (int count = welcome.readUnsignedShort(); count > 0; count--) {
+            primarySymbols.add(welcome.readUTF());
+        }
+        symbols = List.copyOf(primarySymbols);
+        defaultSymbol = welcome.readUTF();
+        for (String symbol : primarySymbols) {
+            pinned.add(RelayKey.binary(symbol));
+            pinned.add(RelayKey.json(symbol, BookView.FULL));
+            pinned.add(RelayKey.json(symbol, BookView.DEFAULT));
+        }
+        pinned.forEach(cache::add);
+
+        boolean resync = !caughtUp && stream != 0;
+        synchronized (this) {
+            if (!caughtUp) {
+                // Live frames carry on from the primary's current one; everything is snapshotted again
+                stream = primaryStream;
+                lastSeq = primarySeq;
+                declared.clear();
+                cache.invalidate();
+            }
+            out = output;
+            for (RelayKey key : new HashSet<>(cache.keys())) {
+                if (declared.add(key)) {
+                    send(RelayProtocol::interest, key, true);
+                }
+                if (cache.needsSnapshot(key)) {
+                    requestSnapshot(key);
+                }
+            }
+        }
+        welcomed.countDown();
+        System.out.println("Relaying from " + host + ":" + port + (caughtUp ? ", caught up" : ", from snapshots"));
+        if (resync) {
+            // What the sessions here were sent may have a gap; the snapshots they get wait for the primary's
+            fanOut.requestSnapshots();
+        }
+
+        while (true) {
+            DataInputStream frame = frame(in);
+            switch (frame.readUnsignedByte()) {
+                case RelayProtocol.PUBLISH -> publish(frame);
+                case RelayProtocol.SNAPSHOT -> cache.setSnapshot(RelayProtocol.readKey(frame), RelayProtocol.readMessages(frame));
+                case RelayProtocol.HEARTBEAT -> {
+                }
+                default -> throw new IOException("Unexpected frame from the primary");
+            }
+        }
+    }
+
+    private void publish(DataInputStream frame) throws IOException {
+        long seq = frame.readLong();
+        if (seq != lastSeq + 1) {
+            throw new IOException("Gap in the primary's stream: expected frame " + (lastSeq + 1) + ", got " + seq);
+        }
+        lastSeq = seq;
+        String symbol = frame.readUTF();
+        String topic = frame.readUTF();
+        boolean conflatable = frame.readBoolean();
+        BookView view = RelayProtocol.readView(frame);
+        WebSocketMessage<?> json = RelayProtocol.readMessage(frame);
+        WebSocketMessage<?> binary = RelayProtocol.readMessage(frame);
+        if (symbol.isEmpty()) {
+            symbol = null;
+        }
+        if (symbol == null && "news".equals(topic)) {
+            news = json;
+        } else {
+            cache.apply(symbol, topic, view, json, binary, conflatable);
+        }
+        fanOut.publish(symbol, topic, view, json, binary, conflatable);
+    }
+
+    // Stops following the views no session here uses any more
+    private void cleanUp() {
+        while (true) {
+            try {
+                Thread.sleep(CLEANUP_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (RelayKey key : new HashSet<>(cache.keys())) {
+                if (!pinned.contains(key) && !key.binary() && !fanOut.bookViews(key.symbol()).contains(key.view())) {
+                    cache.remove(key);
+                    unfollow(key);
+                }
+            }
+        }
+    }
+
+    private void awaitWelcome() {
+        try {
+            welcomed.await(snapshotTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DataInputStream frame(DataInputStream in) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(RelayProtocol.readFrame(in)));
+    }
+
+    @FunctionalInterface
+    private interface FrameWriter {
+        byte[] frame(RelayKey key, boolean add) throws IOException;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.feed.BookView;
+
+/**
+ * One flavour of a symbol's feed, as a relay asks for it: binary, which always shows the full book,
+ * or JSON in one view of the book.
+ */
+record RelayKey(String symbol, boolean binary, BookView view) {
+
+    static RelayKey json(String symbol, BookView view) {
+        return new RelayKey(symbol, false, view);
+    }
+
+    static RelayKey binary(String symbol) {
+        return new RelayKey(symbol, true, BookView.FULL);
+    }
+
+    /** True when a publication for that view (null for every view) reaches this flavour's sessions. */
+    boolean takes(BookView published) {
+        return published == null || published.equals(view);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.orderbook.relay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A relay's connection to the primary, on the primary's side. Frames are queued by the primary and
+ * written by the link's own thread, so a slow relay never holds up publishing; one that falls a whole
+ * queue behind is disconnected, and catches up when it reconnects.
+ */
+final class RelayLink {
+
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final BlockingQueue<byte[]> queue;
+    private final byte[] heartbeat;
+    private volatile boolean closed;
+
+    RelayLink(Socket socket, int queueCapacity) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.heartbeat = RelayProtocol.heartbeat();
+        Thread writer = new Thread(this::write, "relay-link-writer-" + socket.getPort());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    DataInputStream in() {
+        return in;
+    }
+
+    String describe() {
+        return socket.getRemoteSocketAddress().toString();
+    }
+
+    /** Queues a frame; returns false, and closes the link, when its queue is full. */
+    boolean offer(byte[] frame) {
+        if (closed) {
+            return false;
+        }
+        if (!queue.offer(frame)) {
+            System.out.println("Disconnecting slow relay: " + describe());
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    private void write() {
+        try {
+            while (!closed) {
+                byte[] frame = queue.poll(HEARTBEAT_NANOS, TimeUnit.NANOSECONDS);
+                out.write(frame != null ? frame : heartbeat);
+                // Frames queued meanwhile go out in the same flush
+                for (frame = queue.poll(); frame != null; frame = queue.poll()) {
+                    out.write(frame);
+                }
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+}
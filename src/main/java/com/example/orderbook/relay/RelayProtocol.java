@@ -0,0 +1,221 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.feed.BookView;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames exchanged over TCP between a primary node and its relays. Every frame is big-endian and
+ * starts with {@code i32 length, u8 type}, the length counting the type and body.
+ * <pre>
+ * relay to primary
+ * HELLO     i64 relay, i64 stream, i64 seq    the relay's id, and the stream and last frame it has
+ * INTEREST  key, u8 add                       starts or stops following a flavour of a symbol
+ * SNAPSHOT  key                               asks for a snapshot of a flavour
+ *
+ * primary to relay
+ * WELCOME   i64 stream, u8 caughtUp, i64 seq, u16 count, count x str symbol, str defaultSymbol
+ * PUBLISH   i64 seq, str symbol, str topic, u8 conflatable, view, message json, message binary
+ * SNAPSHOT  key, u16 count, count x message
+ * HEARTBEAT
+ *
+ * key     = str symbol, u8 binary, and for JSON: view
+ * view    = u8 present, and if present: i32 depth, u8 aggregated, i32 venue
+ * message = u8 kind (0 none, 1 text, 2 binary), and unless none: i32 length, bytes
+ * str     = modified UTF-8, as DataOutput writes it; an empty symbol is no symbol
+ * </pre>
+ * PUBLISH frames carry what the primary's sessions are sent, numbered from 1 in a stream that lasts
+ * as long as the primary process. A caught-up relay is sent the frames after the {@code seq} of its
+ * HELLO, then the live ones; otherwise live frames follow the {@code seq} of the WELCOME, and the
+ * relay snapshots what it follows again.
+ */
+final class RelayProtocol {
+
+    static final int HELLO = 1;
+    static final int INTEREST = 2;
+    static final int SNAPSHOT = 3;
+    static final int WELCOME = 4;
+    static final int PUBLISH = 5;
+    static final int HEARTBEAT = 6;
+
+    private static final int NO_MESSAGE = 0;
+    private static final int TEXT = 1;
+    private static final int BINARY = 2;
+
+    // Beyond this, a frame is taken for a corrupt stream
+    static final int MAX_FRAME_BYTES = 64 << 20;
+
+    private RelayProtocol() {
+    }
+
+    static byte[] hello(long relay, long stream, long seq) throws IOException {
+        Frame frame = new Frame(HELLO);
+        frame.out.writeLong(relay);
+        frame.out.writeLong(stream);
+        frame.out.writeLong(seq);
+        return frame.bytes();
+    }
+
+    static byte[] interest(RelayKey key, boolean add) throws IOException {
+        Frame frame = new Frame(INTEREST);
+        writeKey(frame.out, key);
+        frame.out.writeBoolean(add);
+        return frame.bytes();
+    }
+
+    static byte[] snapshotRequest(RelayKey key) throws IOException {
+        Frame frame = new Frame(SNAPSHOT);
+        writeKey(frame.out, key);
+        return frame.bytes();
+    }
+
+    static byte[] welcome(long stream, boolean caughtUp, long seq, List<String> symbols, String defaultSymbol) throws IOException {
+        Frame frame = new Frame(WELCOME);
+        frame.out.writeLong(stream);
+        frame.out.writeBoolean(caughtUp);
+        frame.out.writeLong(seq);
+        frame.out.writeShort(symbols.size());
+        for (String symbol : symbols) {
+            frame.out.writeUTF(symbol);
+        }
+        frame.out.writeUTF(defaultSymbol);
+        return frame.bytes();
+    }
+
+    static byte[] publish(long seq, String symbol, String topic, BookView view, WebSocketMessage<?> json,
+            WebSocketMessage<?> binary, boolean conflatable) throws IOException {
+        Frame frame = new Frame(PUBLISH);
+        frame.out.writeLong(seq);
+        frame.out.writeUTF(symbol == null ? "" : symbol);
+        frame.out.writeUTF(topic);
+        frame.out.writeBoolean(conflatable);
+        writeView(frame.out, view);
+        writeMessage(frame.out, json);
+        writeMessage(frame.out, binary);
+        return frame.bytes();
+    }
+
+    static byte[] snapshot(RelayKey key, List<WebSocketMessage<?>> messages) throws IOException {
+        Frame frame = new Frame(SNAPSHOT);
+        writeKey(frame.out, key);
+        frame.out.writeShort(messages.size());
+        for (WebSocketMessage<?> message : messages) {
+            writeMessage(frame.out, message);
+        }
+        return frame.bytes();
+    }
+
+    static byte[] heartbeat() throws IOException {
+        return new Frame(HEARTBEAT).bytes();
+    }
+
+    /** Reads the next frame's type and body, after its length. */
+    static byte[] readFrame(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad relay frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    static void writeKey(DataOutputStream out, RelayKey key) throws IOException {
+        out.writeUTF(key.symbol());
+        out.writeBoolean(key.binary());
+        if (!key.binary()) {
+            writeView(out, key.view());
+        }
+    }
+
+    static RelayKey readKey(DataInput in) throws IOException {
+        String symbol = in.readUTF();
+        return in.readBoolean() ? RelayKey.binary(symbol) : RelayKey.json(symbol, readView(in));
+    }
+
+    static void writeView(DataOutputStream out, BookView view) throws IOException {
+        out.writeBoolean(view != null);
+        if (view != null) {
+            out.writeInt(view.depth());
+            out.writeBoolean(view.aggregated());
+            out.writeInt(view.venue());
+        }
+    }
+
+    static BookView readView(DataInput in) throws IOException {
+        return in.readBoolean() ? new BookView(in.readInt(), in.readBoolean(), in.readInt()) : null;
+    }
+
+    static void writeMessage(DataOutputStream out, WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage text) {
+            byte[] bytes = text.asBytes();
+            out.writeByte(TEXT);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (message instanceof BinaryMessage binary) {
+            // A duplicate leaves the shared buffer's position alone
+            ByteBuffer payload = binary.getPayload().duplicate();
+            out.writeByte(BINARY);
+            out.writeInt(payload.remaining());
+            if (payload.hasArray()) {
+                out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } else {
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                out.write(bytes);
+            }
+        } else {
+            out.writeByte(NO_MESSAGE);
+        }
+    }
+
+    static WebSocketMessage<?> readMessage(DataInput in) throws IOException {
+        int kind = in.readUnsignedByte();
+        if (kind == NO_MESSAGE) {
+            return null;
+        }
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad relay message length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return kind == TEXT ? new TextMessage(bytes) : new BinaryMessage(ByteBuffer.wrap(bytes));
+    }
+
+    static List<WebSocketMessage<?>> readMessages(DataInput in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<WebSocketMessage<?>> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readMessage(in));
+        }
+        return messages;
+    }
+
+    // A frame being written: the length is filled in once the body is complete
+    private static final class Frame {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Frame(int type) throws IOException {
+            out.writeInt(0);
+            out.writeByte(type);
+        }
+
+        byte[] bytes() {
+            byte[] frame = bytes.toByteArray();
+            ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+            return frame;
+        }
+    }
+}
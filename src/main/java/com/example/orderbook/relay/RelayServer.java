@@ -0,0 +1,269 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.fanout.PublishListener;
+import com.example.orderbook.fanout.SessionFanOut;
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.handler.OrderbookWebSocketHandler;
+import com.example.orderbook.metrics.FeedMetrics;
+import com.example.orderbook.service.DataService;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The primary's side of the relay tier: streams everything published to this node's sessions to
+ * the relays connected on {@code orderbook.relay.port} (0, the default, for none), which serve
+ * WebSocket clients of their own (see {@link RelayClient}).
+ * <p>
+ * Publications are numbered and encoded into one frame, shared by every relay, and the latest
+ * {@code orderbook.relay.retained-frames} are kept: a relay that reconnects within them is sent what
+ * it missed and carries on, any other one starts again from snapshots. Relays declare the symbols,
+ * encodings and book views they follow, which count as subscribers here; those interests outlive a
+ * dropped connection for {@code orderbook.relay.grace-ms}, so that what the relay missed meanwhile
+ * was still encoded for it.
+ * <p>
+ * Snapshots asked for by a relay come from the {@link OrderbookWebSocketHandler}, and are queued
+ * after everything published before they were taken, so the frames that follow apply to them.
+ */
+@Component
+@Profile("!relay")
+public class RelayServer implements PublishListener {
+
+    private final SessionFanOut fanOut;
+    private final OrderbookWebSocketHandler handler;
+    private final DataService dataService;
+    private final long graceMillis;
+    private final ScheduledExecutorService releases = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "relay-release");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int queueCapacity;
+    private final long stream = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    // Guarded by this: the stream so far, the retained frames by sequence number, and the relays
+    private final byte[][] retained;
+    private final int retainedMask;
+    private long lastSeq;
+    private final Map<Long, Relay> relays = new HashMap<>();
+
+    public RelayServer(SessionFanOut fanOut, OrderbookWebSocketHandler handler, DataService dataService, FeedMetrics metrics,
+            @Value("${orderbook.relay.port:0}") int port,
+            @Value("${orderbook.relay.retained-frames:65536}") int retainedFrames,
+            @Value("${orderbook.relay.queue-capacity:16384}") int queueCapacity,
+            @Value("${orderbook.relay.grace-ms:30000}") long graceMillis) {
+        this.fanOut = fanOut;
+        this.handler = handler;
+        this.dataService = dataService;
+        this.queueCapacity = queueCapacity;
+        this.graceMillis = graceMillis;
+        int capacity = Integer.highestOneBit(Math.max(retainedFrames, 2) - 1) << 1;
+        this.retained = new byte[port > 0 ? capacity : 0][];
+        this.retainedMask = capacity - 1;
+        if (port <= 0) {
+            return;
+        }
+        Gauge.builder("orderbook.relay.links", this, RelayServer::linkCount)
+                .description("Relays connected to this primary").register(metrics.registry());
+
+        ServerSocket server;
+        try {
+            server = new ServerSocket(port);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen for relays on port " + port, e);
+        }
+        fanOut.addListener(this);
+        Thread acceptor = new Thread(() -> accept(server), "relay-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Streaming to relays on port " + port);
+    }
+
+    @Override
+    public synchronized void onPublish(String symbol, String topic, BookView view, WebSocketMessage<?> json,
+            WebSocketMessage<?> binary, boolean conflatable) {
+        byte[] frame;
+        try {
+            frame = RelayProtocol.publish(lastSeq + 1, symbol, topic, view, json, binary, conflatable);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastSeq++;
+        retained[(int) (lastSeq & retainedMask)] = frame;
+        for (Relay relay : relays.values()) {
+            if (relay.link != null) {
+                relay.link.offer(frame);
+            }
+        }
+    }
+
+    public synchronized int linkCount() {
+        int links = 0;
+        for (Relay relay : relays.values()) {
+            links += relay.link != null && !relay.link.isClosed() ? 1 : 0;
+        }
+        return links;
+    }
+
+    private void accept(ServerSocket server) {
+        while (true) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "relay-link-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Reads the relay's requests until it goes away
+    private void serve(Socket socket) {
+        RelayLink link = null;
+        Relay relay = null;
+        try {
+            link = new RelayLink(socket, queueCapacity);
+            byte[] hello = RelayProtocol.readFrame(link.in());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(hello));
+            if (in.readUnsignedByte() != RelayProtocol.HELLO) {
+                throw new IOException("Expected HELLO from relay " + link.describe());
+            }
+            relay = attach(link, in.readLong(), in.readLong(), in.readLong());
+            while (!link.isClosed()) {
+                DataInputStream request = new DataInputStream(new ByteArrayInputStream(RelayProtocol.readFrame(link.in())));
+                switch (request.readUnsignedByte()) {
+                    case RelayProtocol.INTEREST -> interest(relay, RelayProtocol.readKey(request), request.readBoolean());
+                    case RelayProtocol.SNAPSHOT -> snapshot(link, RelayProtocol.readKey(request));
+                    default -> throw new IOException("Unexpected frame from relay " + link.describe());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (link == null || !link.isClosed()) {
+                System.out.println("Relay connection lost: " + e.getMessage());
+            }
+        } finally {
+            if (link != null) {
+                link.close();
+                if (relay != null) {
+                    detach(relay, link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a relay on from the frame after {@code seq} when it is still retained and the relay's
+     * interests were kept, from the next live frame otherwise.
+     */
+    private synchronized Relay attach(RelayLink link, long id, long relayStream, long seq) throws IOException {
+        Relay relay = relays.get(id);
+        long missed = lastSeq - seq;
+        boolean caughtUp = relay != null && relayStream == stream && missed >= 0
+                && missed < Math.min(retained.length, link.remainingCapacity() / 2);
+        if (relay == null) {
+            relay = new Relay(id);
+            relays.put(id, relay);
+        } else if (!caughtUp) {
+            // Starting again: the interests it declares next replace the old ones
+            relay.releaseInterests(fanOut);
+        }
+        if (relay.link != null) {
+            relay.link.close();
+        }
+        relay.link = link;
+        relay.generation++;
+        link.offer(RelayProtocol.welcome(stream, caughtUp, lastSeq, dataService.getSymbols(), dataService.getDefaultSymbol()));
+        if (caughtUp) {
+            for (long next = seq + 1; next <= lastSeq; next++) {
+                link.offer(retained[(int) (next & retainedMask)]);
+            }
+        }
+        System.out.println("Relay connected from " + link.describe() + (caughtUp ? ", catching up " + missed + " frames" : ""));
+        return relay;
+    }
+
+    private synchronized void detach(Relay relay, RelayLink link) {
+        if (relay.link != link) {
+            // Already replaced by a newer connection
+            return;
+        }
+        relay.link = null;
+        long generation = relay.generation;
+        releases.schedule(() -> {
+            synchronized (this) {
+                if (relay.link == null && relay.generation == generation) {
+                    relay.releaseInterests(fanOut);
+                    relays.remove(relay.id);
+                }
+            }
+        }, graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void interest(Relay relay, RelayKey key, boolean add) {
+        if (dataService.getInstrument(key.symbol()) == null) {
+            return;
+        }
+        int count = relay.interests.getOrDefault(key, 0);
+        if (add) {
+            relay.interests.put(key, count + 1);
+            fanOut.addInterest(key.symbol(), key.binary(), key.view());
+        } else if (count > 0) {
+            if (count == 1) {
+                relay.interests.remove(key);
+            } else {
+                relay.interests.put(key, count - 1);
+            }
+            fanOut.removeInterest(key.symbol(), key.binary(), key.view());
+        }
+    }
+
+    private void snapshot(RelayLink link, RelayKey key) throws IOException {
+        if (dataService.getInstrument(key.symbol()) == null) {
+            return;
+        }
+        List<WebSocketMessage<?>> messages = key.binary() ? handler.binarySnapshot(key.symbol())
+                : handler.snapshot(key.symbol(), key.view());
+        byte[] frame = RelayProtocol.snapshot(key, messages);
+        fanOut.afterDispatched(() -> link.offer(frame));
+    }
+
+    // A relay, across its connections
+    private static final class Relay {
+
+        final long id;
+        final Map<RelayKey, Integer> interests = new HashMap<>();
+        RelayLink link;
+        long generation;
+
+        Relay(long id) {
+            this.id = id;
+        }
+
+        void releaseInterests(SessionFanOut fanOut) {
+            interests.forEach((key, count) -> {
+                for (int i = 0; i < count; i++) {
+                    fanOut.removeInterest(key.symbol(), key.binary(), key.view());
+                }
+            });
+            interests.clear();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.orderbook.replay;
+
+import java.nio.file.Path;
+
+/**
+ * Converts a recording to a binary capture: {@code CaptureConverter <recording> <capture.obrc>}, where
+ * the recording is any location {@link ReplaySources} accepts. Run with {@code ./gradlew convertCapture}.
+ */
+public final class CaptureConverter {
+
+    private CaptureConverter() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !args[1].endsWith(CaptureFormat.EXTENSION)) {
+            System.err.println("Usage: CaptureConverter <recording directory> <capture" + CaptureFormat.EXTENSION + ">");
+            System.exit(2);
+        }
+        long started = System.nanoTime();
+        try (ReplaySource source = ReplaySources.open(args[0])) {
+            long records = CaptureWriter.convert(source, Path.of(args[1]));
+            System.out.printf("Wrote %d records to %s in %d ms%n", records, args[1], (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.orderbook.replay;
+
+/**
+ * Layout of a binary capture, the compact form recordings are converted to for replay (see
+ * {@link CaptureWriter} and {@link MappedReplaySource}). Captures are memory-mapped rather than read,
+ * so a whole trading day replays without being loaded onto the heap.
+ * <p>
+ * Everything is little-endian. Prices are {@code i64} ticks of 1/{@code priceScale} and times
+ * {@code i32} seconds of the day (-1 = unknown). Venues are {@code u8} indexes into the dictionary of
+ * the footer; trade types are {@code TradeTape} type codes.
+ * <pre>
+ * header  "OBRC", u16 version, u16 reserved, i32 priceScale, i32 firstTime, i32 lastTime,
+ *         i64 recordCount, i64 footerOffset
+ * record  u32 length (whole record), u8 kind (0 = book, 1 = trades), i32 time, u32 count, count x entry
+ * entry   u8 side, i64 price, i64 quantity, u8 venue (book) or trade type (trades), i32 time
+ * footer  u8 venueCount, venueCount x str, u32 indexCount, indexCount x (i32 time, i64 offset)
+ *         where str = u8 length, ASCII bytes
+ * </pre>
+ * Records are in time order. The footer index holds, for every second that has events, the offset of
+ * its first record, which is what seeking by timestamp binary-searches.
+ */
+public final class CaptureFormat {
+
+    public static final String EXTENSION = ".obrc";
+
+    static final int MAGIC = 'O' | 'B' << 8 | 'R' << 16 | 'C' << 24;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 4 + 2 + 2 + 4 + 4 + 4 + 8 + 8;
+    static final int RECORD_HEADER_BYTES = 4 + 1 + 4 + 4;
+    static final int ENTRY_BYTES = 1 + 8 + 8 + 1 + 4;
+    static final int INDEX_ENTRY_BYTES = 4 + 8;
+
+    private CaptureFormat() {
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link CaptureFormat} capture record by record through a fixed buffer, so converting a
+ * recording takes constant memory apart from the seek index (one entry per second of events).
+ */
+public final class CaptureWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long position = CaptureFormat.HEADER_BYTES;
+    private long recordCount;
+    private int firstTime = TimeOfDay.UNKNOWN;
+    private int lastTime = TimeOfDay.UNKNOWN;
+
+    // Capture venue index by global venue id, and the capture dictionary
+    private int[] captureVenues = new int[0];
+    private String[] venueNames = new String[0];
+
+    private int[] indexTimes = new int[1024];
+    private long[] indexOffsets = new long[1024];
+    private int indexCount;
+
+    public CaptureWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(CaptureFormat.HEADER_BYTES);
+    }
+
+    /** Appends a record; records must come in time order. */
+    public void write(ReplayRecord record) throws IOException {
+        if (record.time() < lastTime) {
+            throw new IOException("Records out of time order: " + TimeOfDay.format(record.time())
+                    + " after " + TimeOfDay.format(lastTime));
+        }
+        if (indexCount == 0 || record.time() > indexTimes[indexCount - 1]) {
+            addIndexEntry(record.time(), position);
+        }
+        if (firstTime == TimeOfDay.UNKNOWN) {
+            firstTime = record.time();
+        }
+        lastTime = record.time();
+
+        int length = CaptureFormat.RECORD_HEADER_BYTES + record.size() * CaptureFormat.ENTRY_BYTES;
+        ensure(length);
+        buffer.putInt(length);
+        buffer.put((byte) record.kind());
+        buffer.putInt(record.time());
+        buffer.putInt(record.size());
+        boolean book = record.kind() == ReplayRecord.BOOK;
+        for (int i = 0; i < record.size(); i++) {
+            buffer.put((byte) record.side(i));
+            buffer.putLong(record.price(i));
+            buffer.putLong(record.quantity(i));
+            buffer.put((byte) (book ? captureVenue(record.venue(i)) : record.tradeType(i)));
+            buffer.putInt(record.entryTime(i));
+        }
+        position += length;
+        recordCount++;
+    }
+
+    /** Writes the footer and the header; the capture is complete once this returns. */
+    @Override
+    public void close() throws IOException {
+        try {
+            long footerOffset = position;
+            ensure(1);
+            buffer.put((byte) venueNames.length);
+            for (String name : venueNames) {
+                byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+                int length = Math.min(bytes.length, 255);
+                ensure(1 + length);
+                buffer.put((byte) length);
+                buffer.put(bytes, 0, length);
+            }
+            ensure(4);
+            buffer.putInt(indexCount);
+            for (int i = 0; i < indexCount; i++) {
+                ensure(CaptureFormat.INDEX_ENTRY_BYTES);
+                buffer.putInt(indexTimes[i]);
+                buffer.putLong(indexOffsets[i]);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(CaptureFormat.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CaptureFormat.MAGIC);
+            header.putShort((short) CaptureFormat.VERSION);
+            header.putShort((short) 0);
+            header.putInt((int) Prices.SCALE);
+            header.putInt(firstTime);
+            header.putInt(lastTime);
+            header.putLong(recordCount);
+            header.putLong(footerOffset);
+            header.flip();
+            channel.write(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Converts a whole source into a capture, returning the number of records written.
+     */
+    public static long convert(ReplaySource source, Path file) throws IOException {
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            for (ReplayRecord record = source.next(); record != null; record = source.next()) {
+                writer.write(record);
+            }
+            return writer.recordCount;
+        }
+    }
+
+    private int captureVenue(int venue) throws IOException {
+        if (venue >= captureVenues.length) {
+            int grown = captureVenues.length;
+            captureVenues = Arrays.copyOf(captureVenues, venue + 1);
+            Arrays.fill(captureVenues, grown, captureVenues.length, -1);
+        }
+        if (captureVenues[venue] < 0) {
+            if (venueNames.length == 255) {
+                throw new IOException("More than 255 venues");
+            }
+            captureVenues[venue] = venueNames.length;
+            venueNames = Arrays.copyOf(venueNames, venueNames.length + 1);
+            venueNames[venueNames.length - 1] = Venues.name(venue);
+        }
+        return captureVenues[venue];
+    }
+
+    private void addIndexEntry(int time, long offset) {
+        if (indexCount == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+        }
+        indexTimes[indexCount] = time;
+        indexOffsets[indexCount++] = offset;
+    }
+
+    private void ensure(int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        flush();
+        if (buffer.capacity() < needed) {
+            // A record larger than the buffer: write it through a buffer of its own
+            buffer = ByteBuffer.allocateDirect(needed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.TradeTape;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Streams a session recorded as two JSON files, book snapshots and recent-trade lists, with the
+ * Jackson streaming parser: one snapshot is decoded at a time, so the files can be of any size.
+ * Events of both files are merged in time order, a book snapshot first when times are equal.
+ * <p>
+ * Recorded trade lists are newest first and overlap from one snapshot to the next; only the prints
+ * ahead of the overlap with the previous list, and no older than the last print replayed, are replayed,
+ * oldest first. The overlap is found by position rather than by time, so new prints recorded in the
+ * same second as the previous list's newest one are kept. Seeking re-reads the files from the start.
+ */
+public final class JsonReplaySource implements ReplaySource {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Callable<InputStream> bookFile;
+    private final Callable<InputStream> tradeFile;
+    private JsonParser books;
+    private JsonParser trades;
+
+    // One event read ahead from each file
+    private final ReplayRecord nextBook = new ReplayRecord();
+    private final ReplayRecord nextTrades = new ReplayRecord();
+    // The list being read, and the one before it
+    private ReplayRecord recordedTrades = new ReplayRecord();
+    private ReplayRecord previousTrades = new ReplayRecord();
+    private int lastTradeTime = TimeOfDay.UNKNOWN;
+    private boolean bookReady;
+    private boolean tradesReady;
+    private int fromTime = TimeOfDay.UNKNOWN;
+    private final int firstTime;
+
+    public JsonReplaySource(Callable<InputStream> bookFile, Callable<InputStream> tradeFile) throws IOException {
+        this.bookFile = bookFile;
+        this.tradeFile = tradeFile;
+        open();
+        fill();
+        firstTime = bookReady && (!tradesReady || nextBook.time() <= nextTrades.time()) ? nextBook.time()
+                : tradesReady ? nextTrades.time() : TimeOfDay.UNKNOWN;
+    }
+
+    @Override
+    public ReplayRecord next() throws IOException {
+        fill();
+        if (bookReady && (!tradesReady || nextBook.time() <= nextTrades.time())) {
+            bookReady = false;
+            return nextBook;
+        }
+        if (tradesReady) {
+            tradesReady = false;
+            return nextTrades;
+        }
+        return null;
+    }
+
+    @Override
+    public void seek(int time) throws IOException {
+        close();
+        open();
+        bookReady = false;
+        tradesReady = false;
+        previousTrades.reset(ReplayRecord.TRADES, TimeOfDay.UNKNOWN);
+        lastTradeTime = TimeOfDay.UNKNOWN;
+        fromTime = time;
+    }
+
+    @Override
+    public int firstTime() {
+        return firstTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (books != null) {
+            books.close();
+        }
+        if (trades != null) {
+            trades.close();
+        }
+    }
+
+    private void open() throws IOException {
+        books = openArray(bookFile);
+        trades = openArray(tradeFile);
+    }
+
+    private static JsonParser openArray(Callable<InputStream> file) throws IOException {
+        InputStream in;
+        try {
+            in = file.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        JsonParser parser = JSON.createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Recording is not a JSON array");
+        }
+        return parser;
+    }
+
+    private void fill() throws IOException {
+        while (!bookReady && readBook()) {
+            bookReady = nextBook.time() >= fromTime;
+        }
+        while (!tradesReady && readTrades()) {
+            tradesReady = nextTrades.size() > 0;
+        }
+    }
+
+    // {timestamp, bids: [order, ...], asks: [order, ...]} with order = {price, size, exchange, time}
+    private boolean readBook() throws IOException {
+        if (books.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        nextBook.reset(ReplayRecord.BOOK, TimeOfDay.UNKNOWN);
+        while (books.nextToken() == JsonToken.FIELD_NAME) {
+            String field = books.currentName();
+            books.nextToken();
+            switch (field) {
+                case "timestamp" -> nextBook.setTime(TimeOfDay.parse(books.getValueAsString()));
+                case "bids" -> readOrders(OrderBook.BID);
+                case "asks" -> readOrders(OrderBook.ASK);
+                default -> books.skipChildren();
+            }
+        }
+        return true;
+    }
+
+    private void readOrders(int side) throws IOException {
+        if (books.currentToken() != JsonToken.START_ARRAY) {
+            books.skipChildren();
+            return;
+        }
+        while (books.nextToken() == JsonToken.START_OBJECT) {
+            long price = Prices.NONE;
+            long size = 0;
+            int venue = Venues.LSE;
+            int time = TimeOfDay.UNKNOWN;
+            while (books.nextToken() == JsonToken.FIELD_NAME) {
+                String field = books.currentName();
+                books.nextToken();
+                switch (field) {
+                    case "price" -> price = Prices.toTicks(books.getValueAsDouble());
+                    case "size" -> size = books.getValueAsLong();
+                    case "exchange" -> venue = Venues.intern(books.getValueAsString());
+                    case "time" -> time = TimeOfDay.parse(books.getValueAsString());
+                    default -> books.skipChildren();
+                }
+            }
+            if (price != Prices.NONE && size > 0) {
+                nextBook.add(side, price, size, venue, time);
+            }
+        }
+    }
+
+    // {timestamp, trades: [trade, ...]} with trade = {price, shares, color, type, time}, newest first
+    private boolean readTrades() throws IOException {
+        if (trades.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        int timestamp = TimeOfDay.UNKNOWN;
+        recordedTrades.reset(ReplayRecord.TRADES, TimeOfDay.UNKNOWN);
+        while (trades.nextToken() == JsonToken.FIELD_NAME) {
+            String field = trades.currentName();
+            trades.nextToken();
+            switch (field) {
+                case "timestamp" -> timestamp = TimeOfDay.parse(trades.getValueAsString());
+                case "trades" -> readPrints();
+                default -> trades.skipChildren();
+            }
+        }
+
+        nextTrades.reset(ReplayRecord.TRADES, timestamp);
+        if (timestamp >= fromTime) {
+            for (int i = newPrints(recordedTrades, previousTrades) - 1; i >= 0; i--) {
+                // The tape never goes back in time, but the second it reached may still get prints
+                int time = recordedTrades.entryTime(i);
+                if (time >= fromTime && time >= lastTradeTime) {
+                    nextTrades.add(recordedTrades.side(i), recordedTrades.price(i), recordedTrades.quantity(i),
+                            recordedTrades.tradeType(i), time);
+                    lastTradeTime = time;
+                }
+            }
+        }
+        // Lists skipped by a seek still mark which prints have been seen
+        ReplayRecord read = recordedTrades;
+        recordedTrades = previousTrades;
+        previousTrades = read;
+        return true;
+    }
+
+    /**
+     * Number of prints at the head of a list that the previous list did not have. Lists are sliding
+     * windows, so the rest of the list, down to its oldest print, is the previous list's head: the
+     * longest such overlap is taken, which tells prints identical to older ones apart by position.
+     */
+    static int newPrints(ReplayRecord list, ReplayRecord previous) {
+        for (int fresh = Math.max(0, list.size() - previous.size()); fresh < list.size(); fresh++) {
+            if (overlaps(list, fresh, previous)) {
+                return fresh;
+            }
+        }
+        return list.size();
+    }
+
+    // True when the list from index fresh on is the head of the previous list
+    private static boolean overlaps(ReplayRecord list, int fresh, ReplayRecord previous) {
+        for (int i = fresh; i < list.size(); i++) {
+            if (!samePrint(list, i, previous, i - fresh)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean samePrint(ReplayRecord a, int i, ReplayRecord b, int j) {
+        return a.entryTime(i) == b.entryTime(j) && a.price(i) == b.price(j) && a.quantity(i) == b.quantity(j)
+                && a.side(i) == b.side(j) && a.tradeType(i) == b.tradeType(j);
+    }
+
+    private void readPrints() throws IOException {
+        if (trades.currentToken() != JsonToken.START_ARRAY) {
+            trades.skipChildren();
+            return;
+        }
+        while (trades.nextToken() == JsonToken.START_OBJECT) {
+            long price = Prices.NONE;
+            long shares = 0;
+            int side = OrderBook.BID;
+            int type = TradeTape.TYPE_AUTOMATIC;
+            int time = TimeOfDay.UNKNOWN;
+            while (trades.nextToken() == JsonToken.FIELD_NAME) {
+                String field = trades.currentName();
+                trades.nextToken();
+                switch (field) {
+                    case "price" -> price = Prices.toTicks(trades.getValueAsDouble());
+                    case "shares" -> shares = trades.getValueAsLong();
+                    case "color" -> side = "red".equals(trades.getValueAsString()) ? OrderBook.ASK : OrderBook.BID;
+                    case "type" -> type = TradeTape.typeOf(trades.getValueAsString());
+                    case "time" -> time = TimeOfDay.parse(trades.getValueAsString());
+                    default -> trades.skipChildren();
+                }
+            }
+            if (price != Prices.NONE) {
+                recordedTrades.add(side, price, shares, type, time);
+            }
+        }
+    }
+}
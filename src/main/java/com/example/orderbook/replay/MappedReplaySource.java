@@ -0,0 +1,153 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a {@link CaptureFormat} capture through a sliding memory-mapped window, so a capture of
+ * any size costs a window of address space and no heap beyond the seek index. Records are decoded
+ * straight from the mapping into the reused {@link ReplayRecord}; seeking binary-searches the index.
+ */
+public final class MappedReplaySource implements ReplaySource {
+
+    private static final long WINDOW_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final int firstTime;
+    private final int lastTime;
+    private final long recordCount;
+    private final long recordsEnd;
+    private final int[] venues;
+    private final int[] indexTimes;
+    private final long[] indexOffsets;
+    private final ReplayRecord record = new ReplayRecord();
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position = CaptureFormat.HEADER_BYTES;
+
+    public MappedReplaySource(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            map(0, CaptureFormat.HEADER_BYTES);
+            if (window.getInt() != CaptureFormat.MAGIC) {
+                throw new IOException(file + " is not a replay capture");
+            }
+            int version = window.getShort();
+            window.getShort();
+            int priceScale = window.getInt();
+            if (version != CaptureFormat.VERSION || priceScale != Prices.SCALE) {
+                throw new IOException("Unsupported capture version " + version + " or price scale " + priceScale);
+            }
+            firstTime = window.getInt();
+            lastTime = window.getInt();
+            recordCount = window.getLong();
+            recordsEnd = window.getLong();
+
+            // Footer: the venue dictionary, interned once, and the seek index
+            map(recordsEnd, channel.size() - recordsEnd);
+            venues = new int[window.get() & 0xFF];
+            for (int i = 0; i < venues.length; i++) {
+                byte[] name = new byte[window.get() & 0xFF];
+                window.get(name);
+                venues[i] = Venues.intern(new String(name, StandardCharsets.US_ASCII));
+            }
+            int indexCount = window.getInt();
+            indexTimes = new int[indexCount];
+            indexOffsets = new long[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                indexTimes[i] = window.getInt();
+                indexOffsets[i] = window.getLong();
+            }
+            window = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ReplayRecord next() throws IOException {
+        if (position >= recordsEnd) {
+            return null;
+        }
+        int length = readLength();
+        ensureMapped(position, length);
+        window.position((int) (position - windowStart) + 4);
+        int kind = window.get();
+        record.reset(kind, window.getInt());
+        int count = window.getInt();
+        boolean book = kind == ReplayRecord.BOOK;
+        for (int i = 0; i < count; i++) {
+            int side = window.get();
+            long price = window.getLong();
+            long quantity = window.getLong();
+            int attribute = window.get() & 0xFF;
+            record.add(side, price, quantity, book ? venues[attribute] : attribute, window.getInt());
+        }
+        position += length;
+        return record;
+    }
+
+    @Override
+    public void seek(int time) {
+        int low = 0;
+        int high = indexTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        position = low < indexOffsets.length ? indexOffsets[low] : recordsEnd;
+    }
+
+    @Override
+    public int firstTime() {
+        return firstTime;
+    }
+
+    public int lastTime() {
+        return lastTime;
+    }
+
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private int readLength() throws IOException {
+        ensureMapped(position, 4);
+        return window.getInt((int) (position - windowStart));
+    }
+
+    private void ensureMapped(long start, long length) throws IOException {
+        if (start + length > recordsEnd) {
+            throw new IOException("Truncated capture record at offset " + start);
+        }
+        if (window == null || start < windowStart || start + length > windowStart + window.capacity()) {
+            map(start, Math.min(Math.max(WINDOW_BYTES, length), recordsEnd - start));
+        }
+    }
+
+    private void map(long start, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.orderbook.replay;
+
+import java.io.IOException;
+
+/**
+ * One target's position in a replayed recording: the source plus the event read ahead, which is held
+ * back until the replay clock reaches it. Only used from the target's owning thread.
+ */
+final class ReplayCursor {
+
+    private final ReplaySource source;
+    private ReplayRecord pending;
+    private boolean exhausted;
+
+    ReplayCursor(ReplaySource source) {
+        this.source = source;
+    }
+
+    /**
+     * Delivers every event up to and including {@code time}. Returns false once the recording is
+     * exhausted.
+     */
+    boolean advanceTo(int time, ReplayTarget target) throws IOException {
+        while (!exhausted) {
+            if (pending == null) {
+                pending = source.next();
+                if (pending == null) {
+                    exhausted = true;
+                    break;
+                }
+            }
+            if (pending.time() > time) {
+                return true;
+            }
+            if (pending.kind() == ReplayRecord.BOOK) {
+                target.onBook(pending);
+            } else {
+                target.onTrades(pending);
+            }
+            pending = null;
+        }
+        return false;
+    }
+
+    void seek(int time) throws IOException {
+        source.seek(time);
+        pending = null;
+        exhausted = false;
+    }
+
+    int firstTime() {
+        return source.firstTime();
+    }
+
+    void close() {
+        try {
+            source.close();
+        } catch (IOException e) {
+            // Nothing left to read from it anyway
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.metrics.FeedMetrics;
+import com.example.orderbook.service.DataService;
+import io.micrometer.core.instrument.Gauge;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams the recorded session into every instrument on a replay clock that can run in real time, at
+ * any multiple of it, or as fast as the shards keep up, and that can be paused, resumed and moved to
+ * another time of the day.
+ * <p>
+ * Each instrument reads the recording through its own cursor, on its own shard; a binary capture is
+ * memory-mapped, and JSON is parsed as a stream, so a full day is never held on the heap. A driver
+ * thread only runs the clock: each time it moves on a second, it has every shard deliver the events
+ * recorded up to it and waits for all of them, so instruments never drift apart.
+ * <p>
+ * Settings are {@code orderbook.replay.source} (a {@link ReplaySources} location),
+ * {@code orderbook.replay.speed} (a multiple of real time, {@code realtime} or {@code max}) and
+ * {@code orderbook.replay.loop}.
+ * <p>
+ * After a restart the market is first recovered from the {@link Journal}, and the replay resumes
+ * after the last second it had delivered.
+ * <p>
+ * The {@code orderbook.replay.lag} gauge shows how many session seconds the delivered events trail the
+ * replay clock, which grows when the shards cannot keep up with the chosen speed.
+ */
+@Component
+@Profile("!relay")
+public class ReplayEngine {
+
+    public static final double MAX_SPEED = 0;
+
+    // Session seconds delivered per step when running as fast as possible
+    private static final int MAX_SPEED_STEP = 60;
+
+    private final List<MarketShard> shards;
+    private final String location;
+    private final boolean loop;
+    // By instrument id; a cursor is only used on its instrument's shard
+    private final ReplayCursor[] cursors;
+    private final int startTime;
+
+    // Replay clock, guarded by this: anchorTime at anchorNanos, then moving at speed session seconds per second
+    private double speed;
+    private boolean paused;
+    private boolean finished;
+    private double anchorTime;
+    private long anchorNanos;
+    // Every event up to this second has been delivered
+    private int deliveredTime;
+    private int seekTime = TimeOfDay.UNKNOWN;
+
+    public ReplayEngine(DataService dataService, Journal journal, FeedMetrics metrics,
+            @Value("${orderbook.replay.source:classpath:data}") String location,
+            @Value("${orderbook.replay.speed:1}") String speed,
+            @Value("${orderbook.replay.loop:true}") boolean loop) {
+        this.shards = dataService.getShards();
+        this.location = location;
+        this.loop = loop;
+        this.speed = parseSpeed(speed);
+        Gauge.builder("orderbook.replay.lag", this, ReplayEngine::lagSeconds).baseUnit("seconds")
+                .description("Session time the replayed events trail the replay clock by").register(metrics.registry());
+
+        List<String> symbols = dataService.getSymbols();
+        ReplayCursor[] opened = new ReplayCursor[symbols.size()];
+        int first = TimeOfDay.UNKNOWN;
+        try {
+            for (int id = 0; id < opened.length; id++) {
+                opened[id] = new ReplayCursor(ReplaySources.open(location));
+                int time = opened[id].firstTime();
+                if (time != TimeOfDay.UNKNOWN && (first == TimeOfDay.UNKNOWN || time < first)) {
+                    first = time;
+                }
+            }
+        } catch (IOException e) {
+            // The market still runs, on orders entered through the API only
+            e.printStackTrace();
+            for (ReplayCursor cursor : opened) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            opened = new ReplayCursor[0];
+        }
+        this.cursors = opened;
+        this.startTime = first;
+
+        int replayStart = first == TimeOfDay.UNKNOWN ? TimeOfDay.SECONDS_PER_DAY : first;
+        forEachInstrument(instrument -> instrument.startReplay(replayStart));
+        int resumeTime = journal.recover();
+        if (first == TimeOfDay.UNKNOWN) {
+            finished = true;
+            return;
+        }
+
+        if (resumeTime != TimeOfDay.UNKNOWN) {
+            // Everything up to that second was recovered from the journal
+            int next = Math.min(resumeTime + 1, TimeOfDay.SECONDS_PER_DAY - 1);
+            forEachInstrument(instrument -> {
+                try {
+                    cursors[instrument.getId()].seek(next);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            deliveredTime = resumeTime;
+            anchor(resumeTime);
+        } else {
+            // The first events are in place before any client can ask for a snapshot
+            deliver(first);
+            deliveredTime = first;
+            anchor(first);
+        }
+        Thread driver = new Thread(this::run, "market-replay");
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    public synchronized void pause() {
+        if (!paused) {
+            anchor(clock());
+            paused = true;
+        }
+    }
+
+    public synchronized void resume() {
+        if (paused) {
+            anchor(anchorTime);
+            paused = false;
+            notifyAll();
+        }
+    }
+
+    /** Session seconds per wall-clock second, or {@link #MAX_SPEED} to replay as fast as possible. */
+    public synchronized void setSpeed(double speed) {
+        if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("speed must be a positive multiple of real time");
+        }
+        anchor(clock());
+        this.speed = speed;
+        notifyAll();
+    }
+
+    /**
+     * Moves the replay to a time of the day, paused or not as it was: it carries on from the first
+     * events recorded at or after it, the books being replaced by the next recorded snapshot.
+     */
+    public synchronized void seek(int time) {
+        if (time < 0 || time >= TimeOfDay.SECONDS_PER_DAY) {
+            throw new IllegalArgumentException("time must be a time of the day");
+        }
+        if (startTime == TimeOfDay.UNKNOWN) {
+            throw new IllegalStateException("nothing to replay from " + location);
+        }
+        seekTime = time;
+        notifyAll();
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", finished ? "finished" : paused ? "paused" : "running");
+        status.put("speed", speed == MAX_SPEED ? "max" : speed);
+        status.put("time", TimeOfDay.format(deliveredTime));
+        status.put("startTime", TimeOfDay.format(startTime));
+        status.put("source", location);
+        status.put("loop", loop);
+        return status;
+    }
+
+    /** Session seconds between the replay clock and the events delivered so far. */
+    public synchronized double lagSeconds() {
+        return Math.max(0, Math.min(clock(), TimeOfDay.SECONDS_PER_DAY) - deliveredTime);
+    }
+
+    /** Parses a configured speed: a multiple of real time, {@code realtime} or {@code max}. */
+    public static double parseSpeed(String speed) {
+        String value = speed.trim();
+        if (value.equalsIgnoreCase("max")) {
+            return MAX_SPEED;
+        }
+        if (value.equalsIgnoreCase("realtime")) {
+            return 1;
+        }
+        double multiple = Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+        if (!(multiple > 0) || Double.isInfinite(multiple)) {
+            throw new IllegalArgumentException("speed must be a positive multiple of real time, realtime or max");
+        }
+        return multiple;
+    }
+
+    private void run() {
+        while (true) {
+            int target;
+            int seek;
+            synchronized (this) {
+                try {
+                    while ((paused || finished) && seekTime == TimeOfDay.UNKNOWN) {
+                        wait();
+                    }
+                    seek = seekTime;
+                    seekTime = TimeOfDay.UNKNOWN;
+                    target = deliveredTime;
+                    if (seek == TimeOfDay.UNKNOWN) {
+                        if (speed == MAX_SPEED) {
+                            target = deliveredTime + MAX_SPEED_STEP;
+                        } else {
+                            double clock = clock();
+                            if (clock < deliveredTime + 1) {
+                                // Sleep until the clock reaches the next second, or a call changes the plan
+                                long nanos = (long) ((deliveredTime + 1 - clock) / speed * 1e9);
+                                TimeUnit.NANOSECONDS.timedWait(this, Math.max(nanos, 1));
+                                continue;
+                            }
+                            target = (int) Math.min(clock, TimeOfDay.SECONDS_PER_DAY);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            try {
+                if (seek != TimeOfDay.UNKNOWN) {
+                    reposition(seek);
+                    continue;
+                }
+                boolean more = deliver(target);
+                synchronized (this) {
+                    deliveredTime = target;
+                    if (!more && seekTime == TimeOfDay.UNKNOWN) {
+                        if (loop) {
+                            seekTime = startTime;
+                        } else {
+                            anchor(target);
+                            finished = true;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // A broken recording stops the replay rather than the market
+                e.printStackTrace();
+                synchronized (this) {
+                    anchor(deliveredTime);
+                    paused = true;
+                }
+            }
+        }
+    }
+
+    /** Delivers everything recorded up to {@code time}; returns false once every recording is exhausted. */
+    private boolean deliver(int time) {
+        List<CompletableFuture<Boolean>> steps = new ArrayList<>(shards.size());
+        for (MarketShard shard : shards) {
+            steps.add(CompletableFuture.supplyAsync(() -> {
+                boolean more = false;
+                for (Instrument instrument : shard.instruments()) {
+                    try {
+                        more |= cursors[instrument.getId()].advanceTo(time, instrument);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return more;
+            }, shard::execute));
+        }
+        boolean more = false;
+        for (CompletableFuture<Boolean> step : steps) {
+            more |= step.join();
+        }
+        return more;
+    }
+
+    private void reposition(int time) {
+        forEachInstrument(instrument -> {
+            try {
+                cursors[instrument.getId()].seek(time);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // Events recorded at that very second are delivered at once
+        deliver(time);
+        synchronized (this) {
+            deliveredTime = time;
+            finished = false;
+            anchor(time);
+        }
+    }
+
+    private void forEachInstrument(Consumer<Instrument> task) {
+        List<CompletableFuture<Void>> steps = new ArrayList<>(shards.size());
+        for (MarketShard shard : shards) {
+            steps.add(CompletableFuture.runAsync(() -> shard.instruments().forEach(task), shard::execute));
+        }
+        steps.forEach(CompletableFuture::join);
+    }
+
+    // Session time now, in fractional seconds; held by the caller's lock
+    private double clock() {
+        if (paused || finished || speed == MAX_SPEED) {
+            return Math.max(anchorTime, deliveredTime);
+        }
+        return anchorTime + (System.nanoTime() - anchorNanos) * speed / 1e9;
+    }
+
+    private void anchor(double time) {
+        anchorTime = time;
+        anchorNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.orderbook.replay;
+
+import java.util.Arrays;
+
+/**
+ * One recorded event, decoded into reusable primitive columns: either a full book snapshot, whose
+ * entries are the resting orders of both sides in queue order, or a batch of new prints, oldest first.
+ * Sources hand out the same record again on every call, so it is only valid until the next one.
+ */
+public final class ReplayRecord {
+
+    public static final int BOOK = 0;
+    public static final int TRADES = 1;
+
+    private int kind;
+    private int time;
+    private int count;
+    private byte[] sides = new byte[64];
+    private long[] prices = new long[64];
+    private long[] quantities = new long[64];
+    // Venue of a book entry, trade type of a print
+    private int[] attributes = new int[64];
+    private int[] times = new int[64];
+
+    /** Starts a new event, discarding the previous entries. */
+    public void reset(int kind, int time) {
+        this.kind = kind;
+        this.time = time;
+        this.count = 0;
+    }
+
+    void setTime(int time) {
+        this.time = time;
+    }
+
+    public void add(int side, long price, long quantity, int attribute, int entryTime) {
+        if (count == prices.length) {
+            int capacity = count * 2;
+            sides = Arrays.copyOf(sides, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            attributes = Arrays.copyOf(attributes, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        sides[count] = (byte) side;
+        prices[count] = price;
+        quantities[count] = quantity;
+        attributes[count] = attribute;
+        times[count] = entryTime;
+        count++;
+    }
+
+    public int kind() {
+        return kind;
+    }
+
+    /** Second of the day the event was recorded at. */
+    public int time() {
+        return time;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Book side of an order, aggressor side of a print. */
+    public int side(int i) {
+        return sides[i];
+    }
+
+    public long price(int i) {
+        return prices[i];
+    }
+
+    public long quantity(int i) {
+        return quantities[i];
+    }
+
+    public int venue(int i) {
+        return attributes[i];
+    }
+
+    public int tradeType(int i) {
+        return attributes[i];
+    }
+
+    public int entryTime(int i) {
+        return times[i];
+    }
+}
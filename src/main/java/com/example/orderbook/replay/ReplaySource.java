@@ -0,0 +1,21 @@
+package com.example.orderbook.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A recorded session read sequentially, in time order, without loading it into memory.
+ */
+public interface ReplaySource extends Closeable {
+
+    /**
+     * The next event, or null at the end of the recording. The record is reused by the next call.
+     */
+    ReplayRecord next() throws IOException;
+
+    /** Repositions the source so that {@link #next()} returns the first event at or after {@code time}. */
+    void seek(int time) throws IOException;
+
+    /** Time of the first event, or {@link com.example.orderbook.book.TimeOfDay#UNKNOWN} for an empty recording. */
+    int firstTime();
+}
@@ -0,0 +1,37 @@
+package com.example.orderbook.replay;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens a recording by location: a binary capture ({@value CaptureFormat#EXTENSION} file), or a
+ * directory holding {@value #BOOK_FILE} and {@value #TRADE_FILE}, on the file system or, prefixed with
+ * {@code classpath:}, on the classpath.
+ */
+public final class ReplaySources {
+
+    public static final String BOOK_FILE = "orderbook-data.json";
+    public static final String TRADE_FILE = "trades-data.json";
+
+    private static final String CLASSPATH = "classpath:";
+
+    private ReplaySources() {
+    }
+
+    public static ReplaySource open(String location) throws IOException {
+        if (location.endsWith(CaptureFormat.EXTENSION)) {
+            return new MappedReplaySource(Path.of(location));
+        }
+        if (location.startsWith(CLASSPATH)) {
+            String directory = location.substring(CLASSPATH.length());
+            return new JsonReplaySource(() -> new ClassPathResource(directory + "/" + BOOK_FILE).getInputStream(),
+                    () -> new ClassPathResource(directory + "/" + TRADE_FILE).getInputStream());
+        }
+        Path directory = Path.of(location);
+        return new JsonReplaySource(() -> Files.newInputStream(directory.resolve(BOOK_FILE)),
+                () -> Files.newInputStream(directory.resolve(TRADE_FILE)));
+    }
+}
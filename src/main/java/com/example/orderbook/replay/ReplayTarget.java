@@ -0,0 +1,13 @@
+package com.example.orderbook.replay;
+
+/**
+ * Receives replayed events. Records are reused by the source, so targets must not keep them.
+ */
+public interface ReplayTarget {
+
+    /** A full book snapshot, replacing the liquidity of the previous one. */
+    void onBook(ReplayRecord book);
+
+    /** Prints recorded since the previous batch, oldest first. */
+    void onTrades(ReplayRecord trades);
+}
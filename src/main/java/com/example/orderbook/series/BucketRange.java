@@ -0,0 +1,36 @@
+package com.example.orderbook.series;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Consecutive buckets of one tier, serialized straight from its columns as
+ * {@code [{time, prices: [first, second]}, ...]}. Reused: {@link #set} repoints it.
+ */
+@JsonSerialize(using = BucketRangeSerializer.class)
+public class BucketRange {
+
+    private MinMaxBuckets tier;
+    private long from;
+    private long to;
+
+    public BucketRange set(MinMaxBuckets tier, long from, long to) {
+        this.tier = tier;
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public MinMaxBuckets getTier() {
+        return tier;
+    }
+
+    /** First bucket number, inclusive. */
+    public long getFrom() {
+        return from;
+    }
+
+    /** Last bucket number, exclusive. */
+    public long getTo() {
+        return to;
+    }
+}
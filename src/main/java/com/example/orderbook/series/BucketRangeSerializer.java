@@ -0,0 +1,40 @@
+package com.example.orderbook.series;
+
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes each bucket as {@code {time, prices}} where prices holds its two extremes in the order they
+ * were reached, or a single price when they are equal.
+ */
+public class BucketRangeSerializer extends StdSerializer<BucketRange> {
+
+    public BucketRangeSerializer() {
+        super(BucketRange.class);
+    }
+
+    @Override
+    public void serialize(BucketRange range, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        MinMaxBuckets tier = range.getTier();
+        gen.writeStartArray();
+        for (long bucket = range.getFrom(); bucket < range.getTo(); bucket++) {
+            long first = tier.firstExtreme(bucket);
+            long second = tier.secondExtreme(bucket);
+            gen.writeStartObject();
+            gen.writeStringField("time", TimeOfDay.format(tier.startTime(bucket)));
+            gen.writeArrayFieldStart("prices");
+            gen.writeNumber(Prices.toDouble(first));
+            if (second != first) {
+                gen.writeNumber(Prices.toDouble(second));
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
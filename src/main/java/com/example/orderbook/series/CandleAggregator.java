@@ -0,0 +1,73 @@
+package com.example.orderbook.series;
+
+import com.example.orderbook.engine.TradeListener;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Folds every trade, once, into running candles for each configured interval. Each trade costs a
+ * constant amount of work per interval, whatever the trade rate.
+ */
+public class CandleAggregator implements TradeListener {
+
+    private final CandleSeries[] series;
+
+    /**
+     * @param intervals candle lengths in seconds, {@link CandleSeries#SESSION} for the session candle
+     * @param history   number of candles retained per interval
+     */
+    public CandleAggregator(int[] intervals, int history) {
+        this.series = new CandleSeries[intervals.length];
+        for (int i = 0; i < intervals.length; i++) {
+            series[i] = new CandleSeries(intervals[i], history);
+        }
+    }
+
+    @Override
+    public void onTrade(long price, long quantity, int aggressorSide, int type, int time) {
+        if (time < 0) {
+            return;
+        }
+        for (CandleSeries candles : series) {
+            candles.add(time, price, quantity);
+        }
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        int bytes = 4;
+        for (CandleSeries candles : series) {
+            bytes += candles.stateBytes();
+        }
+        return bytes;
+    }
+
+    /** Writes every interval's candles, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putInt(series.length);
+        for (CandleSeries candles : series) {
+            candles.writeState(out);
+        }
+    }
+
+    /** Replaces the candles with those written by {@link #writeState}; intervals no longer aggregated are skipped. */
+    public void readState(ByteBuffer in) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            // Each series starts with its interval
+            int interval = in.getInt(in.position());
+            CandleSeries candles = series(interval);
+            (candles != null ? candles : new CandleSeries(interval, 2)).readState(in);
+        }
+    }
+
+    /** Candles of the given interval, or null when that interval is not aggregated. */
+    public CandleSeries series(int interval) {
+        for (CandleSeries candles : series) {
+            if (candles.interval() == interval) {
+                return candles;
+            }
+        }
+        return null;
+    }
+}
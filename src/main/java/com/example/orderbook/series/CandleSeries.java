@@ -0,0 +1,178 @@
+package com.example.orderbook.series;
+
+import com.example.orderbook.book.Prices;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Running OHLCV candles of one interval in a ring of primitive columns. The newest entry is the open
+ * candle, updated in place by every trade; the ones before it are closed and kept as a bounded
+ * history. Candles are numbered from 0 in the order they were opened, and only intervals that saw a
+ * trade get one.
+ * <p>
+ * A trade stamped before the open candle (a late print, or a replay starting over) is folded into
+ * the open candle. The session interval has a single candle that only {@link #reset()} closes.
+ */
+public final class CandleSeries {
+
+    /** Interval of the session candle. */
+    public static final int SESSION = 0;
+
+    private final int interval;
+    private final int mask;
+    private final int[] startTimes;
+    private final long[] opens;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] closes;
+    private final long[] volumes;
+    private final int[] tradeCounts;
+    // Sum of price (in ticks) times quantity, for the VWAP
+    private final double[] notionals;
+    private long count;
+    private boolean sessionOpen;
+
+    /**
+     * @param interval candle length in seconds, or {@link #SESSION}
+     * @param capacity number of candles retained, open one included, rounded up to a power of two
+     */
+    public CandleSeries(int interval, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.interval = interval;
+        this.mask = size - 1;
+        this.startTimes = new int[size];
+        this.opens = new long[size];
+        this.highs = new long[size];
+        this.lows = new long[size];
+        this.closes = new long[size];
+        this.volumes = new long[size];
+        this.tradeCounts = new int[size];
+        this.notionals = new double[size];
+    }
+
+    public void add(int time, long price, long quantity) {
+        int slot = (int) ((count - 1) & mask);
+        boolean inOpenCandle = interval == SESSION
+                ? sessionOpen
+                : count > 0 && time - time % interval <= startTimes[slot];
+        if (!inOpenCandle) {
+            slot = (int) (count & mask);
+            startTimes[slot] = interval == SESSION ? time : time - time % interval;
+            opens[slot] = price;
+            highs[slot] = price;
+            lows[slot] = price;
+            volumes[slot] = 0;
+            tradeCounts[slot] = 0;
+            notionals[slot] = 0;
+            count++;
+            sessionOpen = true;
+        }
+        highs[slot] = Math.max(highs[slot], price);
+        lows[slot] = Math.min(lows[slot], price);
+        closes[slot] = price;
+        volumes[slot] += quantity;
+        tradeCounts[slot]++;
+        notionals[slot] += (double) price * quantity;
+    }
+
+    /** Closes the open candle; the next trade opens a new one. Used to start a new session. */
+    public void reset() {
+        if (interval == SESSION) {
+            sessionOpen = false;
+        } else if (count > 0) {
+            // Stamp far in the future so that no trade folds into it
+            startTimes[(int) ((count - 1) & mask)] = Integer.MAX_VALUE;
+        }
+    }
+
+    public int interval() {
+        return interval;
+    }
+
+    /** Number of candles ever opened; the open (newest) candle is {@code count() - 1}. */
+    public long count() {
+        return count;
+    }
+
+    /** Oldest candle still retained. */
+    public long first() {
+        return Math.max(0, count - (mask + 1));
+    }
+
+    // Candle accessors by candle number, between first() and count() - 1
+
+    public int startTime(long candle) {
+        return startTimes[(int) (candle & mask)];
+    }
+
+    public long open(long candle) {
+        return opens[(int) (candle & mask)];
+    }
+
+    public long high(long candle) {
+        return highs[(int) (candle & mask)];
+    }
+
+    public long low(long candle) {
+        return lows[(int) (candle & mask)];
+    }
+
+    public long close(long candle) {
+        return closes[(int) (candle & mask)];
+    }
+
+    public long volume(long candle) {
+        return volumes[(int) (candle & mask)];
+    }
+
+    public int tradeCount(long candle) {
+        return tradeCounts[(int) (candle & mask)];
+    }
+
+    /** Volume-weighted average price in ticks; the last price when nothing traded with size. */
+    public double vwap(long candle) {
+        int slot = (int) (candle & mask);
+        return volumes[slot] > 0 ? notionals[slot] / volumes[slot] : closes[slot];
+    }
+
+    /** VWAP as a price rather than ticks. */
+    public double vwapPrice(long candle) {
+        return vwap(candle) / Prices.SCALE;
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        return 4 + 8 + 1 + 4 + (int) (count - first()) * (4 + 5 * 8 + 4 + 8);
+    }
+
+    /** Writes the interval and the retained candles, oldest first, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putInt(interval).putLong(count).put((byte) (sessionOpen ? 1 : 0)).putInt((int) (count - first()));
+        for (long candle = first(); candle < count; candle++) {
+            int slot = (int) (candle & mask);
+            out.putInt(startTimes[slot]).putLong(opens[slot]).putLong(highs[slot]).putLong(lows[slot])
+                    .putLong(closes[slot]).putLong(volumes[slot]).putInt(tradeCounts[slot]).putDouble(notionals[slot]);
+        }
+    }
+
+    /** Replaces the candles with those written by {@link #writeState}, whatever capacity they had. */
+    public void readState(ByteBuffer in) {
+        in.getInt();
+        long total = in.getLong();
+        sessionOpen = in.get() != 0;
+        int retained = in.getInt();
+        count = total - retained;
+        for (int i = 0; i < retained; i++) {
+            int slot = (int) (count & mask);
+            startTimes[slot] = in.getInt();
+            opens[slot] = in.getLong();
+            highs[slot] = in.getLong();
+            lows[slot] = in.getLong();
+            closes[slot] = in.getLong();
+            volumes[slot] = in.getLong();
+            tradeCounts[slot] = in.getInt();
+            notionals[slot] = in.getDouble();
+            count++;
+        }
+    }
+}
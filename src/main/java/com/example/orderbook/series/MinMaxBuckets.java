@@ -0,0 +1,120 @@
+package com.example.orderbook.series;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width time buckets keeping the low and high price of each, and which came first, in a ring
+ * of primitive columns. Drawing each bucket as its two extremes, in order, keeps the shape of the
+ * line (spikes included) at a bounded number of points.
+ * <p>
+ * Buckets are numbered from 0 in the order they were opened; only buckets holding at least one
+ * price exist, and only the last {@code capacity} of them are retained. A price stamped earlier than
+ * the open bucket (a late print, or a replay starting over) is folded into the open bucket.
+ */
+public final class MinMaxBuckets {
+
+    private final int width;
+    private final int mask;
+    private final int[] startTimes;
+    private final long[] lows;
+    private final long[] highs;
+    private final boolean[] lowFirst;
+    private long count;
+
+    /**
+     * @param width    bucket width in seconds
+     * @param capacity number of buckets retained, rounded up to a power of two
+     */
+    public MinMaxBuckets(int width, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.width = width;
+        this.mask = size - 1;
+        this.startTimes = new int[size];
+        this.lows = new long[size];
+        this.highs = new long[size];
+        this.lowFirst = new boolean[size];
+    }
+
+    public void add(int time, long price) {
+        int start = time - time % width;
+        int slot = (int) ((count - 1) & mask);
+        if (count > 0 && start <= startTimes[slot]) {
+            if (price < lows[slot]) {
+                lows[slot] = price;
+                lowFirst[slot] = false;
+            } else if (price > highs[slot]) {
+                highs[slot] = price;
+                lowFirst[slot] = true;
+            }
+            return;
+        }
+        slot = (int) (count & mask);
+        startTimes[slot] = start;
+        lows[slot] = price;
+        highs[slot] = price;
+        lowFirst[slot] = true;
+        count++;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /** Number of buckets ever opened; the open bucket is {@code count() - 1}. */
+    public long count() {
+        return count;
+    }
+
+    /** Oldest bucket still retained. */
+    public long first() {
+        return Math.max(0, count - (mask + 1));
+    }
+
+    // Bucket accessors by bucket number, between first() and count() - 1
+
+    public int startTime(long bucket) {
+        return startTimes[(int) (bucket & mask)];
+    }
+
+    /** Price reached first in the bucket. */
+    public long firstExtreme(long bucket) {
+        int slot = (int) (bucket & mask);
+        return lowFirst[slot] ? lows[slot] : highs[slot];
+    }
+
+    /** Price reached second in the bucket; equal to the first when the bucket saw a single price. */
+    public long secondExtreme(long bucket) {
+        int slot = (int) (bucket & mask);
+        return lowFirst[slot] ? highs[slot] : lows[slot];
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        return 4 + 8 + 4 + (int) (count - first()) * (4 + 8 + 8 + 1);
+    }
+
+    /** Writes the width and the retained buckets, oldest first, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putInt(width).putLong(count).putInt((int) (count - first()));
+        for (long bucket = first(); bucket < count; bucket++) {
+            int slot = (int) (bucket & mask);
+            out.putInt(startTimes[slot]).putLong(lows[slot]).putLong(highs[slot]).put((byte) (lowFirst[slot] ? 1 : 0));
+        }
+    }
+
+    /** Replaces the buckets with those written by {@link #writeState}, whatever capacity they had. */
+    public void readState(ByteBuffer in) {
+        in.getInt();
+        long total = in.getLong();
+        int retained = in.getInt();
+        count = total - retained;
+        for (int i = 0; i < retained; i++) {
+            int slot = (int) (count & mask);
+            startTimes[slot] = in.getInt();
+            lows[slot] = in.getLong();
+            highs[slot] = in.getLong();
+            lowFirst[slot] = in.get() != 0;
+            count++;
+        }
+    }
+}
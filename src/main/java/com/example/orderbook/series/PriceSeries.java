@@ -0,0 +1,178 @@
+package com.example.orderbook.series;
+
+import com.example.orderbook.engine.TradeListener;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rolling intraday price series fed by every print. Trades land in a ring of primitive
+ * (time, price) columns and, at the same time, in {@link MinMaxBuckets} tiers of increasing bucket
+ * width, so any resolution can be served at a bounded size without rescanning the raw trades.
+ */
+public class PriceSeries implements TradeListener {
+
+    private final int[] times;
+    private final long[] prices;
+    private final int mask;
+    private final MinMaxBuckets[] tiers;
+    private long appended;
+
+    /**
+     * @param capacity    number of raw trades retained, rounded up to a power of two
+     * @param resolutions bucket widths in seconds, finest first
+     * @param buckets     number of buckets retained per resolution
+     */
+    public PriceSeries(int capacity, int[] resolutions, int buckets) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.times = new int[size];
+        this.prices = new long[size];
+        this.mask = size - 1;
+        this.tiers = new MinMaxBuckets[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            tiers[i] = new MinMaxBuckets(resolutions[i], buckets);
+        }
+    }
+
+    @Override
+    public void onTrade(long price, long quantity, int aggressorSide, int type, int time) {
+        append(time, price);
+    }
+
+    public void append(int time, long price) {
+        if (time < 0) {
+            return;
+        }
+        int slot = (int) (appended & mask);
+        times[slot] = time;
+        prices[slot] = price;
+        appended++;
+        for (MinMaxBuckets tier : tiers) {
+            tier.add(time, price);
+        }
+    }
+
+    /** Total number of prices ever appended; changes whenever the series does. */
+    public long appended() {
+        return appended;
+    }
+
+    public int size() {
+        return (int) Math.min(appended, mask + 1L);
+    }
+
+    // Raw accessors, index 0 being the oldest retained price
+
+    public int time(int index) {
+        return times[(int) ((appended - size() + index) & mask)];
+    }
+
+    public long price(int index) {
+        return prices[(int) ((appended - size() + index) & mask)];
+    }
+
+    /** Bucket tier of the given width, or null when that resolution is not kept. */
+    public MinMaxBuckets tier(int resolution) {
+        for (MinMaxBuckets tier : tiers) {
+            if (tier.width() == resolution) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    /** Bytes {@link #writeState} takes. */
+    public int stateBytes() {
+        int bytes = 8 + 4 + size() * (4 + 8) + 4;
+        for (MinMaxBuckets tier : tiers) {
+            bytes += tier.stateBytes();
+        }
+        return bytes;
+    }
+
+    /** Writes the retained prices, oldest first, and every tier, for a journal snapshot. */
+    public void writeState(ByteBuffer out) {
+        out.putLong(appended).putInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.putInt(time(i)).putLong(price(i));
+        }
+        out.putInt(tiers.length);
+        for (MinMaxBuckets tier : tiers) {
+            tier.writeState(out);
+        }
+    }
+
+    /**
+     * Replaces the series with one written by {@link #writeState}, whatever capacity it had; tiers
+     * are matched by width, and those no longer kept are skipped.
+     */
+    public void readState(ByteBuffer in) {
+        long total = in.getLong();
+        int size = in.getInt();
+        appended = total - size;
+        for (int i = 0; i < size; i++) {
+            int slot = (int) (appended & mask);
+            times[slot] = in.getInt();
+            prices[slot] = in.getLong();
+            appended++;
+        }
+        int tierCount = in.getInt();
+        for (int i = 0; i < tierCount; i++) {
+            // Each tier starts with its width
+            int width = in.getInt(in.position());
+            MinMaxBuckets tier = tier(width);
+            (tier != null ? tier : new MinMaxBuckets(width, 2)).readState(in);
+        }
+    }
+
+    /**
+     * Picks at most {@code maxPoints} of the retained raw prices with Largest-Triangle-Three-Buckets,
+     * which keeps the points that matter visually. Writes raw indexes, oldest first, into
+     * {@code selected} and returns how many were written; {@code maxPoints} must be at least 3.
+     */
+    public int downsample(int maxPoints, int[] selected) {
+        int size = size();
+        if (size <= maxPoints) {
+            for (int i = 0; i < size; i++) {
+                selected[i] = i;
+            }
+            return size;
+        }
+        int count = 0;
+        selected[count++] = 0;
+        double every = (double) (size - 2) / (maxPoints - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+            // Average of the next bucket is the third corner of the triangle
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, size);
+            double averageTime = 0;
+            double averagePrice = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageTime += time(i);
+                averagePrice += price(i);
+            }
+            int nextLength = Math.max(1, nextEnd - nextStart);
+            averageTime /= nextLength;
+            averagePrice /= nextLength;
+
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double previousTime = time(previous);
+            double previousPrice = price(previous);
+            double largestArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previousTime - averageTime) * (price(i) - previousPrice)
+                        - (previousTime - time(i)) * (averagePrice - previousPrice));
+                if (area > largestArea) {
+                    largestArea = area;
+                    chosen = i;
+                }
+            }
+            selected[count++] = chosen;
+            previous = chosen;
+        }
+        selected[count++] = size - 1;
+        return count;
+    }
+}
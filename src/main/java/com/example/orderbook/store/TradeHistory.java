@@ -0,0 +1,247 @@
+package com.example.orderbook.store;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.engine.TradeTape;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.orderbook.store.TradeStore.SEGMENT_MASK;
+import static com.example.orderbook.store.TradeStore.SEGMENT_SHIFT;
+import static com.example.orderbook.store.TradeStore.SEGMENT_SIZE;
+
+/**
+ * Read-only view of a {@link TradeStore}'s segments, queried from any thread. Prints are addressed
+ * by position, oldest first; times are seconds of the day and sorted, so a time range is located by
+ * binary search and then scanned column by column, segment by segment.
+ * <p>
+ * Each query reads the number of stored prints once and ignores anything appended after it.
+ */
+public final class TradeHistory {
+
+    static final TradeHistory EMPTY = new TradeHistory(new TradeSegment[0]);
+
+    private final TradeSegment[] segments;
+
+    TradeHistory(TradeSegment[] segments) {
+        this.segments = segments;
+    }
+
+    TradeSegment[] segments() {
+        return segments;
+    }
+
+    /** Segments holding the prints, the last one possibly not full; each holds {@link TradeStore#SEGMENT_SIZE}. */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /** Prints stored when called. */
+    public long size() {
+        int count = segments.length;
+        return count == 0 ? 0 : (long) (count - 1) * SEGMENT_SIZE + segments[count - 1].count;
+    }
+
+    public int time(long position) {
+        return segment(position).times[offset(position)];
+    }
+
+    public long price(long position) {
+        return segment(position).prices[offset(position)];
+    }
+
+    public long quantity(long position) {
+        return segment(position).quantities[offset(position)];
+    }
+
+    public int aggressorSide(long position) {
+        return segment(position).sides[offset(position)];
+    }
+
+    public int type(long position) {
+        return segment(position).types[offset(position)];
+    }
+
+    /** First position among the first {@code size} whose time is at or after {@code time}. */
+    public long lowerBound(int time, long size) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (time(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** First position among the first {@code size} whose time is after {@code time}. */
+    public long upperBound(int time, long size) {
+        return lowerBound(time + 1, size);
+    }
+
+    /**
+     * Prints from {@code from} to {@code to}, both inclusive, oldest first: the number in the range
+     * and the first {@code limit} of them.
+     */
+    public Map<String, Object> range(int from, int to, int limit) {
+        long size = size();
+        long start = lowerBound(from, size);
+        long end = upperBound(to, size);
+        long count = Math.max(0, end - start);
+        List<Map<String, Object>> trades = new ArrayList<>((int) Math.min(count, limit));
+        for (long position = start; position < end && trades.size() < limit; position++) {
+            trades.add(trade(position));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("count", count);
+        response.put("trades", trades);
+        return response;
+    }
+
+    /**
+     * Volume, VWAP and number of prints per {@code bucketSeconds} bucket from {@code from} to
+     * {@code to}, buckets aligned on multiples of their length; buckets without prints are left out.
+     */
+    public List<Map<String, Object>> aggregate(int from, int to, int bucketSeconds) {
+        long size = size();
+        long start = lowerBound(from, size);
+        long end = upperBound(to, size);
+        int base = from - from % bucketSeconds;
+        int buckets = Math.max(0, (to - base) / bucketSeconds + 1);
+        long[] volumes = new long[buckets];
+        double[] notionals = new double[buckets];
+        int[] counts = new int[buckets];
+
+        for (long position = start; position < end; ) {
+            TradeSegment segment = segment(position);
+            int offset = offset(position);
+            int stop = (int) Math.min(SEGMENT_SIZE, offset + (end - position));
+            long[] prices = segment.prices;
+            long[] quantities = segment.quantities;
+            int[] times = segment.times;
+            for (int i = offset; i < stop; i++) {
+                int bucket = (times[i] - base) / bucketSeconds;
+                volumes[bucket] += quantities[i];
+                notionals[bucket] += (double) prices[i] * quantities[i];
+                counts[bucket]++;
+            }
+            position += stop - offset;
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (counts[bucket] > 0) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("time", TimeOfDay.format(base + bucket * bucketSeconds));
+                entry.put("volume", volumes[bucket]);
+                entry.put("vwap", notionals[bucket] / volumes[bucket] / Prices.SCALE);
+                entry.put("count", counts[bucket]);
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /** The {@code count} largest prints from {@code from} to {@code to}, largest first, earliest first among equals. */
+    public List<Map<String, Object>> largest(int from, int to, int count) {
+        long size = size();
+        long start = lowerBound(from, size);
+        long end = upperBound(to, size);
+        // Min-heap of positions by size: the root is the smallest print kept so far
+        long[] heap = new long[(int) Math.min(count, Math.max(0, end - start))];
+        int heapSize = 0;
+
+        for (long position = start; position < end; ) {
+            TradeSegment segment = segment(position);
+            int offset = offset(position);
+            int stop = (int) Math.min(SEGMENT_SIZE, offset + (end - position));
+            long[] quantities = segment.quantities;
+            for (int i = offset; i < stop; i++) {
+                if (heapSize < heap.length) {
+                    heap[heapSize] = position + i - offset;
+                    siftUp(heap, heapSize++);
+                } else if (heap.length > 0 && quantities[i] > quantity(heap[0])) {
+                    heap[0] = position + i - offset;
+                    siftDown(heap, heapSize);
+                }
+            }
+            position += stop - offset;
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(heapSize);
+        while (heapSize > 0) {
+            result.add(trade(heap[0]));
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        // Popped smallest first
+        Collections.reverse(result);
+        return result;
+    }
+
+    private Map<String, Object> trade(long position) {
+        Map<String, Object> trade = new HashMap<>();
+        trade.put("price", Prices.toDouble(price(position)));
+        trade.put("shares", quantity(position));
+        trade.put("aggressor", aggressorSide(position) == OrderBook.BID ? "buy" : "sell");
+        trade.put("type", TradeTape.typeCode(type(position)));
+        trade.put("time", TimeOfDay.format(time(position)));
+        return trade;
+    }
+
+    // Heap order: smaller prints first, and among equals the later one, so earlier prints are kept
+    private boolean before(long a, long b) {
+        long qa = quantity(a);
+        long qb = quantity(b);
+        return qa < qb || (qa == qb && a > b);
+    }
+
+    private void siftUp(long[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(heap[index], heap[parent])) {
+                return;
+            }
+            long swap = heap[index];
+            heap[index] = heap[parent];
+            heap[parent] = swap;
+            index = parent;
+        }
+    }
+
+    private void siftDown(long[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], heap[index])) {
+                return;
+            }
+            long swap = heap[index];
+            heap[index] = heap[child];
+            heap[child] = swap;
+            index = child;
+        }
+    }
+
+    private TradeSegment segment(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long position) {
+        return (int) (position & SEGMENT_MASK);
+    }
+}
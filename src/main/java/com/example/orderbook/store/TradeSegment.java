@@ -0,0 +1,37 @@
+package com.example.orderbook.store;
+
+/**
+ * A fixed block of prints in primitive columns. Filled once by the store's writer, never modified
+ * afterwards; {@link #count} is published after the columns are written, so a reader sees every
+ * print up to the count it read. Segments are numbered by their {@link #sequence} in the order the
+ * store starts them.
+ */
+final class TradeSegment {
+
+    final long[] prices;
+    final long[] quantities;
+    final int[] times;
+    final byte[] sides;
+    final byte[] types;
+    final long sequence;
+    volatile int count;
+
+    TradeSegment(int capacity, long sequence) {
+        this.sequence = sequence;
+        prices = new long[capacity];
+        quantities = new long[capacity];
+        times = new int[capacity];
+        sides = new byte[capacity];
+        types = new byte[capacity];
+    }
+
+    void append(long price, long quantity, int aggressorSide, int type, int time) {
+        int slot = count;
+        prices[slot] = price;
+        quantities[slot] = quantity;
+        times[slot] = time;
+        sides[slot] = (byte) aggressorSide;
+        types[slot] = (byte) type;
+        count = slot + 1;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.orderbook.store;
+
+import com.example.orderbook.engine.TradeListener;
+
+import java.util.Arrays;
+
+/**
+ * Every print of the session in primitive columns (time, price, shares, aggressor side, type), in
+ * append-only segments of {@value #SEGMENT_SIZE} prints. Prints arrive in time order, so the time
+ * column is sorted and queries find a range by binary search.
+ * <p>
+ * Appending is the writer's alone and never blocks; queries read a {@link TradeHistory}, an immutable
+ * view of the segments, from any thread without a lock and without holding up the writer. When the
+ * store is full the oldest segment is dropped. A print older than the last one starts a new session,
+ * as happens when the replay loops or is sought back.
+ * <p>
+ * Segments are numbered in the order they are started, across sessions, and a full one never changes
+ * again, which lets the journal write each one to disk once.
+ */
+public final class TradeStore implements TradeListener {
+
+    static final int SEGMENT_SHIFT = 12;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final int maxSegments;
+    private volatile TradeHistory history = TradeHistory.EMPTY;
+    private TradeSegment current;
+    private int lastTime;
+    private long nextSequence;
+
+    /** Keeps up to {@code capacity} prints, rounded up to whole segments. */
+    public TradeStore(int capacity) {
+        this.maxSegments = Math.max(1, (capacity + SEGMENT_MASK) >> SEGMENT_SHIFT);
+    }
+
+    @Override
+    public void onTrade(long price, long quantity, int aggressorSide, int type, int time) {
+        if (current != null && time < lastTime) {
+            clear();
+        }
+        if (current == null || current.count == SEGMENT_SIZE) {
+            roll();
+        }
+        current.append(price, quantity, aggressorSide, type, time);
+        lastTime = time;
+    }
+
+    /** The prints stored so far; later appends do not show in it. Safe to call from any thread. */
+    public TradeHistory history() {
+        return history;
+    }
+
+    public void clear() {
+        current = null;
+        history = TradeHistory.EMPTY;
+    }
+
+    /** Sequence of the oldest segment held, or of the next one to be started when there is none. Writer only. */
+    public long firstSequence() {
+        TradeSegment[] segments = history.segments();
+        return segments.length > 0 ? segments[0].sequence : nextSequence;
+    }
+
+    /** Empties the store and numbers the segments started from now on from {@code sequence}, as a restored store was. */
+    public void resume(long sequence) {
+        clear();
+        nextSequence = sequence;
+    }
+
+    private void roll() {
+        TradeSegment[] segments = history.segments();
+        int kept = Math.min(segments.length, maxSegments - 1);
+        // The oldest segments beyond capacity are dropped; the new one goes last
+        TradeSegment[] rolled = Arrays.copyOfRange(segments, segments.length - kept, segments.length + 1);
+        current = new TradeSegment(SEGMENT_SIZE, nextSequence++);
+        rolled[kept] = current;
+        history = new TradeHistory(rolled);
+    }
+}
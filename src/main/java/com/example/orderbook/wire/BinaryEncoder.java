@@ -0,0 +1,183 @@
+package com.example.orderbook.wire;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TopOfBook;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.TradeTape;
+import com.example.orderbook.feed.HeaderStats;
+import com.example.orderbook.feed.LevelDeltas;
+import com.example.orderbook.feed.MarketStats;
+import org.springframework.web.socket.BinaryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes topic payloads into {@link WireFormat} frames, straight from the book, tape and stats.
+ * Frames are written into pooled scratch buffers and copied once into an exact-size message that is
+ * shared by every binary session. Reads live state, so callers encode on the thread that owns it.
+ */
+public class BinaryEncoder {
+
+    private static final int ORDER_BYTES = 8 + 1 + 4;
+    private static final int LEVEL_BYTES = 1 + 1 + 8 + 4;
+    private static final int SIDE_STATS_BYTES = 8 + 8 + 4 + 8 + 8 + 8;
+
+    private final BufferPool pool = new BufferPool(4096, 4);
+    private final List<String> instruments;
+
+    /** The instruments are listed in the schema in id order; frames refer to them by id. */
+    public BinaryEncoder(List<String> instruments) {
+        this.instruments = List.copyOf(instruments);
+    }
+
+    public BinaryMessage schema() {
+        ByteBuffer buffer = start(WireFormat.SCHEMA);
+        buffer = pool.ensure(buffer, 4 + 1);
+        buffer.putInt((int) Prices.SCALE);
+        int venueCount = Math.min(Venues.count(), 255);
+        buffer.put((byte) venueCount);
+        for (int venue = 0; venue < venueCount; venue++) {
+            buffer = putString(buffer, Venues.name(venue));
+        }
+        buffer = pool.ensure(buffer, 1);
+        buffer.put((byte) 2);
+        buffer = putString(buffer, TradeTape.typeCode(TradeTape.TYPE_AUTOMATIC));
+        buffer = putString(buffer, TradeTape.typeCode(TradeTape.TYPE_OFF_BOOK));
+        buffer = pool.ensure(buffer, 2);
+        buffer.putShort((short) instruments.size());
+        for (String instrument : instruments) {
+            buffer = putString(buffer, instrument);
+        }
+        return finish(buffer);
+    }
+
+    public BinaryMessage snapshot(int instrument, long seq, int time, OrderBook book, HeaderStats header) {
+        ByteBuffer buffer = start(WireFormat.SNAPSHOT, instrument);
+        buffer = pool.ensure(buffer, 8 + 4 + 2 * SIDE_STATS_BYTES);
+        buffer.putLong(seq);
+        buffer.putInt(time);
+        putStats(buffer, book.top(), header);
+        for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+            int depth = book.depth(side);
+            buffer = pool.ensure(buffer, 4);
+            buffer.putInt(depth);
+            for (int level = 0; level < depth; level++) {
+                buffer = pool.ensure(buffer, 8 + 4 + book.levelOrderCount(side, level) * ORDER_BYTES);
+                buffer.putLong(book.levelPrice(side, level));
+                putOrders(buffer, book, side, level);
+            }
+        }
+        return finish(buffer);
+    }
+
+    public BinaryMessage delta(int instrument, long seq, int time, LevelDeltas deltas, HeaderStats header) {
+        OrderBook book = deltas.getBook();
+        ByteBuffer buffer = start(WireFormat.DELTA, instrument);
+        buffer = pool.ensure(buffer, 8 + 4 + 2 * SIDE_STATS_BYTES + 4);
+        buffer.putLong(seq);
+        buffer.putInt(time);
+        putStats(buffer, book.top(), header);
+        buffer.putInt(deltas.size());
+        for (int i = 0; i < deltas.size(); i++) {
+            int side = deltas.side(i);
+            long price = deltas.price(i);
+            int action = deltas.action(i);
+            int level = action == LevelDeltas.DELETE ? -1 : book.levelOf(side, price);
+            buffer = pool.ensure(buffer, LEVEL_BYTES + (level < 0 ? 0 : book.levelOrderCount(side, level) * ORDER_BYTES));
+            buffer.put((byte) side);
+            buffer.put((byte) action);
+            buffer.putLong(price);
+            if (level >= 0) {
+                putOrders(buffer, book, side, level);
+            }
+        }
+        return finish(buffer);
+    }
+
+    public BinaryMessage trades(int instrument, TradeTape tape) {
+        ByteBuffer buffer = start(WireFormat.TRADES, instrument);
+        int count = tape.displaySize();
+        buffer = pool.ensure(buffer, 2 + count * (8 + 8 + 1 + 1 + 4));
+        buffer.putShort((short) count);
+        for (int age = 0; age < count; age++) {
+            buffer.putLong(tape.price(age));
+            buffer.putLong(tape.quantity(age));
+            buffer.put((byte) tape.aggressorSide(age));
+            buffer.put((byte) tape.type(age));
+            buffer.putInt(tape.time(age));
+        }
+        return finish(buffer);
+    }
+
+    public BinaryMessage ohlc(int instrument, MarketStats stats) {
+        ByteBuffer buffer = start(WireFormat.OHLC, instrument);
+        buffer = pool.ensure(buffer, 1 + 4 + 4 + 8 * 10);
+        buffer.put((byte) (stats.isAvailable() ? 1 : 0));
+        buffer.putInt(stats.time());
+        buffer.putDouble(stats.lastChange());
+        buffer.putLong(stats.open());
+        // No yearly figure is kept
+        buffer.putLong(Prices.NONE);
+        buffer.putLong(stats.high());
+        buffer.putDouble(stats.vwap());
+        buffer.putLong(stats.low());
+        buffer.putInt(stats.tradeCount());
+        buffer.putLong(stats.volume());
+        buffer.putLong(stats.spread());
+        buffer.putDouble(stats.spreadPercent());
+        return finish(buffer);
+    }
+
+    private ByteBuffer start(int type) {
+        ByteBuffer buffer = pool.acquire();
+        buffer.put((byte) WireFormat.VERSION);
+        buffer.put((byte) type);
+        return buffer;
+    }
+
+    private ByteBuffer start(int type, int instrument) {
+        ByteBuffer buffer = start(type);
+        buffer.putShort((short) instrument);
+        return buffer;
+    }
+
+    private BinaryMessage finish(ByteBuffer buffer) {
+        byte[] frame = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(frame);
+        pool.release(buffer);
+        return new BinaryMessage(frame);
+    }
+
+    private static void putStats(ByteBuffer buffer, TopOfBook top, HeaderStats header) {
+        for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+            buffer.putLong(top.bestPrice(side));
+            buffer.putLong(top.touchQuantity(side));
+            buffer.putInt(top.touchOrderCount(side));
+            buffer.putDouble(top.touchNotional(side));
+            buffer.putDouble(header.priceChange(side));
+            buffer.putDouble(header.priceChangePercent(side));
+        }
+    }
+
+    private static void putOrders(ByteBuffer buffer, OrderBook book, int side, int level) {
+        buffer.putInt(book.levelOrderCount(side, level));
+        for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+            buffer.putLong(book.orderQuantity(order));
+            buffer.put((byte) book.orderVenue(order));
+            buffer.putInt(book.orderTime(order));
+        }
+    }
+
+    private ByteBuffer putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        int length = Math.min(bytes.length, 255);
+        buffer = pool.ensure(buffer, 1 + length);
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+        return buffer;
+    }
+}
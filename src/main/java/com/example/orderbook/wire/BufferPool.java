@@ -0,0 +1,48 @@
+package com.example.orderbook.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of reusable little-endian scratch buffers for frame encoding, so steady-state encoding
+ * allocates only the final frame. Buffers that had to grow are returned at their grown size.
+ */
+public class BufferPool {
+
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private final int initialCapacity;
+    private final int maxPooled;
+
+    public BufferPool(int initialCapacity, int maxPooled) {
+        this.initialCapacity = initialCapacity;
+        this.maxPooled = maxPooled;
+    }
+
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(initialCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+
+    /** Returns a buffer with room for {@code needed} more bytes, swapping in a larger one if required. */
+    public ByteBuffer ensure(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+        ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
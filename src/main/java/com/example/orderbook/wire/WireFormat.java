@@ -0,0 +1,44 @@
+package com.example.orderbook.wire;
+
+/**
+ * Layout of the binary subprotocol, negotiated as {@value #BINARY_PROTOCOL} in the WebSocket
+ * handshake; sessions that do not ask for it get the JSON text messages.
+ * <p>
+ * Every frame is little-endian and starts with {@code u8 version, u8 type}; every frame but SCHEMA
+ * then names its instrument as a {@code u16} index. Prices are {@code i64} ticks of 1/{@code priceScale}
+ * ({@code i64} minimum = no price), times are {@code i32} seconds of the day (-1 = unknown), instruments,
+ * venues and trade types are indexes into the dictionaries of the latest {@link #SCHEMA} frame, and
+ * {@code f64} NaN stands for "no value".
+ * <pre>
+ * SCHEMA   i32 priceScale, u8 venueCount, venueCount x str, u8 tradeTypeCount, tradeTypeCount x str,
+ *          u16 instrumentCount, instrumentCount x str
+ *          where str = u8 length, ASCII bytes
+ * SNAPSHOT i64 seq, i32 time, stats, bid side, ask side
+ *          side  = u32 levelCount, levelCount x (i64 price, u32 orderCount, orderCount x order)
+ *          order = i64 size, u8 venue, i32 time
+ * DELTA    i64 seq, i32 time, stats, u32 count, count x (u8 side, u8 action, i64 price,
+ *          and unless action is delete: u32 orderCount, orderCount x order)
+ * TRADES   u16 count, count x (i64 price, i64 shares, u8 aggressorSide, u8 type, i32 time)
+ * OHLC     u8 available, i32 time, f64 lastChange, i64 open, i64 year, i64 high, f64 vwap (ticks),
+ *          i64 low, i32 tradeCount, i64 volume, i64 spread, f64 spreadPercent
+ * stats    per side (bid, ask): i64 bestPrice, i64 touchQuantity, i32 touchOrders, f64 touchNotional,
+ *          f64 priceChange, f64 priceChangePercent
+ * </pre>
+ * A SCHEMA frame precedes every snapshot, and is sent again whenever a venue is added.
+ */
+public final class WireFormat {
+
+    public static final String BINARY_PROTOCOL = "orderbook.v1.binary";
+    public static final String JSON_PROTOCOL = "orderbook.v1.json";
+
+    public static final int VERSION = 2;
+
+    public static final int SCHEMA = 0;
+    public static final int SNAPSHOT = 1;
+    public static final int DELTA = 2;
+    public static final int TRADES = 3;
+    public static final int OHLC = 4;
+
+    private WireFormat() {
+    }
+}
@@ -4,6 +4,23 @@ const maxOrdersBeforeScrolling = 22;
 
 let websocket = null;
 
+// Binary subprotocol, opted into with ?wire=binary; JSON stays the default. Layout: WireFormat.java
+const BINARY_PROTOCOL = 'orderbook.v1.binary';
+const wireSchema = { priceScale: 10000, venues: [], tradeTypes: [], instruments: [] };
+
+// The ticker panel rendered from the feed; the session subscribes to it when connecting
+const displayedSymbol = 'LSE:RR';
+
+// Sequenced orderbook feed: last applied sequence number and, per side, price -> { orders, rows }.
+// Deltas are only applied on top of a snapshot; a gap drops the state until a fresh snapshot arrives.
+const orderbookState = {
+    seq: 0,
+    awaitingSnapshot: true,
+    midpoint: null,
+    bid: new Map(),
+    ask: new Map()
+};
+
 document.addEventListener("DOMContentLoaded", () => {
     const tickerTabs = document.querySelectorAll(".tab");
     const tickerPanels = document.querySelectorAll(".tab-panel");
@@ -131,17 +148,24 @@ function initializeWebSocket() {
     // Dynamically determine WebSocket URL based on current location
     const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
     const host = window.location.host;
-    const wsUrl = `${protocol}//${host}/websocket`;
+    // The order table shows every resting order, so ask for the full per-order book rather than the top levels
+    const wsUrl = `${protocol}//${host}/websocket?symbols=${encodeURIComponent(displayedSymbol)}&depth=0&aggregate=false`;
     
-    websocket = new WebSocket(wsUrl);
+    const binaryWire = new URLSearchParams(window.location.search).get('wire') === 'binary';
+    websocket = binaryWire ? new WebSocket(wsUrl, [BINARY_PROTOCOL]) : new WebSocket(wsUrl);
+    websocket.binaryType = 'arraybuffer';
     
     websocket.onopen = function(event) {
         console.log('WebSocket connection established');
+        // The server sends a snapshot to every new session
+        orderbookState.awaitingSnapshot = true;
     };
     
     websocket.onmessage = function(event) {
-        const data = JSON.parse(event.data);
-        handleWebSocketMessage(data);
+        const data = (event.data instanceof ArrayBuffer) ? decodeBinaryFrame(event.data) : JSON.parse(event.data);
+        if (data) {
+            handleWebSocketMessage(data);
+        }
     };
     
     websocket.onclose = function(event) {
@@ -155,10 +179,229 @@ function initializeWebSocket() {
     };
 }
 
+// Decodes a binary frame into the same { type, symbol, content } shape as the JSON messages; schema frames return null
+function decodeBinaryFrame(buffer) {
+    const reader = new FrameReader(buffer);
+    const version = reader.u8();
+    const type = reader.u8();
+    if (version !== 2) {
+        console.error('Unsupported binary frame version:', version);
+        return null;
+    }
+    if (type === 0) {
+        decodeSchema(reader);
+        return null;
+    }
+    const symbol = wireSchema.instruments[reader.u16()];
+    switch (type) {
+        case 1:
+            return { type: 'orderbook', symbol: symbol, content: decodeBookFrame(reader, false) };
+        case 2:
+            return { type: 'orderbook-delta', symbol: symbol, content: decodeBookFrame(reader, true) };
+        case 3:
+            return { type: 'trades', symbol: symbol, content: decodeTrades(reader) };
+        case 4:
+            return { type: 'ohlc', symbol: symbol, content: decodeOhlc(reader) };
+        default:
+            console.log('Unknown binary frame type:', type);
+            return null;
+    }
+}
+
+class FrameReader {
+    constructor(buffer) {
+        this.view = new DataView(buffer);
+        this.offset = 0;
+    }
+
+    u8() {
+        return this.view.getUint8(this.offset++);
+    }
+
+    u16() {
+        const value = this.view.getUint16(this.offset, true);
+        this.offset += 2;
+        return value;
+    }
+
+    u32() {
+        const value = this.view.getUint32(this.offset, true);
+        this.offset += 4;
+        return value;
+    }
+
+    i32() {
+        const value = this.view.getInt32(this.offset, true);
+        this.offset += 4;
+        return value;
+    }
+
+    // Exact for the magnitudes used here (prices, sizes, sequence numbers)
+    i64() {
+        const low = this.view.getUint32(this.offset, true);
+        const high = this.view.getInt32(this.offset + 4, true);
+        this.offset += 8;
+        return high * 4294967296 + low;
+    }
+
+    f64() {
+        const value = this.view.getFloat64(this.offset, true);
+        this.offset += 8;
+        return value;
+    }
+
+    str() {
+        const length = this.u8();
+        let text = '';
+        for (let i = 0; i < length; i++) {
+            text += String.fromCharCode(this.u8());
+        }
+        return text;
+    }
+
+    // i64 ticks to a price; the i64 minimum means "no price"
+    price() {
+        const ticks = this.i64();
+        return ticks < -9e18 ? null : ticks / wireSchema.priceScale;
+    }
+
+    time() {
+        return formatTimeOfDay(this.i32());
+    }
+
+    nullableF64() {
+        const value = this.f64();
+        return Number.isNaN(value) ? null : value;
+    }
+}
+
+function formatTimeOfDay(secondOfDay) {
+    if (secondOfDay < 0) {
+        return '';
+    }
+    const pad = (value) => String(value).padStart(2, '0');
+    return `${pad(Math.floor(secondOfDay / 3600))}:${pad(Math.floor(secondOfDay / 60) % 60)}:${pad(secondOfDay % 60)}`;
+}
+
+function decodeSchema(reader) {
+    wireSchema.priceScale = reader.i32();
+    wireSchema.venues = Array.from({ length: reader.u8() }, () => reader.str());
+    wireSchema.tradeTypes = Array.from({ length: reader.u8() }, () => reader.str());
+    wireSchema.instruments = Array.from({ length: reader.u16() }, () => reader.str());
+}
+
+function decodeBookFrame(reader, delta) {
+    const content = { seq: reader.i64(), timestamp: reader.time() };
+    Object.assign(content, decodeBookStats(reader));
+    if (delta) {
+        const actions = ['add', 'modify', 'delete'];
+        content.levels = Array.from({ length: reader.u32() }, () => {
+            const level = { side: reader.u8() === 0 ? 'bid' : 'ask' };
+            level.action = actions[reader.u8()];
+            level.price = reader.price();
+            if (level.action !== 'delete') {
+                level.orders = decodeOrders(reader, level.price);
+            }
+            return level;
+        });
+    } else {
+        content.bids = decodeSide(reader);
+        content.asks = decodeSide(reader);
+    }
+    return content;
+}
+
+function decodeSide(reader) {
+    const orders = [];
+    const levelCount = reader.u32();
+    for (let i = 0; i < levelCount; i++) {
+        const price = reader.price();
+        orders.push(...decodeOrders(reader, price));
+    }
+    return orders;
+}
+
+function decodeOrders(reader, price) {
+    return Array.from({ length: reader.u32() }, () => ({
+        price: price,
+        size: reader.i64(),
+        exchange: wireSchema.venues[reader.u8()],
+        time: reader.time()
+    }));
+}
+
+// Rebuilds the yellowBar and headerInfo objects of the JSON messages from the touch statistics
+function decodeBookStats(reader) {
+    const sides = [0, 1].map(() => ({
+        bestPrice: reader.price(),
+        touchQuantity: reader.i64(),
+        touchOrders: reader.i32(),
+        touchNotional: reader.f64(),
+        priceChange: reader.nullableF64(),
+        priceChangePercent: reader.nullableF64()
+    }));
+    const [bid, ask] = sides;
+    const twoSided = bid.bestPrice !== null && ask.bestPrice !== null;
+    const yellowBar = {
+        bidOrderCount: twoSided ? bid.touchOrders : 0,
+        bidShareCount: twoSided ? bid.touchQuantity : 0,
+        bidPrice: twoSided ? bid.bestPrice : 0,
+        askPrice: twoSided ? ask.bestPrice : 0,
+        askShareCount: twoSided ? ask.touchQuantity : 0,
+        askOrderCount: twoSided ? ask.touchOrders : 0
+    };
+    const sideData = (side) => side.bestPrice === null
+        ? { topPrice: null, priceChange: null, priceChangePercent: null, totalVolume: 0 }
+        : {
+            topPrice: side.bestPrice,
+            priceChange: side.priceChange,
+            priceChangePercent: side.priceChange === null ? null : side.priceChangePercent,
+            totalVolume: Math.round(side.touchNotional)
+        };
+    return { yellowBar, headerInfo: { buyData: sideData(bid), sellData: sideData(ask) } };
+}
+
+function decodeTrades(reader) {
+    return {
+        trades: Array.from({ length: reader.u16() }, () => ({
+            price: reader.price(),
+            shares: reader.i64(),
+            color: reader.u8() === 0 ? 'blue' : 'red',
+            type: wireSchema.tradeTypes[reader.u8()],
+            time: reader.time()
+        }))
+    };
+}
+
+function decodeOhlc(reader) {
+    const available = reader.u8() === 1;
+    const time = reader.time();
+    return {
+        time: available ? time : '00:00:00',
+        lastChange: reader.nullableF64(),
+        open: reader.price(),
+        year: reader.price(),
+        high: reader.price(),
+        vwap: reader.f64() / wireSchema.priceScale,
+        low: reader.price(),
+        trades: reader.i32(),
+        volume: reader.i64(),
+        spread: reader.price(),
+        spreadPercentage: reader.f64()
+    };
+}
+
 function handleWebSocketMessage(data) {
+    if (data.symbol && data.symbol !== displayedSymbol) {
+        // Only the displayed instrument has a panel
+        return;
+    }
     switch(data.type) {
         case 'orderbook':
-            updateOrderbook(data.content);
+            applyOrderbookSnapshot(data.content);
+            break;
+        case 'orderbook-delta':
+            applyOrderbookDelta(data.content);
             break;
         case 'trades':
             updateTrades(data.content);
@@ -172,11 +415,68 @@ function handleWebSocketMessage(data) {
         case 'news':
             updateNews(data.content);
             break;
+        case 'venues':
+        case 'analytics':
+            // Per-venue breakdown and microstructure signals for API clients; the panels show the consolidated book
+            break;
         default:
             console.log('Unknown message type:', data.type);
     }
 }
 
+function applyOrderbookSnapshot(snapshot) {
+    orderbookState.seq = snapshot.seq;
+    orderbookState.awaitingSnapshot = false;
+    updateOrderbook(snapshot);
+}
+
+function applyOrderbookDelta(delta) {
+    if (DEBUG) console.log('Received delta from WebSocket:', delta);
+
+    if (orderbookState.awaitingSnapshot || delta.seq <= orderbookState.seq) {
+        // Waiting for a snapshot, or already reflected in the one we have
+        return;
+    }
+    if (delta.seq !== orderbookState.seq + 1) {
+        console.log('Orderbook sequence gap (%d after %d), requesting resync', delta.seq, orderbookState.seq);
+        requestResync();
+        return;
+    }
+    orderbookState.seq = delta.seq;
+
+    // Only the levels in the delta touch the DOM
+    delta.levels.forEach(level => {
+        const containerId = level.side === 'bid' ? 'bid-orders' : 'ask-orders';
+        if (level.action === 'delete') {
+            removeLevel(containerId, level.side, level.price);
+        } else {
+            replaceLevel(containerId, level.side, level.price, level.orders);
+        }
+    });
+
+    const midpoint = calculateMidpoint(bestLevelPrice('bid'), bestLevelPrice('ask'));
+    if (midpoint !== orderbookState.midpoint) {
+        recolorOrders(midpoint);
+    }
+
+    window.currentOrderbookData = {
+        timestamp: delta.timestamp,
+        bids: flattenLevels('bid'),
+        asks: flattenLevels('ask'),
+        yellowBar: delta.yellowBar,
+        headerInfo: delta.headerInfo
+    };
+    updateOrderbookDecorations(window.currentOrderbookData);
+}
+
+// Asks for fresh snapshots of every stateful topic (orderbook and timeseries) of the displayed instrument
+function requestResync() {
+    orderbookState.awaitingSnapshot = true;
+    if (websocket && websocket.readyState === WebSocket.OPEN) {
+        websocket.send(JSON.stringify({ action: 'resync', symbol: displayedSymbol }));
+    }
+}
+
 function updateOrderbook(orderbookData) {
     if (DEBUG) console.log('Received from WebSocket:', orderbookData);
 
@@ -185,15 +485,16 @@ function updateOrderbook(orderbookData) {
     
     const bestBid = (orderbookData.bids || []).reduce((max, o) => Math.max(max, o.price), -Infinity);
     const bestAsk = (orderbookData.asks || []).reduce((min, o) => Math.min(min, o.price), Infinity);
+    const midpoint = calculateMidpoint(bestBid, bestAsk);
+    orderbookState.midpoint = midpoint;
 
-    // Fallback if one side is missing
-    const midpoint = (isFinite(bestBid) && isFinite(bestAsk))
-        ? (bestBid + bestAsk) / 2
-        : 632.30;
-
-    populateOrders('bid-orders', orderbookData.bids, 'bid', midpoint);
-    populateOrders('ask-orders', orderbookData.asks, 'ask', midpoint);
+    populateOrders('bid-orders', orderbookData.bids || [], 'bid', midpoint);
+    populateOrders('ask-orders', orderbookData.asks || [], 'ask', midpoint);
     
+    updateOrderbookDecorations(orderbookData);
+}
+
+function updateOrderbookDecorations(orderbookData) {
     const maxOrderNumber = Math.max(getOrderCount('bid-orders'), getOrderCount('ask-orders'));
     
     // Update orderbook scrollbar state
@@ -213,38 +514,120 @@ function updateOrderbook(orderbookData) {
     updatePriceLevelBarFromOrderbook(orderbookData.bids, orderbookData.asks);
 }
 
+function calculateMidpoint(bestBid, bestAsk) {
+    // Fallback if one side is missing
+    return (isFinite(bestBid) && isFinite(bestAsk))
+        ? (bestBid + bestAsk) / 2
+        : 632.30;
+}
+
 function populateOrders(containerId, orders, side, midpoint) {
     const container = document.getElementById(containerId);
     container.innerHTML = '';
+
+    // Rebuild the level state; orders arrive best level first, in queue order
+    const levels = new Map();
+    orders.forEach(order => {
+        let level = levels.get(order.price);
+        if (!level) {
+            level = { orders: [], rows: [] };
+            levels.set(order.price, level);
+        }
+        level.orders.push(order);
+    });
+    orderbookState[side] = levels;
     
     // Apply filtering based on dropdown selection
-    const filteredOrders = applyOrderFiltering(orders, side);
-    
-    // Add actual order rows
-    filteredOrders.forEach(order => {
-        const orderRow = document.createElement('div');
+    levels.forEach(level => {
+        applyOrderFiltering(level.orders, side).forEach(order => {
+            const orderRow = createOrderRow(order, side, midpoint);
+            level.rows.push(orderRow);
+            container.appendChild(orderRow);
+        });
+    });
+    if (DEBUG) console.log("%d orders in table on %s side from filtered input", container.childElementCount, side);
+}
 
-        orderRow.className = `order-row ${getOrderColor(order.price, midpoint)}`;
-        
-        if (side === 'bid') {
-            orderRow.innerHTML = `
-                <span class="order-cell">${order.time}</span>
-                <span class="order-cell">${order.exchange}</span>
-                <span class="order-cell">${order.size.toLocaleString()}</span>
-                <span class="order-cell">${order.price.toFixed(2)}</span>
-            `;
-        } else {
-            orderRow.innerHTML = `
-                <span class="order-cell">${order.price.toFixed(2)}</span>
-                <span class="order-cell">${order.size.toLocaleString()}</span>
-                <span class="order-cell">${order.exchange}</span>
-                <span class="order-cell">${order.time}</span>
-            `;
+function replaceLevel(containerId, side, price, orders) {
+    const container = document.getElementById(containerId);
+    const levels = orderbookState[side];
+    let level = levels.get(price);
+    if (level) {
+        level.rows.forEach(row => row.remove());
+    } else {
+        level = { orders: [], rows: [] };
+        levels.set(price, level);
+    }
+    // Delta orders carry their level's price only once
+    level.orders = orders.map(order => ({ ...order, price }));
+    level.rows = applyOrderFiltering(orders, side)
+        .map(order => createOrderRow(order, side, orderbookState.midpoint));
+
+    // Keep the container best level first: insert before the first shown level behind this one
+    const anchor = findNextLevelRow(side, price);
+    level.rows.forEach(row => container.insertBefore(row, anchor));
+}
+
+function removeLevel(containerId, side, price) {
+    const level = orderbookState[side].get(price);
+    if (level) {
+        level.rows.forEach(row => row.remove());
+        orderbookState[side].delete(price);
+    }
+}
+
+function findNextLevelRow(side, price) {
+    let anchorPrice = null;
+    let anchor = null;
+    orderbookState[side].forEach((level, levelPrice) => {
+        const behind = side === 'bid' ? levelPrice < price : levelPrice > price;
+        const closer = anchorPrice === null || (side === 'bid' ? levelPrice > anchorPrice : levelPrice < anchorPrice);
+        if (behind && closer && level.rows.length > 0) {
+            anchorPrice = levelPrice;
+            anchor = level.rows[0];
         }
-        
-        container.appendChild(orderRow);
     });
-    if (DEBUG) console.log("%d orders in table on %s side from filtered input", container.childElementCount, side);
+    return anchor;
+}
+
+function bestLevelPrice(side) {
+    let best = side === 'bid' ? -Infinity : Infinity;
+    orderbookState[side].forEach((level, price) => {
+        best = side === 'bid' ? Math.max(best, price) : Math.min(best, price);
+    });
+    return best;
+}
+
+function flattenLevels(side) {
+    const prices = Array.from(orderbookState[side].keys())
+        .sort((a, b) => side === 'bid' ? b - a : a - b);
+    return prices.flatMap(price => orderbookState[side].get(price).orders);
+}
+
+function recolorOrders(midpoint) {
+    orderbookState.midpoint = midpoint;
+    ['bid', 'ask'].forEach(side => {
+        orderbookState[side].forEach((level, price) => {
+            const className = `order-row ${getOrderColor(price, midpoint)}`;
+            level.rows.forEach(row => row.className = className);
+        });
+    });
+}
+
+function createOrderRow(order, side, midpoint) {
+    const orderRow = document.createElement('div');
+    orderRow.className = `order-row ${getOrderColor(order.price, midpoint)}`;
+
+    const cells = side === 'bid'
+        ? [order.time, order.exchange, order.size.toLocaleString(), order.price.toFixed(2)]
+        : [order.price.toFixed(2), order.size.toLocaleString(), order.exchange, order.time];
+    cells.forEach(text => {
+        const cell = document.createElement('span');
+        cell.className = 'order-cell';
+        cell.textContent = text;
+        orderRow.appendChild(cell);
+    });
+    return orderRow;
 }
 
 function getOrderCount(containerId) {
@@ -281,69 +664,94 @@ function getOrderColor(price, spreadMid) {
 
 let timeseriesChart = null;
 
+// Chart buckets kept client-side: bucket number base + i is buckets[i]. Full messages replace them,
+// incremental ones rewrite from their first bucket (the previously open one) onwards.
+const timeseriesState = {
+    base: 0,
+    buckets: [],
+    resolution: 60,
+    symbol: ''
+};
+
 function updateTimeseries(timeseriesData) {
+    if (timeseriesData.full) {
+        timeseriesState.base = timeseriesData.from;
+        timeseriesState.buckets = timeseriesData.buckets.slice();
+        timeseriesState.resolution = timeseriesData.resolution;
+        timeseriesState.symbol = timeseriesData.symbol;
+    } else {
+        if (orderbookState.awaitingSnapshot) {
+            // A full series comes right after the pending snapshot
+            return;
+        }
+        const offset = timeseriesData.from - timeseriesState.base;
+        if (offset < 0 || offset > timeseriesState.buckets.length) {
+            console.log('Timeseries gap (bucket %d, have %d..%d), requesting resync', timeseriesData.from,
+                timeseriesState.base, timeseriesState.base + timeseriesState.buckets.length);
+            requestResync();
+            return;
+        }
+        timeseriesState.buckets.length = offset;
+        timeseriesState.buckets.push(...timeseriesData.buckets);
+    }
+
+    const points = timeseriesPoints();
     if (!timeseriesChart) {
-        initializeTimeseriesChart(timeseriesData);
+        initializeTimeseriesChart(timeseriesState.symbol, points);
     } else {
-        updateTimeseriesChart(timeseriesData);
+        timeseriesChart.data.datasets[0].data = points;
+        timeseriesChart.update('none');
+    }
+}
+
+// Each bucket holds its extremes in the order they were reached; spread them over the bucket
+function timeseriesPoints() {
+    const points = [];
+    const bucketMinutes = timeseriesState.resolution / 60;
+    timeseriesState.buckets.forEach(bucket => {
+        const parts = bucket.time.split(':').map(part => parseInt(part));
+        const minutes = parts[0] * 60 + parts[1] + (parts[2] || 0) / 60;
+        bucket.prices.forEach((price, i) => {
+            const x = chartX(minutes + i * bucketMinutes / bucket.prices.length);
+            if (x !== undefined) {
+                points.push({ x: x, y: price });
+            }
+        });
+    });
+    return points;
+}
+
+// Map times (in minutes of the day) to the chart's evenly spaced x positions starting at 08:00 (x=0)
+function chartX(minutes) {
+    if (minutes >= 9 * 60 && minutes < 11 * 60) {
+        // Scale within 0.5-1.5 range (09:00 is at x=0.5, 11:00 is at x=1.5)
+        return 0.5 + (minutes - 9 * 60) / (2 * 60);
+    } else if (minutes >= 11 * 60 && minutes < 13 * 60) {
+        // Scale within 1.5-2.5 range
+        return 1.5 + (minutes - 11 * 60) / (2 * 60);
+    } else if (minutes >= 13 * 60 && minutes < 15 * 60) {
+        // Scale within 2.5-3.5 range
+        return 2.5 + (minutes - 13 * 60) / (2 * 60);
+    } else if (minutes >= 15 * 60) {
+        // Scale within 3.5-4.5 range (15:00 to 16:30)
+        return 3.5 + (minutes - 15 * 60) / 90;
     }
+    return undefined;
 }
 
-function initializeTimeseriesChart(timeseriesData) {
+function initializeTimeseriesChart(symbol, points) {
     const ctx = document.getElementById('timeseries-chart').getContext('2d');
 
     // Register annotation plugin
     const annotationPlugin = window['chartjs-plugin-annotation'];
     if (annotationPlugin) Chart.register(annotationPlugin);
 
-    // Create synthetic x-axis starting at 08:00 with even intervals
-    const syntheticData = [];
-    
-    // Map actual data to synthetic x positions starting from 08:00 (x=0)
-    timeseriesData.prices.forEach(point => {
-      if (point.price !== null) {
-        let xPosition;
-        const time = point.time;
-        
-        // Map times to evenly spaced x positions starting at 08:00
-        if (time >= '09:00' && time < '11:00') {
-          // Scale within 0.5-1.5 range (09:00 is at x=0.5, 11:00 is at x=1.5)
-          const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-          const start = 9 * 60; // 09:00 in minutes
-          const end = 11 * 60;  // 11:00 in minutes
-          xPosition = 0.5 + (minutes - start) / (end - start);
-        } else if (time >= '11:00' && time < '13:00') {
-          // Scale within 1.5-2.5 range
-          const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-          const start = 11 * 60;
-          const end = 13 * 60;
-          xPosition = 1.5 + (minutes - start) / (end - start);
-        } else if (time >= '13:00' && time < '15:00') {
-          // Scale within 2.5-3.5 range
-          const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-          const start = 13 * 60;
-          const end = 15 * 60;
-          xPosition = 2.5 + (minutes - start) / (end - start);
-        } else if (time >= '15:00') {
-          // Scale within 3.5-4.5 range
-          const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-          const start = 15 * 60;
-          const end = 16 * 60 + 30; // 16:30
-          xPosition = 3.5 + (minutes - start) / (end - start);
-        }
-        
-        if (xPosition !== undefined) {
-          syntheticData.push({ x: xPosition, y: point.price });
-        }
-      }
-    });
-
     timeseriesChart = new Chart(ctx, {
       type: 'line',
       data: {
         datasets: [{
-          label: timeseriesData.symbol,
-          data: syntheticData,
+          label: symbol,
+          data: points,
           borderColor: '#4a90e2',
           backgroundColor: 'transparent',
           borderWidth: 1,
@@ -411,49 +819,31 @@ function initializeTimeseriesChart(timeseriesData) {
     });
 }
 
-function updateTimeseriesChart(timeseriesData) {
-    // Create synthetic data like in initialization
-    const syntheticData = [];
-    
-    timeseriesData.prices.forEach(point => {
-        if (point.price !== null) {
-            let xPosition;
-            const time = point.time;
-            
-            if (time >= '09:00' && time < '11:00') {
-                const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-                const start = 9 * 60;
-                const end = 11 * 60;
-                xPosition = 0.5 + (minutes - start) / (end - start);
-            } else if (time >= '11:00' && time < '13:00') {
-                const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-                const start = 11 * 60;
-                const end = 13 * 60;
-                xPosition = 1.5 + (minutes - start) / (end - start);
-            } else if (time >= '13:00' && time < '15:00') {
-                const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-                const start = 13 * 60;
-                const end = 15 * 60;
-                xPosition = 2.5 + (minutes - start) / (end - start);
-            } else if (time >= '15:00') {
-                const minutes = parseInt(time.split(':')[0]) * 60 + parseInt(time.split(':')[1]);
-                const start = 15 * 60;
-                const end = 16 * 60 + 30;
-                xPosition = 3.5 + (minutes - start) / (end - start);
-            }
-            
-            if (xPosition !== undefined) {
-                syntheticData.push({ x: xPosition, y: point.price });
-            }
-        }
-    });
-    
-    timeseriesChart.data.datasets[0].data = syntheticData;
-    timeseriesChart.update();
+function updateOHLC(ohlcData) {
+    populateOhlcData(formatOhlcForDisplay(ohlcData));
 }
 
-function updateOHLC(ohlcData) {
-    populateOhlcData(ohlcData.data);
+// Raw OHLC values arrive as numbers in both encodings; they are only turned into text here
+function formatOhlcForDisplay(ohlc) {
+    const price = (value) => value !== null && value !== undefined ? value.toFixed(2) : '--';
+    let lastChange = '--';
+    if (ohlc.lastChange !== null && ohlc.lastChange !== undefined) {
+        lastChange = `${Math.abs(ohlc.lastChange).toFixed(2)} ${ohlc.lastChange > 0 ? '↑' : '↓'}`;
+    }
+    return [
+        { label: 'Time', value: ohlc.time },
+        { label: 'Last Chg', value: lastChange },
+        { label: 'Open', value: price(ohlc.open) },
+        { label: 'Year', value: price(ohlc.year) },
+        { label: 'High', value: price(ohlc.high) },
+        { label: 'VWAP', value: price(ohlc.vwap) },
+        { label: 'Low', value: price(ohlc.low) },
+        { label: 'Trades', value: ohlc.trades !== null && ohlc.trades !== undefined ? ohlc.trades.toLocaleString('en-US') : '--' },
+        { label: 'Trd Hi', value: price(ohlc.high) },
+        { label: 'Spread', value: price(ohlc.spread) },
+        { label: 'Trd Lo', value: price(ohlc.low) },
+        { label: 'Sprd %', value: ohlc.spreadPercentage !== null && ohlc.spreadPercentage !== undefined ? `${ohlc.spreadPercentage.toFixed(2)}%` : '--%' }
+    ];
 }
 
 function populateOhlcData(data) {
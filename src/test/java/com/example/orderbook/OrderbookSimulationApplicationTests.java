@@ -3,7 +3,8 @@ package com.example.orderbook;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// No journal: it would write ./journal and recover whatever an earlier run left there
+@SpringBootTest(properties = "orderbook.journal.enabled=false")
 class OrderbookSimulationApplicationTests {
 
 	@Test
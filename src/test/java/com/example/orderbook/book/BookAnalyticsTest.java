@@ -0,0 +1,101 @@
+package com.example.orderbook.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookAnalyticsTest {
+
+    private final OrderBook book = new OrderBook();
+    private final BookAnalytics analytics = new BookAnalytics(book);
+
+    BookAnalyticsTest() {
+        book.addListener(analytics);
+    }
+
+    @Test
+    void imbalanceMicropriceAndDepthCurves() {
+        book.add(OrderBook.BID, 1, Prices.toTicks(10.0), 300, Venues.LSE, 0);
+        book.add(OrderBook.BID, 2, Prices.toTicks(9.5), 200, Venues.LSE, 0);
+        book.add(OrderBook.BID, 3, Prices.toTicks(9.5), 100, Venues.BATS, 0);
+        book.add(OrderBook.ASK, 4, Prices.toTicks(10.5), 100, Venues.LSE, 0);
+        assertTrue(analytics.update());
+        assertFalse(analytics.update());
+
+        // One level: 300 against 100; the whole book: 600 against 100
+        assertEquals(0.5, analytics.imbalance(0), 1e-12);
+        assertEquals(5.0 / 7, analytics.imbalance(3), 1e-12);
+        // Leaning towards the ask, where less is offered
+        assertEquals((10.0 * 100 + 10.5 * 300) / 400, analytics.microprice() / Prices.SCALE, 1e-9);
+
+        assertEquals(2, analytics.curveDepth(OrderBook.BID));
+        assertEquals(Prices.toTicks(10.0), analytics.curvePrice(OrderBook.BID, 0));
+        assertEquals(300, analytics.cumulativeQuantity(OrderBook.BID, 0));
+        assertEquals(Prices.toTicks(9.5), analytics.curvePrice(OrderBook.BID, 1));
+        assertEquals(600, analytics.cumulativeQuantity(OrderBook.BID, 1));
+        assertEquals(3, analytics.orderCount(OrderBook.BID));
+
+        book.clear();
+        analytics.update();
+        assertTrue(Double.isNaN(analytics.imbalance(0)));
+        assertTrue(Double.isNaN(analytics.microprice()));
+        assertEquals(0, analytics.curveDepth(OrderBook.ASK));
+    }
+
+    @Test
+    void orderSizesSkipRemovedOrdersAndFollowReductions() {
+        Random random = new Random(7);
+        long[] expected = new long[BookAnalytics.SIZE_BUCKETS];
+        int[] handles = new int[200];
+        long[] sizes = new long[handles.length];
+        for (int i = 0; i < handles.length; i++) {
+            sizes[i] = 1 + random.nextInt(5000);
+            handles[i] = book.add(OrderBook.BID, i, Prices.toTicks(10.0 - (i % 20) * 0.05), sizes[i], Venues.LSE, 0);
+        }
+        for (int i = 0; i < handles.length; i++) {
+            if (i % 3 == 0) {
+                book.remove(handles[i]);
+            } else {
+                if (i % 3 == 1) {
+                    book.reduce(handles[i], sizes[i] / 2);
+                    sizes[i] -= sizes[i] / 2;
+                }
+                expected[63 - Long.numberOfLeadingZeros(sizes[i])]++;
+            }
+        }
+        analytics.update();
+
+        long largest = 0;
+        for (int i = 0; i < handles.length; i++) {
+            largest = i % 3 == 0 ? largest : Math.max(largest, sizes[i]);
+        }
+        for (int bucket = 0; bucket < BookAnalytics.SIZE_BUCKETS; bucket++) {
+            assertEquals(expected[bucket], analytics.sizeBucket(OrderBook.BID, bucket), "bucket " + bucket);
+            assertEquals(0, analytics.sizeBucket(OrderBook.ASK, bucket));
+        }
+        assertEquals(largest, analytics.largestOrder(OrderBook.BID));
+        assertEquals(book.orderCount(), analytics.orderCount(OrderBook.BID));
+    }
+
+    @Test
+    void queueEstimatesFollowTheRecentTradedRate() {
+        book.add(OrderBook.ASK, 1, Prices.toTicks(10.5), 600, Venues.LSE, 0);
+        book.add(OrderBook.ASK, 2, Prices.toTicks(11.0), 1200, Venues.LSE, 0);
+        analytics.update();
+        assertTrue(Double.isNaN(analytics.queueSeconds(OrderBook.ASK, 0)));
+
+        // Buyers took 1200 offered shares over the last minute; a sale older than that no longer counts
+        analytics.recordTrade(500, OrderBook.ASK, 36_000);
+        analytics.recordTrade(600, OrderBook.BID, 36_050);
+        analytics.recordTrade(600, OrderBook.BID, 36_100);
+        analytics.update();
+        assertEquals(20.0, analytics.tradedRate(OrderBook.ASK), 1e-9);
+        assertEquals(0.0, analytics.tradedRate(OrderBook.BID), 1e-9);
+        assertEquals(30.0, analytics.queueSeconds(OrderBook.ASK, 0), 1e-9);
+        assertEquals(90.0, analytics.queueSeconds(OrderBook.ASK, 1), 1e-9);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.orderbook.book;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderBookTest {
+
+    @Test
+    void levelsAreSortedBestFirstOnBothSides() {
+        OrderBook book = new OrderBook();
+        book.add(OrderBook.BID, 1, Prices.toTicks(632.10), 100, Venues.LSE, 0);
+        book.add(OrderBook.BID, 2, Prices.toTicks(632.20), 200, Venues.AOX, 0);
+        book.add(OrderBook.BID, 3, Prices.toTicks(632.15), 300, Venues.BATS, 0);
+        book.add(OrderBook.ASK, 4, Prices.toTicks(632.50), 100, Venues.LSE, 0);
+        book.add(OrderBook.ASK, 5, Prices.toTicks(632.40), 100, Venues.CHIX, 0);
+
+        assertEquals(3, book.depth(OrderBook.BID));
+        assertEquals(Prices.toTicks(632.20), book.bestPrice(OrderBook.BID));
+        assertEquals(Prices.toTicks(632.15), book.levelPrice(OrderBook.BID, 1));
+        assertEquals(Prices.toTicks(632.10), book.worstPrice(OrderBook.BID));
+        assertEquals(Prices.toTicks(632.40), book.bestPrice(OrderBook.ASK));
+        assertEquals(Prices.toTicks(632.50), book.worstPrice(OrderBook.ASK));
+    }
+
+    @Test
+    void ordersQueueInTimePriorityWithinALevel() {
+        OrderBook book = new OrderBook();
+        long price = Prices.toTicks(632.20);
+        int first = book.add(OrderBook.BID, 1, price, 100, Venues.LSE, 0);
+        int second = book.add(OrderBook.BID, 2, price, 250, Venues.AOX, 0);
+        int third = book.add(OrderBook.BID, 3, price, 50, Venues.BATS, 0);
+
+        assertEquals(first, book.firstOrder(OrderBook.BID, 0));
+        assertEquals(second, book.nextOrder(first));
+        assertEquals(third, book.nextOrder(second));
+        assertEquals(3, book.levelOrderCount(OrderBook.BID, 0));
+        assertEquals(400, book.levelQuantity(OrderBook.BID, 0));
+
+        book.remove(second);
+        assertEquals(third, book.nextOrder(first));
+        assertEquals(150, book.levelQuantity(OrderBook.BID, 0));
+
+        book.reduce(first, 40);
+        assertEquals(60, book.orderQuantity(first));
+        assertEquals(first, book.firstOrder(OrderBook.BID, 0));
+        assertEquals(110, book.levelQuantity(OrderBook.BID, 0));
+    }
+
+    @Test
+    void removingLastOrderDeletesTheLevelAndRecyclesTheHandle() {
+        OrderBook book = new OrderBook();
+        int handle = book.add(OrderBook.ASK, 1, Prices.toTicks(632.40), 100, Venues.LSE, 0);
+        book.add(OrderBook.ASK, 2, Prices.toTicks(632.45), 100, Venues.LSE, 0);
+
+        book.remove(handle);
+        assertEquals(1, book.depth(OrderBook.ASK));
+        assertEquals(Prices.toTicks(632.45), book.bestPrice(OrderBook.ASK));
+        assertEquals(-1, book.levelOf(OrderBook.ASK, Prices.toTicks(632.40)));
+
+        assertEquals(handle, book.add(OrderBook.ASK, 3, Prices.toTicks(632.30), 10, Venues.CHIX, 0));
+        assertEquals(Prices.toTicks(632.30), book.bestPrice(OrderBook.ASK));
+    }
+
+    @Test
+    void topOfBookFollowsTouchAndLadderEnds() {
+        OrderBook book = new OrderBook();
+        TopOfBook top = book.top();
+        int best = book.add(OrderBook.BID, 1, Prices.toTicks(632.20), 100, Venues.LSE, 0);
+        book.add(OrderBook.BID, 2, Prices.toTicks(632.20), 50, Venues.AOX, 0);
+        int deep = book.add(OrderBook.BID, 3, Prices.toTicks(631.80), 10, Venues.AOX, 0);
+        assertEquals(Prices.NONE, top.spread());
+
+        book.add(OrderBook.ASK, 4, Prices.toTicks(632.40), 300, Venues.LSE, 0);
+        assertEquals(Prices.toTicks(632.20), top.bestPrice(OrderBook.BID));
+        assertEquals(150, top.touchQuantity(OrderBook.BID));
+        assertEquals(2, top.touchOrderCount(OrderBook.BID));
+        assertEquals(Prices.toTicks(0.20), top.spread());
+        assertEquals(Prices.toTicks(0.60), top.depthRange());
+
+        long version = top.version();
+        book.add(OrderBook.BID, 5, Prices.toTicks(632.00), 10, Venues.AOX, 0);
+        assertEquals(version, top.version());
+
+        book.reduce(best, 100);
+        assertEquals(50, top.touchQuantity(OrderBook.BID));
+        assertEquals(1, top.touchOrderCount(OrderBook.BID));
+
+        book.remove(deep);
+        assertEquals(Prices.toTicks(632.00), top.worstPrice(OrderBook.BID));
+
+        book.clear();
+        assertEquals(Prices.NONE, top.bestPrice(OrderBook.ASK));
+        assertEquals(0, top.touchQuantity(OrderBook.BID));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.orderbook.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VenueBooksTest {
+
+    private static final int[] VENUES = { Venues.AOX, Venues.BATS, Venues.LSE, Venues.CHIX };
+
+    @Test
+    void tracksBestPricesAndLevelsPerVenue() {
+        OrderBook book = new OrderBook();
+        VenueBooks venues = new VenueBooks();
+        book.addListener(venues);
+        int lse = book.add(OrderBook.BID, 1, Prices.toTicks(10.0), 100, Venues.LSE, 0);
+        book.add(OrderBook.BID, 2, Prices.toTicks(10.0), 40, Venues.BATS, 0);
+        book.add(OrderBook.BID, 3, Prices.toTicks(9.5), 70, Venues.LSE, 0);
+        book.add(OrderBook.ASK, 4, Prices.toTicks(10.5), 20, Venues.BATS, 0);
+
+        assertEquals(Prices.toTicks(10.0), venues.bestPrice(Venues.LSE, OrderBook.BID));
+        assertEquals(2, venues.depth(Venues.LSE, OrderBook.BID));
+        assertEquals(40, venues.quantityAt(Venues.BATS, OrderBook.BID, Prices.toTicks(10.0)));
+        assertEquals(Prices.NONE, venues.bestPrice(Venues.LSE, OrderBook.ASK));
+        assertFalse(venues.hasVenue(Venues.AOX));
+
+        long version = venues.version();
+        book.reduce(lse, 30);
+        assertEquals(70, venues.levelQuantity(Venues.LSE, OrderBook.BID, 0));
+        book.remove(lse);
+        // The venue's next level becomes its best, while the consolidated touch stays with BATS
+        assertEquals(Prices.toTicks(9.5), venues.bestPrice(Venues.LSE, OrderBook.BID));
+        assertEquals(1, venues.orderCountAt(Venues.BATS, OrderBook.BID, Prices.toTicks(10.0)));
+        assertTrue(venues.version() > version);
+    }
+
+    @Test
+    void staysInStepWithTheConsolidatedBook() {
+        OrderBook book = new OrderBook();
+        VenueBooks venues = new VenueBooks();
+        book.addListener(venues);
+        Random random = new Random(7);
+        List<Integer> resting = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int action = random.nextInt(10);
+            if (action < 5 || resting.isEmpty()) {
+                int side = random.nextInt(2);
+                long price = Prices.toTicks(100.0) + (side == OrderBook.BID ? -1 : 1) * random.nextInt(40) * 100L;
+                resting.add(book.add(side, i, price, 1 + random.nextInt(500), VENUES[random.nextInt(VENUES.length)], 0));
+            } else if (action < 8) {
+                book.remove(resting.remove(random.nextInt(resting.size())));
+            } else {
+                int handle = resting.get(random.nextInt(resting.size()));
+                long quantity = 1 + random.nextInt((int) book.orderQuantity(handle));
+                if (quantity >= book.orderQuantity(handle)) {
+                    resting.remove(Integer.valueOf(handle));
+                }
+                book.reduce(handle, quantity);
+            }
+        }
+
+        for (int venue : VENUES) {
+            for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+                // Rebuilt the slow way, by scanning every resting order
+                TreeMap<Long, Long> expected = new TreeMap<>();
+                for (int level = 0; level < book.depth(side); level++) {
+                    for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                        if (book.orderVenue(order) == venue) {
+                            expected.merge(book.orderPrice(order), book.orderQuantity(order), Long::sum);
+                        }
+                    }
+                }
+                List<Long> prices = new ArrayList<>(side == OrderBook.BID ? expected.descendingKeySet() : expected.keySet());
+                assertEquals(prices.size(), venues.depth(venue, side));
+                for (int level = 0; level < prices.size(); level++) {
+                    assertEquals(prices.get(level).longValue(), venues.levelPrice(venue, side, level));
+                    assertEquals(expected.get(prices.get(level)).longValue(), venues.levelQuantity(venue, side, level));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.orderbook.engine;
+
+import com.example.orderbook.book.BookListener;
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchingEngineTest {
+
+    private static final long P100 = Prices.toTicks(100.00);
+    private static final long P101 = Prices.toTicks(101.00);
+
+    private OrderBook book;
+    private TradeTape tape;
+    private MatchingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrderBook();
+        tape = new TradeTape(64, 10);
+        engine = new MatchingEngine(book, tape);
+    }
+
+    @Test
+    void incomingOrderSweepsLevelsInPriceThenTimePriority() {
+        long first = limit(OrderBook.ASK, P100, 100);
+        long second = limit(OrderBook.ASK, P100, 100);
+        limit(OrderBook.ASK, P101, 100);
+
+        ExecutionReport report = engine.submit(OrderBook.BID, MatchingEngine.LIMIT, P101, 250, Venues.LSE, 0);
+
+        assertEquals(ExecutionReport.FILLED, report.getStatus());
+        assertEquals(250, report.getFilledQuantity());
+        assertEquals(3, tape.size());
+        assertEquals(P100, tape.price(2));
+        assertEquals(P100, tape.price(1));
+        assertEquals(P101, tape.price(0));
+        assertEquals(50, tape.quantity(0));
+        assertEquals(OrderBook.BID, tape.aggressorSide(0));
+        assertFalse(engine.isResting(first));
+        assertFalse(engine.isResting(second));
+        assertEquals(50, book.levelQuantity(OrderBook.ASK, 0));
+    }
+
+    @Test
+    void limitRemainderRestsAndMarketRemainderIsCancelled() {
+        limit(OrderBook.ASK, P100, 100);
+
+        ExecutionReport limit = engine.submit(OrderBook.BID, MatchingEngine.LIMIT, P100, 150, Venues.LSE, 0);
+        assertEquals(ExecutionReport.PARTIALLY_FILLED, limit.getStatus());
+        assertEquals(50, limit.getRemainingQuantity());
+        assertEquals(P100, book.bestPrice(OrderBook.BID));
+        assertEquals(0, book.depth(OrderBook.ASK));
+
+        ExecutionReport market = engine.submit(OrderBook.ASK, MatchingEngine.MARKET, 0, 80, Venues.LSE, 0);
+        assertEquals(ExecutionReport.PARTIALLY_FILLED, market.getStatus());
+        assertEquals(50, market.getFilledQuantity());
+        assertEquals(0, book.orderCount());
+    }
+
+    @Test
+    void cancelAndReplaceResolveOrdersById() {
+        long first = limit(OrderBook.BID, P100, 100);
+        long second = limit(OrderBook.BID, P100, 100);
+
+        // Reducing at the same price keeps the front of the queue
+        assertEquals(ExecutionReport.REPLACED, engine.replace(first, P100, 40, 0).getStatus());
+        assertEquals(first, book.orderId(book.firstOrder(OrderBook.BID, 0)));
+        assertEquals(140, book.levelQuantity(OrderBook.BID, 0));
+
+        // An unchanged order is left alone: the book reports nothing
+        int[] mutations = new int[1];
+        book.addListener(new BookListener() {
+            @Override
+            public void onOrderReduced(int side, long price, long quantity, int venue) {
+                mutations[0]++;
+            }
+        });
+        assertEquals(ExecutionReport.REPLACED, engine.replace(first, P100, 40, 0).getStatus());
+        assertEquals(0, mutations[0]);
+
+        // Increasing the size sends it to the back
+        engine.replace(first, P100, 120, 0);
+        assertEquals(second, book.orderId(book.firstOrder(OrderBook.BID, 0)));
+
+        assertEquals(ExecutionReport.CANCELLED, engine.cancel(second).getStatus());
+        assertEquals(ExecutionReport.REJECTED, engine.cancel(second).getStatus());
+        assertTrue(engine.isResting(first));
+        assertEquals(1, engine.getRestingOrderCount());
+    }
+
+    @Test
+    void replaceAcrossTheSpreadTrades() {
+        limit(OrderBook.ASK, P101, 100);
+        long bid = limit(OrderBook.BID, P100, 100);
+
+        ExecutionReport report = engine.replace(bid, P101, 100, 0);
+
+        assertEquals(ExecutionReport.FILLED, report.getStatus());
+        assertEquals(1, tape.size());
+        assertEquals(0, book.orderCount());
+    }
+
+    private long limit(int side, long price, long quantity) {
+        return engine.submit(side, MatchingEngine.LIMIT, price, quantity, Venues.LSE, 0).getOrderId();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.orderbook.fanout;
+
+import com.example.orderbook.feed.BookView;
+import com.example.orderbook.metrics.FeedMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionFanOutTest {
+
+    private static final String RR = "LSE:RR";
+    private static final String SXS = "LSE:SXS";
+
+    private final SessionFanOut fanOut = new SessionFanOut(new FeedMetrics(new SimpleMeterRegistry()), 1, 8, "drop", 5000);
+    private final Map<String, List<String>> delivered = new ConcurrentHashMap<>();
+
+    @Test
+    void messagesOnlyReachTheSessionsOfTheirSymbolViewAndEncoding() throws InterruptedException {
+        register("default", false);
+        register("full", false);
+        register("binary", true);
+        fanOut.setBookView("full", BookView.FULL);
+        fanOut.subscribe("default", RR);
+        fanOut.subscribe("full", RR);
+        fanOut.subscribe("full", SXS);
+        fanOut.subscribe("binary", RR);
+
+        fanOut.publish(RR, "orderbook-delta", BookView.DEFAULT, text("rr-default"), null, false);
+        fanOut.publish(RR, "orderbook-delta", BookView.FULL, text("rr-full"), text("rr-binary"), false);
+        fanOut.publish(SXS, "trades", text("sxs-trades"), text("sxs-binary"), false);
+        fanOut.publish("venues", text("venues"), text("venues-binary"), true);
+
+        assertDelivered("default", "rr-default", "venues");
+        assertDelivered("full", "rr-full", "sxs-trades", "venues");
+        assertDelivered("binary", "rr-binary", "venues-binary");
+
+        // Switching views and unsubscribing move the sessions out of the way of later messages
+        fanOut.setBookView("full", BookView.DEFAULT);
+        fanOut.unsubscribe("default", RR);
+        fanOut.publish(RR, "orderbook-delta", BookView.DEFAULT, text("rr-default-2"), null, false);
+        fanOut.publish(RR, "orderbook-delta", BookView.FULL, text("rr-full-2"), text("rr-binary-2"), false);
+
+        assertDelivered("default");
+        assertDelivered("full", "rr-default-2");
+        assertDelivered("binary", "rr-binary-2");
+    }
+
+    private void register(String id, boolean binary) {
+        delivered.put(id, new ArrayList<>());
+        FeedSession session = new FeedSession() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public URI getUri() {
+                return null;
+            }
+
+            @Override
+            public String getAcceptedProtocol() {
+                return null;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public long demand() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public void send(WebSocketMessage<?> message) {
+                List<String> messages = delivered.get(id);
+                synchronized (messages) {
+                    messages.add(((TextMessage) message).getPayload());
+                }
+            }
+
+            @Override
+            public void close(CloseStatus status) {
+            }
+        };
+        fanOut.register(session, binary, symbol -> List.of());
+    }
+
+    // Waits for everything published so far to be dispatched and sent, then takes what the session got
+    private void assertDelivered(String id, String... expected) throws InterruptedException {
+        CountDownLatch dispatched = new CountDownLatch(1);
+        fanOut.afterDispatched(dispatched::countDown);
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        List<String> messages = delivered.get(id);
+        while ((fanOut.queuedMessages() > 0 || count(messages) < expected.length) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        synchronized (messages) {
+            assertEquals(List.of(expected), messages);
+            messages.clear();
+        }
+    }
+
+    private static int count(List<String> messages) {
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+    private static WebSocketMessage<?> text(String payload) {
+        return new TextMessage(payload);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.orderbook.fanout;
+
+import com.example.orderbook.metrics.FeedMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionOutboxTest {
+
+    private static final String RR = "LSE:RR";
+    private static final String SXS = "LSE:SXS";
+
+    private final List<String> delivered = new ArrayList<>();
+    // Drain tasks only run when the test says so, which makes the session look slow
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    // Messages the session can take, as a reactive connection requests them
+    private long demand = Long.MAX_VALUE;
+
+    @Test
+    void snapshotTopicsAreConflatedWhileDeltasQueueInOrder() {
+        SessionOutbox outbox = outbox(8, SlowConsumerPolicy.DROP);
+        outbox.offer(RR, "trades", text("trades-1"), true);
+        outbox.offer(RR, "orderbook-delta", text("delta-1"), false);
+        outbox.offer(RR, "trades", text("trades-2"), true);
+        outbox.offer(RR, "orderbook-delta", text("delta-2"), false);
+        assertEquals(3, outbox.queueDepth());
+
+        runPending();
+
+        assertEquals(List.of("trades-2", "delta-1", "delta-2"), delivered);
+        assertEquals(1, outbox.conflated());
+    }
+
+    @Test
+    void conflatePolicyReplacesDeltaBacklogWithSnapshot() {
+        SessionOutbox outbox = outbox(2, SlowConsumerPolicy.CONFLATE);
+        outbox.offer(RR, "orderbook-delta", text("delta-1"), false);
+        outbox.offer(RR, "orderbook-delta", text("delta-2"), false);
+        outbox.offer(RR, "orderbook-delta", text("delta-3"), false);
+        outbox.offer(RR, "orderbook-delta", text("delta-4"), false);
+
+        runPending();
+
+        assertEquals(List.of("snapshot LSE:RR", "delta-4"), delivered);
+        assertEquals(1, registry.get("orderbook.fanout.dropped").counter().count());
+        assertEquals(2, registry.get("orderbook.fanout.conflated").counter().count());
+        // The subscribe snapshot included
+        assertEquals(2, registry.get("orderbook.fanout.messages").tag("topic", "snapshot").tag("encoding", "json").counter().count());
+        assertEquals(1, registry.get("orderbook.fanout.messages").tag("topic", "orderbook-delta").tag("encoding", "json").counter().count());
+        assertEquals("delta-4".length(), registry.get("orderbook.fanout.bytes").tag("topic", "orderbook-delta").tag("encoding", "json").counter().count());
+    }
+
+    @Test
+    void subscriptionsAreTrackedPerSymbol() {
+        SessionOutbox outbox = outbox(2, SlowConsumerPolicy.CONFLATE);
+        assertTrue(outbox.subscribe(SXS));
+        runPending();
+        delivered.clear();
+        assertTrue(outbox.wants(SXS));
+        assertTrue(outbox.wants(null));
+        assertFalse(outbox.wants("LSE:DOCS"));
+
+        // Same topic, different symbols: both kept
+        outbox.offer(RR, "trades", text("rr-trades"), true);
+        outbox.offer(SXS, "trades", text("sxs-trades"), true);
+        // Overflowing the deltas only resnapshots the symbols that lost one
+        outbox.offer(RR, "orderbook-delta", text("rr-delta-1"), false);
+        outbox.offer(RR, "orderbook-delta", text("rr-delta-2"), false);
+        outbox.offer(RR, "orderbook-delta", text("rr-delta-3"), false);
+        outbox.offer(SXS, "orderbook-delta", text("sxs-delta-1"), false);
+
+        runPending();
+
+        // The RR snapshot also stands in for the RR trades queued before it
+        assertEquals(List.of("snapshot LSE:RR", "sxs-trades", "sxs-delta-1"), delivered);
+
+        delivered.clear();
+        outbox.offer(SXS, "orderbook-delta", text("sxs-delta-2"), false);
+        assertTrue(outbox.unsubscribe(SXS));
+        assertFalse(outbox.wants(SXS));
+        runPending();
+        assertEquals(List.of(), delivered);
+    }
+
+    @Test
+    void snapshotDropsTheSnapshotTopicsQueuedBeforeItForItsSymbol() {
+        SessionOutbox outbox = outbox(8, SlowConsumerPolicy.DROP);
+        outbox.subscribe(SXS);
+        runPending();
+        delivered.clear();
+        outbox.offer(RR, "trades", text("rr-trades-1"), true);
+        outbox.offer(RR, "ohlc", text("rr-ohlc-1"), true);
+        outbox.offer(RR, "orderbook-delta", text("rr-delta-1"), false);
+        outbox.offer(SXS, "trades", text("sxs-trades-1"), true);
+        outbox.requestSnapshot(RR);
+        outbox.offer(RR, "orderbook-delta", text("rr-delta-2"), false);
+
+        runPending();
+
+        assertEquals(List.of("snapshot LSE:RR", "rr-delta-1", "sxs-trades-1", "rr-delta-2"), delivered);
+
+        // Queued after the snapshot went out, so newer than it
+        delivered.clear();
+        outbox.offer(RR, "trades", text("rr-trades-2"), true);
+        runPending();
+        assertEquals(List.of("rr-trades-2"), delivered);
+    }
+
+    @Test
+    void dropAndDisconnectPoliciesWhenFull() {
+        SessionOutbox dropping = outbox(1, SlowConsumerPolicy.DROP);
+        assertTrue(dropping.offer(RR, "orderbook-delta", text("delta-1"), false));
+        assertTrue(dropping.offer(RR, "orderbook-delta", text("delta-2"), false));
+        assertEquals(1, dropping.dropped());
+
+        SessionOutbox disconnecting = outbox(1, SlowConsumerPolicy.DISCONNECT);
+        assertTrue(disconnecting.offer(RR, "orderbook-delta", text("delta-1"), false));
+        assertFalse(disconnecting.offer(RR, "orderbook-delta", text("delta-2"), false));
+    }
+
+    @Test
+    void sessionWithoutDemandHoldsMessagesUntilResumed() {
+        SessionOutbox outbox = outbox(2, SlowConsumerPolicy.CONFLATE);
+        demand = 0;
+        outbox.offer(RR, "trades", text("trades-1"), true);
+        outbox.offer(RR, "orderbook-delta", text("delta-1"), false);
+        outbox.offer(RR, "trades", text("trades-2"), true);
+        runPending();
+        assertTrue(delivered.isEmpty());
+        assertEquals(2, outbox.queueDepth());
+
+        demand = 1;
+        outbox.resume();
+        runPending();
+        assertEquals(List.of("trades-2"), delivered);
+
+        demand = 1;
+        outbox.resume();
+        runPending();
+        assertEquals(List.of("trades-2", "delta-1"), delivered);
+        assertEquals(0, outbox.queueDepth());
+    }
+
+    private SessionOutbox outbox(int capacity, SlowConsumerPolicy policy) {
+        FeedSession session = new FeedSession() {
+            @Override
+            public String getId() {
+                return "test";
+            }
+
+            @Override
+            public URI getUri() {
+                return null;
+            }
+
+            @Override
+            public String getAcceptedProtocol() {
+                return null;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public long demand() {
+                return demand;
+            }
+
+            @Override
+            public void send(WebSocketMessage<?> message) {
+                delivered.add(((TextMessage) message).getPayload());
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+
+            @Override
+            public void close(CloseStatus status) {
+            }
+        };
+        SessionOutbox outbox = new SessionOutbox(session, false, symbol -> List.of(text("snapshot " + symbol)),
+                capacity, policy, pending::add, new FeedMetrics(registry));
+        outbox.subscribe(RR);
+        runPending();
+        delivered.clear();
+        return outbox;
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.poll().run();
+        }
+    }
+
+    private static WebSocketMessage<?> text(String payload) {
+        return new TextMessage(payload);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookDeltaTrackerTest {
+
+    @Test
+    void classifiesTouchedLevelsAgainstTheCurrentBook() {
+        OrderBook book = new OrderBook();
+        BookDeltaTracker tracker = new BookDeltaTracker();
+        LevelDeltas deltas = new LevelDeltas(book);
+        book.addListener(tracker);
+        int kept = book.add(OrderBook.BID, 1, Prices.toTicks(632.10), 100, Venues.LSE, 0);
+        int gone = book.add(OrderBook.ASK, 2, Prices.toTicks(632.40), 100, Venues.AOX, 0);
+        tracker.drainTo(deltas, book);
+        assertEquals(2, deltas.size());
+        assertEquals(LevelDeltas.ADD, deltas.action(0));
+        assertTrue(tracker.isEmpty());
+
+        book.reduce(kept, 40);
+        book.add(OrderBook.BID, 3, Prices.toTicks(632.10), 50, Venues.BATS, 0);
+        book.remove(gone);
+        tracker.drainTo(deltas, book);
+
+        assertEquals(2, deltas.size());
+        assertEquals(OrderBook.BID, deltas.side(0));
+        assertEquals(LevelDeltas.MODIFY, deltas.action(0));
+        assertEquals(OrderBook.ASK, deltas.side(1));
+        assertEquals(LevelDeltas.DELETE, deltas.action(1));
+    }
+
+    @Test
+    void levelThatCameAndWentPublishesNothing() {
+        OrderBook book = new OrderBook();
+        BookDeltaTracker tracker = new BookDeltaTracker();
+        LevelDeltas deltas = new LevelDeltas(book);
+        book.addListener(tracker);
+
+        int handle = book.add(OrderBook.ASK, 1, Prices.toTicks(632.40), 100, Venues.CHIX, 0);
+        book.remove(handle);
+        tracker.drainTo(deltas, book);
+
+        assertEquals(0, deltas.size());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookViewTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void parametersDefaultToTheTopTenAggregatedLevels() {
+        assertEquals(BookView.DEFAULT, BookView.parse(null, null, null));
+        assertEquals(new BookView(10, true, Venues.ANY), BookView.DEFAULT);
+        assertTrue(BookView.parse("0", "false", "all").isFull());
+        assertEquals(new BookView(5, true, Venues.LSE), BookView.parse("5", null, "LSE"));
+        assertThrows(IllegalArgumentException.class, () -> BookView.parse("-1", null, null));
+        assertThrows(IllegalArgumentException.class, () -> BookView.parse(null, "maybe", null));
+        assertThrows(IllegalArgumentException.class, () -> BookView.parse(null, null, "NOWHERE"));
+    }
+
+    @Test
+    void sidesAreWrittenToTheRequestedDepthPerOrderOrAggregated() throws Exception {
+        OrderBook book = new OrderBook();
+        book.add(OrderBook.BID, 1, Prices.toTicks(10.0), 100, Venues.LSE, 0);
+        book.add(OrderBook.BID, 2, Prices.toTicks(10.0), 50, Venues.BATS, 0);
+        book.add(OrderBook.BID, 3, Prices.toTicks(9.5), 70, Venues.BATS, 0);
+        book.add(OrderBook.BID, 4, Prices.toTicks(9.0), 30, Venues.LSE, 0);
+
+        assertEquals("[{\"price\":10.0,\"size\":150,\"orders\":2},{\"price\":9.5,\"size\":70,\"orders\":1}]",
+                mapper.writeValueAsString(book.view(OrderBook.BID, 2, true, Venues.ANY)));
+        // Levels without the venue's orders do not count towards the depth
+        assertEquals("[{\"price\":10.0,\"size\":100,\"orders\":1},{\"price\":9.0,\"size\":30,\"orders\":1}]",
+                mapper.writeValueAsString(book.view(OrderBook.BID, 2, true, Venues.LSE)));
+        assertEquals("[{\"price\":10.0,\"size\":100,\"exchange\":\"LSE\",\"time\":\"00:00:00\"},"
+                        + "{\"price\":10.0,\"size\":50,\"exchange\":\"BATS\",\"time\":\"00:00:00\"}]",
+                mapper.writeValueAsString(book.view(OrderBook.BID, 1, false, Venues.ANY)));
+        assertEquals(mapper.writeValueAsString(book.view(OrderBook.BID)),
+                mapper.writeValueAsString(book.view(OrderBook.BID, BookView.ALL_LEVELS, false, Venues.ANY)));
+    }
+}
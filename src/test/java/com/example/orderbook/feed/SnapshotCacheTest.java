@@ -0,0 +1,54 @@
+package com.example.orderbook.feed;
+
+import com.example.orderbook.metrics.FeedMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SnapshotCacheTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final SnapshotCache cache = new SnapshotCache(2, new FeedMetrics(registry));
+    private int encoded;
+
+    @Test
+    void framesAreReusedUntilTheirVersionMoves() throws IOException {
+        WebSocketMessage<?> first = cache.get(0, "trades", 1, () -> frame("trades-1"));
+        assertSame(first, cache.get(0, "trades", 1, () -> frame("trades-1")));
+        assertEquals(1, encoded);
+
+        WebSocketMessage<?> second = cache.get(0, "trades", 2, () -> frame("trades-2"));
+        assertNotSame(first, second);
+        assertEquals("trades-2", second.getPayload());
+        assertEquals(2, encoded);
+
+        // Keys and instruments are independent
+        cache.get(0, BookView.DEFAULT, 2, () -> frame("book"));
+        cache.get(1, "trades", 2, () -> frame("other"));
+        assertEquals(4, encoded);
+        assertEquals(1, registry.get("orderbook.snapshot.frames").tag("result", "cached").counter().count());
+        assertEquals(4, registry.get("orderbook.snapshot.frames").tag("result", "encoded").counter().count());
+    }
+
+    @Test
+    void publishedFramesAreServedToJoiningSessions() throws IOException {
+        TextMessage published = new TextMessage("ohlc");
+        cache.put(0, "ohlc", 7, published);
+        assertSame(published, cache.get(0, "ohlc", 7, () -> frame("encoded")));
+        assertEquals(0, encoded);
+        assertEquals("encoded", cache.get(0, "ohlc", 8, () -> frame("encoded")).getPayload());
+    }
+
+    private WebSocketMessage<?> frame(String payload) {
+        encoded++;
+        return new TextMessage(payload);
+    }
+}
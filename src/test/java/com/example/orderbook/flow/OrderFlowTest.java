@@ -0,0 +1,63 @@
+package com.example.orderbook.flow;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.market.PriceHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderFlowTest {
+
+    private static final FlowParameters PARAMETERS = new FlowParameters(10_000, 10, 30, 3, 0.1, 0.9, 200,
+            Prices.toTicks(0.05), 4, 500, Prices.toTicks(632.5), new int[] { Venues.intern("AOX"), Venues.intern("CHIX") });
+
+    @Test
+    void cancelsHoldTheGeneratedDepthAroundItsTarget() {
+        MarketShard shard = new MarketShard(0);
+        Instrument instrument = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        OrderFlow flow = new OrderFlow(instrument, PARAMETERS, new SplittableRandom(42));
+
+        shard.call(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                flow.next();
+            }
+            return null;
+        });
+
+        assertEquals(100_000, flow.events());
+        assertTrue(flow.liveCount() > 100 && flow.liveCount() < 400, "generated depth " + flow.liveCount());
+        double cancelShare = (double) flow.cancels() / flow.events();
+        assertTrue(cancelShare > 0.4 && cancelShare < 0.5, "cancel share " + cancelShare);
+        assertTrue(shard.call(() -> instrument.getOrderBook().top().isTwoSided()));
+        assertTrue(shard.call(() -> instrument.getTradeTape().size()) > 0);
+        // Quotes stay around where they started rather than drifting off
+        long bid = shard.call(() -> instrument.getOrderBook().top().bestPrice(OrderBook.BID));
+        assertTrue(Math.abs(Prices.toDouble(bid) - 632.5) < 50, "best bid " + Prices.toDouble(bid));
+    }
+
+    @Test
+    void arrivalsFollowTheConfiguredRate() {
+        MarketShard shard = new MarketShard(0);
+        Instrument instrument = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        FlowParameters calm = new FlowParameters(5_000, 1, 30, 3, 0.1, 0.9, 200,
+                Prices.toTicks(0.05), 4, 500, Prices.toTicks(632.5), new int[] { Venues.LSE });
+        OrderFlow flow = new OrderFlow(instrument, calm, new SplittableRandom(7));
+
+        // 1000 ticks of 1 ms: small Poisson means, through Knuth's method
+        long events = shard.call(() -> {
+            long count = 0;
+            for (int i = 0; i < 1000; i++) {
+                count += flow.advance(0.001);
+            }
+            return count;
+        });
+        assertTrue(Math.abs(events - 5_000) < 300, "events " + events);
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.TradeTape;
+import com.example.orderbook.engine.MatchingEngine;
+import com.example.orderbook.market.Instrument;
+import com.example.orderbook.market.MarketShard;
+import com.example.orderbook.market.PriceHistory;
+import com.example.orderbook.replay.ReplayRecord;
+import com.example.orderbook.service.DataService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalTest {
+
+    private static final int[] VENUES = { Venues.intern("AOX"), Venues.LSE, Venues.intern("CHIX") };
+    // Small enough for the flow to fill several segments
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotAndJournalTailRestoreBooksAndPrints() throws IOException {
+        MarketShard shard = new MarketShard(0);
+        Instrument live = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        SplittableRandom random = new SplittableRandom(7);
+        JournalWriter writer = new JournalWriter(directory, 0, SEGMENT_BYTES, 0, TimeOfDay.UNKNOWN);
+        long[] snapshotPosition = new long[1];
+        JournalSnapshots.Capture capture = shard.call(() -> {
+            live.setJournal(writer);
+            live.onTrades(trades());
+            trade(live, random, 20_000);
+            snapshotPosition[0] = writer.position();
+            JournalSnapshots.Capture captured = JournalSnapshots.capture(0, snapshotPosition[0], writer.replayTime(),
+                    shard.instruments());
+            trade(live, random, 20_000);
+            live.onBook(book());
+            live.onTrades(trades());
+            return captured;
+        });
+        // Encoded once the shard has moved on, as the journal's flusher does
+        JournalSnapshots.store(directory, 0, snapshotPosition[0], capture);
+        // The full segments of the trade store went to files of their own
+        assertFalse(storeFiles().isEmpty());
+        assertTrue(JournalFormat.segment(writer.position()) > 1, "segments " + JournalFormat.segment(writer.position()));
+
+        MarketShard restoredShard = new MarketShard(0);
+        Instrument restored = restoredShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalReader reader = new JournalReader(directory, 0);
+        restoredShard.call(() -> {
+            JournalTarget[] targets = { restored };
+            JournalSnapshots.Restored snapshot = JournalSnapshots.restoreLatest(directory, 0, targets);
+            assertEquals(snapshotPosition[0], snapshot.position());
+            reader.replay(targets, snapshot);
+            return null;
+        });
+
+        assertEquals(shard.call(() -> describe(live)), restoredShard.call(() -> describe(restored)));
+        assertEquals(writer.position(), reader.endPosition());
+        assertEquals(36_000, reader.lastReplayTime());
+    }
+
+    @Test
+    void appendingCarriesOnWhereRecoveryFoundTheEnd() throws IOException {
+        MarketShard shard = new MarketShard(0);
+        Instrument live = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalWriter first = new JournalWriter(directory, 0, SEGMENT_BYTES, 0, TimeOfDay.UNKNOWN);
+        shard.call(() -> {
+            live.setJournal(first);
+            live.submit(OrderBook.BID, 0, Prices.toTicks(100.0), 10, Venues.LSE);
+            return live.submit(OrderBook.ASK, 0, Prices.toTicks(100.0), 4, Venues.intern("TURQ"));
+        });
+
+        // As after a restart: the venue ids of the journal are declared again before being used
+        JournalReader reader = new JournalReader(directory, 0);
+        reader.replay(new JournalTarget[1], JournalSnapshots.Restored.NONE);
+        JournalWriter second = new JournalWriter(directory, 0, SEGMENT_BYTES, reader.endPosition(), reader.lastReplayTime());
+        shard.call(() -> {
+            live.setJournal(second);
+            return live.submit(OrderBook.ASK, 0, Prices.toTicks(100.5), 7, Venues.intern("TURQ"));
+        });
+
+        MarketShard restoredShard = new MarketShard(0);
+        Instrument restored = restoredShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalReader again = new JournalReader(directory, 0);
+        restoredShard.call(() -> {
+            again.replay(new JournalTarget[] { restored }, JournalSnapshots.Restored.NONE);
+            return null;
+        });
+        assertEquals(shard.call(() -> describe(live)), restoredShard.call(() -> describe(restored)));
+        assertEquals(second.position(), again.endPosition());
+    }
+
+    @Test
+    void segmentsBeforeTheOldestKeptSnapshotAreDeleted() throws IOException {
+        MarketShard shard = new MarketShard(0);
+        Instrument live = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        SplittableRandom random = new SplittableRandom(13);
+        JournalWriter writer = new JournalWriter(directory, 0, SEGMENT_BYTES, 0, TimeOfDay.UNKNOWN);
+        long[] positions = new long[3];
+        long[] firstSegments = new long[3];
+        for (int i = 0; i < positions.length; i++) {
+            int snapshot = i;
+            JournalSnapshots.Capture capture = shard.call(() -> {
+                live.setJournal(writer);
+                // The second starts the session again, and the trade store with it
+                live.onTrades(trades(snapshot == 1 ? 60 : 36_000));
+                trade(live, random, 20_000);
+                positions[snapshot] = writer.position();
+                firstSegments[snapshot] = live.getTradeStore().firstSequence();
+                return JournalSnapshots.capture(0, positions[snapshot], writer.replayTime(), shard.instruments());
+            });
+            JournalSnapshots.store(directory, 0, positions[i], capture);
+        }
+        shard.call(() -> {
+            trade(live, random, 1_000);
+            return null;
+        });
+        int kept = JournalFormat.segment(positions[1]);
+        assertTrue(kept > JournalFormat.segment(positions[0]), "segments " + kept);
+        for (int segment = 0; segment < kept; segment++) {
+            assertFalse(Files.exists(directory.resolve(JournalFormat.segmentName(0, segment))), "segment " + segment);
+        }
+        assertTrue(Files.exists(directory.resolve(JournalFormat.segmentName(0, kept))));
+        assertFalse(Files.exists(directory.resolve(JournalFormat.snapshotName(0, positions[0]))));
+        assertTrue(firstSegments[1] > firstSegments[0], "first segments " + Arrays.toString(firstSegments));
+        assertFalse(storeFiles().isEmpty());
+        for (Path file : storeFiles()) {
+            assertTrue(JournalFormat.storeSegment(file.getFileName().toString()) >= firstSegments[1], file.toString());
+        }
+
+        MarketShard restoredShard = new MarketShard(0);
+        Instrument restored = restoredShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalReader reader = new JournalReader(directory, 0);
+        restoredShard.call(() -> {
+            JournalTarget[] targets = { restored };
+            JournalSnapshots.Restored snapshot = JournalSnapshots.restoreLatest(directory, 0, targets);
+            assertEquals(positions[2], snapshot.position());
+            reader.replay(targets, snapshot);
+            return null;
+        });
+        assertEquals(shard.call(() -> describe(live)), restoredShard.call(() -> describe(restored)));
+        assertEquals(writer.position(), reader.endPosition());
+        assertEquals(36_000, reader.lastReplayTime());
+    }
+
+    @Test
+    void corruptSnapshotIsSkippedForTheOneBeforeIt() throws IOException {
+        MarketShard shard = new MarketShard(0);
+        Instrument live = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        SplittableRandom random = new SplittableRandom(11);
+        JournalWriter writer = new JournalWriter(directory, 0, SEGMENT_BYTES, 0, TimeOfDay.UNKNOWN);
+        long[] positions = new long[2];
+        JournalSnapshots.Capture[] captures = shard.call(() -> {
+            live.setJournal(writer);
+            JournalSnapshots.Capture[] captured = new JournalSnapshots.Capture[2];
+            for (int i = 0; i < 2; i++) {
+                trade(live, random, 5_000);
+                positions[i] = writer.position();
+                captured[i] = JournalSnapshots.capture(0, positions[i], writer.replayTime(), shard.instruments());
+            }
+            trade(live, random, 5_000);
+            return captured;
+        });
+        JournalSnapshots.store(directory, 0, positions[0], captures[0]);
+        JournalSnapshots.store(directory, 0, positions[1], captures[1]);
+        // One flipped byte in the latest, well inside its orders
+        Path latest = directory.resolve(JournalFormat.snapshotName(0, positions[1]));
+        byte[] flipped = Files.readAllBytes(latest);
+        flipped[flipped.length / 2] ^= 0x40;
+        Files.write(latest, flipped);
+
+        MarketShard restoredShard = new MarketShard(0);
+        Instrument restored = restoredShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalReader reader = new JournalReader(directory, 0);
+        restoredShard.call(() -> {
+            JournalTarget[] targets = { restored };
+            JournalSnapshots.Restored snapshot = JournalSnapshots.restoreLatest(directory, 0, targets);
+            assertEquals(positions[0], snapshot.position());
+            reader.replay(targets, snapshot);
+            return null;
+        });
+        assertEquals(shard.call(() -> describe(live)), restoredShard.call(() -> describe(restored)));
+
+        // Cut short, the older one is no better than none
+        Path older = directory.resolve(JournalFormat.snapshotName(0, positions[0]));
+        byte[] bytes = Files.readAllBytes(older);
+        Files.write(older, Arrays.copyOf(bytes, bytes.length - 1));
+        MarketShard emptyShard = new MarketShard(0);
+        Instrument empty = emptyShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        emptyShard.call(() -> {
+            assertEquals(JournalSnapshots.Restored.NONE, JournalSnapshots.restoreLatest(directory, 0, new JournalTarget[] { empty }));
+            assertEquals(0, empty.getOrderBook().orderCount());
+            return null;
+        });
+    }
+
+    @Test
+    void snapshotWithADamagedStoreSegmentIsSkippedForTheOneBeforeIt() throws IOException {
+        MarketShard shard = new MarketShard(0);
+        Instrument live = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        SplittableRandom random = new SplittableRandom(17);
+        JournalWriter writer = new JournalWriter(directory, 0, SEGMENT_BYTES, 0, TimeOfDay.UNKNOWN);
+        long[] positions = new long[2];
+        for (int i = 0; i < positions.length; i++) {
+            int snapshot = i;
+            JournalSnapshots.Capture capture = shard.call(() -> {
+                live.setJournal(writer);
+                trade(live, random, 20_000);
+                positions[snapshot] = writer.position();
+                return JournalSnapshots.capture(0, positions[snapshot], writer.replayTime(), shard.instruments());
+            });
+            JournalSnapshots.store(directory, 0, positions[i], capture);
+        }
+        shard.call(() -> {
+            trade(live, random, 1_000);
+            return null;
+        });
+        // Only the latest snapshot refers to the last segment written
+        List<Path> stored = storeFiles();
+        Path last = stored.get(stored.size() - 1);
+        byte[] bytes = Files.readAllBytes(last);
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(last, bytes);
+
+        MarketShard restoredShard = new MarketShard(0);
+        Instrument restored = restoredShard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        JournalReader reader = new JournalReader(directory, 0);
+        restoredShard.call(() -> {
+            JournalTarget[] targets = { restored };
+            JournalSnapshots.Restored snapshot = JournalSnapshots.restoreLatest(directory, 0, targets);
+            assertEquals(positions[0], snapshot.position());
+            reader.replay(targets, snapshot);
+            return null;
+        });
+        assertEquals(shard.call(() -> describe(live)), restoredShard.call(() -> describe(restored)));
+    }
+
+    @Test
+    void recoveryRefusesInstrumentsThatAlreadyHaveOrders() {
+        DataService dataService = new DataService(List.of("LSE:RR"), 1);
+        Instrument instrument = dataService.getInstrument("LSE:RR");
+        instrument.getShard().call(() -> instrument.submit(OrderBook.BID, MatchingEngine.LIMIT, Prices.toTicks(100.0), 10, Venues.LSE));
+
+        Journal journal = new Journal(dataService, true, directory.toString(), 1, 50, 0);
+        CompletionException failure = assertThrows(CompletionException.class, journal::recover);
+        assertTrue(failure.getCause() instanceof IllegalStateException, failure.getCause().toString());
+    }
+
+    // Limit and market orders around 100, some crossing, with cancels and amendments of earlier ones,
+    // and generated orders among them
+    private static void trade(Instrument instrument, SplittableRandom random, int commands) {
+        for (int i = 0; i < commands; i++) {
+            long orderId = 1 + random.nextLong(instrument.getNextOrderId());
+            switch (random.nextInt(10)) {
+                case 0 -> instrument.cancel(orderId);
+                case 1 -> instrument.replaceOrder(orderId, Prices.toTicks(99 + random.nextInt(3)), random.nextLong(1, 100));
+                case 2 -> instrument.submitFlow(random.nextInt(2), MatchingEngine.LIMIT, Prices.toTicks(98 + random.nextInt(5) * 0.5),
+                        random.nextLong(1, 100), VENUES[random.nextInt(VENUES.length)]);
+                case 3 -> {
+                    if (instrument.getFlowOrderCount() > 0) {
+                        instrument.cancelFlowOrder(random.nextInt(instrument.getFlowOrderCount()));
+                    }
+                }
+                default -> instrument.submit(random.nextInt(2), random.nextInt(10) == 0 ? MatchingEngine.MARKET : MatchingEngine.LIMIT,
+                        Prices.toTicks(98 + random.nextInt(5) * 0.5), random.nextLong(1, 100), VENUES[random.nextInt(VENUES.length)]);
+            }
+        }
+    }
+
+    private static ReplayRecord book() {
+        ReplayRecord book = new ReplayRecord();
+        book.reset(ReplayRecord.BOOK, 36_000);
+        book.add(OrderBook.BID, Prices.toTicks(631.0), 300, Venues.LSE, 35_990);
+        book.add(OrderBook.ASK, Prices.toTicks(634.0), 200, Venues.intern("BATS"), 35_995);
+        return book;
+    }
+
+    private static ReplayRecord trades() {
+        return trades(36_000);
+    }
+
+    private static ReplayRecord trades(int time) {
+        ReplayRecord trades = new ReplayRecord();
+        trades.reset(ReplayRecord.TRADES, time);
+        trades.add(OrderBook.BID, Prices.toTicks(633.0), 50, TradeTape.TYPE_AUTOMATIC, time - 1);
+        return trades;
+    }
+
+    private List<Path> storeFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(JournalFormat.STORE_EXTENSION)).sorted().toList();
+        }
+    }
+
+    // Every order in queue order, with the counters that only prints move
+    private static String describe(Instrument instrument) {
+        StringBuilder text = new StringBuilder();
+        OrderBook book = instrument.getOrderBook();
+        for (int side = OrderBook.BID; side <= OrderBook.ASK; side++) {
+            for (int level = 0; level < book.depth(side); level++) {
+                for (int order = book.firstOrder(side, level); order != OrderBook.NO_ORDER; order = book.nextOrder(order)) {
+                    text.append(side).append(' ').append(book.orderId(order)).append(' ').append(book.orderPrice(order))
+                            .append(' ').append(book.orderQuantity(order)).append(' ').append(Venues.name(book.orderVenue(order)))
+                            .append('\n');
+                }
+            }
+        }
+        text.append("flow ").append(Arrays.toString(instrument.getFlowOrderIds()))
+                .append(" next ").append(instrument.getNextOrderId())
+                .append(" prints ").append(instrument.getTradeTape().appended())
+                .append(" stored ").append(instrument.getTradeStore().history().size())
+                .append(" series ").append(instrument.getTimeseries(60, 100))
+                .append(" candles ").append(instrument.getCandles(0, 1));
+        return text.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.orderbook.market;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MarketShardTest {
+
+    @Test
+    void tasksRunOnTheShardWriterThread() {
+        MarketShard shard = new MarketShard(3);
+        Thread writer = shard.call(Thread::currentThread);
+        assertEquals("market-shard-3", writer.getName());
+        // A task already on the writer thread runs inline instead of waiting on itself
+        assertSame(writer, shard.call(() -> shard.call(Thread::currentThread)));
+        assertThrows(IllegalStateException.class, () -> shard.call(() -> {
+            throw new IllegalStateException("rejected");
+        }));
+    }
+
+    @Test
+    void instrumentsAreOwnedByTheirShard() {
+        MarketShard shard = new MarketShard(0);
+        Instrument first = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        Instrument second = shard.addInstrument(1, "LSE:SXS", PriceHistory.empty());
+
+        assertEquals(2, shard.instruments().size());
+        assertSame(shard, second.getShard());
+        assertEquals(1, second.getId());
+        assertEquals("LSE:RR", first.getSymbol());
+        assertEquals(0L, shard.call(() -> first.getOrderbookData().get("seq")));
+    }
+}
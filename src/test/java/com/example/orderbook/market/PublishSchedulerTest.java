@@ -0,0 +1,43 @@
+package com.example.orderbook.market;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.engine.MatchingEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PublishSchedulerTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    void changesPublishOncePerTaskAndWaitForTheirTopicInterval() {
+        MarketShard shard = new MarketShard(0);
+        Instrument instrument = shard.addInstrument(0, "LSE:RR", PriceHistory.empty());
+        // Only appended to on the shard thread, and read after waiting on it
+        List<Integer> published = new ArrayList<>();
+        PublishScheduler scheduler = new PublishScheduler(1, new long[] { 0, HOUR, HOUR, HOUR, 0, HOUR },
+                (changed, topics, lag) -> published.add(topics));
+
+        shard.call(() -> {
+            instrument.setListener(scheduler);
+            instrument.submitOrder(OrderBook.BID, MatchingEngine.LIMIT, Prices.toTicks(100.0), 10, Venues.LSE);
+            instrument.submitOrder(OrderBook.ASK, MatchingEngine.LIMIT, Prices.toTicks(101.0), 10, Venues.LSE);
+            return null;
+        });
+        shard.call(() -> null);
+        // Both orders went out together, and nothing was held back as every topic was due
+        assertEquals(List.of(Topics.ALL), published);
+
+        shard.call(() -> instrument.cancelOrder(1));
+        shard.call(() -> null);
+        // The book and its venue breakdown have no interval; the OHLC and analytics changes wait out their hour
+        assertEquals(List.of(Topics.ALL, Topics.bit(Topics.ORDERBOOK) | Topics.bit(Topics.VENUES)), published);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.orderbook.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+    private static final class Event {
+        int producer;
+        int value;
+    }
+
+    @Test
+    void everyEventReachesTheConsumerInEachProducersOrder() throws InterruptedException {
+        int producers = 4;
+        int events = 50_000;
+        // Much smaller than the stream, so producers keep wrapping around and waiting on the consumer
+        RingBuffer<Event> ring = new RingBuffer<>(60, Event::new);
+        assertEquals(64, ring.capacity());
+        ring.setConsumer(Thread.currentThread());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    long sequence = ring.claim();
+                    Event event = ring.get(sequence);
+                    event.producer = producer;
+                    event.value = i;
+                    ring.publish(sequence);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * events) {
+            int handled = ring.drain(event -> {
+                assertEquals(next[event.producer], event.value);
+                next[event.producer]++;
+            }, 16);
+            assertTrue(handled <= 16);
+            if (handled == 0) {
+                ring.await(1_000_000);
+            }
+            received += handled;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.backlog());
+    }
+
+    @Test
+    void eventsPublishedDuringADrainWaitForTheNextOne() {
+        RingBuffer<Event> ring = new RingBuffer<>(8, Event::new);
+        ring.setConsumer(Thread.currentThread());
+        publish(ring, 1);
+        List<Integer> handled = new ArrayList<>();
+        assertEquals(1, ring.drain(event -> {
+            handled.add(event.value);
+            publish(ring, event.value + 1);
+        }, 16));
+        assertEquals(List.of(1), handled);
+        assertEquals(1, ring.backlog());
+    }
+
+    private static void publish(RingBuffer<Event> ring, int value) {
+        long sequence = ring.claim();
+        ring.get(sequence).value = value;
+        ring.publish(sequence);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.orderbook.relay;
+
+import com.example.orderbook.feed.BookView;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelayCacheTest {
+
+    private static final RelayKey FULL = RelayKey.json("LSE:RR", BookView.FULL);
+    private static final RelayKey DEFAULT = RelayKey.json("LSE:RR", BookView.DEFAULT);
+
+    private final List<RelayKey> refreshed = new ArrayList<>();
+    private final RelayCache cache = new RelayCache(2, refreshed::add);
+
+    @Test
+    void joiningSessionsGetTheSnapshotAndWhatFollowedIt() throws InterruptedException {
+        assertTrue(cache.add(FULL));
+        assertFalse(cache.add(FULL));
+        assertTrue(cache.needsSnapshot(FULL));
+        assertNull(cache.snapshot(FULL, 0));
+
+        // Publications older than the first snapshot are already in it
+        cache.apply("LSE:RR", "orderbook", BookView.FULL, text("delta-0"), null, false);
+        cache.setSnapshot(FULL, List.of(text("book"), text("trades-1")));
+        assertFalse(cache.needsSnapshot(FULL));
+
+        cache.apply("LSE:RR", "orderbook", BookView.FULL, text("delta-1"), null, false);
+        cache.apply("LSE:RR", "trades", null, text("trades-2"), null, true);
+        cache.apply("LSE:RR", "trades", null, text("trades-3"), null, true);
+        // Other symbols and views, and news for everyone
+        cache.apply("LSE:SXS", "orderbook", BookView.FULL, text("other"), null, false);
+        cache.apply("LSE:RR", "orderbook", BookView.DEFAULT, text("top"), null, true);
+        cache.apply(null, "news", null, text("news"), null, true);
+
+        assertEquals(List.of("book", "trades-1", "delta-1", "trades-3", "news"), payloads(cache.snapshot(FULL, 0)));
+    }
+
+    @Test
+    void deltasPilingUpAskForAFreshSnapshotOnce() throws InterruptedException {
+        cache.add(FULL);
+        cache.add(DEFAULT);
+        cache.setSnapshot(FULL, List.of(text("book")));
+        cache.setSnapshot(DEFAULT, List.of(text("top-0")));
+
+        for (int delta = 1; delta <= 3; delta++) {
+            cache.apply("LSE:RR", "orderbook", BookView.FULL, text("delta-" + delta), null, false);
+            cache.apply("LSE:RR", "orderbook", BookView.DEFAULT, text("top-" + delta), null, true);
+        }
+        assertEquals(List.of(FULL), refreshed);
+        assertTrue(cache.needsSnapshot(FULL));
+        assertFalse(cache.needsSnapshot(DEFAULT));
+        assertEquals(List.of("top-0", "top-3"), payloads(cache.snapshot(DEFAULT, 0)));
+
+        cache.setSnapshot(FULL, List.of(text("book-3")));
+        assertEquals(List.of("book-3"), payloads(cache.snapshot(FULL, 0)));
+
+        cache.invalidate();
+        assertTrue(cache.needsSnapshot(FULL));
+        assertNull(cache.snapshot(DEFAULT, 0));
+    }
+
+    @Test
+    void publicationsRoundTripThroughTheProtocol() throws IOException {
+        byte[] frame = RelayProtocol.publish(42, "LSE:RR", "orderbook", BookView.DEFAULT, text("{\"a\":1}"),
+                new BinaryMessage(new byte[] {1, 2, 3}), true);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                RelayProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame)))));
+
+        assertEquals(RelayProtocol.PUBLISH, in.readUnsignedByte());
+        assertEquals(42, in.readLong());
+        assertEquals("LSE:RR", in.readUTF());
+        assertEquals("orderbook", in.readUTF());
+        assertTrue(in.readBoolean());
+        assertEquals(BookView.DEFAULT, RelayProtocol.readView(in));
+        assertEquals("{\"a\":1}", RelayProtocol.readMessage(in).getPayload());
+        WebSocketMessage<?> binary = RelayProtocol.readMessage(in);
+        assertTrue(binary instanceof BinaryMessage);
+        assertEquals(3, binary.getPayloadLength());
+    }
+
+    private static TextMessage text(String payload) {
+        return new TextMessage(payload);
+    }
+
+    private static List<String> payloads(List<WebSocketMessage<?>> messages) {
+        List<String> payloads = new ArrayList<>();
+        for (WebSocketMessage<?> message : messages) {
+            payloads.add(((TextMessage) message).getPayload());
+        }
+        return payloads;
+    }
+}
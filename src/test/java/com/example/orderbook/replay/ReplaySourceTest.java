@@ -0,0 +1,115 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.book.Venues;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplaySourceTest {
+
+    private static final String BOOKS = """
+            [{"timestamp": "10:00:00",
+              "bids": [{"price": 100.5, "size": 200, "exchange": "LSE", "time": "09:59:58"}],
+              "asks": [{"price": 101.0, "size": 50, "exchange": "BATS", "time": "09:59:59"}]},
+             {"timestamp": "10:00:04", "bids": [], "asks": []}]
+            """;
+
+    // Recorded lists are newest first and overlap from one snapshot to the next
+    private static final String TRADES = """
+            [{"timestamp": "10:00:02", "trades": [
+                {"price": 100.5, "shares": 10, "color": "red", "type": "AT", "time": "10:00:02"},
+                {"price": 101.0, "shares": 20, "color": "green", "type": "AT", "time": "10:00:01"}]},
+             {"timestamp": "10:00:04", "trades": [
+                {"price": 100.0, "shares": 30, "color": "red", "type": "AT", "time": "10:00:03"},
+                {"price": 100.5, "shares": 10, "color": "red", "type": "AT", "time": "10:00:02"}]}]
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void jsonRecordingsAreMergedInTimeOrderWithoutRepeatedPrints() throws IOException {
+        try (ReplaySource source = jsonSource()) {
+            assertEquals(TimeOfDay.parse("10:00:00"), source.firstTime());
+            List<String> events = describe(source);
+            assertEquals(List.of(
+                    "BOOK 10:00:00 [0 1005000 200 LSE 09:59:58, 1 1010000 50 BATS 09:59:59]",
+                    "TRADES 10:00:02 [0 1010000 20 0 10:00:01, 1 1005000 10 0 10:00:02]",
+                    "BOOK 10:00:04 []",
+                    "TRADES 10:00:04 [1 1000000 30 0 10:00:03]"), events);
+        }
+    }
+
+    @Test
+    void captureReplaysTheSameEventsAndSeeksThroughItsIndex() throws IOException {
+        Path capture = directory.resolve("session" + CaptureFormat.EXTENSION);
+        try (ReplaySource source = jsonSource()) {
+            assertEquals(4, CaptureWriter.convert(source, capture));
+        }
+        List<String> expected;
+        try (ReplaySource source = jsonSource()) {
+            expected = describe(source);
+        }
+
+        try (MappedReplaySource source = new MappedReplaySource(capture)) {
+            assertEquals(TimeOfDay.parse("10:00:00"), source.firstTime());
+            assertEquals(TimeOfDay.parse("10:00:04"), source.lastTime());
+            assertEquals(expected, describe(source));
+
+            source.seek(TimeOfDay.parse("10:00:03"));
+            assertEquals(expected.subList(2, 4), describe(source));
+            source.seek(TimeOfDay.parse("10:00:00"));
+            assertEquals(expected, describe(source));
+            source.seek(TimeOfDay.parse("11:00:00"));
+            assertNull(source.next());
+        }
+    }
+
+    @Test
+    void printsInTheSameSecondAsThePreviousListAreKept() throws IOException {
+        Files.writeString(directory.resolve(ReplaySources.BOOK_FILE), "[]");
+        Files.writeString(directory.resolve(ReplaySources.TRADE_FILE), """
+                [{"timestamp": "10:00:02", "trades": [
+                    {"price": 100.5, "shares": 10, "color": "red", "type": "AT", "time": "10:00:02"}]},
+                 {"timestamp": "10:00:03", "trades": [
+                    {"price": 100.5, "shares": 10, "color": "red", "type": "AT", "time": "10:00:02"},
+                    {"price": 101.0, "shares": 20, "color": "green", "type": "AT", "time": "10:00:02"},
+                    {"price": 100.5, "shares": 10, "color": "red", "type": "AT", "time": "10:00:02"}]}]
+                """);
+        try (ReplaySource source = ReplaySources.open(directory.toString())) {
+            // The newest list repeats the previous print once at its tail, and once more as a new print
+            assertEquals(List.of(
+                    "TRADES 10:00:02 [1 1005000 10 0 10:00:02]",
+                    "TRADES 10:00:03 [0 1010000 20 0 10:00:02, 1 1005000 10 0 10:00:02]"), describe(source));
+        }
+    }
+
+    private ReplaySource jsonSource() throws IOException {
+        Files.writeString(directory.resolve(ReplaySources.BOOK_FILE), BOOKS);
+        Files.writeString(directory.resolve(ReplaySources.TRADE_FILE), TRADES);
+        return ReplaySources.open(directory.toString());
+    }
+
+    private static List<String> describe(ReplaySource source) throws IOException {
+        List<String> events = new ArrayList<>();
+        for (ReplayRecord record = source.next(); record != null; record = source.next()) {
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < record.size(); i++) {
+                entries.add(record.side(i) + " " + record.price(i) + " " + record.quantity(i) + " "
+                        + (record.kind() == ReplayRecord.BOOK ? Venues.name(record.venue(i)) : record.tradeType(i))
+                        + " " + TimeOfDay.format(record.entryTime(i)));
+            }
+            events.add((record.kind() == ReplayRecord.BOOK ? "BOOK " : "TRADES ") + TimeOfDay.format(record.time()) + " " + entries);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.orderbook.series;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CandleSeriesTest {
+
+    @Test
+    void tradesFoldIntoRunningCandlesWithVolumeWeightedAverage() {
+        CandleAggregator aggregator = new CandleAggregator(new int[] { 60, CandleSeries.SESSION }, 4);
+        aggregator.onTrade(1000, 100, 0, 0, 36_000);
+        aggregator.onTrade(1010, 300, 1, 0, 36_030);
+        aggregator.onTrade(990, 100, 0, 0, 36_059);
+        aggregator.onTrade(1005, 200, 0, 0, 36_061);
+
+        CandleSeries minutes = aggregator.series(60);
+        assertEquals(2, minutes.count());
+        assertEquals(36_000, minutes.startTime(0));
+        assertEquals(1000, minutes.open(0));
+        assertEquals(1010, minutes.high(0));
+        assertEquals(990, minutes.low(0));
+        assertEquals(990, minutes.close(0));
+        assertEquals(500, minutes.volume(0));
+        assertEquals(3, minutes.tradeCount(0));
+        assertEquals((1000 * 100 + 1010 * 300 + 990 * 100) / 500.0, minutes.vwap(0), 1e-9);
+        assertEquals(36_060, minutes.startTime(1));
+
+        CandleSeries session = aggregator.series(CandleSeries.SESSION);
+        assertEquals(1, session.count());
+        assertEquals(4, session.tradeCount(0));
+        assertEquals(700, session.volume(0));
+        assertEquals(1005, session.close(0));
+    }
+
+    @Test
+    void historyIsBoundedAndResetStartsANewSession() {
+        CandleSeries seconds = new CandleSeries(1, 4);
+        for (int time = 0; time < 10; time++) {
+            seconds.add(time, 1000 + time, 10);
+        }
+        assertEquals(10, seconds.count());
+        assertEquals(6, seconds.first());
+        assertEquals(1006, seconds.open(6));
+
+        CandleSeries session = new CandleSeries(CandleSeries.SESSION, 4);
+        session.add(100, 1000, 10);
+        session.reset();
+        session.add(50, 1100, 20);
+        assertEquals(2, session.count());
+        assertEquals(1100, session.open(1));
+        assertEquals(20, session.volume(1));
+    }
+}
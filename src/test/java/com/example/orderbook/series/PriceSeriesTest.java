@@ -0,0 +1,64 @@
+package com.example.orderbook.series;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceSeriesTest {
+
+    @Test
+    void bucketsKeepExtremesInTheOrderTheyWereReached() {
+        PriceSeries series = new PriceSeries(16, new int[] { 60 }, 8);
+        series.append(36_000, 1000);
+        series.append(36_010, 1200);
+        series.append(36_050, 900);
+        series.append(36_065, 950);
+        // Stamped before the open bucket: folded into it
+        series.append(36_020, 980);
+
+        MinMaxBuckets tier = series.tier(60);
+        assertEquals(2, tier.count());
+        assertEquals(36_000, tier.startTime(0));
+        assertEquals(1200, tier.firstExtreme(0));
+        assertEquals(900, tier.secondExtreme(0));
+        assertEquals(36_060, tier.startTime(1));
+        assertEquals(950, tier.firstExtreme(1));
+        assertEquals(980, tier.secondExtreme(1));
+    }
+
+    @Test
+    void ringRetainsTheNewestEntries() {
+        PriceSeries series = new PriceSeries(4, new int[] { 1 }, 4);
+        for (int i = 0; i < 10; i++) {
+            series.append(i, 100 + i);
+        }
+
+        assertEquals(4, series.size());
+        assertEquals(6, series.time(0));
+        assertEquals(109, series.price(3));
+        MinMaxBuckets tier = series.tier(1);
+        assertEquals(6, tier.first());
+        assertEquals(109, tier.firstExtreme(9));
+    }
+
+    @Test
+    void downsamplingKeepsEndpointsAndSpikes() {
+        PriceSeries series = new PriceSeries(1024, new int[] { 60 }, 8);
+        for (int i = 0; i < 1000; i++) {
+            series.append(i, i == 500 ? 5000 : 1000);
+        }
+        int[] selected = new int[20];
+
+        int count = series.downsample(20, selected);
+
+        assertEquals(20, count);
+        assertEquals(0, selected[0]);
+        assertEquals(999, selected[19]);
+        boolean spikeKept = false;
+        for (int i = 0; i < count; i++) {
+            spikeKept |= selected[i] == 500;
+        }
+        assertTrue(spikeKept);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.orderbook.store;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.TimeOfDay;
+import com.example.orderbook.engine.TradeTape;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TradeStoreTest {
+
+    @Test
+    void queriesMatchAScanOfEveryPrint() {
+        TradeStore store = new TradeStore(1 << 20);
+        Random random = new Random(11);
+        int trades = 30_000;
+        int[] times = new int[trades];
+        long[] prices = new long[trades];
+        long[] quantities = new long[trades];
+        int time = TimeOfDay.parse("08:00:00");
+        for (int i = 0; i < trades; i++) {
+            time += random.nextInt(3);
+            times[i] = time;
+            prices[i] = Prices.toTicks(100.0) + random.nextInt(200);
+            quantities[i] = 1 + random.nextInt(5000);
+            store.onTrade(prices[i], quantities[i], OrderBook.BID, TradeTape.TYPE_AUTOMATIC, time);
+        }
+        TradeHistory history = store.history();
+        assertEquals(trades, history.size());
+
+        int from = TimeOfDay.parse("09:00:00");
+        int to = TimeOfDay.parse("10:29:59");
+        long count = 0;
+        long volume = 0;
+        double notional = 0;
+        long largest = 0;
+        for (int i = 0; i < trades; i++) {
+            if (times[i] >= from && times[i] <= to) {
+                count++;
+                if (times[i] < from + 3600) {
+                    volume += quantities[i];
+                    notional += (double) prices[i] * quantities[i];
+                }
+                largest = Math.max(largest, quantities[i]);
+            }
+        }
+
+        Map<String, Object> range = history.range(from, to, 5);
+        assertEquals(count, range.get("count"));
+        assertEquals(5, ((List<?>) range.get("trades")).size());
+
+        List<Map<String, Object>> buckets = history.aggregate(from, to, 3600);
+        assertEquals(2, buckets.size());
+        assertEquals("09:00:00", buckets.get(0).get("time"));
+        assertEquals(volume, buckets.get(0).get("volume"));
+        assertEquals(notional / volume / Prices.SCALE, (double) buckets.get(0).get("vwap"), 1e-9);
+
+        List<Map<String, Object>> top = history.largest(from, to, 3);
+        assertEquals(3, top.size());
+        assertEquals(largest, top.get(0).get("shares"));
+        assertTrue((long) top.get(0).get("shares") >= (long) top.get(1).get("shares"));
+    }
+
+    @Test
+    void dropsTheOldestSegmentsAndStartsOverWhenTimeGoesBack() {
+        TradeStore store = new TradeStore(2 * TradeStore.SEGMENT_SIZE);
+        for (int i = 0; i < 3 * TradeStore.SEGMENT_SIZE; i++) {
+            store.onTrade(Prices.toTicks(10.0), 1, OrderBook.ASK, TradeTape.TYPE_AUTOMATIC, i / 10);
+        }
+        TradeHistory full = store.history();
+        assertEquals(2 * TradeStore.SEGMENT_SIZE, full.size());
+        assertEquals(TradeStore.SEGMENT_SIZE / 10, full.time(0));
+
+        // The replay looped: a new session, while the earlier view stays readable
+        store.onTrade(Prices.toTicks(10.0), 7, OrderBook.ASK, TradeTape.TYPE_AUTOMATIC, 5);
+        assertEquals(1, store.history().size());
+        assertEquals(7, store.history().quantity(0));
+        assertEquals(2 * TradeStore.SEGMENT_SIZE, full.size());
+    }
+
+    @Test
+    void segmentsAreNumberedAcrossSessionsAndFromWhereAResumedStoreWas() {
+        TradeStore store = new TradeStore(2 * TradeStore.SEGMENT_SIZE);
+        assertEquals(0, store.firstSequence());
+        for (int i = 0; i < 3 * TradeStore.SEGMENT_SIZE; i++) {
+            store.onTrade(Prices.toTicks(10.0), 1, OrderBook.ASK, TradeTape.TYPE_AUTOMATIC, 100);
+        }
+        // Segment 0 was dropped for capacity
+        assertEquals(1, store.firstSequence());
+        assertEquals(2, store.history().segmentCount());
+
+        store.clear();
+        assertEquals(3, store.firstSequence());
+        store.onTrade(Prices.toTicks(10.0), 1, OrderBook.ASK, TradeTape.TYPE_AUTOMATIC, 5);
+        assertEquals(3, store.firstSequence());
+
+        store.resume(42);
+        assertEquals(0, store.history().size());
+        store.onTrade(Prices.toTicks(10.0), 1, OrderBook.ASK, TradeTape.TYPE_AUTOMATIC, 5);
+        assertEquals(42, store.firstSequence());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.orderbook.wire;
+
+import com.example.orderbook.book.OrderBook;
+import com.example.orderbook.book.Prices;
+import com.example.orderbook.book.Venues;
+import com.example.orderbook.feed.HeaderStats;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryEncoderTest {
+
+    @Test
+    void snapshotFollowsTheDocumentedLayout() {
+        OrderBook book = new OrderBook();
+        book.add(OrderBook.BID, 1, Prices.toTicks(632.20), 100, Venues.LSE, 3600);
+        book.add(OrderBook.BID, 2, Prices.toTicks(632.20), 250, Venues.AOX, 3601);
+        book.add(OrderBook.ASK, 3, Prices.toTicks(632.40), 75, Venues.CHIX, 3602);
+        HeaderStats header = new HeaderStats();
+        header.update(book.top());
+
+        ByteBuffer frame = new BinaryEncoder(List.of("LSE:RR", "LSE:SXS")).snapshot(1, 7, 3700, book, header).getPayload().order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(WireFormat.VERSION, frame.get());
+        assertEquals(WireFormat.SNAPSHOT, frame.get());
+        assertEquals(1, frame.getShort());
+        assertEquals(7, frame.getLong());
+        assertEquals(3700, frame.getInt());
+        // Bid stats: best price, touch quantity and orders, notional, then no change yet
+        assertEquals(Prices.toTicks(632.20), frame.getLong());
+        assertEquals(350, frame.getLong());
+        assertEquals(2, frame.getInt());
+        frame.getDouble();
+        assertTrue(Double.isNaN(frame.getDouble()));
+        assertTrue(Double.isNaN(frame.getDouble()));
+        frame.position(frame.position() + 44);
+
+        assertEquals(1, frame.getInt());
+        assertEquals(Prices.toTicks(632.20), frame.getLong());
+        assertEquals(2, frame.getInt());
+        assertEquals(100, frame.getLong());
+        assertEquals(Venues.LSE, frame.get());
+        assertEquals(3600, frame.getInt());
+        assertEquals(250, frame.getLong());
+        assertEquals(Venues.AOX, frame.get());
+        assertEquals(3601, frame.getInt());
+
+        assertEquals(1, frame.getInt());
+        assertEquals(Prices.toTicks(632.40), frame.getLong());
+        assertEquals(1, frame.getInt());
+        assertEquals(75, frame.getLong());
+        assertEquals(Venues.CHIX, frame.get());
+        assertEquals(3602, frame.getInt());
+        assertEquals(0, frame.remaining());
+    }
+}